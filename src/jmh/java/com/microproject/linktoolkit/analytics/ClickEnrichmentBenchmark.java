@@ -0,0 +1,112 @@
+package com.microproject.linktoolkit.analytics;
+
+import io.micrometer.core.instrument.simple.SimpleMeterRegistry;
+import org.openjdk.jmh.annotations.*;
+import ua_parser.Parser;
+
+import java.net.InetAddress;
+import java.net.UnknownHostException;
+import java.util.Random;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Cost of the per-click enrichment done by the ingestion worker: User-Agent classification and country lookup.
+ * <p>
+ * The GeoLite2 database is not checked out with the sources, so the country index is filled with
+ * geoRanges random IPv4 and IPv6 networks, roughly the size of the real index.
+ * </p>
+ */
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.NANOSECONDS)
+@State(Scope.Benchmark)
+@Warmup(iterations = 2, time = 3)
+@Measurement(iterations = 3, time = 3)
+@Fork(1)
+public class ClickEnrichmentBenchmark {
+
+    private static final String[] USER_AGENTS = {
+            "Mozilla/5.0 (Windows NT 10.0; Win64; x64) AppleWebKit/537.36 (KHTML, like Gecko) Chrome/129.0.0.0 Safari/537.36",
+            "Mozilla/5.0 (iPhone; CPU iPhone OS 17_6_1 like Mac OS X) AppleWebKit/605.1.15 (KHTML, like Gecko) Version/17.6 Mobile/15E148 Safari/604.1",
+            "Mozilla/5.0 (Linux; Android 10; K) AppleWebKit/537.36 (KHTML, like Gecko) Chrome/129.0.0.0 Mobile Safari/537.36",
+            "Mozilla/5.0 (Macintosh; Intel Mac OS X 10_15_7) AppleWebKit/605.1.15 (KHTML, like Gecko) Version/17.6 Safari/605.1.15",
+            "Mozilla/5.0 (Linux; Android 14; SM-S918B) AppleWebKit/537.36 (KHTML, like Gecko) Chrome/129.0.0.0 Mobile Safari/537.36",
+            "Mozilla/5.0 (Windows NT 10.0; Win64; x64; rv:131.0) Gecko/20100101 Firefox/131.0",
+            "Mozilla/5.0 (compatible; Googlebot/2.1; +http://www.google.com/bot.html)",
+            "Mozilla/5.0 (Linux; Android 13; Pixel 7) AppleWebKit/537.36 (KHTML, like Gecko) Chrome/129.0.0.0 Mobile Safari/537.36"
+    };
+
+    private static final String[] COUNTRIES = {"US", "DE", "IN", "BR", "GB", "FR", "JP", "AU", "CA", "NL"};
+
+    @Param({"400000"})
+    public int geoRanges;
+
+    private Parser uapParser;
+    private CachingUserAgentParser cachingParser;
+    private IpCountryIndex ipCountryIndex;
+    private String[] ips;
+    private int next;
+
+    @Setup
+    public void setUp() {
+        uapParser = new Parser();
+        cachingParser = new CachingUserAgentParser(new SimpleMeterRegistry(), 10_000);
+
+        Random random = new Random(42);
+        IpCountryIndex.Builder builder = new IpCountryIndex.Builder();
+        // Walk the address space in ascending order with random gaps, as the database tree walk would.
+        long v4 = 1L << 24;
+        for (int i = 0; i < geoRanges * 3 / 4 && v4 < 0xE0000000L; i++) {
+            byte[] address = {(byte) (v4 >>> 24), (byte) (v4 >>> 16), (byte) (v4 >>> 8), (byte) v4};
+            builder.addNetwork(address, 24, COUNTRIES[random.nextInt(COUNTRIES.length)]);
+            v4 += 256L * (1 + random.nextInt(96));
+        }
+        long v6 = 0x2001_0000_0000_0000L;
+        for (int i = 0; i < geoRanges / 4; i++) {
+            byte[] address = new byte[16];
+            for (int b = 0; b < 8; b++) {
+                address[b] = (byte) (v6 >>> (56 - 8 * b));
+            }
+            builder.addNetwork(address, 48, COUNTRIES[random.nextInt(COUNTRIES.length)]);
+            v6 += (1L << 16) * (1 + random.nextInt(80_000));
+        }
+        ipCountryIndex = builder.build();
+
+        ips = new String[1024];
+        for (int i = 0; i < ips.length; i++) {
+            ips[i] = i % 4 == 3
+                    ? "2001:%x:%x::%x".formatted(random.nextInt(0x10000), random.nextInt(0x10000), random.nextInt(0x10000))
+                    : "%d.%d.%d.%d".formatted(1 + random.nextInt(222), random.nextInt(256), random.nextInt(256), random.nextInt(256));
+        }
+    }
+
+    private int nextIndex() {
+        return next = (next + 1) & 1023;
+    }
+
+    // The previous click path: full parse of UA, OS and device on every click
+    @Benchmark
+    public String uapParse() {
+        return uapParser.parse(USER_AGENTS[nextIndex() % USER_AGENTS.length]).device.family;
+    }
+
+    @Benchmark
+    public String uapParseDevice() {
+        return uapParser.parseDevice(USER_AGENTS[nextIndex() % USER_AGENTS.length]).family;
+    }
+
+    @Benchmark
+    public String cachingParseDevice() {
+        return cachingParser.parseDevice(USER_AGENTS[nextIndex() % USER_AGENTS.length]).family;
+    }
+
+    @Benchmark
+    public String countryOf() {
+        return ipCountryIndex.countryOf(ips[nextIndex()]);
+    }
+
+    // Baseline for the literal parsing that countryOf replaces
+    @Benchmark
+    public InetAddress inetAddressParse() throws UnknownHostException {
+        return InetAddress.getByName(ips[nextIndex()]);
+    }
+}
@@ -0,0 +1,53 @@
+package com.microproject.linktoolkit.qrcode;
+
+import org.openjdk.jmh.annotations.*;
+
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.Comparator;
+import java.util.concurrent.TimeUnit;
+import java.util.stream.Stream;
+
+/**
+ * Cost of encoding and rendering a QR code PNG, and of rendering plus storing it on the local filesystem
+ * (the stand-in for blob storage), i.e. the work of one background QR code job without the network.
+ */
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@State(Scope.Benchmark)
+@Warmup(iterations = 2, time = 3)
+@Measurement(iterations = 3, time = 3)
+@Fork(1)
+public class QrCodeBenchmark {
+
+    private final QrCodeRenderer qrCodeRenderer = new QrCodeRenderer();
+    private Path directory;
+    private LocalQrCodeStorage storage;
+
+    @Param({"https://lnk.example.com/aB3dE9x"})
+    public String shortUrl;
+
+    @Setup
+    public void setUp() throws IOException {
+        directory = Files.createTempDirectory("qrcode-benchmark");
+        storage = new LocalQrCodeStorage(directory, "");
+    }
+
+    @TearDown
+    public void tearDown() throws IOException {
+        try (Stream<Path> files = Files.walk(directory)) {
+            files.sorted(Comparator.reverseOrder()).forEach(path -> path.toFile().delete());
+        }
+    }
+
+    @Benchmark
+    public byte[] generatePng() throws Exception {
+        return qrCodeRenderer.renderPng(shortUrl);
+    }
+
+    @Benchmark
+    public String generateAndStore() throws Exception {
+        return storage.store("aB3dE9x.png", qrCodeRenderer.renderPng(shortUrl), "image/png");
+    }
+}
@@ -0,0 +1,154 @@
+package com.microproject.linktoolkit.redirect;
+
+import com.microproject.linktoolkit.analytics.AnalyticsService;
+import com.microproject.linktoolkit.analytics.ClickBatchWriter;
+import com.microproject.linktoolkit.analytics.ClickEnricher;
+import com.microproject.linktoolkit.analytics.ClickEvent;
+import com.microproject.linktoolkit.analytics.ClickIngestionPipeline;
+import com.microproject.linktoolkit.analytics.ClickWriteAheadLog;
+import com.microproject.linktoolkit.link.AliasResolutionCache;
+import com.microproject.linktoolkit.link.LinkRepository;
+import com.microproject.linktoolkit.link.ResolvedLink;
+import io.micrometer.core.instrument.MeterRegistry;
+import io.micrometer.core.instrument.simple.SimpleMeterRegistry;
+import org.openjdk.jmh.annotations.*;
+import org.springframework.beans.factory.ObjectProvider;
+import org.springframework.beans.factory.support.StaticListableBeanFactory;
+import org.springframework.mock.web.MockHttpServletRequest;
+import org.springframework.mock.web.MockHttpServletResponse;
+import org.springframework.mock.web.MockServletContext;
+
+import java.lang.reflect.Proxy;
+import java.time.Instant;
+import java.time.temporal.ChronoUnit;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Optional;
+import java.util.UUID;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Cost of serving a redirect: alias resolution, click capture and the 302 response.
+ * <p>
+ * Links live in an in-memory map behind a proxy LinkRepository, and clicks go through the real ingestion
+ * pipeline into a writer that discards them, so the numbers cover everything except the database and Tomcat.
+ * With cached=false the alias cache holds nothing and every request goes to the repository.
+ * </p>
+ */
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.NANOSECONDS)
+@State(Scope.Benchmark)
+@Warmup(iterations = 2, time = 3)
+@Measurement(iterations = 3, time = 3)
+@Fork(1)
+public class RedirectBenchmark {
+
+    private static final String USER_AGENT =
+            "Mozilla/5.0 (Windows NT 10.0; Win64; x64) AppleWebKit/537.36 (KHTML, like Gecko) Chrome/129.0.0.0 Safari/537.36";
+
+    @Param({"true", "false"})
+    public boolean cached;
+
+    @Param({"10000"})
+    public int links;
+
+    private RedirectController redirectController;
+    private ClickIngestionPipeline clickIngestionPipeline;
+    private String[] aliases;
+    private MockHttpServletRequest forwardedRequest;
+    // Shared, because a MockHttpServletRequest without one builds a fresh servlet context every time
+    private final MockServletContext servletContext = new MockServletContext();
+
+    @State(Scope.Thread)
+    public static class Cursor {
+        int next;
+    }
+
+    @Setup
+    public void setUp() {
+        Map<String, ResolvedLink> store = new HashMap<>();
+        aliases = new String[links];
+        Instant expiresAt = Instant.now().plus(30, ChronoUnit.DAYS);
+        for (int i = 0; i < links; i++) {
+            aliases[i] = "a" + Integer.toString(i, 36);
+            store.put(aliases[i], new ResolvedLink(UUID.randomUUID(), "https://example.com/articles/" + i, expiresAt));
+        }
+
+        MeterRegistry meterRegistry = new SimpleMeterRegistry();
+        AliasResolutionCache aliasResolutionCache = new AliasResolutionCache(
+                inMemoryLinkRepository(store), meterRegistry, cached ? 100_000 : 0, 600_000, 30_000, false);
+
+        ClickBatchWriter discardingWriter = new ClickBatchWriter(null, null, null) {
+            @Override
+            public void write(List<ClickEvent> clicks) {
+            }
+        };
+        // Enrichment has its own benchmark; here it would only compete with the measured thread for CPU.
+        ClickEnricher passThroughEnricher = new ClickEnricher(null, null, meterRegistry, false, 60_000) {
+            @Override
+            public ClickEvent enrich(ClickEvent event) {
+                return event;
+            }
+        };
+        // No click log: clicks go straight from the buffer to the writer
+        ObjectProvider<ClickWriteAheadLog> noWriteAheadLog = new StaticListableBeanFactory().getBeanProvider(ClickWriteAheadLog.class);
+        clickIngestionPipeline = new ClickIngestionPipeline(passThroughEnricher, discardingWriter, noWriteAheadLog, meterRegistry,
+                65536, 500, 200, ClickIngestionPipeline.OverflowPolicy.DROP, 10, 50, 10_000, 1000, 500, 30_000,
+                3_600_000, 604_800_000, false);
+        clickIngestionPipeline.start();
+
+        AnalyticsService analyticsService = new AnalyticsService(null, null, null, clickIngestionPipeline, null, null);
+        redirectController = new RedirectController(aliasResolutionCache, analyticsService, meterRegistry);
+
+        forwardedRequest = new MockHttpServletRequest(servletContext);
+        forwardedRequest.addHeader("X-Forwarded-For", "203.0.113.7, 10.0.0.1, 10.0.0.2");
+    }
+
+    @TearDown
+    public void tearDown() {
+        clickIngestionPipeline.stop();
+    }
+
+    /**
+     * Answers findResolvedByShortAlias from the map; the redirect path uses nothing else.
+     */
+    private static LinkRepository inMemoryLinkRepository(Map<String, ResolvedLink> store) {
+        return (LinkRepository) Proxy.newProxyInstance(
+                LinkRepository.class.getClassLoader(),
+                new Class<?>[]{LinkRepository.class},
+                (proxy, method, args) -> switch (method.getName()) {
+                    case "findResolvedByShortAlias" -> Optional.ofNullable(store.get((String) args[0]));
+                    case "toString" -> "InMemoryLinkRepository";
+                    case "hashCode" -> System.identityHashCode(proxy);
+                    case "equals" -> proxy == args[0];
+                    default -> throw new UnsupportedOperationException(method.getName());
+                });
+    }
+
+    @Benchmark
+    public String extractIpAddress() {
+        return redirectController.extractIpAddress(forwardedRequest);
+    }
+
+    @Benchmark
+    public MockHttpServletResponse redirect(Cursor cursor) throws Exception {
+        String alias = aliases[cursor.next++ % aliases.length];
+
+        MockHttpServletRequest request = new MockHttpServletRequest(servletContext, "GET", "/" + alias);
+        request.setRemoteAddr("198.51.100.23");
+        request.addHeader("User-Agent", USER_AGENT);
+        request.addHeader("Referer", "https://news.example.org/");
+        MockHttpServletResponse response = new MockHttpServletResponse();
+
+        redirectController.handleRedirect(alias, request, response);
+        return response;
+    }
+
+    @Benchmark
+    public MockHttpServletResponse redirectUnknownAlias() throws Exception {
+        MockHttpServletResponse response = new MockHttpServletResponse();
+        redirectController.handleRedirect("missing", new MockHttpServletRequest(servletContext, "GET", "/missing"), response);
+        return response;
+    }
+}
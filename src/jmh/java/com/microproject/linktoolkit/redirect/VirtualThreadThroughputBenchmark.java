@@ -0,0 +1,234 @@
+package com.microproject.linktoolkit.redirect;
+
+import com.microproject.linktoolkit.analytics.AnalyticsService;
+import com.microproject.linktoolkit.analytics.ClickBatchWriter;
+import com.microproject.linktoolkit.analytics.ClickEnricher;
+import com.microproject.linktoolkit.analytics.ClickEvent;
+import com.microproject.linktoolkit.analytics.ClickIngestionPipeline;
+import com.microproject.linktoolkit.analytics.ClickWriteAheadLog;
+import com.microproject.linktoolkit.config.ConcurrencyLimitedDataSource;
+import com.microproject.linktoolkit.link.AliasResolutionCache;
+import com.microproject.linktoolkit.link.LinkRepository;
+import com.microproject.linktoolkit.link.ResolvedLink;
+import io.micrometer.core.instrument.MeterRegistry;
+import io.micrometer.core.instrument.simple.SimpleMeterRegistry;
+import org.openjdk.jmh.annotations.*;
+import org.springframework.beans.factory.ObjectProvider;
+import org.springframework.beans.factory.support.StaticListableBeanFactory;
+import org.springframework.mock.web.MockHttpServletRequest;
+import org.springframework.mock.web.MockHttpServletResponse;
+import org.springframework.mock.web.MockServletContext;
+
+import javax.sql.DataSource;
+import java.lang.reflect.Proxy;
+import java.sql.Connection;
+import java.time.Instant;
+import java.time.temporal.ChronoUnit;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Optional;
+import java.util.UUID;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Semaphore;
+import java.util.concurrent.ThreadLocalRandom;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+
+/**
+ * Compares redirect throughput of the platform-thread mode against the virtual-thread mode.
+ * <p>
+ * Bursts of requests go through the real RedirectController, alias cache and click pipeline, as in
+ * {@link RedirectBenchmark}. PLATFORM runs them on a pool of 200 threads, Tomcat's default; VIRTUAL runs each on
+ * its own virtual thread (spring.threads.virtual.enabled=true). Aliases are drawn uniformly from the links, so
+ * roughly cachedPercent of the requests are cache hits. Each miss holds one of poolSize connections of a stand-in
+ * pool for queryMs while it looks the link up in memory; in VIRTUAL mode the pool sits behind the
+ * ConcurrencyLimitedDataSource, as VirtualThreadConfig sets it up. The score is redirects per second.
+ * </p>
+ */
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.SECONDS)
+@State(Scope.Benchmark)
+@Warmup(iterations = 2, time = 5)
+@Measurement(iterations = 3, time = 5)
+@Fork(1)
+public class VirtualThreadThroughputBenchmark {
+
+    private static final int TOMCAT_MAX_THREADS = 200;
+    private static final int REQUESTS_PER_BURST = 2000;
+    private static final String USER_AGENT =
+            "Mozilla/5.0 (Windows NT 10.0; Win64; x64) AppleWebKit/537.36 (KHTML, like Gecko) Chrome/129.0.0.0 Safari/537.36";
+
+    @Param({"PLATFORM", "VIRTUAL"})
+    public String mode;
+
+    // Hikari's default maximum-pool-size
+    @Param({"10"})
+    public int poolSize;
+
+    @Param({"2"})
+    public int queryMs;
+
+    @Param({"0", "90", "99"})
+    public int cachedPercent;
+
+    @Param({"10000"})
+    public int links;
+
+    private ExecutorService executor;
+    private ClickIngestionPipeline clickIngestionPipeline;
+    private RedirectController redirectController;
+    private String[] aliases;
+    // Shared, because a MockHttpServletRequest without one builds a fresh servlet context every time
+    private final MockServletContext servletContext = new MockServletContext();
+    private final AtomicInteger failures = new AtomicInteger();
+
+    @Setup(Level.Trial)
+    public void setUp() {
+        boolean virtual = "VIRTUAL".equals(mode);
+        executor = virtual
+                ? Executors.newVirtualThreadPerTaskExecutor()
+                : Executors.newFixedThreadPool(TOMCAT_MAX_THREADS);
+
+        Map<String, ResolvedLink> store = new HashMap<>();
+        aliases = new String[links];
+        Instant expiresAt = Instant.now().plus(30, ChronoUnit.DAYS);
+        for (int i = 0; i < links; i++) {
+            aliases[i] = "a" + Integer.toString(i, 36);
+            store.put(aliases[i], new ResolvedLink(UUID.randomUUID(), "https://example.com/articles/" + i, expiresAt));
+        }
+
+        DataSource pool = connectionPool(poolSize);
+        // Generous timeout: the benchmark measures waiting for a connection, not giving up on one
+        DataSource dataSource = virtual ? new ConcurrencyLimitedDataSource(pool, poolSize, 60_000) : pool;
+
+        MeterRegistry meterRegistry = new SimpleMeterRegistry();
+        AliasResolutionCache aliasResolutionCache = new AliasResolutionCache(
+                linkRepository(store, dataSource, queryMs), meterRegistry, (long) links * cachedPercent / 100,
+                600_000, 30_000, false);
+        // Fill the cache up front, so the measured hit ratio is cachedPercent and not that of a cold cache
+        for (String alias : aliases) {
+            aliasResolutionCache.resolve(alias);
+        }
+
+        ClickBatchWriter discardingWriter = new ClickBatchWriter(null, null, null) {
+            @Override
+            public void write(List<ClickEvent> clicks) {
+            }
+        };
+        ClickEnricher passThroughEnricher = new ClickEnricher(null, null, meterRegistry, false, 60_000) {
+            @Override
+            public ClickEvent enrich(ClickEvent event) {
+                return event;
+            }
+        };
+        ObjectProvider<ClickWriteAheadLog> noWriteAheadLog = new StaticListableBeanFactory().getBeanProvider(ClickWriteAheadLog.class);
+        clickIngestionPipeline = new ClickIngestionPipeline(passThroughEnricher, discardingWriter, noWriteAheadLog, meterRegistry,
+                65536, 500, 200, ClickIngestionPipeline.OverflowPolicy.DROP, 10, 50, 10_000, 1000, 500, 30_000,
+                3_600_000, 604_800_000, virtual);
+        clickIngestionPipeline.start();
+
+        AnalyticsService analyticsService = new AnalyticsService(null, null, null, clickIngestionPipeline, null, null);
+        redirectController = new RedirectController(aliasResolutionCache, analyticsService, meterRegistry);
+    }
+
+    @TearDown(Level.Trial)
+    public void tearDown() {
+        executor.shutdownNow();
+        clickIngestionPipeline.stop();
+        if (failures.get() > 0) {
+            throw new IllegalStateException(failures.get() + " redirects failed");
+        }
+    }
+
+    /**
+     * Stands in for Hikari: at most poolSize connections are out at once, and borrowers wait in line for one.
+     */
+    private static DataSource connectionPool(int poolSize) {
+        Semaphore connections = new Semaphore(poolSize, true);
+        return (DataSource) Proxy.newProxyInstance(
+                DataSource.class.getClassLoader(),
+                new Class<?>[]{DataSource.class},
+                (proxy, method, args) -> switch (method.getName()) {
+                    case "getConnection" -> {
+                        connections.acquire();
+                        yield pooledConnection(connections);
+                    }
+                    case "toString" -> "StandInConnectionPool";
+                    case "hashCode" -> System.identityHashCode(proxy);
+                    case "equals" -> proxy == args[0];
+                    default -> throw new UnsupportedOperationException(method.getName());
+                });
+    }
+
+    private static Connection pooledConnection(Semaphore connections) {
+        return (Connection) Proxy.newProxyInstance(
+                Connection.class.getClassLoader(),
+                new Class<?>[]{Connection.class},
+                (proxy, method, args) -> switch (method.getName()) {
+                    case "close" -> {
+                        connections.release();
+                        yield null;
+                    }
+                    case "toString" -> "StandInConnection";
+                    case "hashCode" -> System.identityHashCode(proxy);
+                    case "equals" -> proxy == args[0];
+                    default -> throw new UnsupportedOperationException(method.getName());
+                });
+    }
+
+    /**
+     * Answers findResolvedByShortAlias from the map while holding a connection for the query time.
+     */
+    private static LinkRepository linkRepository(Map<String, ResolvedLink> store, DataSource dataSource, int queryMs) {
+        return (LinkRepository) Proxy.newProxyInstance(
+                LinkRepository.class.getClassLoader(),
+                new Class<?>[]{LinkRepository.class},
+                (proxy, method, args) -> switch (method.getName()) {
+                    case "findResolvedByShortAlias" -> {
+                        try (Connection ignored = dataSource.getConnection()) {
+                            Thread.sleep(queryMs);
+                        }
+                        yield Optional.ofNullable(store.get((String) args[0]));
+                    }
+                    case "toString" -> "InMemoryLinkRepository";
+                    case "hashCode" -> System.identityHashCode(proxy);
+                    case "equals" -> proxy == args[0];
+                    default -> throw new UnsupportedOperationException(method.getName());
+                });
+    }
+
+    @Benchmark
+    @OperationsPerInvocation(REQUESTS_PER_BURST)
+    public void burstOfRedirects() throws InterruptedException {
+        CountDownLatch done = new CountDownLatch(REQUESTS_PER_BURST);
+        for (int i = 0; i < REQUESTS_PER_BURST; i++) {
+            executor.execute(() -> {
+                try {
+                    redirect(aliases[ThreadLocalRandom.current().nextInt(aliases.length)]);
+                } finally {
+                    done.countDown();
+                }
+            });
+        }
+        done.await();
+    }
+
+    private void redirect(String alias) {
+        MockHttpServletRequest request = new MockHttpServletRequest(servletContext, "GET", "/" + alias);
+        request.setRemoteAddr("198.51.100.23");
+        request.addHeader("User-Agent", USER_AGENT);
+        request.addHeader("Referer", "https://news.example.org/");
+        MockHttpServletResponse response = new MockHttpServletResponse();
+        try {
+            redirectController.handleRedirect(alias, request, response);
+            if (response.getStatus() != 302) {
+                failures.incrementAndGet();
+            }
+        } catch (Exception e) {
+            failures.incrementAndGet();
+        }
+    }
+}
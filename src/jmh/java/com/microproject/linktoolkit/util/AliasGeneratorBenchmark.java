@@ -0,0 +1,52 @@
+package com.microproject.linktoolkit.util;
+
+import io.micrometer.core.instrument.simple.SimpleMeterRegistry;
+import org.openjdk.jmh.annotations.*;
+import org.springframework.jdbc.core.JdbcTemplate;
+
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * Cost of generating one alias, single-threaded and under contention on the block lock.
+ * Blocks are leased from an in-memory counter instead of the database sequence.
+ */
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.NANOSECONDS)
+@State(Scope.Benchmark)
+@Warmup(iterations = 2, time = 3)
+@Measurement(iterations = 3, time = 3)
+@Fork(1)
+public class AliasGeneratorBenchmark {
+
+    private AliasGenerator aliasGenerator;
+
+    @Setup
+    public void setUp() {
+        AtomicLong sequence = new AtomicLong();
+        JdbcTemplate inMemorySequence = new JdbcTemplate() {
+            @Override
+            public void execute(String sql) {
+                // CREATE SEQUENCE on the first lease: nothing to create
+            }
+
+            @Override
+            @SuppressWarnings("unchecked")
+            public <T> T queryForObject(String sql, Class<T> requiredType) {
+                return (T) Long.valueOf(sequence.incrementAndGet());
+            }
+        };
+        aliasGenerator = new AliasGenerator(inMemorySequence, new SimpleMeterRegistry(), "benchmark-secret");
+    }
+
+    @Benchmark
+    public String generate() {
+        return aliasGenerator.generate();
+    }
+
+    @Benchmark
+    @Threads(8)
+    public String generateContended() {
+        return aliasGenerator.generate();
+    }
+}
@@ -0,0 +1,63 @@
+package com.microproject.linktoolkit.util;
+
+import io.micrometer.core.instrument.simple.SimpleMeterRegistry;
+import org.openjdk.jmh.annotations.*;
+import org.springframework.security.core.userdetails.User;
+import org.springframework.security.core.userdetails.UserDetails;
+
+import java.util.Base64;
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Cost of the JWT checks that JwtAuthenticationFilter runs on every authenticated request.
+ * Apart from {@link #parseUncached()}, these hit the verified-token cache, as repeated requests with one token do.
+ */
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@State(Scope.Benchmark)
+@Warmup(iterations = 2, time = 3)
+@Measurement(iterations = 3, time = 3)
+@Fork(1)
+public class JwtUtilBenchmark {
+
+    private JwtUtil jwtUtil;
+    private UserDetails user;
+    private String token;
+
+    @Setup
+    public void setUp() {
+        jwtUtil = new JwtUtil(
+                Base64.getEncoder().encodeToString(new byte[32]),
+                TimeUnit.HOURS.toMillis(1),
+                TimeUnit.DAYS.toMillis(7),
+                10_000,
+                new SimpleMeterRegistry()
+        );
+
+        user = User.withUsername("benchmark@example.com").password("unused").authorities(List.of()).build();
+        token = jwtUtil.generateToken(user);
+    }
+
+    @Benchmark
+    public String extractUsername() {
+        return jwtUtil.extractUsername(token);
+    }
+
+    @Benchmark
+    public boolean isTokenValid() {
+        return jwtUtil.isTokenValid(token, user);
+    }
+
+    // What the filter actually does per request
+    @Benchmark
+    public JwtUtil.VerifiedToken authenticateRequest() {
+        return jwtUtil.verify(token);
+    }
+
+    // A token seen for the first time: signature check and claims parsing
+    @Benchmark
+    public Object parseUncached() {
+        return jwtUtil.extractClaim(token, claims -> claims.getSubject());
+    }
+}
@@ -5,28 +5,124 @@ import com.microproject.linktoolkit.exception.ResourceNotFoundException;
 import com.microproject.linktoolkit.link.Link;
 import com.microproject.linktoolkit.link.LinkRepository;
 import com.microproject.linktoolkit.user.User;
+import jakarta.servlet.http.HttpServletRequest;
+import jakarta.servlet.http.HttpServletResponse;
 import lombok.RequiredArgsConstructor;
+import org.springframework.format.annotation.DateTimeFormat;
+import org.springframework.http.CacheControl;
+import org.springframework.http.ContentDisposition;
+import org.springframework.http.HttpHeaders;
+import org.springframework.http.HttpStatus;
+import org.springframework.http.MediaType;
 import org.springframework.http.ResponseEntity;
 import org.springframework.security.access.AccessDeniedException;
 import org.springframework.security.core.Authentication;
 import org.springframework.web.bind.annotation.GetMapping;
 import org.springframework.web.bind.annotation.PathVariable;
 import org.springframework.web.bind.annotation.RequestMapping;
+import org.springframework.web.bind.annotation.RequestParam;
 import org.springframework.web.bind.annotation.RestController;
+import org.springframework.web.context.request.WebRequest;
+
+import java.io.IOException;
+import java.io.OutputStream;
+import java.nio.charset.StandardCharsets;
+import java.time.LocalDate;
+import java.time.ZoneOffset;
+import java.util.Enumeration;
+import java.util.Locale;
+import java.util.zip.GZIPOutputStream;
 
 @RestController
 @RequestMapping("/api/links") // Piggybacking on the /api/links route
 @RequiredArgsConstructor
 public class AnalyticsController {
 
+    private static final int DEFAULT_RANGE_DAYS = 30;
+    private static final String CSV_VALUE = "text/csv";
+    private static final int GZIP_BUFFER_SIZE = 64 * 1024;
+
     private final AnalyticsService analyticsService;
     private final LinkRepository linkRepository;
+    private final ClickExportService clickExportService;
 
     @GetMapping("/{alias}/analytics")
     public ResponseEntity<LinkAnalyticsResponse> getLinkAnalytics(
             @PathVariable String alias,
-            Authentication authentication
+            @RequestParam(required = false) @DateTimeFormat(iso = DateTimeFormat.ISO.DATE) LocalDate from,
+            @RequestParam(required = false) @DateTimeFormat(iso = DateTimeFormat.ISO.DATE) LocalDate to,
+            Authentication authentication,
+            WebRequest webRequest,
+            HttpServletResponse httpResponse
     ) {
+        Link link = findOwnedLink(alias, authentication);
+
+        // If the check passes, proceed to get the analytics data. Defaults to the last 30 days (UTC).
+        LocalDate end = to != null ? to : LocalDate.now(ZoneOffset.UTC);
+        LocalDate start = from != null ? from : end.minusDays(DEFAULT_RANGE_DAYS);
+
+        // The figures only change with the link's click watermark (or the date range), so polling dashboards
+        // can revalidate with If-None-Match and get a bodyless 304 while no click has arrived. The watermark
+        // alone is checked first, so a revalidation never pays for the aggregation, even on a cold cache.
+        if (webRequest.checkNotModified(eTag(link, analyticsService.getWatermark(link.getId()), start, end))) {
+            return null;
+        }
+        AnalyticsSnapshot analytics = analyticsService.getAnalyticsForLink(link.getId(), alias, start, end);
+        // The figures may be at another watermark than the one just checked; replace the ETag the check has set
+        String eTag = eTag(link, analytics.watermark(), start, end);
+        httpResponse.setHeader(HttpHeaders.ETAG, eTag);
+        return ResponseEntity.ok()
+                .eTag(eTag)
+                .cacheControl(CacheControl.noCache().cachePrivate())
+                .body(analytics.response());
+    }
+
+    /**
+     * Streams every click of the link, oldest first, as CSV (the default) or NDJSON.
+     * The response is gzip-compressed when the client accepts it.
+     */
+    @GetMapping("/{alias}/clicks/export")
+    public void exportClicks(
+            @PathVariable String alias,
+            @RequestParam(defaultValue = "csv") String format,
+            Authentication authentication,
+            HttpServletRequest httpRequest,
+            HttpServletResponse httpResponse
+    ) throws IOException {
+        Link link = findOwnedLink(alias, authentication);
+        ClickExportService.Format exportFormat = ClickExportService.Format.parse(format);
+
+        httpResponse.setStatus(HttpStatus.OK.value());
+        httpResponse.setContentType(exportFormat == ClickExportService.Format.CSV ? CSV_VALUE : MediaType.APPLICATION_NDJSON_VALUE);
+        httpResponse.setCharacterEncoding(StandardCharsets.UTF_8.name());
+        httpResponse.setHeader(HttpHeaders.CONTENT_DISPOSITION, ContentDisposition.attachment()
+                .filename(alias + "-clicks." + exportFormat.name().toLowerCase(Locale.ROOT))
+                .build()
+                .toString());
+        httpResponse.setHeader(HttpHeaders.VARY, HttpHeaders.ACCEPT_ENCODING);
+
+        OutputStream out = httpResponse.getOutputStream();
+        if (acceptsGzip(httpRequest)) {
+            httpResponse.setHeader(HttpHeaders.CONTENT_ENCODING, "gzip");
+            out = new GZIPOutputStream(out, GZIP_BUFFER_SIZE);
+        }
+        // Closing finishes the gzip stream
+        try (OutputStream body = out) {
+            clickExportService.export(link.getId(), exportFormat, body);
+        } catch (IOException | RuntimeException e) {
+            // Nothing sent yet, e.g. the database was unavailable: drop the export headers so the error reads as usual
+            if (!httpResponse.isCommitted()) {
+                httpResponse.reset();
+            }
+            throw e;
+        }
+    }
+
+    private static String eTag(Link link, long watermark, LocalDate start, LocalDate end) {
+        return "\"" + link.getId() + "-" + watermark + "-" + start + "-" + end + "\"";
+    }
+
+    private Link findOwnedLink(String alias, Authentication authentication) {
         // Find the link by its alias
         Link link = linkRepository.findByShortAlias(alias)
                 .orElseThrow(() -> new ResourceNotFoundException("Link with alias '" + alias + "' not found."));
@@ -38,10 +134,20 @@ public class AnalyticsController {
             // If link has no owner or owner ID doesn't match, deny access.
             throw new AccessDeniedException("You do not have permission to view analytics for this link.");
         }
+        return link;
+    }
 
-        // If the check passes, proceed to get the analytics data.
-        LinkAnalyticsResponse analytics = analyticsService.getAnalyticsForLink(link.getId(), alias);
-
-        return ResponseEntity.ok(analytics);
+    private static boolean acceptsGzip(HttpServletRequest request) {
+        Enumeration<String> headers = request.getHeaders(HttpHeaders.ACCEPT_ENCODING);
+        while (headers.hasMoreElements()) {
+            for (String coding : headers.nextElement().split(",")) {
+                String[] parts = coding.trim().split(";");
+                if (parts[0].trim().equalsIgnoreCase("gzip")
+                        && (parts.length < 2 || !parts[1].replace(" ", "").matches("q=0(\\.0*)?"))) {
+                    return true;
+                }
+            }
+        }
+        return false;
     }
-}
\ No newline at end of file
+}
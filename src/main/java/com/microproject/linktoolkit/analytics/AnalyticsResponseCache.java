@@ -0,0 +1,67 @@
+package com.microproject.linktoolkit.analytics;
+
+import com.github.benmanes.caffeine.cache.Cache;
+import com.github.benmanes.caffeine.cache.Caffeine;
+import com.microproject.linktoolkit.analytics.dto.LinkAnalyticsResponse;
+import io.micrometer.core.instrument.MeterRegistry;
+import io.micrometer.core.instrument.binder.cache.CaffeineCacheMetrics;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.stereotype.Component;
+
+import java.time.Duration;
+import java.time.LocalDate;
+import java.util.UUID;
+import java.util.function.Supplier;
+
+/**
+ * In-process cache of computed link analytics per (link, date range), validated by the link's click watermark.
+ * <p>
+ * Dashboards poll the analytics of the same links over and over; while no click arrives the watermark stays put
+ * and the cached response is returned without running the aggregate queries. A newer watermark recomputes the entry.
+ * Entries also expire a fixed time after they were computed, so changes that do not move the watermark, such as a
+ * rebuild of the rollups, show up within {@code analytics.response-cache.ttl.ms}.
+ * </p>
+ */
+@Component
+public class AnalyticsResponseCache {
+
+    private final Cache<Key, AnalyticsSnapshot> cache;
+
+    public AnalyticsResponseCache(
+            MeterRegistry meterRegistry,
+            @Value("${analytics.response-cache.max-size:10000}") long maxSize,
+            @Value("${analytics.response-cache.ttl.ms:600000}") long ttlMs
+    ) {
+        this.cache = Caffeine.newBuilder()
+                .maximumSize(maxSize)
+                .expireAfterWrite(Duration.ofMillis(ttlMs))
+                .recordStats()
+                .build();
+
+        // Publishes cache.gets{result=hit|miss} etc. tagged with cache=link-analytics; a hit may still be superseded
+        CaffeineCacheMetrics.monitor(meterRegistry, cache, "link-analytics");
+    }
+
+    /**
+     * Returns the cached analytics if they were computed at the given watermark or a later one, and otherwise
+     * computes and caches them. The computation runs outside the cache's locks, so it never blocks other entries
+     * or pins a virtual thread; of concurrent computations the one at the latest watermark is kept.
+     *
+     * @param watermark The link's current watermark, read before computing.
+     * @param compute Computes the analytics, seeing at least the clicks up to the watermark.
+     */
+    public AnalyticsSnapshot get(UUID linkId, LocalDate from, LocalDate to, long watermark, Supplier<LinkAnalyticsResponse> compute) {
+        Key key = new Key(linkId, from, to);
+        AnalyticsSnapshot cached = cache.getIfPresent(key);
+        if (cached != null && cached.watermark() >= watermark) {
+            return cached;
+        }
+        AnalyticsSnapshot computed = new AnalyticsSnapshot(watermark, compute.get());
+        // A later watermark may have been cached meanwhile, e.g. by a request served by a less lagging replica
+        return cache.asMap().merge(key, computed,
+                (current, fresh) -> current.watermark() >= fresh.watermark() ? current : fresh);
+    }
+
+    private record Key(UUID linkId, LocalDate from, LocalDate to) {
+    }
+}
@@ -3,26 +3,22 @@
 package com.microproject.linktoolkit.analytics;
 
 import com.microproject.linktoolkit.analytics.dto.*;
-import com.maxmind.geoip2.DatabaseReader;
-import com.maxmind.geoip2.model.CityResponse;
+import com.microproject.linktoolkit.config.ReplicaRouting;
 import com.microproject.linktoolkit.link.Link;
 import com.microproject.linktoolkit.link.LinkRepository;
 import lombok.RequiredArgsConstructor;
 import lombok.extern.slf4j.Slf4j;
 import org.springframework.beans.factory.annotation.Value;
-import org.springframework.scheduling.annotation.Async;
 import org.springframework.stereotype.Service;
-import ua_parser.Parser;
-import org.springframework.data.domain.PageRequest;
+import org.springframework.transaction.annotation.Transactional;
 
-import java.time.Instant;
-import java.time.ZoneOffset;
-import java.time.format.DateTimeFormatter;
-import java.time.temporal.ChronoUnit;
+import java.time.LocalDate;
+import java.util.ArrayList;
+import java.util.EnumMap;
 import java.util.List;
+import java.util.Map;
 import java.util.stream.Collectors;
 
-import java.net.InetAddress;
 import java.util.Optional;
 import java.util.UUID;
 
@@ -31,98 +27,82 @@ import java.util.UUID;
 @Slf4j
 public class AnalyticsService {
 
-    private final ClickRepository clickRepository;
     private final LinkRepository linkRepository;
-    private final DatabaseReader geoIpDatabaseReader;
-    private final Parser userAgentParser;
+    private final LinkDailyStatRepository linkDailyStatRepository;
+    private final TopValuesTracker topValuesTracker;
+    private final ClickIngestionPipeline clickIngestionPipeline;
+    private final LinkClickWatermarkRepository linkClickWatermarkRepository;
+    private final AnalyticsResponseCache analyticsResponseCache;
 
     @Value("${app.base-url}")
     private String baseUrl;
 
-    @Async
+    /**
+     * Records a click without touching the database: the click is handed to the ingestion pipeline,
+     * which enriches and batch-inserts it off the request thread.
+     */
     public void logClick(UUID linkId, String ipAddress, String userAgent, String referer) {
-        try {
-            Click.ClickBuilder clickBuilder = Click.builder()
-                    .ipAddress(ipAddress)
-                    .userAgent(userAgent)
-                    .referer(referer);
-
-            // The rest of the logic uses the pre-extracted data
-            extractLocation(ipAddress).ifPresent(clickBuilder::countryCode);
-            extractDeviceType(userAgent).ifPresent(clickBuilder::deviceType);
-
-            Click newClick = clickBuilder.build();
-
-            linkRepository.findById(linkId).ifPresent(link -> {
-                newClick.setLink(link);
-                clickRepository.save(newClick);
-            });
-
-        } catch (Exception e) {
-            log.error("Failed to log click for linkId: {}. Error: {}", linkId, e.getMessage());
+        if (!clickIngestionPipeline.submit(ClickEvent.of(linkId, ipAddress, userAgent, referer))) {
+            log.debug("Click for linkId: {} was dropped by the ingestion overflow policy.", linkId);
         }
     }
 
-    private Optional<String> extractLocation(String ip) {
-        if (geoIpDatabaseReader == null || ip == null) return Optional.empty();
-        try {
-            InetAddress ipAddress = InetAddress.getByName(ip);
-            return Optional.ofNullable(geoIpDatabaseReader.city(ipAddress))
-                    .map(CityResponse::getCountry)
-                    .map(country -> country.getIsoCode());
-        } catch (Exception e) {
-            return Optional.empty();
-        }
+    /**
+     * @return The link's click watermark, which moves whenever clicks are added to its analytics.
+     */
+    @Transactional(readOnly = true, label = ReplicaRouting.ANALYTICS)
+    public long getWatermark(UUID linkId) {
+        return linkClickWatermarkRepository.findVersionByLinkId(linkId).orElse(0L);
     }
 
-    private Optional<String> extractDeviceType(String userAgentString) {
-        if (userAgentString == null) return Optional.empty();
-        try {
-            return Optional.ofNullable(userAgentParser.parse(userAgentString))
-                    .map(c -> c.device.family);
-        } catch (Exception e) {
-            return Optional.empty();
+    /**
+     * Returns the link's analytics from the response cache while no click has arrived since they were computed,
+     * and computes them otherwise.
+     *
+     * @param from The first day of the time series and the unique-visitor estimate, inclusive (UTC).
+     * @param to The last day of the time series and the unique-visitor estimate, inclusive (UTC).
+     * @return The analytics and the click watermark they are valid for.
+     */
+    // Dashboards tolerate figures that are a little behind, so this may run on a lagging replica
+    @Transactional(readOnly = true, label = ReplicaRouting.ANALYTICS)
+    public AnalyticsSnapshot getAnalyticsForLink(UUID linkId, String alias, LocalDate from, LocalDate to) {
+        if (from.isAfter(to)) {
+            throw new IllegalArgumentException("'from' must not be after 'to'.");
         }
+        // Read before the figures, so that they include at least the clicks up to this watermark
+        long watermark = getWatermark(linkId);
+        return analyticsResponseCache.get(linkId, from, to, watermark, () -> computeAnalytics(linkId, alias, from, to));
     }
 
-    public LinkAnalyticsResponse getAnalyticsForLink(UUID linkId, String alias) {
+    private LinkAnalyticsResponse computeAnalytics(UUID linkId, String alias, LocalDate from, LocalDate to) {
         Optional<Link> link = linkRepository.findById(linkId);
         String longUrl = "";
         if(link.isPresent()) {
             longUrl = link.get().getLongUrl();
         }
         String shortUrl = baseUrl + "/" +alias;
+        // All figures below are read from the daily rollups maintained by the ingestion pipeline,
+        // so the cost depends on the number of active days, not the number of clicks.
+
         // 1. Get total clicks
-        long totalClicks = clickRepository.countByLinkId(linkId);
-
-        // 2. Get clicks over the last 30 days for the time-series chart
-        Instant startDate = Instant.now().minus(30, ChronoUnit.DAYS);
-        List<TimeSeriesDataPoint> clicksOverTime = clickRepository.findClicksPerDay(linkId, startDate)
-                .stream()
-                .map(projection -> new TimeSeriesDataPoint(
-                        // Format the Instant to a simple YYYY-MM-DD string
-                        DateTimeFormatter.ISO_LOCAL_DATE.withZone(ZoneOffset.UTC).format(projection.getDate()),
-                        projection.getClicks()
-                ))
-                .collect(Collectors.toList());
-
-        // 3. Get top 5 for each category for the pie charts
-        PageRequest topFive = PageRequest.of(0, 5);
-
-        List<CategoryDataPoint> topReferrers = clickRepository.findTopReferrers(linkId, topFive)
-                .stream()
-                .map(p -> new CategoryDataPoint(p.getName(), p.getCount()))
-                .collect(Collectors.toList());
-
-        List<CategoryDataPoint> topDevices = clickRepository.findTopDevices(linkId, topFive)
-                .stream()
-                .map(p -> new CategoryDataPoint(p.getName(), p.getCount()))
-                .collect(Collectors.toList());
-
-        List<CategoryDataPoint> topLocations = clickRepository.findTopLocations(linkId, topFive)
-                .stream()
-                .map(p -> new CategoryDataPoint(p.getName(), p.getCount()))
-                .collect(Collectors.toList());
+        long totalClicks = linkDailyStatRepository.sumClicksByLinkId(linkId);
+
+        // 2. Get clicks per day in the range for the time-series chart, merging the days' visitor sketches
+        //    along the way: the merged sketch estimates the distinct visitors over the whole range.
+        HyperLogLog rangeVisitors = new HyperLogLog();
+        List<TimeSeriesDataPoint> clicksOverTime = new ArrayList<>();
+        for (LinkDailyStat stat : linkDailyStatRepository.findByLinkIdAndClickDateBetweenOrderByClickDate(linkId, from, to)) {
+            HyperLogLog dayVisitors = readVisitorSketch(stat);
+            rangeVisitors.merge(dayVisitors);
+            // LocalDate.toString() is the simple YYYY-MM-DD format the chart expects
+            clicksOverTime.add(new TimeSeriesDataPoint(stat.getClickDate().toString(), stat.getClicks(), dayVisitors.estimate()));
+        }
+
+        // 3. Get top 5 for each category for the pie charts, read in this transaction like the figures above
+        Map<ClickDimension, List<CategoryDataPoint>> topFive = findTopFive(linkId);
+        List<CategoryDataPoint> topReferrers = topFive.get(ClickDimension.REFERER);
+        List<CategoryDataPoint> topDevices = topFive.get(ClickDimension.DEVICE);
+        List<CategoryDataPoint> topLocations = topFive.get(ClickDimension.COUNTRY);
 
         // 4. Assemble and return the final response object
         return new LinkAnalyticsResponse(
@@ -130,10 +110,32 @@ public class AnalyticsService {
                 longUrl,
                 shortUrl,
                 totalClicks,
+                rangeVisitors.estimate(),
                 clicksOverTime,
                 topReferrers,
                 topDevices,
                 topLocations
         );
     }
+
+    /**
+     * Days rolled up before visitor sketches existed have none; they count as no visitors rather than failing.
+     */
+    private static HyperLogLog readVisitorSketch(LinkDailyStat stat) {
+        try {
+            return HyperLogLog.fromBytes(stat.getVisitorSketch());
+        } catch (IllegalArgumentException e) {
+            log.warn("Ignoring unreadable visitor sketch of link {} on {}. Error: {}",
+                    stat.getLinkId(), stat.getClickDate(), e.getMessage());
+            return new HyperLogLog();
+        }
+    }
+
+    private Map<ClickDimension, List<CategoryDataPoint>> findTopFive(UUID linkId) {
+        Map<ClickDimension, List<CategoryDataPoint>> topFive = new EnumMap<>(ClickDimension.class);
+        topValuesTracker.top(linkId, 5).forEach((dimension, counters) -> topFive.put(dimension, counters.stream()
+                .map(counter -> new CategoryDataPoint(counter.value(), counter.count(), counter.error()))
+                .collect(Collectors.toList())));
+        return topFive;
+    }
 }
\ No newline at end of file
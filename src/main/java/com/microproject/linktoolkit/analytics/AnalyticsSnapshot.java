@@ -0,0 +1,11 @@
+package com.microproject.linktoolkit.analytics;
+
+import com.microproject.linktoolkit.analytics.dto.LinkAnalyticsResponse;
+
+/**
+ * A link's analytics together with the click watermark they were computed at.
+ *
+ * @param watermark The link's LinkClickWatermark version when the analytics were computed, 0 before any click.
+ */
+public record AnalyticsSnapshot(long watermark, LinkAnalyticsResponse response) {
+}
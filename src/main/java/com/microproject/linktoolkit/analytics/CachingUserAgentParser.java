@@ -0,0 +1,105 @@
+package com.microproject.linktoolkit.analytics;
+
+import com.github.benmanes.caffeine.cache.Cache;
+import com.github.benmanes.caffeine.cache.Caffeine;
+import io.micrometer.core.instrument.Counter;
+import io.micrometer.core.instrument.MeterRegistry;
+import io.micrometer.core.instrument.binder.cache.CaffeineCacheMetrics;
+import ua_parser.Device;
+import ua_parser.Parser;
+
+import java.util.List;
+import java.util.regex.Pattern;
+
+/**
+ * A uap-java {@link Parser} that memoizes device classification.
+ * <p>
+ * Click traffic is dominated by a few thousand distinct User-Agent strings, so the device family of each one is
+ * cached in a bounded Caffeine cache. On a miss, the stock UA formats of the major browsers are matched by a
+ * handful of precompiled patterns before falling back to the full uap regex list, which is the expensive part.
+ * Every fast-path pattern yields exactly what uap itself returns for that format.
+ * </p>
+ */
+public class CachingUserAgentParser extends Parser {
+
+    // Longer strings are almost always junk or abuse; parse them but don't let them occupy the cache.
+    private static final int MAX_CACHED_LENGTH = 1024;
+
+    private static final String CHROMIUM_VERSION = "AppleWebKit/537\\.36 \\(KHTML, like Gecko\\) Chrome/[\\d.]+ ";
+    private static final String APPLE_WEBKIT = "AppleWebKit/[\\d.]+ \\(KHTML, like Gecko\\) ";
+
+    private static final List<FastPath> FAST_PATHS = List.of(
+            // Chrome, Edge and Opera on Windows
+            new FastPath("Mozilla/5\\.0 \\(Windows NT \\d+\\.\\d+; (?:Win64; x64|WOW64)\\) " + CHROMIUM_VERSION
+                    + "Safari/537\\.36(?: (?:Edg|OPR)/[\\d.]+)?", Device.OTHER),
+            // Chrome on desktop Linux
+            new FastPath("Mozilla/5\\.0 \\(X11; Linux x86_64\\) " + CHROMIUM_VERSION + "Safari/537\\.36", Device.OTHER),
+            // Firefox on Windows and desktop Linux
+            new FastPath("Mozilla/5\\.0 \\((?:Windows NT \\d+\\.\\d+; Win64; x64|X11; (?:Ubuntu; )?Linux x86_64); rv:[\\d.]+\\) "
+                    + "Gecko/20100101 Firefox/[\\d.]+", Device.OTHER),
+            // Chrome, Edge and Safari on macOS
+            new FastPath("Mozilla/5\\.0 \\(Macintosh; Intel Mac OS X [\\d_]+\\) " + APPLE_WEBKIT
+                    + "(?:Chrome/[\\d.]+ Safari/[\\d.]+(?: Edg/[\\d.]+)?|Version/[\\d.]+ Safari/[\\d.]+)", new Device("Mac")),
+            // Firefox on macOS
+            new FastPath("Mozilla/5\\.0 \\(Macintosh; Intel Mac OS X \\d+\\.\\d+; rv:[\\d.]+\\) Gecko/20100101 Firefox/[\\d.]+",
+                    new Device("Mac")),
+            // Safari, Chrome and Firefox on iOS
+            new FastPath("Mozilla/5\\.0 \\(iPhone; CPU iPhone OS [\\d_]+ like Mac OS X\\) " + APPLE_WEBKIT
+                    + "(?:Version|CriOS|FxiOS)/[\\d.]+ Mobile/\\w+ Safari/[\\d.]+", new Device("iPhone")),
+            new FastPath("Mozilla/5\\.0 \\(iPad; CPU OS [\\d_]+ like Mac OS X\\) " + APPLE_WEBKIT
+                    + "(?:Version|CriOS|FxiOS)/[\\d.]+ Mobile/\\w+ Safari/[\\d.]+", new Device("iPad")),
+            // Chrome on Android since UA reduction, which always reports the model as "K"
+            new FastPath("Mozilla/5\\.0 \\(Linux; Android 10; K\\) " + CHROMIUM_VERSION + "(?:Mobile )?Safari/537\\.36",
+                    new Device("K"))
+    );
+
+    private final Cache<String, Device> deviceCache;
+    private final Counter fastPathCounter;
+    private final Counter fullParseCounter;
+
+    public CachingUserAgentParser(MeterRegistry meterRegistry, long maxSize) {
+        super();
+        this.deviceCache = Caffeine.newBuilder()
+                .maximumSize(maxSize)
+                .recordStats()
+                .build();
+
+        // Publishes cache.gets{result=hit|miss} etc. tagged with cache=user-agent
+        CaffeineCacheMetrics.monitor(meterRegistry, deviceCache, "user-agent");
+        this.fastPathCounter = meterRegistry.counter("useragent.parse", "path", "fast");
+        this.fullParseCounter = meterRegistry.counter("useragent.parse", "path", "full");
+    }
+
+    /**
+     * Classifies the device of a User-Agent, parsing each distinct string at most once while it stays cached.
+     *
+     * @param agentString The raw User-Agent header.
+     * @return The device, exactly as {@link Parser#parseDevice(String)} would return it.
+     */
+    @Override
+    public Device parseDevice(String agentString) {
+        if (agentString == null || agentString.length() > MAX_CACHED_LENGTH) {
+            return classify(agentString);
+        }
+        return deviceCache.get(agentString, this::classify);
+    }
+
+    private Device classify(String agentString) {
+        if (agentString != null) {
+            for (FastPath fastPath : FAST_PATHS) {
+                if (fastPath.pattern().matcher(agentString).matches()) {
+                    fastPathCounter.increment();
+                    return fastPath.device();
+                }
+            }
+        }
+        fullParseCounter.increment();
+        return super.parseDevice(agentString);
+    }
+
+    private record FastPath(Pattern pattern, Device device) {
+        FastPath(String regex, Device device) {
+            this(Pattern.compile(regex), device);
+        }
+    }
+}
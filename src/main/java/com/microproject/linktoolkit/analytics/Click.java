@@ -16,10 +16,9 @@ import java.util.UUID;
 @AllArgsConstructor
 @ToString(exclude = "link")
 @Entity
-@Table(name = "clicks", indexes = {
-        // This index is critical for performance when querying analytics for a specific link.
-        @Index(name = "idx_clicks_link_id", columnList = "link_id")
-})
+// On PostgreSQL the table is partitioned by month, and its keys and indexes are managed by ClickPartitionManager,
+// because constraints on a partitioned table must include clicked_at. Hibernate only creates and adds columns.
+@Table(name = "clicks")
 public class Click {
     @Id
     @GeneratedValue(strategy = GenerationType.UUID)
@@ -27,7 +26,8 @@ public class Click {
 
     // This defines the "many" side of the many-to-one relationship with Link.
     @ManyToOne(fetch = FetchType.LAZY, optional = false)
-    @JoinColumn(name = "link_id", nullable = false) // A click MUST belong to a link.
+    @JoinColumn(name = "link_id", nullable = false, // A click MUST belong to a link.
+            foreignKey = @ForeignKey(ConstraintMode.NO_CONSTRAINT)) // Created by ClickPartitionManager
     @JsonBackReference // The "back" part of the Link->Click relationship.
     private Link link;
 
@@ -0,0 +1,112 @@
+package com.microproject.linktoolkit.analytics;
+
+import lombok.RequiredArgsConstructor;
+import org.springframework.jdbc.core.JdbcTemplate;
+import org.springframework.jdbc.core.namedparam.MapSqlParameterSource;
+import org.springframework.jdbc.core.namedparam.NamedParameterJdbcTemplate;
+import org.springframework.stereotype.Component;
+import org.springframework.transaction.annotation.Transactional;
+
+import java.sql.Timestamp;
+import java.time.Instant;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Set;
+import java.util.UUID;
+import java.util.stream.Collectors;
+
+/**
+ * Persists drained click batches with a single JDBC batch insert.
+ * The link is attached by writing link_id directly, so no Link entity is ever loaded for a click.
+ */
+@Component
+@RequiredArgsConstructor
+public class ClickBatchWriter {
+
+    private static final String INSERT_CLICK_SQL =
+            "INSERT INTO clicks (id, link_id, clicked_at, ip_address, user_agent, referer, country_code, device_type) " +
+            "VALUES (?, ?, ?, ?, ?, ?, ?, ?)";
+
+    private static final String UPSERT_CHECKPOINT_SQL =
+            "INSERT INTO click_wal_checkpoints (wal_id, position, replayed, updated_at) VALUES (?, ?, ?, ?) " +
+            "ON CONFLICT (wal_id) DO UPDATE SET position = EXCLUDED.position, replayed = EXCLUDED.replayed, " +
+            "updated_at = EXCLUDED.updated_at";
+
+    private final JdbcTemplate jdbcTemplate;
+    private final NamedParameterJdbcTemplate namedParameterJdbcTemplate;
+    private final ClickRollupService clickRollupService;
+
+    /**
+     * Inserts the whole batch and merges it into the daily rollups in one transaction.
+     *
+     * @param clicks The enriched clicks to write.
+     */
+    @Transactional
+    public void write(List<ClickEvent> clicks) {
+        jdbcTemplate.batchUpdate(INSERT_CLICK_SQL, clicks, clicks.size(), (ps, click) -> {
+            ps.setObject(1, UUID.randomUUID());
+            ps.setObject(2, click.linkId());
+            ps.setTimestamp(3, Timestamp.from(click.clickedAt()));
+            ps.setString(4, click.ipAddress());
+            ps.setString(5, click.userAgent());
+            ps.setString(6, click.referer());
+            ps.setString(7, click.countryCode());
+            ps.setString(8, click.deviceType());
+        });
+        clickRollupService.apply(clicks);
+    }
+
+    /**
+     * Writes clicks read from the click log and records how far the log has been written, in one transaction.
+     *
+     * @param clicks The enriched clicks to write, possibly none.
+     * @param walId The log the clicks were read from.
+     * @param position The log position just after the last of the clicks.
+     * @param replayed Whether the position is the end of the log, so nothing is left to replay.
+     */
+    @Transactional
+    public void write(List<ClickEvent> clicks, UUID walId, long position, boolean replayed) {
+        if (!clicks.isEmpty()) {
+            write(clicks);
+        }
+        jdbcTemplate.update(UPSERT_CHECKPOINT_SQL, walId, position, replayed, Timestamp.from(Instant.now()));
+    }
+
+    /**
+     * @param walId A click log.
+     * @return The log position up to which its clicks have been written, or -1 if none have.
+     */
+    public long readCheckpoint(UUID walId) {
+        List<Long> positions = jdbcTemplate.queryForList(
+                "SELECT position FROM click_wal_checkpoints WHERE wal_id = ?", Long.class, walId);
+        return positions.isEmpty() ? -1 : positions.get(0);
+    }
+
+    /**
+     * Deletes the positions of fully replayed logs that have not been written since the given time. A log that is
+     * still open refreshes its position regularly, so these belong to logs that were lost, e.g. with their container.
+     *
+     * @return The number of positions deleted.
+     */
+    public int deleteReplayedCheckpoints(Instant updatedBefore) {
+        return jdbcTemplate.update("DELETE FROM click_wal_checkpoints WHERE replayed AND updated_at < ?",
+                Timestamp.from(updatedBefore));
+    }
+
+    /**
+     * Drops clicks whose link has been deleted since the click happened.
+     * Only used after a batch was rejected by the link_id foreign key, so the common path never pays for this query.
+     *
+     * @param clicks The batch that failed to insert.
+     * @return The clicks that still reference an existing link.
+     */
+    public List<ClickEvent> retainExistingLinks(List<ClickEvent> clicks) {
+        Set<UUID> linkIds = clicks.stream().map(ClickEvent::linkId).collect(Collectors.toSet());
+        Set<UUID> existing = new HashSet<>(namedParameterJdbcTemplate.queryForList(
+                "SELECT id FROM links WHERE id IN (:ids)",
+                new MapSqlParameterSource("ids", linkIds),
+                UUID.class
+        ));
+        return clicks.stream().filter(click -> existing.contains(click.linkId())).toList();
+    }
+}
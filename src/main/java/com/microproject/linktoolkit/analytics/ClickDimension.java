@@ -0,0 +1,32 @@
+package com.microproject.linktoolkit.analytics;
+
+import java.util.function.Function;
+
+/**
+ * The categorical click attributes that analytics breaks clicks down by.
+ */
+public enum ClickDimension {
+    REFERER(ClickEvent::referer),
+    DEVICE(ClickEvent::deviceType),
+    COUNTRY(ClickEvent::countryCode);
+
+    // Longest value kept in the rollup key; referers are unbounded TEXT in the clicks table.
+    public static final int MAX_VALUE_LENGTH = 512;
+
+    private final Function<ClickEvent, String> extractor;
+
+    ClickDimension(Function<ClickEvent, String> extractor) {
+        this.extractor = extractor;
+    }
+
+    /**
+     * @return The click's value for this dimension, truncated to fit the rollup key, or null if the click has none.
+     */
+    public String valueOf(ClickEvent click) {
+        String value = extractor.apply(click);
+        if (value == null || value.length() <= MAX_VALUE_LENGTH) {
+            return value;
+        }
+        return value.substring(0, MAX_VALUE_LENGTH);
+    }
+}
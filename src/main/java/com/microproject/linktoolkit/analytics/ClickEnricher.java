@@ -0,0 +1,177 @@
+package com.microproject.linktoolkit.analytics;
+
+import io.micrometer.core.instrument.MeterRegistry;
+import io.micrometer.core.instrument.TimeGauge;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.beans.factory.ObjectProvider;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.boot.actuate.health.Health;
+import org.springframework.boot.actuate.health.HealthIndicator;
+import org.springframework.context.SmartLifecycle;
+import org.springframework.stereotype.Component;
+import ua_parser.Parser;
+
+import java.lang.management.ManagementFactory;
+import java.util.Optional;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.TimeoutException;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * Resolves the derived click attributes (country and device) from the raw request data.
+ * Runs on the ingestion worker, never on the redirect thread.
+ * <p>
+ * The GeoIP index and the User-Agent parser take seconds to build, so they are loaded when the application starts,
+ * on a background thread unless {@code analytics.enrichment.background-loading=false}, while the web server is
+ * already up. Clicks that arrive meanwhile wait in the ingestion buffer, for at most
+ * {@code analytics.enrichment.max-wait.ms} after loading started; past that they are recorded without country and
+ * device until loading finishes, so a hung load can't stall the ingestion. As a health indicator (clickEnricher,
+ * part of the readiness group) this reports OUT_OF_SERVICE until both are loaded, and DOWN if loading failed.
+ * </p>
+ */
+@Component
+@Slf4j
+public class ClickEnricher implements SmartLifecycle, HealthIndicator {
+
+    // Start before the click pipeline, whose worker waits for the engines, so loading begins as early as possible.
+    private static final int PHASE = SmartLifecycle.DEFAULT_PHASE - 8192;
+
+    private final ObjectProvider<IpCountryIndex> ipCountryIndexProvider;
+    private final ObjectProvider<Parser> userAgentParserProvider;
+    private final boolean backgroundLoading;
+    private final long maxWaitNanos;
+    private final CompletableFuture<Engines> engines = new CompletableFuture<>();
+    // JVM uptime when both engines were loaded, 0 until then
+    private final AtomicLong readyUptimeMs = new AtomicLong();
+    private final AtomicBoolean waitTimedOut = new AtomicBoolean();
+
+    // Until then, callers wait for the engines to be loaded
+    private volatile long waitDeadlineNanos;
+
+    private volatile boolean running;
+
+    private record Engines(IpCountryIndex ipCountryIndex, Parser userAgentParser) {
+    }
+
+    public ClickEnricher(
+            ObjectProvider<IpCountryIndex> ipCountryIndexProvider,
+            ObjectProvider<Parser> userAgentParserProvider,
+            MeterRegistry meterRegistry,
+            @Value("${analytics.enrichment.background-loading:true}") boolean backgroundLoading,
+            @Value("${analytics.enrichment.max-wait.ms:60000}") long maxWaitMs
+    ) {
+        this.ipCountryIndexProvider = ipCountryIndexProvider;
+        this.userAgentParserProvider = userAgentParserProvider;
+        this.backgroundLoading = backgroundLoading;
+        this.maxWaitNanos = TimeUnit.MILLISECONDS.toNanos(maxWaitMs);
+        this.waitDeadlineNanos = System.nanoTime() + maxWaitNanos;
+        TimeGauge.builder("analytics.enrichment.ready.time", readyUptimeMs, TimeUnit.MILLISECONDS,
+                        uptime -> uptime.get() > 0 ? uptime.get() : Double.NaN)
+                .description("Time from the JVM start until the GeoIP index and User-Agent parser were loaded")
+                .register(meterRegistry);
+    }
+
+    /**
+     * Waits for the engines to be loaded on the first clicks after a start; afterwards returns straight away.
+     * Once the wait has run out, clicks are enriched only with what is loaded by then.
+     */
+    public ClickEvent enrich(ClickEvent event) {
+        Engines loaded = awaitEngines();
+        return event.enriched(
+                extractLocation(loaded.ipCountryIndex(), event.ipAddress()).orElse(null),
+                extractDeviceType(loaded.userAgentParser(), event.userAgent()).orElse(null)
+        );
+    }
+
+    private Engines awaitEngines() {
+        try {
+            return engines.get(Math.max(0, waitDeadlineNanos - System.nanoTime()), TimeUnit.NANOSECONDS);
+        } catch (TimeoutException e) {
+            if (waitTimedOut.compareAndSet(false, true)) {
+                log.warn("Click enrichment is still loading after {} ms; recording clicks without country and device until it is ready.",
+                        TimeUnit.NANOSECONDS.toMillis(maxWaitNanos));
+            }
+            return new Engines(null, null);
+        } catch (ExecutionException e) {
+            // Logged when loading failed; the clicks are still recorded, just without country and device
+            return new Engines(null, null);
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            return new Engines(null, null);
+        }
+    }
+
+    private Optional<String> extractLocation(IpCountryIndex ipCountryIndex, String ip) {
+        if (ipCountryIndex == null || ip == null) return Optional.empty();
+        return Optional.ofNullable(ipCountryIndex.countryOf(ip));
+    }
+
+    private Optional<String> extractDeviceType(Parser userAgentParser, String userAgentString) {
+        if (userAgentParser == null || userAgentString == null) return Optional.empty();
+        try {
+            // Only the device is needed, so skip the user agent and OS regexes altogether.
+            return Optional.ofNullable(userAgentParser.parseDevice(userAgentString))
+                    .map(device -> device.family);
+        } catch (Exception e) {
+            return Optional.empty();
+        }
+    }
+
+    private void load() {
+        try {
+            // One after the other: creating one singleton holds the bean factory's lock until it is done
+            Engines loaded = new Engines(ipCountryIndexProvider.getObject(), userAgentParserProvider.getObject());
+            long uptimeMs = ManagementFactory.getRuntimeMXBean().getUptime();
+            readyUptimeMs.set(uptimeMs);
+            engines.complete(loaded);
+            log.info("Click enrichment ready {} ms after the JVM started.", uptimeMs);
+        } catch (RuntimeException e) {
+            log.error("Could not load the GeoIP index and User-Agent parser; clicks are recorded without country and device.", e);
+            engines.completeExceptionally(e);
+        }
+    }
+
+    @Override
+    public Health health() {
+        if (!engines.isDone()) {
+            return Health.outOfService().withDetail("engines", "loading").build();
+        }
+        if (engines.isCompletedExceptionally()) {
+            return Health.down().withDetail("engines", "failed").build();
+        }
+        return Health.up().withDetail("readyAfterMs", readyUptimeMs.get()).build();
+    }
+
+    @Override
+    public void start() {
+        running = true;
+        if (engines.isDone()) {
+            return;
+        }
+        waitDeadlineNanos = System.nanoTime() + maxWaitNanos;
+        if (backgroundLoading) {
+            // Started once the context has created all other singletons, so the lazy beans lock nobody out
+            Thread.ofPlatform().daemon(true).name("click-enrichment-loader").start(this::load);
+        } else {
+            load();
+        }
+    }
+
+    @Override
+    public void stop() {
+        running = false;
+    }
+
+    @Override
+    public boolean isRunning() {
+        return running;
+    }
+
+    @Override
+    public int getPhase() {
+        return PHASE;
+    }
+}
@@ -0,0 +1,33 @@
+package com.microproject.linktoolkit.analytics;
+
+import java.time.Instant;
+import java.util.UUID;
+
+/**
+ * A single click as it travels through the ingestion pipeline.
+ * The redirect fills in the request data; countryCode and deviceType are added by the pipeline off the request path.
+ * @param linkId The ID of the link that was clicked. Written as a raw foreign key, the Link is never loaded.
+ * @param clickedAt When the redirect happened (not when the row was written).
+ * @param ipAddress The client IP address.
+ * @param userAgent The raw User-Agent header, may be null.
+ * @param referer The raw Referer header, may be null.
+ * @param countryCode ISO country code resolved from the IP, null until enriched.
+ * @param deviceType Device family resolved from the User-Agent, null until enriched.
+ */
+public record ClickEvent(
+        UUID linkId,
+        Instant clickedAt,
+        String ipAddress,
+        String userAgent,
+        String referer,
+        String countryCode,
+        String deviceType
+) {
+    public static ClickEvent of(UUID linkId, String ipAddress, String userAgent, String referer) {
+        return new ClickEvent(linkId, Instant.now(), ipAddress, userAgent, referer, null, null);
+    }
+
+    public ClickEvent enriched(String countryCode, String deviceType) {
+        return new ClickEvent(linkId, clickedAt, ipAddress, userAgent, referer, countryCode, deviceType);
+    }
+}
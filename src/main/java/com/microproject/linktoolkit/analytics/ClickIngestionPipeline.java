@@ -0,0 +1,506 @@
+package com.microproject.linktoolkit.analytics;
+
+import io.micrometer.core.instrument.Counter;
+import io.micrometer.core.instrument.Gauge;
+import io.micrometer.core.instrument.MeterRegistry;
+import io.micrometer.core.instrument.Timer;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.context.SmartLifecycle;
+import org.springframework.beans.factory.ObjectProvider;
+import org.springframework.dao.DataAccessResourceFailureException;
+import org.springframework.dao.DataIntegrityViolationException;
+import org.springframework.dao.RecoverableDataAccessException;
+import org.springframework.dao.TransientDataAccessException;
+import org.springframework.scheduling.annotation.Scheduled;
+import org.springframework.stereotype.Component;
+import org.springframework.transaction.CannotCreateTransactionException;
+import org.springframework.transaction.TransactionSystemException;
+
+import java.io.IOException;
+import java.time.Duration;
+import java.time.Instant;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.ThreadLocalRandom;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Buffers clicks in a bounded ring buffer and writes them to the database in batches.
+ * <p>
+ * The redirect thread only enqueues the click. A single worker drains the buffer, enriches each click,
+ * and flushes with a JDBC batch insert once either the batch is full or the flush interval has passed.
+ * When the buffer is full the configured {@link OverflowPolicy} decides what happens to new clicks,
+ * so a traffic spike can never turn into an unbounded backlog of database writes.
+ * </p>
+ * <p>
+ * With the {@link ClickWriteAheadLog} enabled (the default) the log takes the place of the in-memory buffer:
+ * clicks are appended to it and the worker reads them back from it, so clicks outlive a crash and a database outage.
+ * A batch that fails because the database is unavailable is retried with backoff until it succeeds instead of being
+ * dropped, a batch the database rejects outright is kept in the log's dead-letter file, and clicks are only dropped
+ * once the log reaches its size limit. The worker refreshes the log's position in the database while it is idle,
+ * so positions that stay untouched belong to logs no instance has open anymore, and are pruned once fully replayed.
+ * </p>
+ */
+@Component
+@Slf4j
+public class ClickIngestionPipeline implements SmartLifecycle {
+
+    /**
+     * What to do with a click that arrives while the buffer is (nearly) full.
+     */
+    public enum OverflowPolicy {
+        /** Reject the click immediately. */
+        DROP,
+        /** Above the high-water mark keep only one click in every sample-rate clicks, drop when full. */
+        SAMPLE,
+        /** Wait up to the block timeout for space, then drop. */
+        BLOCK
+    }
+
+    // Stop after the web server has stopped accepting requests, so that in-flight redirects are still drained.
+    private static final int PHASE = SmartLifecycle.DEFAULT_PHASE - 4096;
+
+    private final ClickEnricher clickEnricher;
+    private final ClickBatchWriter clickBatchWriter;
+    // Null when analytics.wal.enabled=false
+    private final ClickWriteAheadLog writeAheadLog;
+    private final BlockingQueue<ClickEvent> buffer;
+    private final int capacity;
+    private final int batchSize;
+    private final long flushIntervalNanos;
+    private final OverflowPolicy overflowPolicy;
+    private final int sampleRate;
+    private final int highWaterMark;
+    private final long blockTimeoutMs;
+    private final long shutdownTimeoutMs;
+    private final boolean virtualThreads;
+    private final long syncIntervalNanos;
+    private final long retryBackoffMs;
+    private final long maxRetryBackoffMs;
+    private final long checkpointRefreshNanos;
+    private final long checkpointRetentionMs;
+
+    private final Counter acceptedCounter;
+    private final Counter droppedCounter;
+    private final Counter sampledOutCounter;
+    private final Counter writtenCounter;
+    private final Counter failedCounter;
+    private final Counter retriedCounter;
+    private final Timer flushTimer;
+    private final Timer lagTimer;
+
+    private volatile boolean running;
+    private Thread worker;
+
+    public ClickIngestionPipeline(
+            ClickEnricher clickEnricher,
+            ClickBatchWriter clickBatchWriter,
+            ObjectProvider<ClickWriteAheadLog> writeAheadLog,
+            MeterRegistry meterRegistry,
+            @Value("${analytics.ingest.queue-capacity:65536}") int capacity,
+            @Value("${analytics.ingest.batch-size:500}") int batchSize,
+            @Value("${analytics.ingest.flush-interval.ms:200}") long flushIntervalMs,
+            @Value("${analytics.ingest.overflow-policy:DROP}") OverflowPolicy overflowPolicy,
+            @Value("${analytics.ingest.sample-rate:10}") int sampleRate,
+            @Value("${analytics.ingest.block-timeout.ms:50}") long blockTimeoutMs,
+            @Value("${analytics.ingest.shutdown-timeout.ms:10000}") long shutdownTimeoutMs,
+            @Value("${analytics.wal.sync-interval.ms:1000}") long syncIntervalMs,
+            @Value("${analytics.wal.retry.backoff.ms:500}") long retryBackoffMs,
+            @Value("${analytics.wal.retry.max-backoff.ms:30000}") long maxRetryBackoffMs,
+            @Value("${analytics.wal.checkpoint.refresh.ms:3600000}") long checkpointRefreshMs,
+            @Value("${analytics.wal.checkpoint.retention.ms:604800000}") long checkpointRetentionMs,
+            @Value("${spring.threads.virtual.enabled:false}") boolean virtualThreads
+    ) {
+        this.clickEnricher = clickEnricher;
+        this.clickBatchWriter = clickBatchWriter;
+        this.writeAheadLog = writeAheadLog.getIfAvailable();
+        this.buffer = new ArrayBlockingQueue<>(capacity);
+        this.capacity = capacity;
+        this.batchSize = batchSize;
+        this.flushIntervalNanos = TimeUnit.MILLISECONDS.toNanos(flushIntervalMs);
+        this.overflowPolicy = overflowPolicy;
+        this.sampleRate = Math.max(1, sampleRate);
+        this.highWaterMark = capacity * 8 / 10;
+        this.blockTimeoutMs = blockTimeoutMs;
+        this.shutdownTimeoutMs = shutdownTimeoutMs;
+        this.virtualThreads = virtualThreads;
+        this.syncIntervalNanos = TimeUnit.MILLISECONDS.toNanos(syncIntervalMs);
+        this.retryBackoffMs = retryBackoffMs;
+        this.maxRetryBackoffMs = maxRetryBackoffMs;
+        this.checkpointRefreshNanos = TimeUnit.MILLISECONDS.toNanos(checkpointRefreshMs);
+        this.checkpointRetentionMs = checkpointRetentionMs;
+
+        Gauge.builder("clicks.ingest.queue.depth", buffer, BlockingQueue::size)
+                .description("Clicks waiting in the ingestion buffer")
+                .register(meterRegistry);
+        Gauge.builder("clicks.ingest.queue.capacity", () -> this.capacity)
+                .register(meterRegistry);
+        this.acceptedCounter = meterRegistry.counter("clicks.ingest.accepted");
+        this.droppedCounter = meterRegistry.counter("clicks.ingest.dropped", "reason", "overflow");
+        this.sampledOutCounter = meterRegistry.counter("clicks.ingest.dropped", "reason", "sampled");
+        this.writtenCounter = meterRegistry.counter("clicks.ingest.written");
+        this.failedCounter = meterRegistry.counter("clicks.ingest.failed");
+        this.retriedCounter = meterRegistry.counter("clicks.ingest.retried");
+        this.flushTimer = meterRegistry.timer("clicks.ingest.flush");
+        this.lagTimer = Timer.builder("clicks.ingest.lag")
+                .description("Time from the redirect to the click being committed to the database")
+                .register(meterRegistry);
+    }
+
+    /**
+     * Hands a click to the pipeline. Never touches the database and, apart from the BLOCK policy,
+     * never waits.
+     *
+     * @param click The raw click captured by the redirect.
+     * @return true if the click was buffered, false if it was dropped by the overflow policy or the log is full.
+     */
+    public boolean submit(ClickEvent click) {
+        if (writeAheadLog != null) {
+            // The log counts the clicks it rejects
+            boolean accepted = writeAheadLog.append(click);
+            if (accepted) {
+                acceptedCounter.increment();
+            }
+            return accepted;
+        }
+        if (overflowPolicy == OverflowPolicy.SAMPLE && buffer.size() >= highWaterMark
+                && ThreadLocalRandom.current().nextInt(sampleRate) != 0) {
+            sampledOutCounter.increment();
+            return false;
+        }
+        boolean accepted = overflowPolicy == OverflowPolicy.BLOCK ? offerBlocking(click) : buffer.offer(click);
+        if (accepted) {
+            acceptedCounter.increment();
+        } else {
+            droppedCounter.increment();
+        }
+        return accepted;
+    }
+
+    private boolean offerBlocking(ClickEvent click) {
+        try {
+            return buffer.offer(click, blockTimeoutMs, TimeUnit.MILLISECONDS);
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            return false;
+        }
+    }
+
+    private void drainLoop() {
+        List<ClickEvent> batch = new ArrayList<>(batchSize);
+        // Keep going after stop() until the buffer is empty, so a graceful shutdown loses nothing.
+        while (running || !buffer.isEmpty()) {
+            try {
+                collectBatch(batch);
+            } catch (InterruptedException e) {
+                // Flush what we have and re-check the running flag; the flag, not the interrupt, ends the loop.
+            }
+            if (!batch.isEmpty()) {
+                flush(batch);
+                batch.clear();
+            }
+        }
+    }
+
+    /**
+     * Waits for the first click, then keeps collecting until the batch is full or the flush interval
+     * measured from that first click has passed.
+     */
+    private void collectBatch(List<ClickEvent> batch) throws InterruptedException {
+        ClickEvent first = buffer.poll(flushIntervalNanos, TimeUnit.NANOSECONDS);
+        if (first == null) {
+            return;
+        }
+        batch.add(first);
+        long deadline = System.nanoTime() + flushIntervalNanos;
+        while (batch.size() < batchSize) {
+            buffer.drainTo(batch, batchSize - batch.size());
+            long remaining = deadline - System.nanoTime();
+            if (batch.size() >= batchSize || remaining <= 0) {
+                return;
+            }
+            ClickEvent next = buffer.poll(remaining, TimeUnit.NANOSECONDS);
+            if (next == null) {
+                return;
+            }
+            batch.add(next);
+        }
+    }
+
+    /**
+     * The worker loop when the write-ahead log is enabled: reads the log from the last committed position, and writes
+     * each batch together with the position after it. Each committed batch frees the log segments before it.
+     */
+    private void replayLoop() {
+        ClickWriteAheadLog.Reader reader = openReader();
+        if (reader == null) {
+            return;
+        }
+        List<ClickEvent> batch = new ArrayList<>(batchSize);
+        long nextSync = System.nanoTime() + syncIntervalNanos;
+        // Due straight away, so a position left untouched while the application was down is claimed again
+        long nextCheckpointRefresh = System.nanoTime();
+        while (running || reader.hasUnread()) {
+            collectBatch(reader, batch);
+            if (!batch.isEmpty()) {
+                if (!flushLogged(batch, reader.position())) {
+                    log.warn("Click ingestion stopped before the database came back; the click log is replayed on the next start.");
+                    return;
+                }
+                writeAheadLog.truncate(reader.position());
+                batch.clear();
+                nextCheckpointRefresh = System.nanoTime() + checkpointRefreshNanos;
+            } else if (System.nanoTime() - nextCheckpointRefresh >= 0) {
+                refreshCheckpoint(reader.position());
+                nextCheckpointRefresh = System.nanoTime() + checkpointRefreshNanos;
+            }
+            if (System.nanoTime() - nextSync >= 0) {
+                writeAheadLog.sync();
+                nextSync = System.nanoTime() + syncIntervalNanos;
+            }
+        }
+        writeAheadLog.sync();
+    }
+
+    /**
+     * Starts reading the log where the last committed batch ended, waiting for the database if it is unavailable.
+     * Redirects keep appending to the log meanwhile.
+     */
+    private ClickWriteAheadLog.Reader openReader() {
+        long backoffMs = retryBackoffMs;
+        while (running) {
+            try {
+                ClickWriteAheadLog.Reader reader = writeAheadLog.reader(clickBatchWriter.readCheckpoint(writeAheadLog.id()));
+                if (reader.hasUnread()) {
+                    log.info("Replaying clicks from the click log, from position {}.", reader.position());
+                }
+                return reader;
+            } catch (Exception e) {
+                log.warn("Could not read the click log checkpoint, retrying in {} ms. Error: {}", backoffMs, e.getMessage());
+                backoffMs = pause(backoffMs);
+            }
+        }
+        return null;
+    }
+
+    /**
+     * Like {@link #collectBatch(List)}, reading from the log.
+     */
+    private void collectBatch(ClickWriteAheadLog.Reader reader, List<ClickEvent> batch) {
+        reader.read(batch, batchSize);
+        if (batch.isEmpty()) {
+            reader.await(flushIntervalNanos);
+            reader.read(batch, batchSize);
+            if (batch.isEmpty()) {
+                return;
+            }
+        }
+        long deadline = System.nanoTime() + flushIntervalNanos;
+        while (batch.size() < batchSize) {
+            long remaining = deadline - System.nanoTime();
+            if (remaining <= 0) {
+                return;
+            }
+            reader.await(remaining);
+            reader.read(batch, batchSize);
+        }
+    }
+
+    /**
+     * Writes a batch read from the log, retrying for as long as the database is unavailable. A batch the database
+     * rejects for good is moved to the log's dead-letter file first, and only then is the position moved past it.
+     *
+     * @param position The log position just after the batch.
+     * @return false if the application stopped before the batch could be written or stored; it stays in the log.
+     */
+    private boolean flushLogged(List<ClickEvent> batch, long position) {
+        List<ClickEvent> enriched = batch.stream().map(clickEnricher::enrich).toList();
+        long backoffMs = retryBackoffMs;
+        boolean retry = false;
+        while (true) {
+            try {
+                // A failed commit may still have committed; the checkpoint tells, so nothing is written twice
+                if (retry && clickBatchWriter.readCheckpoint(writeAheadLog.id()) >= position) {
+                    recordWritten(enriched);
+                    return true;
+                }
+                List<ClickEvent> clicks = enriched;
+                flushTimer.record(() -> writeLogged(clicks, position));
+                return true;
+            } catch (TransientDataAccessException | RecoverableDataAccessException | DataAccessResourceFailureException
+                     | CannotCreateTransactionException | TransactionSystemException e) {
+                if (!running) {
+                    return false;
+                }
+                retriedCounter.increment();
+                log.warn("Database unavailable for a batch of {} clicks, retrying in {} ms. Error: {}",
+                        enriched.size(), backoffMs, e.getMessage());
+                backoffMs = pause(backoffMs);
+                retry = true;
+            } catch (Exception e) {
+                if (enriched.isEmpty()) {
+                    // Only the checkpoint was left to write; the clicks are safe in the dead-letter file either way
+                    log.error("Failed to move the click log checkpoint past a dead-lettered batch. Error: {}", e.getMessage());
+                    return true;
+                }
+                // Not going to succeed on a retry: set the batch aside, then write just the checkpoint past it
+                log.error("Failed to write batch of {} clicks, moving it to the dead-letter file. Error: {}",
+                        enriched.size(), e.getMessage());
+                if (!deadLetter(batch)) {
+                    return false;
+                }
+                failedCounter.increment(enriched.size());
+                enriched = List.of();
+            }
+        }
+    }
+
+    /**
+     * Stores a batch in the log's dead-letter file, retrying for as long as the disk refuses it.
+     *
+     * @return false if the application stopped before the batch could be stored.
+     */
+    private boolean deadLetter(List<ClickEvent> batch) {
+        long backoffMs = retryBackoffMs;
+        while (true) {
+            try {
+                writeAheadLog.deadLetter(batch);
+                return true;
+            } catch (IOException e) {
+                if (!running) {
+                    return false;
+                }
+                log.error("Could not store a batch of {} clicks in the dead-letter file, retrying in {} ms. Error: {}",
+                        batch.size(), backoffMs, e.getMessage());
+                backoffMs = pause(backoffMs);
+            }
+        }
+    }
+
+    private void writeLogged(List<ClickEvent> enriched, long position) {
+        boolean replayed = position == writeAheadLog.writePosition();
+        try {
+            clickBatchWriter.write(enriched, writeAheadLog.id(), position, replayed);
+            recordWritten(enriched);
+        } catch (DataIntegrityViolationException e) {
+            // Most likely a link was deleted after it was clicked; retry without the orphaned clicks.
+            List<ClickEvent> retained = clickBatchWriter.retainExistingLinks(enriched);
+            clickBatchWriter.write(retained, writeAheadLog.id(), position, replayed);
+            recordWritten(retained);
+            failedCounter.increment(enriched.size() - retained.size());
+        }
+    }
+
+    /**
+     * Rewrites the log's position while no clicks are coming in, so it is not taken for the position of a lost log.
+     */
+    private void refreshCheckpoint(long position) {
+        try {
+            clickBatchWriter.write(List.of(), writeAheadLog.id(), position, position == writeAheadLog.writePosition());
+        } catch (Exception e) {
+            log.warn("Could not refresh the click log checkpoint. Error: {}", e.getMessage());
+        }
+    }
+
+    /**
+     * Deletes the positions of fully replayed logs that no instance has written for the retention period.
+     */
+    @Scheduled(fixedDelayString = "${analytics.wal.checkpoint.prune-interval.ms:3600000}")
+    public void pruneCheckpoints() {
+        int deleted = clickBatchWriter.deleteReplayedCheckpoints(Instant.now().minusMillis(checkpointRetentionMs));
+        if (deleted > 0) {
+            log.info("Deleted {} click log checkpoints of logs that are no longer in use.", deleted);
+        }
+    }
+
+    /**
+     * Sleeps for the backoff, unless interrupted.
+     * @return The next, doubled backoff.
+     */
+    private long pause(long backoffMs) {
+        try {
+            Thread.sleep(backoffMs);
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        }
+        return Math.min(backoffMs * 2, maxRetryBackoffMs);
+    }
+
+    private void flush(List<ClickEvent> batch) {
+        List<ClickEvent> enriched = batch.stream().map(clickEnricher::enrich).toList();
+        flushTimer.record(() -> {
+            try {
+                clickBatchWriter.write(enriched);
+                recordWritten(enriched);
+            } catch (DataIntegrityViolationException e) {
+                // Most likely a link was deleted after it was clicked; retry without the orphaned clicks.
+                retryWithoutOrphans(enriched);
+            } catch (Exception e) {
+                failedCounter.increment(enriched.size());
+                log.error("Failed to write batch of {} clicks. Error: {}", enriched.size(), e.getMessage());
+            }
+        });
+    }
+
+    private void retryWithoutOrphans(List<ClickEvent> batch) {
+        try {
+            List<ClickEvent> retained = clickBatchWriter.retainExistingLinks(batch);
+            if (!retained.isEmpty()) {
+                clickBatchWriter.write(retained);
+            }
+            recordWritten(retained);
+            failedCounter.increment(batch.size() - retained.size());
+        } catch (Exception e) {
+            failedCounter.increment(batch.size());
+            log.error("Failed to write batch of {} clicks after dropping orphans. Error: {}", batch.size(), e.getMessage());
+        }
+    }
+
+    private void recordWritten(List<ClickEvent> written) {
+        writtenCounter.increment(written.size());
+        Instant now = Instant.now();
+        for (ClickEvent click : written) {
+            lagTimer.record(Duration.between(click.clickedAt(), now));
+        }
+    }
+
+    @Override
+    public void start() {
+        running = true;
+        Thread.Builder builder = virtualThreads ? Thread.ofVirtual() : Thread.ofPlatform().daemon(true);
+        if (writeAheadLog != null) {
+            worker = builder.name("click-ingest").start(this::replayLoop);
+            log.info("Click ingestion pipeline started with the click log (batchSize={}).", batchSize);
+        } else {
+            worker = builder.name("click-ingest").start(this::drainLoop);
+            log.info("Click ingestion pipeline started (capacity={}, batchSize={}, overflowPolicy={}).", capacity, batchSize, overflowPolicy);
+        }
+    }
+
+    @Override
+    public void stop() {
+        // No interrupt: the worker notices the flag within one flush interval and must not be cut off mid-write.
+        running = false;
+        try {
+            worker.join(shutdownTimeoutMs);
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        }
+        if (!buffer.isEmpty()) {
+            log.warn("Click ingestion pipeline stopped with {} clicks still buffered.", buffer.size());
+        }
+    }
+
+    @Override
+    public boolean isRunning() {
+        return running;
+    }
+
+    @Override
+    public int getPhase() {
+        return PHASE;
+    }
+}
@@ -0,0 +1,330 @@
+package com.microproject.linktoolkit.analytics;
+
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.context.SmartLifecycle;
+import org.springframework.dao.DataAccessException;
+import org.springframework.jdbc.core.ConnectionCallback;
+import org.springframework.jdbc.core.JdbcTemplate;
+import org.springframework.scheduling.annotation.Scheduled;
+import org.springframework.stereotype.Component;
+import org.springframework.transaction.support.TransactionTemplate;
+
+import java.sql.Timestamp;
+import java.time.Instant;
+import java.time.YearMonth;
+import java.time.ZoneOffset;
+import java.util.List;
+import java.util.Optional;
+import java.util.regex.Matcher;
+import java.util.regex.Pattern;
+
+/**
+ * Keeps the clicks table range-partitioned by month on clicked_at.
+ * <p>
+ * On the first start against an unpartitioned table, the table is turned into a partitioned one in place: the
+ * existing table becomes a single partition holding everything before a month or two from now (named
+ * clicks_before_yYYYYmMM), so no rows are copied. Its bound and indexes are prepared while clicks keep being written,
+ * so the exclusive lock at the end is only held for catalog changes. Monthly partitions (clicks_yYYYYmMM) are then created
+ * {@code analytics.clicks.partitions.months-ahead} months in advance, and a default partition catches anything
+ * outside them. Raw clicks older than {@code analytics.clicks.retention.months} are retired by dropping or detaching
+ * whole partitions, never with row-by-row DELETEs; the click rollups are not affected.
+ * </p>
+ * Hibernate still maps the table, but the primary key (id, clicked_at), the foreign key to links and the
+ * (link_id, clicked_at) index are owned by this class, since constraints on a partitioned table must include the
+ * partition key. Partitioning is PostgreSQL-only; on any other database the table is left as it is.
+ */
+@Component
+@Slf4j
+public class ClickPartitionManager implements SmartLifecycle {
+
+    enum RetentionMode { DROP, DETACH }
+
+    private static final String PARENT_TABLE = "clicks";
+    private static final String DEFAULT_PARTITION = "clicks_default";
+    // clicks_y2026m11 holds November 2026; clicks_before_y2026m11 holds everything before it
+    private static final Pattern PARTITION_NAME = Pattern.compile("clicks_(before_)?y(\\d{4})m(\\d{2})");
+    // Before the click pipeline (DEFAULT_PHASE - 4096), which may start writing clicks as soon as it has started
+    private static final int PHASE = SmartLifecycle.DEFAULT_PHASE - 8192;
+    // Built on the plain table before it becomes the legacy partition
+    private static final String BOUND_CONSTRAINT = "clicks_legacy_partition_bound";
+    private static final String LEGACY_KEY_INDEX = "clicks_legacy_id_clicked_at_idx";
+    private static final String LEGACY_LINK_INDEX = "clicks_legacy_link_id_clicked_at_idx";
+
+    private final JdbcTemplate jdbcTemplate;
+    private final TransactionTemplate transactionTemplate;
+    private final int monthsAhead;
+    private final int retentionMonths;
+    private final RetentionMode retentionMode;
+
+    private volatile boolean enabled;
+    private volatile boolean running;
+
+    public ClickPartitionManager(
+            JdbcTemplate jdbcTemplate,
+            TransactionTemplate transactionTemplate,
+            @Value("${analytics.clicks.partitions.months-ahead:3}") int monthsAhead,
+            @Value("${analytics.clicks.retention.months:0}") int retentionMonths,
+            @Value("${analytics.clicks.retention.mode:DROP}") RetentionMode retentionMode
+    ) {
+        this.jdbcTemplate = jdbcTemplate;
+        this.transactionTemplate = transactionTemplate;
+        this.monthsAhead = monthsAhead;
+        this.retentionMonths = retentionMonths;
+        this.retentionMode = retentionMode;
+    }
+
+    /**
+     * Runs once Hibernate has created or updated the schema, and before the ingestion pipeline starts writing clicks.
+     * A lifecycle start rather than part of the context refresh, so the context can be refreshed without a database
+     * (the AppCDS training run in the Dockerfile).
+     */
+    @Override
+    public void start() {
+        running = true;
+        if (!isPostgres()) {
+            log.info("Click partitioning needs PostgreSQL; the clicks table stays unpartitioned.");
+            return;
+        }
+        try {
+            partitionIfNeeded();
+            enabled = true;
+            maintain();
+        } catch (DataAccessException e) {
+            // The switch runs in one transaction, so a failure leaves the plain table in place and working
+            log.error("Failed to partition the clicks table; clicks stay unpartitioned until the next start.", e);
+        }
+    }
+
+    /**
+     * Creates the partitions for the coming months and retires the ones past the retention period.
+     * Runs daily, so a missed run still leaves months of headroom.
+     */
+    @Scheduled(cron = "${analytics.clicks.partitions.cron:0 15 0 * * *}")
+    public void maintain() {
+        if (!enabled) {
+            return;
+        }
+        createUpcomingPartitions();
+        retireOldPartitions();
+    }
+
+    /**
+     * @return The instant from which raw clicks are still guaranteed to be present, if a retention period is set.
+     */
+    public Optional<Instant> retainedSince() {
+        if (!enabled || retentionMonths <= 0) {
+            return Optional.empty();
+        }
+        return Optional.of(monthStart(retentionCutoff()));
+    }
+
+    private void partitionIfNeeded() {
+        if (isPartitioned()) {
+            return;
+        }
+        YearMonth legacyEnd = prepareLegacyPartition();
+        transactionTemplate.executeWithoutResult(status -> {
+            // Blocks writers for the duration, and serializes instances that start at the same time. Everything that
+            // scans the table was done by prepareLegacyPartition, so this only changes the catalog.
+            jdbcTemplate.execute("LOCK TABLE " + PARENT_TABLE + " IN ACCESS EXCLUSIVE MODE");
+            if (isPartitioned()) {
+                return;
+            }
+
+            Timestamp latest = jdbcTemplate.queryForObject("SELECT MAX(clicked_at) FROM " + PARENT_TABLE, Timestamp.class);
+            YearMonth end = legacyEnd != null ? legacyEnd : legacyEnd(latest);
+            String legacyTable = "clicks_before_" + suffix(end);
+            log.info("Partitioning the clicks table by month.");
+
+            jdbcTemplate.execute("ALTER TABLE " + PARENT_TABLE + " RENAME TO " + legacyTable);
+            // The old single-column key and index are replaced by partition-wide ones below; the foreign key matches
+            // the new one and is kept, so attaching does not validate it again
+            List<String> constraints = jdbcTemplate.queryForList(
+                    "SELECT conname FROM pg_constraint WHERE conrelid = to_regclass(?) AND contype = 'p'",
+                    String.class, legacyTable);
+            for (String constraint : constraints) {
+                jdbcTemplate.execute("ALTER TABLE " + legacyTable + " DROP CONSTRAINT \"" + constraint + "\"");
+            }
+            // Only an index that backs a constraint can stand in for the partitioned table's key
+            if (jdbcTemplate.queryForObject("SELECT to_regclass(?) IS NOT NULL", Boolean.class, LEGACY_KEY_INDEX)) {
+                jdbcTemplate.execute("ALTER TABLE " + legacyTable + " ADD CONSTRAINT " + legacyTable + "_pkey " +
+                        "PRIMARY KEY USING INDEX " + LEGACY_KEY_INDEX);
+            }
+            jdbcTemplate.execute("DROP INDEX IF EXISTS idx_clicks_link_id");
+
+            jdbcTemplate.execute("CREATE TABLE " + PARENT_TABLE + " (LIKE " + legacyTable + " INCLUDING DEFAULTS) " +
+                    "PARTITION BY RANGE (clicked_at)");
+            jdbcTemplate.execute("ALTER TABLE " + PARENT_TABLE + " ADD CONSTRAINT clicks_pkey PRIMARY KEY (id, clicked_at)");
+            jdbcTemplate.execute("ALTER TABLE " + PARENT_TABLE + " ADD CONSTRAINT fk_clicks_link_id " +
+                    "FOREIGN KEY (link_id) REFERENCES links (id)");
+            // Serves per-link queries bounded by time, within each partition
+            jdbcTemplate.execute("CREATE INDEX idx_clicks_link_id_clicked_at ON " + PARENT_TABLE + " (link_id, clicked_at)");
+            jdbcTemplate.execute("CREATE TABLE " + DEFAULT_PARTITION + " PARTITION OF " + PARENT_TABLE + " DEFAULT");
+
+            if (latest == null) {
+                jdbcTemplate.execute("DROP TABLE " + legacyTable);
+            } else {
+                // With the validated bound and the prebuilt indexes this neither scans the rows nor builds an index;
+                // without them, e.g. when the table was empty until just now, it does both
+                log.info("Existing clicks become partition {}.", legacyTable);
+                jdbcTemplate.execute("ALTER TABLE " + PARENT_TABLE + " ATTACH PARTITION " + legacyTable +
+                        " FOR VALUES FROM (MINVALUE) TO ('" + monthStart(end) + "')");
+                jdbcTemplate.execute("ALTER TABLE " + legacyTable + " DROP CONSTRAINT IF EXISTS " + BOUND_CONSTRAINT);
+            }
+        });
+        log.info("The clicks table is now partitioned by month.");
+    }
+
+    /**
+     * Does the slow part of turning the existing clicks into a partition while clicks are still being written:
+     * proves the partition bound with a CHECK constraint that is added NOT VALID and validated afterwards, and
+     * builds the indexes the partitioned table needs CONCURRENTLY. None of this blocks writers for long.
+     *
+     * @return The end of the legacy partition, or null if the table is empty and there is nothing to prepare.
+     */
+    private YearMonth prepareLegacyPartition() {
+        Timestamp latest = jdbcTemplate.queryForObject("SELECT MAX(clicked_at) FROM " + PARENT_TABLE, Timestamp.class);
+        if (latest == null) {
+            return null;
+        }
+        // A month of margin, so clicks written while the indexes are built still fit even if a month ends meanwhile
+        YearMonth legacyEnd = legacyEnd(latest).plusMonths(1);
+        log.info("Preparing the existing clicks to become partition clicks_before_{}.", suffix(legacyEnd));
+
+        jdbcTemplate.execute("ALTER TABLE " + PARENT_TABLE + " DROP CONSTRAINT IF EXISTS " + BOUND_CONSTRAINT);
+        jdbcTemplate.execute("ALTER TABLE " + PARENT_TABLE + " ADD CONSTRAINT " + BOUND_CONSTRAINT +
+                " CHECK (clicked_at IS NOT NULL AND clicked_at < '" + monthStart(legacyEnd) + "') NOT VALID");
+        jdbcTemplate.execute("ALTER TABLE " + PARENT_TABLE + " VALIDATE CONSTRAINT " + BOUND_CONSTRAINT);
+
+        // Matched with the partitioned table's key and index when the table is attached, instead of being built then
+        createIndexConcurrently("CREATE UNIQUE INDEX CONCURRENTLY IF NOT EXISTS " + LEGACY_KEY_INDEX +
+                " ON " + PARENT_TABLE + " (id, clicked_at)", LEGACY_KEY_INDEX);
+        createIndexConcurrently("CREATE INDEX CONCURRENTLY IF NOT EXISTS " + LEGACY_LINK_INDEX +
+                " ON " + PARENT_TABLE + " (link_id, clicked_at)", LEGACY_LINK_INDEX);
+        return legacyEnd;
+    }
+
+    private void createIndexConcurrently(String sql, String index) {
+        // A concurrent build that failed, e.g. because the application was stopped, leaves an invalid index behind
+        Boolean valid = jdbcTemplate.query("SELECT indisvalid FROM pg_index WHERE indexrelid = to_regclass(?)",
+                rs -> rs.next() ? rs.getBoolean(1) : null, index);
+        if (Boolean.FALSE.equals(valid)) {
+            jdbcTemplate.execute("DROP INDEX CONCURRENTLY " + index);
+        }
+        jdbcTemplate.execute(sql);
+    }
+
+    /**
+     * @return The first month that is not part of the legacy partition, given the latest click in it.
+     */
+    private static YearMonth legacyEnd(Timestamp latest) {
+        YearMonth currentMonth = YearMonth.now(ZoneOffset.UTC);
+        return latest == null
+                ? currentMonth
+                : max(currentMonth, YearMonth.from(latest.toInstant().atOffset(ZoneOffset.UTC))).plusMonths(1);
+    }
+
+    private void createUpcomingPartitions() {
+        YearMonth first = YearMonth.now(ZoneOffset.UTC);
+        // Months before the end of the legacy partition are already covered by it
+        for (String partition : partitions()) {
+            Matcher matcher = PARTITION_NAME.matcher(partition);
+            if (matcher.matches() && matcher.group(1) != null) {
+                first = max(first, parseMonth(matcher));
+            }
+        }
+
+        YearMonth last = YearMonth.now(ZoneOffset.UTC).plusMonths(monthsAhead);
+        for (YearMonth month = first; !month.isAfter(last); month = month.plusMonths(1)) {
+            String partition = "clicks_" + suffix(month);
+            try {
+                jdbcTemplate.execute("CREATE TABLE IF NOT EXISTS " + partition + " PARTITION OF " + PARENT_TABLE +
+                        " FOR VALUES FROM ('" + monthStart(month) + "') TO ('" + monthStart(month.plusMonths(1)) + "')");
+            } catch (DataAccessException e) {
+                // Typically rows for this month already landed in the default partition; the month stays there
+                log.error("Failed to create click partition {}.", partition, e);
+            }
+        }
+    }
+
+    private void retireOldPartitions() {
+        if (retentionMonths <= 0) {
+            return;
+        }
+        YearMonth cutoff = retentionCutoff();
+        for (String partition : partitions()) {
+            Matcher matcher = PARTITION_NAME.matcher(partition);
+            if (!matcher.matches()) {
+                continue;
+            }
+            // A partition can go once every click it may hold is older than the cutoff
+            YearMonth end = matcher.group(1) != null ? parseMonth(matcher) : parseMonth(matcher).plusMonths(1);
+            if (end.isAfter(cutoff)) {
+                continue;
+            }
+            if (retentionMode == RetentionMode.DETACH) {
+                jdbcTemplate.execute("ALTER TABLE " + PARENT_TABLE + " DETACH PARTITION " + partition);
+                log.info("Detached click partition {}; it is kept as a standalone table.", partition);
+            } else {
+                jdbcTemplate.execute("DROP TABLE " + partition);
+                log.info("Dropped click partition {}.", partition);
+            }
+        }
+    }
+
+    private YearMonth retentionCutoff() {
+        // The current, partial month always counts as one of the retained months
+        return YearMonth.now(ZoneOffset.UTC).minusMonths(retentionMonths - 1L);
+    }
+
+    private List<String> partitions() {
+        return jdbcTemplate.queryForList(
+                "SELECT c.relname FROM pg_inherits i JOIN pg_class c ON c.oid = i.inhrelid " +
+                "WHERE i.inhparent = to_regclass(?) ORDER BY c.relname",
+                String.class, PARENT_TABLE);
+    }
+
+    private boolean isPartitioned() {
+        String kind = jdbcTemplate.queryForObject(
+                "SELECT relkind::text FROM pg_class WHERE oid = to_regclass(?)", String.class, PARENT_TABLE);
+        return "p".equals(kind);
+    }
+
+    private boolean isPostgres() {
+        String product = jdbcTemplate.execute(
+                (ConnectionCallback<String>) connection -> connection.getMetaData().getDatabaseProductName());
+        return "PostgreSQL".equals(product);
+    }
+
+    private static Instant monthStart(YearMonth month) {
+        return month.atDay(1).atStartOfDay(ZoneOffset.UTC).toInstant();
+    }
+
+    private static String suffix(YearMonth month) {
+        return "y%04dm%02d".formatted(month.getYear(), month.getMonthValue());
+    }
+
+    private static YearMonth parseMonth(Matcher matcher) {
+        return YearMonth.of(Integer.parseInt(matcher.group(2)), Integer.parseInt(matcher.group(3)));
+    }
+
+    private static YearMonth max(YearMonth a, YearMonth b) {
+        return a.isAfter(b) ? a : b;
+    }
+
+    @Override
+    public void stop() {
+        running = false;
+    }
+
+    @Override
+    public boolean isRunning() {
+        return running;
+    }
+
+    @Override
+    public int getPhase() {
+        return PHASE;
+    }
+}
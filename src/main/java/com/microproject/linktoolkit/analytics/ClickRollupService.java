@@ -0,0 +1,298 @@
+package com.microproject.linktoolkit.analytics;
+
+import lombok.RequiredArgsConstructor;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.boot.context.event.ApplicationReadyEvent;
+import org.springframework.context.event.EventListener;
+import org.springframework.jdbc.core.JdbcTemplate;
+import org.springframework.jdbc.core.RowCallbackHandler;
+import org.springframework.scheduling.annotation.Scheduled;
+import org.springframework.stereotype.Service;
+import org.springframework.transaction.annotation.Propagation;
+import org.springframework.transaction.annotation.Transactional;
+import org.springframework.transaction.support.TransactionTemplate;
+
+import java.sql.Date;
+import java.sql.PreparedStatement;
+import java.sql.Timestamp;
+import java.time.Instant;
+import java.time.LocalDate;
+import java.time.ZoneOffset;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.Comparator;
+import java.util.List;
+import java.util.Map;
+import java.util.TreeMap;
+import java.util.UUID;
+
+/**
+ * Maintains the per-(link, day) and per-(link, day, dimension) click rollups.
+ * <p>
+ * Each ingested batch is aggregated in memory and merged into the rollup tables with one batched upsert per table,
+ * inside the same transaction that inserts the raw clicks, so the rollups never drift from the clicks table.
+ * </p>
+ */
+@Service
+@RequiredArgsConstructor
+@Slf4j
+public class ClickRollupService {
+
+    private static final String UPSERT_DAILY_SQL =
+            "INSERT INTO link_daily_stats (link_id, click_date, clicks) VALUES (?, ?, ?) " +
+            "ON CONFLICT (link_id, click_date) DO UPDATE SET clicks = link_daily_stats.clicks + EXCLUDED.clicks";
+
+    private static final String UPSERT_DIMENSION_SQL =
+            "INSERT INTO link_daily_dimension_stats (link_id, click_date, dimension, dimension_value, clicks) VALUES (?, ?, ?, ?, ?) " +
+            "ON CONFLICT (link_id, click_date, dimension, dimension_value) " +
+            "DO UPDATE SET clicks = link_daily_dimension_stats.clicks + EXCLUDED.clicks";
+
+    // NOTE: PostgreSQL-specific (AT TIME ZONE / ::date).
+    private static final String REBUILD_DAILY_SQL =
+            "INSERT INTO link_daily_stats (link_id, click_date, clicks) " +
+            "SELECT link_id, (clicked_at AT TIME ZONE 'UTC')::date, COUNT(*) FROM clicks WHERE clicked_at >= ? GROUP BY 1, 2";
+
+    private static final String REBUILD_DIMENSION_SQL =
+            "INSERT INTO link_daily_dimension_stats (link_id, click_date, dimension, dimension_value, clicks) " +
+            "SELECT link_id, (clicked_at AT TIME ZONE 'UTC')::date, ?, LEFT(%1$s, " + ClickDimension.MAX_VALUE_LENGTH + "), COUNT(*) " +
+            "FROM clicks WHERE clicked_at >= ? AND %1$s IS NOT NULL GROUP BY 1, 2, 4";
+
+    private static final String BUMP_WATERMARK_SQL =
+            "INSERT INTO link_click_watermarks (link_id, version) VALUES (?, 1) " +
+            "ON CONFLICT (link_id) DO UPDATE SET version = link_click_watermarks.version + 1";
+
+    private static final String SELECT_SKETCHES_SQL_PREFIX =
+            "SELECT link_id, click_date, visitor_sketch FROM link_daily_stats WHERE (link_id, click_date) IN (";
+    private static final String UPDATE_SKETCH_SQL =
+            "UPDATE link_daily_stats SET visitor_sketch = ? WHERE link_id = ? AND click_date = ?";
+
+    // Ordered like the (link_id, clicked_at) index, so the clicks of each link-day arrive together
+    private static final String REBUILD_VISITORS_SQL =
+            "SELECT link_id, clicked_at, ip_address, user_agent FROM clicks WHERE clicked_at >= ? ORDER BY link_id, clicked_at";
+    private static final int REBUILD_FETCH_SIZE = 10_000;
+    private static final int REBUILD_BATCH_SIZE = 500;
+
+    private final JdbcTemplate jdbcTemplate;
+    private final TransactionTemplate transactionTemplate;
+    private final ClickPartitionManager clickPartitionManager;
+    private final TopValuesTracker topValuesTracker;
+
+    /**
+     * Merges a batch of clicks into the rollups, including the daily visitor sketches and the top values,
+     * and bumps the click watermark of every link involved.
+     * Joins the caller's transaction.
+     * Keys are upserted in sorted order so that concurrent writers lock rows in the same order and cannot deadlock.
+     *
+     * @param clicks The enriched clicks that are being inserted.
+     */
+    @Transactional(propagation = Propagation.MANDATORY)
+    public void apply(List<ClickEvent> clicks) {
+        Map<DailyKey, Long> daily = new TreeMap<>();
+        Map<DailyKey, HyperLogLog> visitors = new TreeMap<>();
+        Map<DimensionKey, Long> dimensions = new TreeMap<>();
+
+        for (ClickEvent click : clicks) {
+            LocalDate day = LocalDate.ofInstant(click.clickedAt(), ZoneOffset.UTC);
+            DailyKey dailyKey = new DailyKey(click.linkId(), day);
+            daily.merge(dailyKey, 1L, Long::sum);
+            visitors.computeIfAbsent(dailyKey, key -> new HyperLogLog())
+                    .add(HyperLogLog.visitorHash(click.ipAddress(), click.userAgent()));
+            for (ClickDimension dimension : ClickDimension.values()) {
+                String value = dimension.valueOf(click);
+                if (value != null) {
+                    dimensions.merge(new DimensionKey(click.linkId(), day, dimension, value), 1L, Long::sum);
+                }
+            }
+        }
+
+        jdbcTemplate.batchUpdate(UPSERT_DAILY_SQL, new ArrayList<>(daily.entrySet()), daily.size(), (ps, entry) -> {
+            ps.setObject(1, entry.getKey().linkId());
+            ps.setDate(2, Date.valueOf(entry.getKey().day()));
+            ps.setLong(3, entry.getValue());
+        });
+        mergeVisitorSketches(visitors);
+        jdbcTemplate.batchUpdate(UPSERT_DIMENSION_SQL, new ArrayList<>(dimensions.entrySet()), dimensions.size(), (ps, entry) -> {
+            ps.setObject(1, entry.getKey().linkId());
+            ps.setDate(2, Date.valueOf(entry.getKey().day()));
+            ps.setString(3, entry.getKey().dimension().name());
+            ps.setString(4, entry.getKey().value());
+            ps.setLong(5, entry.getValue());
+        });
+        topValuesTracker.apply(clicks);
+
+        List<UUID> linkIds = daily.keySet().stream().map(DailyKey::linkId).distinct().toList();
+        jdbcTemplate.batchUpdate(BUMP_WATERMARK_SQL, linkIds, linkIds.size(), (ps, linkId) -> ps.setObject(1, linkId));
+    }
+
+    /**
+     * Merges the batch's visitor sketches into the stored ones. The daily upsert before this has locked every row
+     * involved, so this read-modify-write cannot interleave with another writer.
+     */
+    private void mergeVisitorSketches(Map<DailyKey, HyperLogLog> visitors) {
+        if (visitors.isEmpty()) {
+            return;
+        }
+        List<DailyKey> keys = new ArrayList<>(visitors.keySet());
+        Object[] args = new Object[keys.size() * 2];
+        for (int i = 0; i < keys.size(); i++) {
+            args[2 * i] = keys.get(i).linkId();
+            args[2 * i + 1] = Date.valueOf(keys.get(i).day());
+        }
+        String sql = SELECT_SKETCHES_SQL_PREFIX + String.join(", ", Collections.nCopies(keys.size(), "(?, ?)")) + ")";
+        jdbcTemplate.query(sql, (RowCallbackHandler) rs -> {
+            byte[] stored = rs.getBytes(3);
+            HyperLogLog sketch = visitors.get(new DailyKey(rs.getObject(1, UUID.class), rs.getDate(2).toLocalDate()));
+            if (stored != null && sketch != null) {
+                try {
+                    sketch.merge(HyperLogLog.fromBytes(stored));
+                } catch (IllegalArgumentException e) {
+                    // Losing the day's earlier visitors beats losing the whole batch of clicks
+                    log.warn("Replacing unreadable visitor sketch. Error: {}", e.getMessage());
+                }
+            }
+        }, args);
+
+        jdbcTemplate.batchUpdate(UPDATE_SKETCH_SQL, keys, keys.size(), (ps, key) -> {
+            ps.setBytes(1, visitors.get(key).toBytes());
+            ps.setObject(2, key.linkId());
+            ps.setDate(3, Date.valueOf(key.day()));
+        });
+    }
+
+    /**
+     * Regenerates all rollups from the raw clicks table.
+     * When raw clicks are retired after a retention period, only the days still covered by raw clicks are rebuilt
+     * and older rollups are kept.
+     * The rollup tables are locked for the duration, so ingestion batches that commit during the rebuild
+     * wait and are then applied on top of the rebuilt rows instead of being counted twice or lost.
+     * Disabled unless analytics.rollup.rebuild.cron is set.
+     */
+    @Scheduled(cron = "${analytics.rollup.rebuild.cron:-}")
+    public void rebuild() {
+        transactionTemplate.executeWithoutResult(status -> rebuildInTransaction());
+    }
+
+    private void rebuildInTransaction() {
+        log.info("Rebuilding click rollups from raw clicks...");
+        jdbcTemplate.execute("LOCK TABLE link_daily_stats, link_daily_dimension_stats, link_top_values IN EXCLUSIVE MODE");
+        // Retention periods start at midnight UTC on the first of a month, so whole rollup days are replaced
+        Instant since = clickPartitionManager.retainedSince().orElse(Instant.EPOCH);
+        Date sinceDay = Date.valueOf(LocalDate.ofInstant(since, ZoneOffset.UTC));
+        Timestamp sinceTime = Timestamp.from(since);
+        jdbcTemplate.update("DELETE FROM link_daily_dimension_stats WHERE click_date >= ?", sinceDay);
+        jdbcTemplate.update("DELETE FROM link_daily_stats WHERE click_date >= ?", sinceDay);
+
+        int days = jdbcTemplate.update(REBUILD_DAILY_SQL, sinceTime);
+        rebuildVisitorSketches(sinceTime);
+        int values = 0;
+        values += jdbcTemplate.update(REBUILD_DIMENSION_SQL.formatted("referer"), ClickDimension.REFERER.name(), sinceTime);
+        values += jdbcTemplate.update(REBUILD_DIMENSION_SQL.formatted("device_type"), ClickDimension.DEVICE.name(), sinceTime);
+        values += jdbcTemplate.update(REBUILD_DIMENSION_SQL.formatted("country_code"), ClickDimension.COUNTRY.name(), sinceTime);
+        // Over all days, including those older than the raw clicks
+        topValuesTracker.rebuild();
+        // Rebuilt figures may differ from those computed incrementally, so invalidate every cached response
+        jdbcTemplate.update("UPDATE link_click_watermarks SET version = version + 1");
+        log.info("Rebuilt click rollups: {} link-days, {} dimension values.", days, values);
+    }
+
+    /**
+     * Recomputes the visitor sketches of the rebuilt days, streaming the raw clicks instead of loading them.
+     */
+    private void rebuildVisitorSketches(Timestamp since) {
+        SketchRebuild sketches = new SketchRebuild();
+        jdbcTemplate.query(connection -> {
+            PreparedStatement ps = connection.prepareStatement(REBUILD_VISITORS_SQL);
+            ps.setFetchSize(REBUILD_FETCH_SIZE);
+            ps.setTimestamp(1, since);
+            return ps;
+        }, (RowCallbackHandler) rs -> sketches.add(
+                new DailyKey(rs.getObject(1, UUID.class), LocalDate.ofInstant(rs.getTimestamp(2).toInstant(), ZoneOffset.UTC)),
+                HyperLogLog.visitorHash(rs.getString(3), rs.getString(4))));
+        sketches.finish();
+    }
+
+    /**
+     * Builds one link-day's sketch at a time from clicks arriving in (link, time) order, writing them in batches.
+     */
+    private final class SketchRebuild {
+        private final List<Object[]> pending = new ArrayList<>(REBUILD_BATCH_SIZE);
+        private DailyKey currentKey;
+        private HyperLogLog current;
+
+        void add(DailyKey key, long visitorHash) {
+            if (!key.equals(currentKey)) {
+                complete();
+                currentKey = key;
+                current = new HyperLogLog();
+            }
+            current.add(visitorHash);
+        }
+
+        void finish() {
+            complete();
+            flush();
+        }
+
+        private void complete() {
+            if (currentKey == null) {
+                return;
+            }
+            pending.add(new Object[]{current.toBytes(), currentKey.linkId(), Date.valueOf(currentKey.day())});
+            if (pending.size() == REBUILD_BATCH_SIZE) {
+                flush();
+            }
+        }
+
+        private void flush() {
+            if (!pending.isEmpty()) {
+                jdbcTemplate.batchUpdate(UPDATE_SKETCH_SQL, pending);
+                pending.clear();
+            }
+        }
+    }
+
+    /**
+     * Backfills the rollups on the first start after they were introduced, when clicks exist but no rollups do,
+     * and likewise the top values from the rollups.
+     */
+    @EventListener(ApplicationReadyEvent.class)
+    public void backfillIfEmpty() {
+        try {
+            if (!hasRows("link_daily_stats") && hasRows("clicks")) {
+                rebuild();
+            } else if (!hasRows("link_top_values") && hasRows("link_daily_dimension_stats")) {
+                log.info("Building top values from the click rollups...");
+                topValuesTracker.rebuild();
+            }
+        } catch (Exception e) {
+            log.error("Failed to backfill click rollups.", e);
+        }
+    }
+
+    private boolean hasRows(String table) {
+        return Boolean.TRUE.equals(jdbcTemplate.queryForObject("SELECT EXISTS (SELECT 1 FROM " + table + ")", Boolean.class));
+    }
+
+    private record DailyKey(UUID linkId, LocalDate day) implements Comparable<DailyKey> {
+        private static final Comparator<DailyKey> ORDER =
+                Comparator.comparing(DailyKey::linkId).thenComparing(DailyKey::day);
+
+        @Override
+        public int compareTo(DailyKey other) {
+            return ORDER.compare(this, other);
+        }
+    }
+
+    private record DimensionKey(UUID linkId, LocalDate day, ClickDimension dimension, String value)
+            implements Comparable<DimensionKey> {
+        private static final Comparator<DimensionKey> ORDER = Comparator.comparing(DimensionKey::linkId)
+                .thenComparing(DimensionKey::day)
+                .thenComparing(DimensionKey::dimension)
+                .thenComparing(DimensionKey::value);
+
+        @Override
+        public int compareTo(DimensionKey other) {
+            return ORDER.compare(this, other);
+        }
+    }
+}
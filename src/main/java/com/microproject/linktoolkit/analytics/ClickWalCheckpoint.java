@@ -0,0 +1,40 @@
+package com.microproject.linktoolkit.analytics;
+
+import jakarta.persistence.*;
+import lombok.*;
+import org.hibernate.annotations.ColumnDefault;
+
+import java.time.Instant;
+import java.util.UUID;
+
+/**
+ * How far the clicks of a local click log have been written to the database. Updated in the same transaction
+ * as the clicks themselves, so replaying the log after a crash neither skips nor duplicates clicks.
+ * Rows of fully replayed logs that no instance has touched for {@code analytics.wal.checkpoint.retention.ms}
+ * are deleted, so logs lost with their container do not pile up here.
+ */
+@Getter
+@Setter
+@Builder
+@NoArgsConstructor
+@AllArgsConstructor
+@Entity
+@Table(name = "click_wal_checkpoints")
+public class ClickWalCheckpoint {
+
+    @Id
+    @Column(name = "wal_id", nullable = false)
+    private UUID walId;
+
+    // See ClickWriteAheadLog: segment number in the upper 32 bits, byte offset in the lower 32
+    @Column(name = "position", nullable = false)
+    private long position;
+
+    // Whether the position was the end of the log when it was written, i.e. nothing was left to replay
+    @Column(name = "replayed", nullable = false)
+    @ColumnDefault("false")
+    private boolean replayed;
+
+    @Column(name = "updated_at", nullable = false)
+    private Instant updatedAt;
+}
@@ -0,0 +1,455 @@
+package com.microproject.linktoolkit.analytics;
+
+import io.micrometer.core.instrument.Counter;
+import io.micrometer.core.instrument.Gauge;
+import io.micrometer.core.instrument.MeterRegistry;
+import jakarta.annotation.PreDestroy;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.boot.autoconfigure.condition.ConditionalOnProperty;
+import org.springframework.stereotype.Component;
+
+import java.io.ByteArrayOutputStream;
+import java.io.DataOutputStream;
+import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.nio.ByteBuffer;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.channels.OverlappingFileLockException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.time.Instant;
+import java.util.List;
+import java.util.Map;
+import java.util.UUID;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.locks.LockSupport;
+import java.util.regex.Matcher;
+import java.util.regex.Pattern;
+import java.util.stream.Stream;
+import java.util.zip.CRC32C;
+
+/**
+ * A local, append-only log of clicks that sits between the redirects and the database, so that clicks survive
+ * a slow or unavailable database, a full ingestion buffer and a crash of the application.
+ * <p>
+ * The log is a directory ({@code analytics.wal.directory}) of fixed-size segment files that are memory-mapped,
+ * so appending a click is a copy into the page cache: it survives a crash of the process immediately and a crash
+ * of the machine once the segment has been synced, which the ingestion worker does every
+ * {@code analytics.wal.sync-interval.ms}. Each record is its length, a CRC-32C of its contents and the click;
+ * records that were torn by a crash fail the checksum and mark the end of the log.
+ * </p>
+ * <p>
+ * Positions in the log are the segment number in the upper 32 bits and the byte offset within the segment in the
+ * lower 32. The ingestion worker reads from its last committed position, which is stored in the database together
+ * with the clicks it covers; segments wholly before it are deleted.
+ * </p>
+ * <p>
+ * Batches the database rejects for good are moved to {@code dead-letter.wal} in the same directory, a plain
+ * sequence of records in the same format, before the position moves past them.
+ * </p>
+ */
+@Component
+@ConditionalOnProperty(name = "analytics.wal.enabled", havingValue = "true", matchIfMissing = true)
+@Slf4j
+public class ClickWriteAheadLog {
+
+    private static final String ID_FILE = "wal.id";
+    private static final String LOCK_FILE = "wal.lock";
+    private static final String DEAD_LETTER_FILE = "dead-letter.wal";
+    private static final Pattern SEGMENT_NAME = Pattern.compile("clicks-(\\d{10})\\.wal");
+    private static final int HEADER_BYTES = 8;
+
+    private final Path directory;
+    private final int segmentBytes;
+    private final long maxSegments;
+    private final UUID id;
+    private final FileChannel lockChannel;
+    private final Map<Long, MappedByteBuffer> segments = new ConcurrentHashMap<>();
+
+    private final Counter rejectedCounter;
+    private final Counter corruptCounter;
+    private final Counter deadLetteredCounter;
+
+    // Guarded by this
+    private MappedByteBuffer writeSegment;
+
+    // Everything before this position has been written; published after the bytes, so readers never see a partial record
+    private volatile long writePosition;
+    private volatile long oldestSegment;
+    private volatile Thread waitingReader;
+    private long syncedSegment;
+
+    public ClickWriteAheadLog(
+            MeterRegistry meterRegistry,
+            @Value("${analytics.wal.directory:click-wal}") Path directory,
+            @Value("${analytics.wal.segment-bytes:16777216}") int segmentBytes,
+            @Value("${analytics.wal.max-bytes:1073741824}") long maxBytes
+    ) {
+        this.directory = directory;
+        this.segmentBytes = segmentBytes;
+        this.maxSegments = Math.max(2, maxBytes / segmentBytes);
+        this.rejectedCounter = meterRegistry.counter("clicks.ingest.dropped", "reason", "wal-full");
+        this.corruptCounter = meterRegistry.counter("clicks.wal.corrupt");
+        this.deadLetteredCounter = meterRegistry.counter("clicks.wal.dead-lettered");
+        try {
+            Files.createDirectories(directory);
+            this.lockChannel = lock();
+            this.id = readOrCreateId();
+            recover();
+        } catch (IOException e) {
+            throw new UncheckedIOException("Could not open the click log in " + directory.toAbsolutePath(), e);
+        }
+        Gauge.builder("clicks.wal.segments", this, wal -> segmentOf(wal.writePosition) - wal.oldestSegment + 1)
+                .description("Segment files of the click log on disk")
+                .register(meterRegistry);
+    }
+
+    static long position(long segment, int offset) {
+        return segment << 32 | offset;
+    }
+
+    static long segmentOf(long position) {
+        return position >>> 32;
+    }
+
+    static int offsetOf(long position) {
+        return (int) position;
+    }
+
+    /**
+     * @return The identity of this log, under which its committed position is stored.
+     */
+    public UUID id() {
+        return id;
+    }
+
+    /**
+     * @return The position just after the last appended click.
+     */
+    public long writePosition() {
+        return writePosition;
+    }
+
+    /**
+     * Appends a click. Never touches the database.
+     *
+     * @return false if the click was rejected because the log has reached {@code analytics.wal.max-bytes}.
+     */
+    public boolean append(ClickEvent click) {
+        byte[] record = encode(click);
+        synchronized (this) {
+            long segment = segmentOf(writePosition);
+            int offset = offsetOf(writePosition);
+            if (offset + record.length > segmentBytes) {
+                if (record.length > segmentBytes || segment + 1 - oldestSegment >= maxSegments) {
+                    rejectedCounter.increment();
+                    return false;
+                }
+                // The zeroes left at the end of the full segment tell readers to move on to the next one
+                segment++;
+                offset = 0;
+                writeSegment = createSegment(segment);
+            }
+            writeSegment.put(offset, record);
+            writePosition = position(segment, offset + record.length);
+        }
+        Thread reader = waitingReader;
+        if (reader != null) {
+            LockSupport.unpark(reader);
+        }
+        return true;
+    }
+
+    /**
+     * Flushes the segments written since the last sync to disk, so their clicks also survive a crash of the machine.
+     * Called periodically by a single thread; appends carry on meanwhile.
+     */
+    public void sync() {
+        long current = segmentOf(writePosition);
+        for (long segment = Math.max(syncedSegment, oldestSegment); segment <= current; segment++) {
+            MappedByteBuffer buffer = segments.get(segment);
+            if (buffer != null) {
+                buffer.force();
+            }
+        }
+        syncedSegment = current;
+    }
+
+    /**
+     * Appends clicks that cannot be written to the database to the dead-letter file, and flushes it to disk before
+     * returning, so the log may move past them. Only for use by the reading thread.
+     *
+     * @throws IOException If the clicks could not be stored; the caller must then keep them in the log.
+     */
+    public void deadLetter(List<ClickEvent> clicks) throws IOException {
+        try (FileChannel channel = FileChannel.open(directory.resolve(DEAD_LETTER_FILE),
+                StandardOpenOption.CREATE, StandardOpenOption.WRITE, StandardOpenOption.APPEND)) {
+            for (ClickEvent click : clicks) {
+                ByteBuffer record = ByteBuffer.wrap(encode(click));
+                while (record.hasRemaining()) {
+                    channel.write(record);
+                }
+            }
+            channel.force(false);
+        }
+        deadLetteredCounter.increment(clicks.size());
+    }
+
+    /**
+     * Deletes the segments that lie wholly before a position whose clicks have been committed to the database.
+     */
+    public void truncate(long committedPosition) {
+        long committedSegment = segmentOf(committedPosition);
+        for (long segment = oldestSegment; segment < committedSegment; segment++) {
+            segments.remove(segment);
+            try {
+                Files.deleteIfExists(segmentPath(segment));
+            } catch (IOException e) {
+                log.warn("Could not delete click log segment {}. Error: {}", segment, e.getMessage());
+                return;
+            }
+            oldestSegment = segment + 1;
+        }
+    }
+
+    /**
+     * @param committedPosition The last committed position, or a negative value to read the whole log.
+     * @return A reader starting at the given position, moved into the log if it lies outside it.
+     */
+    public Reader reader(long committedPosition) {
+        long start = Math.max(committedPosition, position(oldestSegment, 0));
+        return new Reader(Math.min(start, writePosition));
+    }
+
+    /**
+     * Reads the log in order. Only for use by a single thread.
+     */
+    public final class Reader {
+
+        private long position;
+
+        private Reader(long position) {
+            this.position = position;
+        }
+
+        /**
+         * @return The position just after the last click read.
+         */
+        public long position() {
+            return position;
+        }
+
+        public boolean hasUnread() {
+            return position != writePosition;
+        }
+
+        /**
+         * Reads the clicks appended since the last read, without waiting.
+         *
+         * @param into Receives the clicks.
+         * @param max The most clicks to read.
+         */
+        public void read(List<ClickEvent> into, int max) {
+            while (into.size() < max) {
+                long limit = writePosition;
+                if (position == limit) {
+                    return;
+                }
+                long segment = segmentOf(position);
+                ByteBuffer buffer = segment(segment);
+                int end = segment == segmentOf(limit) ? offsetOf(limit) : segmentBytes;
+                int offset = offsetOf(position);
+                int length = recordLength(buffer, offset, end);
+                if (length < 0) {
+                    // End of a full segment, or the rest of it is unreadable
+                    position = ClickWriteAheadLog.position(segment + 1, 0);
+                    continue;
+                }
+                into.add(decode(buffer, offset, length));
+                position += HEADER_BYTES + length;
+            }
+        }
+
+        /**
+         * Waits until a click is appended or the timeout passes, whichever comes first.
+         */
+        public void await(long timeoutNanos) {
+            waitingReader = Thread.currentThread();
+            try {
+                if (!hasUnread()) {
+                    LockSupport.parkNanos(this, timeoutNanos);
+                }
+            } finally {
+                waitingReader = null;
+            }
+        }
+    }
+
+    /**
+     * @return The length of the valid record at the offset, or -1 if there is none before the end.
+     */
+    private int recordLength(ByteBuffer buffer, int offset, int end) {
+        if (offset + HEADER_BYTES > end) {
+            return -1;
+        }
+        int length = buffer.getInt(offset);
+        if (length <= 0 || offset + HEADER_BYTES + length > end) {
+            return -1;
+        }
+        CRC32C crc = new CRC32C();
+        crc.update(buffer.slice(offset + HEADER_BYTES, length));
+        if ((int) crc.getValue() != buffer.getInt(offset + 4)) {
+            corruptCounter.increment();
+            log.warn("Skipping the rest of click log segment at offset {}: checksum mismatch.", offset);
+            return -1;
+        }
+        return length;
+    }
+
+    private static byte[] encode(ClickEvent click) {
+        ByteArrayOutputStream bytes = new ByteArrayOutputStream(256);
+        try (DataOutputStream out = new DataOutputStream(bytes)) {
+            out.writeLong(0); // Header, filled in below
+            out.writeLong(click.linkId().getMostSignificantBits());
+            out.writeLong(click.linkId().getLeastSignificantBits());
+            out.writeLong(click.clickedAt().getEpochSecond());
+            out.writeInt(click.clickedAt().getNano());
+            writeString(out, click.ipAddress());
+            writeString(out, click.userAgent());
+            writeString(out, click.referer());
+        } catch (IOException e) {
+            throw new UncheckedIOException(e);
+        }
+        byte[] record = bytes.toByteArray();
+        CRC32C crc = new CRC32C();
+        crc.update(record, HEADER_BYTES, record.length - HEADER_BYTES);
+        ByteBuffer.wrap(record).putInt(record.length - HEADER_BYTES).putInt((int) crc.getValue());
+        return record;
+    }
+
+    private static void writeString(DataOutputStream out, String value) throws IOException {
+        if (value == null) {
+            out.writeInt(-1);
+            return;
+        }
+        byte[] utf8 = value.getBytes(StandardCharsets.UTF_8);
+        out.writeInt(utf8.length);
+        out.write(utf8);
+    }
+
+    private static ClickEvent decode(ByteBuffer buffer, int offset, int length) {
+        ByteBuffer in = buffer.slice(offset + HEADER_BYTES, length);
+        UUID linkId = new UUID(in.getLong(), in.getLong());
+        Instant clickedAt = Instant.ofEpochSecond(in.getLong(), in.getInt());
+        return new ClickEvent(linkId, clickedAt, readString(in), readString(in), readString(in), null, null);
+    }
+
+    private static String readString(ByteBuffer in) {
+        int length = in.getInt();
+        if (length < 0) {
+            return null;
+        }
+        byte[] utf8 = new byte[length];
+        in.get(utf8);
+        return new String(utf8, StandardCharsets.UTF_8);
+    }
+
+    /**
+     * Takes an exclusive lock on the directory, so that two instances sharing a volume cannot write the same log.
+     */
+    private FileChannel lock() throws IOException {
+        FileChannel channel = FileChannel.open(directory.resolve(LOCK_FILE), StandardOpenOption.CREATE, StandardOpenOption.WRITE);
+        try {
+            if (channel.tryLock() != null) {
+                return channel;
+            }
+        } catch (OverlappingFileLockException e) {
+            // Held by this JVM
+        }
+        channel.close();
+        throw new IllegalStateException("The click log in " + directory.toAbsolutePath() + " is in use by another instance.");
+    }
+
+    private UUID readOrCreateId() throws IOException {
+        Path idFile = directory.resolve(ID_FILE);
+        if (Files.exists(idFile)) {
+            return UUID.fromString(Files.readString(idFile).trim());
+        }
+        UUID newId = UUID.randomUUID();
+        Files.writeString(idFile, newId.toString());
+        return newId;
+    }
+
+    /**
+     * Finds the end of the log after a restart: the last valid record of the newest segment. Whatever follows it,
+     * e.g. a record torn by a crash, is zeroed so that it cannot be mistaken for a record later.
+     */
+    private void recover() throws IOException {
+        long first = Long.MAX_VALUE;
+        long last = 0;
+        try (Stream<Path> files = Files.list(directory)) {
+            for (Path file : (Iterable<Path>) files::iterator) {
+                Matcher matcher = SEGMENT_NAME.matcher(file.getFileName().toString());
+                if (matcher.matches()) {
+                    long segment = Long.parseLong(matcher.group(1));
+                    first = Math.min(first, segment);
+                    last = Math.max(last, segment);
+                }
+            }
+        }
+        if (last == 0) {
+            oldestSegment = 1;
+            writeSegment = createSegment(1);
+            writePosition = position(1, 0);
+            return;
+        }
+
+        oldestSegment = first;
+        writeSegment = segment(last);
+        int offset = 0;
+        int length;
+        while ((length = recordLength(writeSegment, offset, segmentBytes)) >= 0) {
+            offset += HEADER_BYTES + length;
+        }
+        for (int i = offset; i < segmentBytes && writeSegment.get(i) != 0; i++) {
+            writeSegment.put(i, (byte) 0);
+        }
+        writePosition = position(last, offset);
+        log.info("Opened click log {} in {} (segments {} to {}).", id, directory.toAbsolutePath(), first, last);
+    }
+
+    private MappedByteBuffer segment(long segment) {
+        return segments.computeIfAbsent(segment, this::map);
+    }
+
+    private MappedByteBuffer createSegment(long segment) {
+        MappedByteBuffer buffer = map(segment);
+        segments.put(segment, buffer);
+        return buffer;
+    }
+
+    private MappedByteBuffer map(long segment) {
+        // Mapping past the end of a new file extends it with zeroes
+        try (FileChannel channel = FileChannel.open(segmentPath(segment),
+                StandardOpenOption.CREATE, StandardOpenOption.READ, StandardOpenOption.WRITE)) {
+            return channel.map(FileChannel.MapMode.READ_WRITE, 0, segmentBytes);
+        } catch (IOException e) {
+            throw new UncheckedIOException("Could not map click log segment " + segment, e);
+        }
+    }
+
+    private Path segmentPath(long segment) {
+        return directory.resolve("clicks-%010d.wal".formatted(segment));
+    }
+
+    @PreDestroy
+    public void close() throws IOException {
+        sync();
+        // Closing the channel releases the lock
+        lockChannel.close();
+    }
+}
@@ -0,0 +1,149 @@
+package com.microproject.linktoolkit.analytics;
+
+import org.apache.commons.codec.digest.MurmurHash3;
+
+import java.nio.ByteBuffer;
+import java.nio.charset.StandardCharsets;
+
+/**
+ * A HyperLogLog sketch estimating the number of distinct visitors, with 2^12 registers (about 1.6% standard error).
+ * <p>
+ * Sketches merge by taking the register-wise maximum, so the sketches of any set of days combine into the sketch
+ * of their union. Small cardinalities are estimated by linear counting over the empty registers, which is close
+ * to exact for the few hundred visitors most link-days see.
+ * </p>
+ * The serialized form is a format byte, the precision and then either the non-empty registers as
+ * (index, value) pairs (sparse) or all registers (dense), whichever is smaller. Not thread-safe.
+ */
+public final class HyperLogLog {
+
+    static final int PRECISION = 12;
+    private static final int REGISTER_COUNT = 1 << PRECISION;
+    private static final double ALPHA = 0.7213 / (1 + 1.079 / REGISTER_COUNT);
+
+    private static final byte SPARSE = 1;
+    private static final byte DENSE = 2;
+    private static final int HEADER_BYTES = 2;
+    private static final int SPARSE_ENTRY_BYTES = 3;
+
+    private final byte[] registers = new byte[REGISTER_COUNT];
+
+    /**
+     * @param ipAddress The client IP address.
+     * @param userAgent The User-Agent header, may be null.
+     * @return The 64-bit hash identifying a visitor: the same IP with a different browser counts as another visitor.
+     */
+    public static long visitorHash(String ipAddress, String userAgent) {
+        String identity = (ipAddress == null ? "" : ipAddress) + '\n' + (userAgent == null ? "" : userAgent);
+        return MurmurHash3.hash128x64(identity.getBytes(StandardCharsets.UTF_8))[0];
+    }
+
+    /**
+     * @param hash A well-mixed 64-bit hash of the element, e.g. from {@link #visitorHash(String, String)}.
+     */
+    public void add(long hash) {
+        int index = (int) (hash >>> (Long.SIZE - PRECISION));
+        // Position of the first 1-bit in the remaining bits; the sentinel bit caps it for an all-zero remainder
+        int rank = Long.numberOfLeadingZeros((hash << PRECISION) | (1L << (PRECISION - 1))) + 1;
+        if (rank > registers[index]) {
+            registers[index] = (byte) rank;
+        }
+    }
+
+    /**
+     * Folds another sketch into this one, which then estimates the union of both.
+     */
+    public void merge(HyperLogLog other) {
+        for (int i = 0; i < REGISTER_COUNT; i++) {
+            if (other.registers[i] > registers[i]) {
+                registers[i] = other.registers[i];
+            }
+        }
+    }
+
+    /**
+     * @return The estimated number of distinct elements added to this sketch and the sketches merged into it.
+     */
+    public long estimate() {
+        double sum = 0;
+        int empty = 0;
+        for (byte register : registers) {
+            sum += 1.0 / (1L << register);
+            if (register == 0) {
+                empty++;
+            }
+        }
+        double estimate = ALPHA * REGISTER_COUNT * REGISTER_COUNT / sum;
+        if (estimate <= 2.5 * REGISTER_COUNT && empty > 0) {
+            // Linear counting is far more accurate while many registers are still empty
+            estimate = REGISTER_COUNT * Math.log((double) REGISTER_COUNT / empty);
+        }
+        return Math.round(estimate);
+    }
+
+    public boolean isEmpty() {
+        for (byte register : registers) {
+            if (register != 0) {
+                return false;
+            }
+        }
+        return true;
+    }
+
+    public byte[] toBytes() {
+        int nonEmpty = 0;
+        for (byte register : registers) {
+            if (register != 0) {
+                nonEmpty++;
+            }
+        }
+        if (nonEmpty * SPARSE_ENTRY_BYTES < REGISTER_COUNT) {
+            ByteBuffer buffer = ByteBuffer.allocate(HEADER_BYTES + nonEmpty * SPARSE_ENTRY_BYTES)
+                    .put(SPARSE).put((byte) PRECISION);
+            for (int i = 0; i < REGISTER_COUNT; i++) {
+                if (registers[i] != 0) {
+                    buffer.putShort((short) i).put(registers[i]);
+                }
+            }
+            return buffer.array();
+        }
+        return ByteBuffer.allocate(HEADER_BYTES + REGISTER_COUNT)
+                .put(DENSE).put((byte) PRECISION).put(registers)
+                .array();
+    }
+
+    /**
+     * @param bytes A sketch serialized by {@link #toBytes()}, or null for an empty sketch.
+     * @throws IllegalArgumentException if the bytes are not a sketch of this precision.
+     */
+    public static HyperLogLog fromBytes(byte[] bytes) {
+        HyperLogLog sketch = new HyperLogLog();
+        if (bytes == null) {
+            return sketch;
+        }
+        ByteBuffer buffer = ByteBuffer.wrap(bytes);
+        if (bytes.length < HEADER_BYTES) {
+            throw new IllegalArgumentException("Truncated HyperLogLog sketch.");
+        }
+        byte format = buffer.get();
+        byte precision = buffer.get();
+        if (precision != PRECISION) {
+            throw new IllegalArgumentException("Unsupported HyperLogLog precision: " + precision);
+        }
+        if (format == DENSE && buffer.remaining() == REGISTER_COUNT) {
+            buffer.get(sketch.registers);
+        } else if (format == SPARSE && buffer.remaining() % SPARSE_ENTRY_BYTES == 0) {
+            while (buffer.hasRemaining()) {
+                int index = Short.toUnsignedInt(buffer.getShort());
+                byte value = buffer.get();
+                if (index >= REGISTER_COUNT) {
+                    throw new IllegalArgumentException("Corrupt HyperLogLog sketch.");
+                }
+                sketch.registers[index] = value;
+            }
+        } else {
+            throw new IllegalArgumentException("Corrupt HyperLogLog sketch.");
+        }
+        return sketch;
+    }
+}
@@ -0,0 +1,448 @@
+package com.microproject.linktoolkit.analytics;
+
+import com.maxmind.db.CHMCache;
+import com.maxmind.db.DatabaseRecord;
+import com.maxmind.db.Reader.FileMode;
+import com.maxmind.db.InvalidNetworkException;
+import com.maxmind.db.MaxMindDbConstructor;
+import com.maxmind.db.MaxMindDbParameter;
+import com.maxmind.db.Networks;
+import com.maxmind.db.Reader;
+
+import java.io.File;
+import java.io.IOException;
+import java.io.InputStream;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * Resolves IP addresses to ISO country codes from a compact, in-memory range table.
+ * <p>
+ * The table is built once from a MaxMind database: every network is reduced to its country, adjacent networks
+ * of the same country are merged, and the result is stored as sorted primitive arrays (one set for IPv4,
+ * one for IPv6). A lookup parses the IP literal by hand and binary-searches the arrays, so it neither
+ * allocates nor goes through the InetAddress resolver. The full city database is not kept in memory.
+ * </p>
+ */
+public final class IpCountryIndex {
+
+    private static final int NOT_FOUND = -1;
+
+    // Country codes are stored once and referenced by index from the range tables.
+    private final String[] countries;
+
+    // IPv4 ranges, addresses stored as unsigned ints
+    private final int[] v4Starts;
+    private final int[] v4Ends;
+    private final short[] v4Countries;
+
+    // IPv6 ranges, each address split into its high and low 64 bits (unsigned)
+    private final long[] v6StartsHi;
+    private final long[] v6StartsLo;
+    private final long[] v6EndsHi;
+    private final long[] v6EndsLo;
+    private final short[] v6Countries;
+
+    private IpCountryIndex(Builder builder) {
+        this.countries = builder.countries.toArray(new String[0]);
+        this.v4Starts = Arrays.copyOf(builder.v4Starts, builder.v4Size);
+        this.v4Ends = Arrays.copyOf(builder.v4Ends, builder.v4Size);
+        this.v4Countries = Arrays.copyOf(builder.v4Countries, builder.v4Size);
+        this.v6StartsHi = Arrays.copyOf(builder.v6StartsHi, builder.v6Size);
+        this.v6StartsLo = Arrays.copyOf(builder.v6StartsLo, builder.v6Size);
+        this.v6EndsHi = Arrays.copyOf(builder.v6EndsHi, builder.v6Size);
+        this.v6EndsLo = Arrays.copyOf(builder.v6EndsLo, builder.v6Size);
+        this.v6Countries = Arrays.copyOf(builder.v6Countries, builder.v6Size);
+    }
+
+    /**
+     * Builds the index from a MaxMind City or Country database.
+     * The stream is read fully into memory, walked once, and released again.
+     *
+     * @param mmdb The database contents.
+     * @return The index.
+     * @throws IOException If the database cannot be read.
+     */
+    public static IpCountryIndex load(InputStream mmdb) throws IOException {
+        // Many networks share the same record, so cache decoded records while walking the tree.
+        try (Reader reader = new Reader(mmdb, new CHMCache())) {
+            return load(reader);
+        }
+    }
+
+    /**
+     * Builds the index from a MaxMind City or Country database file.
+     * The file is memory-mapped instead of being read onto the heap, so only the pages the walk touches are loaded.
+     *
+     * @param mmdb The database file.
+     * @return The index.
+     * @throws IOException If the database cannot be read.
+     */
+    public static IpCountryIndex load(File mmdb) throws IOException {
+        try (Reader reader = new Reader(mmdb, FileMode.MEMORY_MAPPED, new CHMCache())) {
+            return load(reader);
+        }
+    }
+
+    private static IpCountryIndex load(Reader reader) throws IOException {
+        Builder builder = new Builder();
+        try {
+            Networks<CountryRecord> networks = reader.networks(CountryRecord.class);
+            while (networks.hasNext()) {
+                DatabaseRecord<CountryRecord> record = networks.next();
+                String isoCode = record.getData() == null ? null : record.getData().isoCode();
+                if (isoCode != null) {
+                    byte[] address = record.getNetwork().getNetworkAddress().getAddress();
+                    builder.addNetwork(address, record.getNetwork().getPrefixLength(), isoCode);
+                }
+            }
+        } catch (InvalidNetworkException e) {
+            throw new IOException("Could not walk the GeoIP database.", e);
+        }
+        return builder.build();
+    }
+
+    /**
+     * @param ip An IPv4 or IPv6 literal, as found in X-Forwarded-For or the remote address.
+     * @return The ISO country code, or null if the address is malformed or not in the database.
+     */
+    public String countryOf(String ip) {
+        if (ip == null) {
+            return null;
+        }
+        int end = ip.indexOf('%'); // IPv6 zone id, e.g. fe80::1%eth0
+        if (end < 0) {
+            end = ip.length();
+        }
+        if (ip.indexOf(':') < 0) {
+            long v4 = parseIpv4(ip, 0, end);
+            return v4 == NOT_FOUND ? null : lookupIpv4((int) v4);
+        }
+        return lookupIpv6(ip, end);
+    }
+
+    public int ipv4RangeCount() {
+        return v4Starts.length;
+    }
+
+    public int ipv6RangeCount() {
+        return v6StartsHi.length;
+    }
+
+    private String lookupIpv4(int address) {
+        // Find the last range starting at or before the address.
+        int low = 0;
+        int high = v4Starts.length - 1;
+        int found = -1;
+        while (low <= high) {
+            int mid = (low + high) >>> 1;
+            if (Integer.compareUnsigned(v4Starts[mid], address) <= 0) {
+                found = mid;
+                low = mid + 1;
+            } else {
+                high = mid - 1;
+            }
+        }
+        if (found < 0 || Integer.compareUnsigned(address, v4Ends[found]) > 0) {
+            return null;
+        }
+        return countries[v4Countries[found]];
+    }
+
+    private String lookupIpv6(long hi, long lo) {
+        int low = 0;
+        int high = v6StartsHi.length - 1;
+        int found = -1;
+        while (low <= high) {
+            int mid = (low + high) >>> 1;
+            if (compare128(v6StartsHi[mid], v6StartsLo[mid], hi, lo) <= 0) {
+                found = mid;
+                low = mid + 1;
+            } else {
+                high = mid - 1;
+            }
+        }
+        if (found < 0 || compare128(hi, lo, v6EndsHi[found], v6EndsLo[found]) > 0) {
+            return null;
+        }
+        return countries[v6Countries[found]];
+    }
+
+    /**
+     * Parses an IPv6 literal (including "::" compression and a trailing dotted IPv4 part) into two longs
+     * held in locals, then looks it up. IPv4-mapped addresses (::ffff:a.b.c.d) are looked up as IPv4.
+     */
+    private String lookupIpv6(String ip, int end) {
+        long hi = 0, lo = 0;             // groups before "::"
+        long tailHi = 0, tailLo = 0;     // groups after "::"
+        int headGroups = 0, tailGroups = 0;
+        boolean compressed = false;
+
+        int i = 0;
+        if (end >= 2 && ip.charAt(0) == ':' && ip.charAt(1) == ':') {
+            compressed = true;
+            i = 2;
+        } else if (end > 0 && ip.charAt(0) == ':') {
+            return null;
+        }
+
+        while (i < end) {
+            int groupEnd = i;
+            int value = 0;
+            while (groupEnd < end && ip.charAt(groupEnd) != ':' && ip.charAt(groupEnd) != '.') {
+                int digit = Character.digit(ip.charAt(groupEnd), 16);
+                if (digit < 0 || groupEnd - i >= 4) {
+                    return null;
+                }
+                value = (value << 4) | digit;
+                groupEnd++;
+            }
+
+            if (groupEnd < end && ip.charAt(groupEnd) == '.') {
+                // Embedded IPv4 suffix: worth two groups and must be the last part.
+                long v4 = parseIpv4(ip, i, end);
+                if (v4 == NOT_FOUND) {
+                    return null;
+                }
+                for (int half = 1; half >= 0; half--) {
+                    long group = (v4 >>> (16 * half)) & 0xFFFF;
+                    if (compressed) {
+                        tailHi = (tailHi << 16) | (tailLo >>> 48);
+                        tailLo = (tailLo << 16) | group;
+                        tailGroups++;
+                    } else {
+                        hi = (hi << 16) | (lo >>> 48);
+                        lo = (lo << 16) | group;
+                        headGroups++;
+                    }
+                }
+                i = end;
+                break;
+            }
+
+            if (groupEnd == i) {
+                return null; // empty group, e.g. ":::" or a trailing single ':'
+            }
+            if (compressed) {
+                tailHi = (tailHi << 16) | (tailLo >>> 48);
+                tailLo = (tailLo << 16) | value;
+                tailGroups++;
+            } else {
+                hi = (hi << 16) | (lo >>> 48);
+                lo = (lo << 16) | value;
+                headGroups++;
+            }
+            if (headGroups + tailGroups > 8) {
+                return null;
+            }
+
+            if (groupEnd == end) {
+                i = end;
+            } else if (groupEnd + 1 < end && ip.charAt(groupEnd + 1) == ':') {
+                if (compressed) {
+                    return null; // a second "::"
+                }
+                compressed = true;
+                i = groupEnd + 2;
+            } else if (groupEnd + 1 == end) {
+                return null; // trailing ':'
+            } else {
+                i = groupEnd + 1;
+            }
+        }
+
+        int groups = headGroups + tailGroups;
+        if (groups > 8 || (!compressed && groups != 8) || (compressed && groups == 8)) {
+            return null;
+        }
+
+        // Move the head groups to the top of the address and fill in the tail below them.
+        int shift = 16 * (8 - headGroups);
+        if (shift >= 128) {
+            hi = 0;
+            lo = 0;
+        } else if (shift >= 64) {
+            hi = lo << (shift - 64);
+            lo = 0;
+        } else if (shift > 0) {
+            hi = (hi << shift) | (lo >>> (64 - shift));
+            lo = lo << shift;
+        }
+        hi |= tailHi;
+        lo |= tailLo;
+
+        if (hi == 0 && (lo >>> 32) == 0xFFFFL) {
+            return lookupIpv4((int) lo);
+        }
+        return lookupIpv6(hi, lo);
+    }
+
+    /**
+     * @return The address as an unsigned int widened to long, or NOT_FOUND if the text is not a dotted quad.
+     */
+    private static long parseIpv4(String ip, int start, int end) {
+        long address = 0;
+        int octets = 0;
+        int i = start;
+        while (i < end) {
+            int value = 0;
+            int digits = 0;
+            while (i < end && ip.charAt(i) != '.') {
+                char c = ip.charAt(i);
+                if (c < '0' || c > '9' || digits == 3) {
+                    return NOT_FOUND;
+                }
+                value = value * 10 + (c - '0');
+                digits++;
+                i++;
+            }
+            if (digits == 0 || value > 255 || octets == 4) {
+                return NOT_FOUND;
+            }
+            address = (address << 8) | value;
+            octets++;
+            if (i < end) {
+                i++; // skip '.'
+                if (i == end) {
+                    return NOT_FOUND; // trailing '.'
+                }
+            }
+        }
+        return octets == 4 ? address : NOT_FOUND;
+    }
+
+    private static int compare128(long aHi, long aLo, long bHi, long bLo) {
+        int result = Long.compareUnsigned(aHi, bHi);
+        return result != 0 ? result : Long.compareUnsigned(aLo, bLo);
+    }
+
+    /**
+     * The only part of a City/Country record we decode; all other fields are skipped by the reader.
+     */
+    public record CountryRecord(Country country) {
+        @MaxMindDbConstructor
+        public CountryRecord(@MaxMindDbParameter(name = "country") Country country) {
+            this.country = country;
+        }
+
+        String isoCode() {
+            return country == null ? null : country.isoCode();
+        }
+    }
+
+    public record Country(String isoCode) {
+        @MaxMindDbConstructor
+        public Country(@MaxMindDbParameter(name = "iso_code") String isoCode) {
+            this.isoCode = isoCode;
+        }
+    }
+
+    /**
+     * Collects networks in ascending address order (the order in which the database tree is walked)
+     * and merges adjacent ranges of the same country.
+     */
+    static final class Builder {
+
+        private final Map<String, Short> countryIndexes = new HashMap<>();
+        private final List<String> countries = new ArrayList<>();
+
+        private int v4Size;
+        private int[] v4Starts = new int[1024];
+        private int[] v4Ends = new int[1024];
+        private short[] v4Countries = new short[1024];
+
+        private int v6Size;
+        private long[] v6StartsHi = new long[1024];
+        private long[] v6StartsLo = new long[1024];
+        private long[] v6EndsHi = new long[1024];
+        private long[] v6EndsLo = new long[1024];
+        private short[] v6Countries = new short[1024];
+
+        Builder addNetwork(byte[] address, int prefixLength, String isoCode) {
+            short country = countryIndexes.computeIfAbsent(isoCode, code -> {
+                countries.add(code);
+                return (short) (countries.size() - 1);
+            });
+            if (address.length == 4) {
+                int start = 0;
+                for (byte b : address) {
+                    start = (start << 8) | (b & 0xFF);
+                }
+                int hostMask = prefixLength == 0 ? -1 : (int) ((1L << (32 - prefixLength)) - 1);
+                addIpv4(start & ~hostMask, start | hostMask, country);
+            } else {
+                long hi = 0, lo = 0;
+                for (int i = 0; i < 8; i++) {
+                    hi = (hi << 8) | (address[i] & 0xFF);
+                    lo = (lo << 8) | (address[i + 8] & 0xFF);
+                }
+                int hostBits = 128 - prefixLength;
+                long hiMask = hostBits >= 128 ? -1L : hostBits > 64 ? (1L << (hostBits - 64)) - 1 : 0L;
+                long loMask = hostBits >= 64 ? -1L : (1L << hostBits) - 1;
+                addIpv6(hi & ~hiMask, lo & ~loMask, hi | hiMask, lo | loMask, country);
+            }
+            return this;
+        }
+
+        private void addIpv4(int start, int end, short country) {
+            if (v4Size > 0) {
+                int last = v4Size - 1;
+                if (Integer.compareUnsigned(start, v4Ends[last]) <= 0) {
+                    throw new IllegalStateException("IPv4 networks are not in ascending order.");
+                }
+                if (v4Countries[last] == country && v4Ends[last] + 1 == start) {
+                    v4Ends[last] = end;
+                    return;
+                }
+            }
+            if (v4Size == v4Starts.length) {
+                int capacity = v4Size * 2;
+                v4Starts = Arrays.copyOf(v4Starts, capacity);
+                v4Ends = Arrays.copyOf(v4Ends, capacity);
+                v4Countries = Arrays.copyOf(v4Countries, capacity);
+            }
+            v4Starts[v4Size] = start;
+            v4Ends[v4Size] = end;
+            v4Countries[v4Size] = country;
+            v4Size++;
+        }
+
+        private void addIpv6(long startHi, long startLo, long endHi, long endLo, short country) {
+            if (v6Size > 0) {
+                int last = v6Size - 1;
+                if (compare128(startHi, startLo, v6EndsHi[last], v6EndsLo[last]) <= 0) {
+                    throw new IllegalStateException("IPv6 networks are not in ascending order.");
+                }
+                // The previous end + 1, with carry into the high half
+                long nextLo = v6EndsLo[last] + 1;
+                long nextHi = nextLo == 0 ? v6EndsHi[last] + 1 : v6EndsHi[last];
+                if (v6Countries[last] == country && nextHi == startHi && nextLo == startLo) {
+                    v6EndsHi[last] = endHi;
+                    v6EndsLo[last] = endLo;
+                    return;
+                }
+            }
+            if (v6Size == v6StartsHi.length) {
+                int capacity = v6Size * 2;
+                v6StartsHi = Arrays.copyOf(v6StartsHi, capacity);
+                v6StartsLo = Arrays.copyOf(v6StartsLo, capacity);
+                v6EndsHi = Arrays.copyOf(v6EndsHi, capacity);
+                v6EndsLo = Arrays.copyOf(v6EndsLo, capacity);
+                v6Countries = Arrays.copyOf(v6Countries, capacity);
+            }
+            v6StartsHi[v6Size] = startHi;
+            v6StartsLo[v6Size] = startLo;
+            v6EndsHi[v6Size] = endHi;
+            v6EndsLo[v6Size] = endLo;
+            v6Countries[v6Size] = country;
+            v6Size++;
+        }
+
+        IpCountryIndex build() {
+            return new IpCountryIndex(this);
+        }
+    }
+}
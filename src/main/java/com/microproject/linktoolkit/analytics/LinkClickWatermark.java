@@ -0,0 +1,28 @@
+package com.microproject.linktoolkit.analytics;
+
+import jakarta.persistence.*;
+import lombok.*;
+
+import java.util.UUID;
+
+/**
+ * A per-link counter bumped by every batch of clicks merged into the link's rollups, in the same transaction.
+ * Analytics computed at one version stay valid until the version changes, which is what the response cache
+ * and the analytics ETag rely on.
+ */
+@Getter
+@Setter
+@Builder
+@NoArgsConstructor
+@AllArgsConstructor
+@Entity
+@Table(name = "link_click_watermarks")
+public class LinkClickWatermark {
+
+    @Id
+    @Column(name = "link_id", nullable = false)
+    private UUID linkId;
+
+    @Column(name = "version", nullable = false)
+    private long version;
+}
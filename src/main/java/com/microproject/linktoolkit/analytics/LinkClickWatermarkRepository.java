@@ -0,0 +1,19 @@
+package com.microproject.linktoolkit.analytics;
+
+import org.springframework.data.jpa.repository.JpaRepository;
+import org.springframework.data.jpa.repository.Query;
+import org.springframework.data.repository.query.Param;
+import org.springframework.stereotype.Repository;
+
+import java.util.Optional;
+import java.util.UUID;
+
+@Repository
+public interface LinkClickWatermarkRepository extends JpaRepository<LinkClickWatermark, UUID> {
+
+    /**
+     * @return The link's watermark, or empty if no click of the link has been rolled up yet.
+     */
+    @Query("SELECT w.version FROM LinkClickWatermark w WHERE w.linkId = :linkId")
+    Optional<Long> findVersionByLinkId(@Param("linkId") UUID linkId);
+}
@@ -0,0 +1,53 @@
+package com.microproject.linktoolkit.analytics;
+
+import jakarta.persistence.*;
+import lombok.*;
+
+import java.io.Serializable;
+import java.time.LocalDate;
+import java.util.UUID;
+
+/**
+ * Pre-aggregated number of clicks a link received on one (UTC) day for one value of a dimension,
+ * e.g. (link, 2025-06-01, COUNTRY, "IN") -> 80.
+ */
+@Getter
+@Setter
+@Builder
+@NoArgsConstructor
+@AllArgsConstructor
+@Entity
+@Table(name = "link_daily_dimension_stats")
+@IdClass(LinkDailyDimensionStat.Key.class)
+public class LinkDailyDimensionStat {
+
+    @Id
+    @Column(name = "link_id", nullable = false)
+    private UUID linkId;
+
+    @Id
+    @Column(name = "click_date", nullable = false)
+    private LocalDate clickDate;
+
+    @Id
+    @Enumerated(EnumType.STRING)
+    @Column(name = "dimension", nullable = false, length = 16)
+    private ClickDimension dimension;
+
+    @Id
+    @Column(name = "dimension_value", nullable = false, length = ClickDimension.MAX_VALUE_LENGTH)
+    private String dimensionValue;
+
+    @Column(name = "clicks", nullable = false)
+    private long clicks;
+
+    @Data
+    @NoArgsConstructor
+    @AllArgsConstructor
+    public static class Key implements Serializable {
+        private UUID linkId;
+        private LocalDate clickDate;
+        private ClickDimension dimension;
+        private String dimensionValue;
+    }
+}
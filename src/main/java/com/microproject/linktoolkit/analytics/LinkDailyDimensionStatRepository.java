@@ -0,0 +1,8 @@
+package com.microproject.linktoolkit.analytics;
+
+import org.springframework.data.jpa.repository.JpaRepository;
+import org.springframework.stereotype.Repository;
+
+@Repository
+public interface LinkDailyDimensionStatRepository extends JpaRepository<LinkDailyDimensionStat, LinkDailyDimensionStat.Key> {
+}
@@ -0,0 +1,46 @@
+package com.microproject.linktoolkit.analytics;
+
+import jakarta.persistence.*;
+import lombok.*;
+
+import java.io.Serializable;
+import java.time.LocalDate;
+import java.util.UUID;
+
+/**
+ * Pre-aggregated number of clicks a link received on one (UTC) day.
+ * Maintained incrementally by the click ingestion pipeline so that analytics never has to scan raw clicks.
+ */
+@Getter
+@Setter
+@Builder
+@NoArgsConstructor
+@AllArgsConstructor
+@Entity
+@Table(name = "link_daily_stats")
+@IdClass(LinkDailyStat.Key.class)
+public class LinkDailyStat {
+
+    @Id
+    @Column(name = "link_id", nullable = false)
+    private UUID linkId;
+
+    @Id
+    @Column(name = "click_date", nullable = false)
+    private LocalDate clickDate;
+
+    @Column(name = "clicks", nullable = false)
+    private long clicks;
+
+    // HyperLogLog sketch of the day's distinct visitors; merged with other days' sketches for any date range
+    @Column(name = "visitor_sketch", length = 8192)
+    private byte[] visitorSketch;
+
+    @Data
+    @NoArgsConstructor
+    @AllArgsConstructor
+    public static class Key implements Serializable {
+        private UUID linkId;
+        private LocalDate clickDate;
+    }
+}
@@ -0,0 +1,58 @@
+package com.microproject.linktoolkit.analytics;
+
+import org.springframework.data.jpa.repository.JpaRepository;
+import org.springframework.data.jpa.repository.Query;
+import org.springframework.data.repository.query.Param;
+import org.springframework.stereotype.Repository;
+
+import java.time.LocalDate;
+import java.util.Collection;
+import java.util.List;
+import java.util.UUID;
+
+@Repository
+public interface LinkDailyStatRepository extends JpaRepository<LinkDailyStat, LinkDailyStat.Key> {
+    /**
+     * Sums the daily rollups of a link. Reads one row per active day instead of one row per click.
+     *
+     * @param linkId The UUID of the link.
+     * @return The total click count, 0 if the link has never been clicked.
+     */
+    @Query("SELECT COALESCE(SUM(s.clicks), 0) FROM LinkDailyStat s WHERE s.linkId = :linkId")
+    long sumClicksByLinkId(@Param("linkId") UUID linkId);
+
+    interface LinkClickTotal {
+        UUID getLinkId();
+        Long getClicks();
+    }
+
+    /**
+     * Sums the daily rollups of several links with one grouped query.
+     * Links that have never been clicked are absent from the result.
+     *
+     * @param linkIds The UUIDs of the links, e.g. one page of a listing.
+     * @return The total click count per link.
+     */
+    @Query("SELECT s.linkId as linkId, SUM(s.clicks) as clicks FROM LinkDailyStat s WHERE s.linkId IN :linkIds GROUP BY s.linkId")
+    List<LinkClickTotal> sumClicksByLinkIds(@Param("linkIds") Collection<UUID> linkIds);
+
+    /**
+     * Sums the daily rollups of every link a user owns with one grouped join, instead of one query per link.
+     *
+     * @param userId The UUID of the user.
+     * @return The total click count per link. Links that have never been clicked are absent from the result.
+     */
+    @Query("SELECT s.linkId as linkId, SUM(s.clicks) as clicks FROM LinkDailyStat s JOIN Link l ON l.id = s.linkId " +
+            "WHERE l.user.id = :userId GROUP BY s.linkId")
+    List<LinkClickTotal> sumClicksByUserId(@Param("userId") UUID userId);
+
+    /**
+     * Fetches the per-day click counts and visitor sketches of a link for a time-series chart.
+     *
+     * @param linkId    The UUID of the link.
+     * @param startDate The first (UTC) day to include.
+     * @param endDate   The last (UTC) day to include.
+     * @return The daily rollups between startDate and endDate, oldest first.
+     */
+    List<LinkDailyStat> findByLinkIdAndClickDateBetweenOrderByClickDate(UUID linkId, LocalDate startDate, LocalDate endDate);
+}
@@ -0,0 +1,43 @@
+package com.microproject.linktoolkit.analytics;
+
+import jakarta.persistence.*;
+import lombok.*;
+
+import java.io.Serializable;
+import java.util.UUID;
+
+/**
+ * The checkpointed Space-Saving summary of a link's most frequent values of one dimension,
+ * maintained by the click ingestion pipeline so that the top referrers, devices and countries are read, not computed.
+ */
+@Getter
+@Setter
+@Builder
+@NoArgsConstructor
+@AllArgsConstructor
+@Entity
+@Table(name = "link_top_values")
+@IdClass(LinkTopValues.Key.class)
+public class LinkTopValues {
+
+    @Id
+    @Column(name = "link_id", nullable = false)
+    private UUID linkId;
+
+    @Id
+    @Enumerated(EnumType.STRING)
+    @Column(name = "dimension", nullable = false, length = 16)
+    private ClickDimension dimension;
+
+    // See SpaceSaving.toBytes(); null until the first batch for this link and dimension commits
+    @Column(name = "summary", length = 65536)
+    private byte[] summary;
+
+    @Data
+    @NoArgsConstructor
+    @AllArgsConstructor
+    public static class Key implements Serializable {
+        private UUID linkId;
+        private ClickDimension dimension;
+    }
+}
@@ -0,0 +1,162 @@
+package com.microproject.linktoolkit.analytics;
+
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.util.Comparator;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * A Space-Saving summary of the most frequent values of a stream, using a fixed number of counters.
+ * <p>
+ * A value without a counter takes over the counter with the smallest count, inheriting that count as its error.
+ * Every monitored value's count therefore overestimates its true count by at most its error, and no unmonitored
+ * value occurred more than {@link #minCount()} times. With m counters and n values in total, every value occurring
+ * more than n/m times is monitored.
+ * </p>
+ * Counts are added in weighted form, so a batch of clicks costs one update per distinct value. Not thread-safe.
+ */
+public final class SpaceSaving {
+
+    private static final byte FORMAT = 1;
+
+    private final int capacity;
+    private final Map<String, Entry> counters;
+
+    /**
+     * A monitored value.
+     * @param value The value.
+     * @param count An upper bound of how often the value occurred.
+     * @param error How much the count may overstate it: the true count is at least count - error.
+     */
+    public record Counter(String value, long count, long error) {
+    }
+
+    private static final class Entry {
+        long count;
+        long error;
+
+        Entry(long count, long error) {
+            this.count = count;
+            this.error = error;
+        }
+    }
+
+    private static final Comparator<Counter> BY_COUNT_DESC =
+            Comparator.comparingLong(Counter::count).reversed().thenComparing(Counter::value);
+
+    /**
+     * @param capacity The number of counters, i.e. how many values are monitored at most.
+     */
+    public SpaceSaving(int capacity) {
+        if (capacity < 1) {
+            throw new IllegalArgumentException("Capacity must be positive: " + capacity);
+        }
+        this.capacity = capacity;
+        this.counters = HashMap.newHashMap(capacity + 1);
+    }
+
+    /**
+     * Counts a value {@code count} times.
+     */
+    public void offer(String value, long count) {
+        Entry entry = counters.get(value);
+        if (entry != null) {
+            entry.count += count;
+            return;
+        }
+        if (counters.size() < capacity) {
+            counters.put(value, new Entry(count, 0));
+            return;
+        }
+        // A linear scan is cheaper than maintaining an ordered structure for the few dozen counters used here
+        Map.Entry<String, Entry> min = null;
+        for (Map.Entry<String, Entry> candidate : counters.entrySet()) {
+            if (min == null || candidate.getValue().count < min.getValue().count) {
+                min = candidate;
+            }
+        }
+        long evictedCount = min.getValue().count;
+        counters.remove(min.getKey());
+        counters.put(value, new Entry(evictedCount + count, evictedCount));
+    }
+
+    /**
+     * @return Whether every counter is in use, after which new values start evicting others.
+     */
+    public boolean isFull() {
+        return counters.size() >= capacity;
+    }
+
+    /**
+     * @return The most any unmonitored value can have occurred: 0 until every counter is in use.
+     */
+    public long minCount() {
+        if (!isFull()) {
+            return 0;
+        }
+        return counters.values().stream().mapToLong(entry -> entry.count).min().orElse(0);
+    }
+
+    /**
+     * @param n How many counters to return.
+     * @return The n counters with the highest counts, highest first.
+     */
+    public List<Counter> top(int n) {
+        return counters.entrySet().stream()
+                .map(entry -> new Counter(entry.getKey(), entry.getValue().count, entry.getValue().error))
+                .sorted(BY_COUNT_DESC)
+                .limit(n)
+                .toList();
+    }
+
+    /**
+     * @return The counters serialized as a format byte, their number, then (value, count, error) for each.
+     */
+    public byte[] toBytes() {
+        ByteArrayOutputStream bytes = new ByteArrayOutputStream();
+        try (DataOutputStream out = new DataOutputStream(bytes)) {
+            out.writeByte(FORMAT);
+            out.writeShort(counters.size());
+            for (Counter counter : top(counters.size())) {
+                out.writeUTF(counter.value());
+                out.writeLong(counter.count());
+                out.writeLong(counter.error());
+            }
+        } catch (IOException e) {
+            throw new UncheckedIOException(e);
+        }
+        return bytes.toByteArray();
+    }
+
+    /**
+     * @param bytes A summary serialized by {@link #toBytes()}, or null for an empty summary.
+     * @param capacity The number of counters. If the stored summary has more, only the highest counts are kept,
+     *                 which preserves the error bounds.
+     * @throws IllegalArgumentException if the bytes are not a serialized summary.
+     */
+    public static SpaceSaving fromBytes(byte[] bytes, int capacity) {
+        SpaceSaving summary = new SpaceSaving(capacity);
+        if (bytes == null) {
+            return summary;
+        }
+        try (DataInputStream in = new DataInputStream(new ByteArrayInputStream(bytes))) {
+            if (in.readByte() != FORMAT) {
+                throw new IllegalArgumentException("Unsupported Space-Saving summary format.");
+            }
+            int size = in.readUnsignedShort();
+            // Stored highest count first, so stopping at the capacity drops the smallest counters
+            for (int i = 0; i < size && i < capacity; i++) {
+                summary.counters.put(in.readUTF(), new Entry(in.readLong(), in.readLong()));
+            }
+        } catch (IOException e) {
+            throw new IllegalArgumentException("Corrupt Space-Saving summary.", e);
+        }
+        return summary;
+    }
+}
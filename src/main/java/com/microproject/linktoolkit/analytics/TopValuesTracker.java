@@ -0,0 +1,224 @@
+package com.microproject.linktoolkit.analytics;
+
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.jdbc.core.JdbcTemplate;
+import org.springframework.jdbc.core.RowCallbackHandler;
+import org.springframework.stereotype.Component;
+import org.springframework.transaction.annotation.Propagation;
+import org.springframework.transaction.annotation.Transactional;
+
+import java.sql.PreparedStatement;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.Comparator;
+import java.util.EnumMap;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.TreeMap;
+import java.util.UUID;
+
+/**
+ * Tracks the most frequent referrers, devices and countries of every link with a {@link SpaceSaving} summary per
+ * (link, dimension), so "top N" is read from a handful of counters instead of grouping the link's whole history.
+ * <p>
+ * Each ingested batch is merged into the stored summaries inside the batch's transaction, so the summaries are
+ * checkpointed with every batch and survive restarts. Reads always go to the database, in the caller's transaction,
+ * so they are never older than the click watermark read before them; the {@link AnalyticsResponseCache} keeps
+ * the computed analytics in memory instead.
+ * </p>
+ */
+@Component
+@Slf4j
+public class TopValuesTracker {
+
+    private static final String LOCK_SQL =
+            "INSERT INTO link_top_values (link_id, dimension, summary) VALUES (?, ?, NULL) " +
+            "ON CONFLICT (link_id, dimension) DO UPDATE SET summary = link_top_values.summary";
+    private static final String SELECT_SQL_PREFIX =
+            "SELECT link_id, dimension, summary FROM link_top_values WHERE (link_id, dimension) IN (";
+    private static final String SELECT_LINK_SQL =
+            "SELECT dimension, summary FROM link_top_values WHERE link_id = ?";
+    private static final String UPDATE_SQL =
+            "UPDATE link_top_values SET summary = ? WHERE link_id = ? AND dimension = ?";
+    private static final String INSERT_SQL =
+            "INSERT INTO link_top_values (link_id, dimension, summary) VALUES (?, ?, ?)";
+
+    // Highest count first within each (link, dimension), so the first counters are the exact top values
+    private static final String REBUILD_SQL =
+            "SELECT link_id, dimension, dimension_value, SUM(clicks) FROM link_daily_dimension_stats " +
+            "GROUP BY link_id, dimension, dimension_value ORDER BY link_id, dimension, 4 DESC";
+    private static final int REBUILD_FETCH_SIZE = 10_000;
+    private static final int REBUILD_BATCH_SIZE = 500;
+
+    private final JdbcTemplate jdbcTemplate;
+    private final int capacity;
+
+    public TopValuesTracker(
+            JdbcTemplate jdbcTemplate,
+            @Value("${analytics.top-values.capacity:32}") int capacity
+    ) {
+        this.jdbcTemplate = jdbcTemplate;
+        this.capacity = capacity;
+    }
+
+    private record Key(UUID linkId, ClickDimension dimension) implements Comparable<Key> {
+        private static final Comparator<Key> ORDER =
+                Comparator.comparing(Key::linkId).thenComparing(Key::dimension);
+
+        @Override
+        public int compareTo(Key other) {
+            return ORDER.compare(this, other);
+        }
+    }
+
+    /**
+     * Reads all of a link's summaries with one query. Joins the caller's transaction, if any.
+     *
+     * @param linkId The link.
+     * @param n How many values to return per dimension.
+     * @return The link's n most frequent values of each dimension, highest count first, each with its error bound;
+     *         an empty list for dimensions without clicks.
+     */
+    public Map<ClickDimension, List<SpaceSaving.Counter>> top(UUID linkId, int n) {
+        Map<ClickDimension, List<SpaceSaving.Counter>> top = new EnumMap<>(ClickDimension.class);
+        for (ClickDimension dimension : ClickDimension.values()) {
+            top.put(dimension, List.of());
+        }
+        jdbcTemplate.query(SELECT_LINK_SQL, (RowCallbackHandler) rs -> {
+            Key key = new Key(linkId, ClickDimension.valueOf(rs.getString(1)));
+            top.put(key.dimension(), read(key, rs.getBytes(2)).top(n));
+        }, linkId);
+        return top;
+    }
+
+    /**
+     * Merges a batch of clicks into the stored summaries. Joins the caller's transaction.
+     * The summaries are locked in sorted order before being read, so concurrent batches cannot deadlock
+     * or overwrite each other's counts.
+     *
+     * @param clicks The enriched clicks that are being inserted.
+     */
+    @Transactional(propagation = Propagation.MANDATORY)
+    public void apply(List<ClickEvent> clicks) {
+        Map<Key, Map<String, Long>> counts = new TreeMap<>();
+        for (ClickEvent click : clicks) {
+            for (ClickDimension dimension : ClickDimension.values()) {
+                String value = dimension.valueOf(click);
+                if (value != null) {
+                    counts.computeIfAbsent(new Key(click.linkId(), dimension), key -> new HashMap<>())
+                            .merge(value, 1L, Long::sum);
+                }
+            }
+        }
+        if (counts.isEmpty()) {
+            return;
+        }
+
+        List<Key> keys = new ArrayList<>(counts.keySet());
+        jdbcTemplate.batchUpdate(LOCK_SQL, keys, keys.size(), (ps, key) -> {
+            ps.setObject(1, key.linkId());
+            ps.setString(2, key.dimension().name());
+        });
+
+        Map<Key, SpaceSaving> merged = new HashMap<>();
+        Object[] args = new Object[keys.size() * 2];
+        for (int i = 0; i < keys.size(); i++) {
+            args[2 * i] = keys.get(i).linkId();
+            args[2 * i + 1] = keys.get(i).dimension().name();
+        }
+        String sql = SELECT_SQL_PREFIX + String.join(", ", Collections.nCopies(keys.size(), "(?, ?)")) + ")";
+        jdbcTemplate.query(sql, (RowCallbackHandler) rs -> {
+            Key key = new Key(rs.getObject(1, UUID.class), ClickDimension.valueOf(rs.getString(2)));
+            merged.put(key, read(key, rs.getBytes(3)));
+        }, args);
+
+        for (Key key : keys) {
+            SpaceSaving summary = merged.computeIfAbsent(key, k -> new SpaceSaving(capacity));
+            // Largest counts first, so the batch's own rare values evict each other rather than its frequent ones
+            counts.get(key).entrySet().stream()
+                    .sorted(Map.Entry.<String, Long>comparingByValue().reversed())
+                    .forEach(entry -> summary.offer(entry.getKey(), entry.getValue()));
+        }
+        jdbcTemplate.batchUpdate(UPDATE_SQL, keys, keys.size(), (ps, key) -> {
+            ps.setBytes(1, merged.get(key).toBytes());
+            ps.setObject(2, key.linkId());
+            ps.setString(3, key.dimension().name());
+        });
+    }
+
+    /**
+     * Recomputes every summary from the daily dimension rollups. The rebuilt summaries hold the exact top values
+     * with no error. Joins the caller's transaction, if any.
+     */
+    @Transactional
+    public void rebuild() {
+        jdbcTemplate.update("DELETE FROM link_top_values");
+        SummaryRebuild summaries = new SummaryRebuild();
+        jdbcTemplate.query(connection -> {
+            PreparedStatement ps = connection.prepareStatement(REBUILD_SQL);
+            ps.setFetchSize(REBUILD_FETCH_SIZE);
+            return ps;
+        }, (RowCallbackHandler) rs -> summaries.add(
+                new Key(rs.getObject(1, UUID.class), ClickDimension.valueOf(rs.getString(2))),
+                rs.getString(3),
+                rs.getLong(4)));
+        summaries.finish();
+    }
+
+    private SpaceSaving read(Key key, byte[] stored) {
+        try {
+            return SpaceSaving.fromBytes(stored, capacity);
+        } catch (IllegalArgumentException e) {
+            // Starting the summary over beats failing the whole batch of clicks
+            log.warn("Replacing unreadable top values of link {} ({}). Error: {}",
+                    key.linkId(), key.dimension(), e.getMessage());
+            return new SpaceSaving(capacity);
+        }
+    }
+
+    /**
+     * Builds one summary at a time from the values of each (link, dimension), arriving highest count first,
+     * and inserts them in batches.
+     */
+    private final class SummaryRebuild {
+        private final List<Object[]> pending = new ArrayList<>(REBUILD_BATCH_SIZE);
+        private Key currentKey;
+        private SpaceSaving current;
+
+        void add(Key key, String value, long count) {
+            if (!key.equals(currentKey)) {
+                complete();
+                currentKey = key;
+                current = new SpaceSaving(capacity);
+            }
+            // Past the capacity every remaining value is rarer than all the monitored ones, so it can be left out
+            if (!current.isFull()) {
+                current.offer(value, count);
+            }
+        }
+
+        void finish() {
+            complete();
+            flush();
+        }
+
+        private void complete() {
+            if (currentKey == null) {
+                return;
+            }
+            pending.add(new Object[]{currentKey.linkId(), currentKey.dimension().name(), current.toBytes()});
+            if (pending.size() == REBUILD_BATCH_SIZE) {
+                flush();
+            }
+        }
+
+        private void flush() {
+            if (!pending.isEmpty()) {
+                jdbcTemplate.batchUpdate(INSERT_SQL, pending);
+                pending.clear();
+            }
+        }
+    }
+}
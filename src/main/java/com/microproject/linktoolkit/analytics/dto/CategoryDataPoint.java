@@ -3,7 +3,8 @@ package com.microproject.linktoolkit.analytics.dto;
 /**
  * Represents a single data point for a categorical chart (e.g., a slice of a pie chart).
  * @param name The name of the category (e.g., "google.com", "Desktop", "USA").
- * @param count The value for this category.
+ * @param count The value for this category. Counts are tracked approximately, so this may overstate it.
+ * @param error How much the count may overstate the true value, which is at least count - error (0 means exact).
  */
-public record CategoryDataPoint(String name, Long count) {
+public record CategoryDataPoint(String name, Long count, long error) {
 }
\ No newline at end of file
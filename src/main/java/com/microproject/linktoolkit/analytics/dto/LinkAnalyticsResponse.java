@@ -5,12 +5,15 @@ import java.util.List;
 /**
  * The main response DTO for the link analytics endpoint.
  * This structure is directly consumed by the frontend to build charts.
+ * {@code totalClicks} covers the link's whole life; {@code uniqueVisitors} and {@code clicksOverTime}
+ * cover the requested date range. Unique visitors (distinct IP and User-Agent pairs) are estimates.
  */
 public record LinkAnalyticsResponse(
         String id,
         String longUrl,
         String shortUrl,
         long totalClicks,
+        long uniqueVisitors,
         List<TimeSeriesDataPoint> clicksOverTime,
         List<CategoryDataPoint> referrers,
         List<CategoryDataPoint> devices,
@@ -7,6 +7,7 @@ import com.microproject.linktoolkit.exception.AliasAlreadyExistsException;
 import com.microproject.linktoolkit.exception.ResourceNotFoundException;
 import com.microproject.linktoolkit.link.LinkRepository;
 import com.microproject.linktoolkit.user.User;
+import com.microproject.linktoolkit.user.UserPrincipalCache;
 import com.microproject.linktoolkit.user.UserRepository;
 import com.microproject.linktoolkit.util.CookieUtil;
 import com.microproject.linktoolkit.util.JwtUtil;
@@ -29,6 +30,7 @@ public class AuthService {
     private final PasswordEncoder passwordEncoder;
     private final JwtUtil jwtUtil;
     private final AuthenticationManager authenticationManager;
+    private final UserPrincipalCache userPrincipalCache;
 
     @Value("${jwt.refresh.expiration.ms}")
     private long refreshExpirationMs;
@@ -57,6 +59,7 @@ public class AuthService {
         // Store the hash of the refresh token
         user.setRefreshTokenHash(passwordEncoder.encode(refreshToken));
         userRepository.save(user);
+        userPrincipalCache.evict(user.getEmail());
 
         // Set the refresh token in a secure HttpOnly cookie
         CookieUtil cookieUtil = new CookieUtil();
@@ -82,6 +85,7 @@ public class AuthService {
         // Store the hash of the refresh token
         user.setRefreshTokenHash(passwordEncoder.encode(refreshToken));
         userRepository.save(user);
+        userPrincipalCache.evict(user.getEmail());
 
         // Set the refresh token in a secure HttpOnly cookie
         CookieUtil cookieUtil = new CookieUtil();
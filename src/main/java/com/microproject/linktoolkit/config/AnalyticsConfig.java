@@ -2,20 +2,20 @@
 
 package com.microproject.linktoolkit.config;
 
-import com.maxmind.db.Reader;
-import com.maxmind.geoip2.DatabaseReader;
+import com.microproject.linktoolkit.analytics.CachingUserAgentParser;
+import com.microproject.linktoolkit.analytics.IpCountryIndex;
+import io.micrometer.core.instrument.MeterRegistry;
 import lombok.extern.slf4j.Slf4j;
 import org.springframework.beans.factory.annotation.Value;
 import org.springframework.context.annotation.Bean;
 import org.springframework.context.annotation.Configuration;
+import org.springframework.context.annotation.Lazy;
 import org.springframework.core.io.Resource;
-import org.springframework.util.FileCopyUtils;
 import ua_parser.Parser;
 
-import java.io.File;
-import java.io.FileOutputStream;
 import java.io.IOException;
 import java.io.InputStream;
+import java.util.concurrent.TimeUnit;
 
 @Configuration
 @Slf4j
@@ -24,33 +24,47 @@ public class AnalyticsConfig {
     @Value("${maxmind.geoip.database.path}")
     private Resource geoIpDatabaseResource;
 
+    @Value("${useragent.cache.max-size:10000}")
+    private long userAgentCacheMaxSize;
+
+    // Both beans are expensive to build and lazy: ClickEnricher loads them when it starts, in the background unless
+    // analytics.enrichment.background-loading=false, see ClickEnricher.
     @Bean
-    public DatabaseReader geoIpDatabaseReader() throws IOException {
-        // This bean provides the reader for the MaxMind GeoIP database.
+    @Lazy
+    public IpCountryIndex ipCountryIndex() throws IOException {
+        // This bean provides the country lookup built from the MaxMind GeoIP database.
         // It's configured to handle cases where the file might not be found.
         if (!geoIpDatabaseResource.exists()) {
             log.error("GeoIP database file not found at path: {}", geoIpDatabaseResource.getFilename());
             throw new IOException("GeoIP database file not found.");
         }
 
-        File tempDbFile = File.createTempFile("geolite2-", ".mmdb");
-        tempDbFile.deleteOnExit();
-
-        try (InputStream inputStream = geoIpDatabaseResource.getInputStream();
-            FileOutputStream outputStream = new FileOutputStream(tempDbFile)) {
-            FileCopyUtils.copy(inputStream, outputStream);
+        // Only the country of each network is kept, so the database itself is read once and discarded.
+        // A database on the filesystem (file:...) is memory-mapped; one inside the jar has to be read onto the heap.
+        long started = System.nanoTime();
+        IpCountryIndex index;
+        if (geoIpDatabaseResource.isFile()) {
+            index = IpCountryIndex.load(geoIpDatabaseResource.getFile());
+        } else {
+            try (InputStream inputStream = geoIpDatabaseResource.getInputStream()) {
+                index = IpCountryIndex.load(inputStream);
+            }
         }
 
-        log.info("GeoIP database copied to temporary file: {}", tempDbFile.getAbsolutePath());
-
-        return new DatabaseReader.Builder(tempDbFile)
-                .fileMode(Reader.FileMode.MEMORY_MAPPED)
-                .build();
+        log.info("GeoIP country index built in {} ms ({} IPv4 ranges, {} IPv6 ranges).",
+                TimeUnit.NANOSECONDS.toMillis(System.nanoTime() - started), index.ipv4RangeCount(), index.ipv6RangeCount());
+        return index;
     }
 
     @Bean
-    public Parser userAgentParser() throws IOException {
+    @Lazy
+    public Parser userAgentParser(MeterRegistry meterRegistry) {
         // This bean provides the parser for User-Agent strings.
-        return new Parser();
+        // The caching subclass memoizes device classification; swap in a plain Parser to disable it.
+        // Constructing it compiles all of uap's regexes.
+        long started = System.nanoTime();
+        Parser parser = new CachingUserAgentParser(meterRegistry, userAgentCacheMaxSize);
+        log.info("User-Agent parser built in {} ms.", TimeUnit.NANOSECONDS.toMillis(System.nanoTime() - started));
+        return parser;
     }
 }
\ No newline at end of file
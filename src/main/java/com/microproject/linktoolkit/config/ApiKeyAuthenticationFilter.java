@@ -1,6 +1,6 @@
 package com.microproject.linktoolkit.config;
 
-import com.microproject.linktoolkit.user.UserRepository;
+import com.microproject.linktoolkit.user.ApiKeyVerificationCache;
 import jakarta.servlet.FilterChain;
 import jakarta.servlet.ServletException;
 import jakarta.servlet.http.HttpServletRequest;
@@ -9,7 +9,6 @@ import lombok.RequiredArgsConstructor;
 import org.springframework.lang.NonNull;
 import org.springframework.security.authentication.UsernamePasswordAuthenticationToken;
 import org.springframework.security.core.context.SecurityContextHolder;
-import org.springframework.security.crypto.password.PasswordEncoder;
 import org.springframework.security.web.authentication.WebAuthenticationDetailsSource;
 import org.springframework.stereotype.Component;
 import org.springframework.web.filter.OncePerRequestFilter;
@@ -20,8 +19,7 @@ import java.io.IOException;
 @RequiredArgsConstructor
 public class ApiKeyAuthenticationFilter extends OncePerRequestFilter {
 
-    private final UserRepository userRepository;
-    private final PasswordEncoder passwordEncoder;
+    private final ApiKeyVerificationCache apiKeyVerificationCache;
 
     @Override
     protected void doFilterInternal(
@@ -47,19 +45,16 @@ public class ApiKeyAuthenticationFilter extends OncePerRequestFilter {
         String publicId = keyParts[0];
         String secretKey = keyParts[1];
 
-        // Find user by the public part of the key
-        userRepository.findByApiKeyPublicId(publicId).ifPresent(user -> {
-            // If user is found, securely compare the secret part with the stored hash
-            if (passwordEncoder.matches(secretKey, user.getApiKeyHash())) {
-                // Key is valid, create authentication token and set it in the context
-                UsernamePasswordAuthenticationToken authToken = new UsernamePasswordAuthenticationToken(
-                        user,
-                        null,
-                        user.getAuthorities()
-                );
-                authToken.setDetails(new WebAuthenticationDetailsSource().buildDetails(request));
-                SecurityContextHolder.getContext().setAuthentication(authToken);
-            }
+        // Verify the key (BCrypt only the first time this instance sees it) and find its owner
+        apiKeyVerificationCache.authenticate(publicId, secretKey).ifPresent(user -> {
+            // Key is valid, create authentication token and set it in the context
+            UsernamePasswordAuthenticationToken authToken = new UsernamePasswordAuthenticationToken(
+                    user,
+                    null,
+                    user.getAuthorities()
+            );
+            authToken.setDetails(new WebAuthenticationDetailsSource().buildDetails(request));
+            SecurityContextHolder.getContext().setAuthentication(authToken);
         });
 
         filterChain.doFilter(request, response);
@@ -0,0 +1,104 @@
+package com.microproject.linktoolkit.config;
+
+import org.springframework.jdbc.CannotGetJdbcConnectionException;
+import org.springframework.jdbc.datasource.DelegatingDataSource;
+
+import javax.sql.DataSource;
+import java.lang.reflect.InvocationHandler;
+import java.lang.reflect.InvocationTargetException;
+import java.lang.reflect.Proxy;
+import java.sql.Connection;
+import java.sql.SQLException;
+import java.util.concurrent.Semaphore;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicBoolean;
+
+/**
+ * Caps the number of threads that may hold a connection at once to the size of the connection pool.
+ * <p>
+ * With virtual threads there is no longer a request thread pool that implicitly limits how many requests
+ * reach the database, so thousands of virtual threads could pile up inside Hikari's borrow logic.
+ * A fair semaphore in front of the pool makes excess virtual threads park cheaply (semaphores don't pin the
+ * carrier thread) and fail fast with a clear error once the acquire timeout has passed.
+ * </p>
+ */
+public class ConcurrencyLimitedDataSource extends DelegatingDataSource {
+
+    private final Semaphore permits;
+    private final long acquireTimeoutMs;
+
+    public ConcurrencyLimitedDataSource(DataSource targetDataSource, int maxConcurrency, long acquireTimeoutMs) {
+        super(targetDataSource);
+        this.permits = new Semaphore(maxConcurrency, true);
+        this.acquireTimeoutMs = acquireTimeoutMs;
+    }
+
+    @Override
+    public Connection getConnection() throws SQLException {
+        acquirePermit();
+        try {
+            return releasingOnClose(super.getConnection());
+        } catch (SQLException | RuntimeException e) {
+            permits.release();
+            throw e;
+        }
+    }
+
+    @Override
+    public Connection getConnection(String username, String password) throws SQLException {
+        acquirePermit();
+        try {
+            return releasingOnClose(super.getConnection(username, password));
+        } catch (SQLException | RuntimeException e) {
+            permits.release();
+            throw e;
+        }
+    }
+
+    public int availablePermits() {
+        return permits.availablePermits();
+    }
+
+    public int queuedThreads() {
+        return permits.getQueueLength();
+    }
+
+    private void acquirePermit() {
+        try {
+            if (!permits.tryAcquire(acquireTimeoutMs, TimeUnit.MILLISECONDS)) {
+                throw new CannotGetJdbcConnectionException(
+                        "Timed out after " + acquireTimeoutMs + "ms waiting for a database connection permit");
+            }
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            throw new CannotGetJdbcConnectionException("Interrupted while waiting for a database connection permit");
+        }
+    }
+
+    /**
+     * Wraps the pooled connection so that returning it to the pool also returns the permit, exactly once.
+     */
+    private Connection releasingOnClose(Connection connection) {
+        AtomicBoolean released = new AtomicBoolean();
+        InvocationHandler handler = (proxy, method, args) -> {
+            if ("close".equals(method.getName()) && method.getParameterCount() == 0) {
+                try {
+                    return method.invoke(connection, args);
+                } catch (InvocationTargetException e) {
+                    throw e.getTargetException();
+                } finally {
+                    if (released.compareAndSet(false, true)) {
+                        permits.release();
+                    }
+                }
+            }
+            try {
+                return method.invoke(connection, args);
+            } catch (InvocationTargetException e) {
+                throw e.getTargetException();
+            }
+        };
+        return (Connection) Proxy.newProxyInstance(
+                Connection.class.getClassLoader(), new Class<?>[]{Connection.class}, handler);
+    }
+}
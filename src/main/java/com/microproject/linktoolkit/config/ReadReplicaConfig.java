@@ -0,0 +1,116 @@
+package com.microproject.linktoolkit.config;
+
+import com.zaxxer.hikari.HikariDataSource;
+import com.zaxxer.hikari.metrics.micrometer.MicrometerMetricsTrackerFactory;
+import io.micrometer.core.instrument.MeterRegistry;
+import io.micrometer.core.instrument.simple.SimpleMeterRegistry;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.beans.factory.ObjectProvider;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.beans.factory.config.BeanPostProcessor;
+import org.springframework.beans.factory.config.DestructionAwareBeanPostProcessor;
+import org.springframework.boot.autoconfigure.condition.ConditionalOnExpression;
+import org.springframework.boot.autoconfigure.transaction.TransactionManagerCustomizers;
+import org.springframework.context.annotation.Bean;
+import org.springframework.context.annotation.Configuration;
+import org.springframework.jdbc.datasource.LazyConnectionDataSourceProxy;
+import org.springframework.orm.jpa.JpaTransactionManager;
+import org.springframework.transaction.TransactionManager;
+
+import javax.sql.DataSource;
+import java.sql.SQLException;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+
+/**
+ * Sends read-only transactions to read replicas (datasource.replicas.urls), see {@link ReplicaRouting}.
+ * <p>
+ * The DataSource is wrapped in a {@link LazyConnectionDataSourceProxy}, which only fetches a connection when a
+ * transaction runs its first statement, by which point the transaction is known to be read-only or not. Read-only
+ * transactions get theirs from the {@link ReplicaRoutingDataSource}, everything else from the primary pool.
+ * </p>
+ */
+@Configuration
+@ConditionalOnExpression("!'${datasource.replicas.urls:}'.isBlank()")
+@Slf4j
+public class ReadReplicaConfig {
+
+    /**
+     * Wraps the DataSource once everything else has (it is unordered, see VirtualThreadConfig), and closes the
+     * pools behind it on shutdown. Static so that it doesn't force early initialization of this configuration class.
+     */
+    @Bean
+    public static BeanPostProcessor replicaRouter(
+            @Value("${datasource.replicas.urls}") String urls,
+            @Value("${datasource.replicas.username:${spring.datasource.username:}}") String username,
+            @Value("${datasource.replicas.password:${spring.datasource.password:}}") String password,
+            @Value("${datasource.replicas.pool-size:10}") int poolSize,
+            @Value("${datasource.replicas.connection-timeout.ms:2000}") long connectionTimeoutMs,
+            @Value("${datasource.replicas.max-lag.ms:1000}") long maxLagMs,
+            @Value("${datasource.replicas.analytics.max-lag.ms:60000}") long analyticsMaxLagMs,
+            @Value("${datasource.replicas.health-check.interval.ms:2000}") long healthCheckIntervalMs,
+            ObjectProvider<MeterRegistry> meterRegistry
+    ) {
+        return new DestructionAwareBeanPostProcessor() {
+            private ReplicaRoutingDataSource replicas;
+
+            @Override
+            public Object postProcessAfterInitialization(Object bean, String beanName) {
+                if (!"dataSource".equals(beanName) || !(bean instanceof DataSource primary)) {
+                    return bean;
+                }
+                MeterRegistry registry = meterRegistry.getIfAvailable(SimpleMeterRegistry::new);
+                List<HikariDataSource> pools = new ArrayList<>();
+                List<String> replicaUrls = Arrays.stream(urls.split(",")).map(String::trim).filter(url -> !url.isEmpty()).toList();
+                for (int i = 0; i < replicaUrls.size(); i++) {
+                    HikariDataSource pool = new HikariDataSource();
+                    pool.setPoolName("replica-" + (i + 1));
+                    pool.setJdbcUrl(replicaUrls.get(i));
+                    pool.setUsername(username);
+                    pool.setPassword(password);
+                    pool.setMaximumPoolSize(poolSize);
+                    pool.setConnectionTimeout(connectionTimeoutMs);
+                    pool.setReadOnly(true);
+                    // Start even if a replica is down; the health check keeps trying it
+                    pool.setInitializationFailTimeout(-1);
+                    pool.setMetricsTrackerFactory(new MicrometerMetricsTrackerFactory(registry));
+                    pools.add(pool);
+                }
+                replicas = new ReplicaRoutingDataSource(primary, pools, maxLagMs, analyticsMaxLagMs,
+                        healthCheckIntervalMs, registry);
+
+                LazyConnectionDataSourceProxy routing = new LazyConnectionDataSourceProxy(primary);
+                routing.setReadOnlyDataSource(replicas);
+                log.info("Routing read-only transactions to {} read replica(s).", pools.size());
+                return routing;
+            }
+
+            @Override
+            public boolean requiresDestruction(Object bean) {
+                return bean instanceof LazyConnectionDataSourceProxy && replicas != null;
+            }
+
+            // The wrapper hides the primary pool from Spring's inferred close(), so close it here
+            @Override
+            public void postProcessBeforeDestruction(Object bean, String beanName) {
+                replicas.close();
+                try {
+                    ((DataSource) bean).unwrap(HikariDataSource.class).close();
+                } catch (SQLException e) {
+                    log.warn("Could not close the primary connection pool.", e);
+                }
+            }
+        };
+    }
+
+    /**
+     * Replaces Boot's JpaTransactionManager with one that records where each transaction may read from.
+     */
+    @Bean
+    public JpaTransactionManager transactionManager(ObjectProvider<TransactionManagerCustomizers> customizers) {
+        JpaTransactionManager transactionManager = new ReplicaAwareJpaTransactionManager();
+        customizers.ifAvailable(c -> c.customize((TransactionManager) transactionManager));
+        return transactionManager;
+    }
+}
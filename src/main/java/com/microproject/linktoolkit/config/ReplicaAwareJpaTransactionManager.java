@@ -0,0 +1,31 @@
+package com.microproject.linktoolkit.config;
+
+import org.springframework.orm.jpa.JpaTransactionManager;
+import org.springframework.transaction.TransactionDefinition;
+
+/**
+ * Records the {@link ReplicaRouting} route of each transaction it begins, so that the routing DataSource can pick
+ * a replica when the transaction's connection is first used.
+ */
+public class ReplicaAwareJpaTransactionManager extends JpaTransactionManager {
+
+    @Override
+    protected void doBegin(Object transaction, TransactionDefinition definition) {
+        ReplicaRouting.begin(definition);
+        try {
+            super.doBegin(transaction, definition);
+        } catch (RuntimeException | Error e) {
+            ReplicaRouting.end();
+            throw e;
+        }
+    }
+
+    @Override
+    protected void doCleanupAfterCompletion(Object transaction) {
+        try {
+            super.doCleanupAfterCompletion(transaction);
+        } finally {
+            ReplicaRouting.end();
+        }
+    }
+}
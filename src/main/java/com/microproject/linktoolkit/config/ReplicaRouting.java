@@ -0,0 +1,85 @@
+package com.microproject.linktoolkit.config;
+
+import org.springframework.transaction.TransactionDefinition;
+import org.springframework.transaction.interceptor.TransactionAttribute;
+
+import java.util.ArrayDeque;
+import java.util.Collection;
+import java.util.Deque;
+import java.util.List;
+import java.util.function.Supplier;
+
+/**
+ * Where the read-only transactions of the current thread are sent when read replicas are configured
+ * ({@code datasource.replicas.urls}); without replicas every transaction runs on the primary and this has no effect.
+ * <p>
+ * Read-write transactions always run on the primary. Read-only transactions run on a replica that is at most
+ * {@code datasource.replicas.max-lag.ms} behind, or at most {@code datasource.replicas.analytics.max-lag.ms} behind
+ * when labelled {@link #ANALYTICS}. Read-only transactions that must see the latest writes are labelled
+ * {@link #PRIMARY}, e.g. {@code @Transactional(readOnly = true, label = ReplicaRouting.PRIMARY)}.
+ * </p>
+ */
+public final class ReplicaRouting {
+
+    /** Label for read-only transactions that tolerate the analytics replica lag. */
+    public static final String ANALYTICS = "replica:analytics";
+
+    /** Label for read-only transactions that must run on the primary. */
+    public static final String PRIMARY = "replica:primary";
+
+    enum Route {
+        REPLICA,
+        ANALYTICS_REPLICA,
+        PRIMARY
+    }
+
+    // One entry per transaction begun on this thread, innermost last
+    private static final ThreadLocal<Deque<Route>> ROUTES = ThreadLocal.withInitial(ArrayDeque::new);
+    private static final ThreadLocal<Boolean> FORCE_PRIMARY = new ThreadLocal<>();
+
+    private ReplicaRouting() {
+    }
+
+    /**
+     * Runs reads on the primary, e.g. to look again for a row that was just written and may not have reached
+     * the replicas yet. Applies to the transactions the reads begin, not to one that is already in progress.
+     */
+    public static <T> T onPrimary(Supplier<T> reads) {
+        Boolean previous = FORCE_PRIMARY.get();
+        FORCE_PRIMARY.set(Boolean.TRUE);
+        try {
+            return reads.get();
+        } finally {
+            FORCE_PRIMARY.set(previous);
+        }
+    }
+
+    static void begin(TransactionDefinition definition) {
+        ROUTES.get().push(routeOf(definition));
+    }
+
+    static void end() {
+        Deque<Route> routes = ROUTES.get();
+        routes.poll();
+        if (routes.isEmpty()) {
+            ROUTES.remove();
+        }
+    }
+
+    /**
+     * @return The route of the innermost transaction; the primary outside of transactions.
+     */
+    static Route current() {
+        Route route = ROUTES.get().peek();
+        return route != null ? route : Route.PRIMARY;
+    }
+
+    private static Route routeOf(TransactionDefinition definition) {
+        // Labels come from @Transactional; programmatic transactions have none
+        Collection<String> labels = definition instanceof TransactionAttribute attribute ? attribute.getLabels() : List.of();
+        if (!definition.isReadOnly() || FORCE_PRIMARY.get() != null || labels.contains(PRIMARY)) {
+            return Route.PRIMARY;
+        }
+        return labels.contains(ANALYTICS) ? Route.ANALYTICS_REPLICA : Route.REPLICA;
+    }
+}
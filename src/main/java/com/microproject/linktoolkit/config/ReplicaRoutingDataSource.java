@@ -0,0 +1,166 @@
+package com.microproject.linktoolkit.config;
+
+import com.zaxxer.hikari.HikariDataSource;
+import io.micrometer.core.instrument.Counter;
+import io.micrometer.core.instrument.Gauge;
+import io.micrometer.core.instrument.MeterRegistry;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.jdbc.datasource.AbstractDataSource;
+
+import javax.sql.DataSource;
+import java.sql.Connection;
+import java.sql.ResultSet;
+import java.sql.SQLException;
+import java.sql.SQLFeatureNotSupportedException;
+import java.sql.Statement;
+import java.util.List;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+
+/**
+ * Hands out connections for read-only transactions: from the read replicas in turn, skipping those that are down
+ * or further behind than the transaction's {@link ReplicaRouting} route allows, and from the primary if none is left.
+ * <p>
+ * A background check measures every replica's lag every {@code datasource.replicas.health-check.interval.ms}.
+ * The lag is 0 while a replica has replayed all the WAL it has received, and otherwise the time since the last
+ * transaction it replayed, so an idle primary does not make its replicas look stale. That only holds while the
+ * replica is receiving WAL, so a replica whose WAL receiver is not streaming from the primary fails the check; reading
+ * the receiver's status takes the pg_read_all_stats role. A replica that fails the check, or refuses a connection,
+ * is skipped until a later check succeeds.
+ * </p>
+ */
+@Slf4j
+public class ReplicaRoutingDataSource extends AbstractDataSource implements AutoCloseable {
+
+    // NULL while the WAL receiver is not streaming: the replica cannot tell how far behind it is
+    private static final String LAG_SQL =
+            "SELECT CASE WHEN NOT pg_is_in_recovery() THEN 0 " +
+            "WHEN NOT EXISTS (SELECT 1 FROM pg_stat_wal_receiver WHERE status = 'streaming') THEN NULL " +
+            "WHEN pg_last_wal_receive_lsn() = pg_last_wal_replay_lsn() THEN 0 " +
+            "ELSE COALESCE(EXTRACT(EPOCH FROM now() - pg_last_xact_replay_timestamp()) * 1000, 0) END";
+    private static final int HEALTH_CHECK_TIMEOUT_SECONDS = 2;
+
+    private final DataSource primary;
+    private final List<Replica> replicas;
+    private final long maxLagMs;
+    private final long analyticsMaxLagMs;
+    private final ScheduledExecutorService healthChecker;
+    private final AtomicInteger next = new AtomicInteger();
+    private final Counter primaryReads;
+
+    private static final class Replica {
+        final String name;
+        final HikariDataSource dataSource;
+        final Counter reads;
+        volatile boolean available;
+        volatile long lagMs = Long.MAX_VALUE;
+
+        Replica(String name, HikariDataSource dataSource, MeterRegistry meterRegistry) {
+            this.name = name;
+            this.dataSource = dataSource;
+            this.reads = meterRegistry.counter("db.replica.reads", "target", name);
+        }
+    }
+
+    /**
+     * @param primary Where reads go when no replica qualifies.
+     * @param replicaPools One pool per replica, named after it.
+     */
+    public ReplicaRoutingDataSource(
+            DataSource primary,
+            List<HikariDataSource> replicaPools,
+            long maxLagMs,
+            long analyticsMaxLagMs,
+            long healthCheckIntervalMs,
+            MeterRegistry meterRegistry
+    ) {
+        this.primary = primary;
+        this.replicas = replicaPools.stream().map(pool -> new Replica(pool.getPoolName(), pool, meterRegistry)).toList();
+        this.maxLagMs = maxLagMs;
+        this.analyticsMaxLagMs = analyticsMaxLagMs;
+        this.primaryReads = meterRegistry.counter("db.replica.reads", "target", "primary");
+        for (Replica replica : replicas) {
+            Gauge.builder("db.replica.lag", replica, r -> r.available ? r.lagMs : Double.NaN)
+                    .tag("replica", replica.name)
+                    .baseUnit("milliseconds")
+                    .register(meterRegistry);
+            Gauge.builder("db.replica.available", replica, r -> r.available ? 1 : 0)
+                    .tag("replica", replica.name)
+                    .register(meterRegistry);
+        }
+
+        // Replicas take reads once their first check has passed
+        this.healthChecker = Executors.newSingleThreadScheduledExecutor(
+                Thread.ofPlatform().daemon(true).name("replica-health").factory());
+        healthChecker.scheduleWithFixedDelay(this::checkHealth, 0, healthCheckIntervalMs, TimeUnit.MILLISECONDS);
+    }
+
+    @Override
+    public Connection getConnection() throws SQLException {
+        long allowedLagMs = switch (ReplicaRouting.current()) {
+            case REPLICA -> maxLagMs;
+            case ANALYTICS_REPLICA -> analyticsMaxLagMs;
+            case PRIMARY -> -1;
+        };
+        if (allowedLagMs >= 0 && !replicas.isEmpty()) {
+            int start = next.getAndIncrement();
+            for (int i = 0; i < replicas.size(); i++) {
+                Replica replica = replicas.get(Math.floorMod(start + i, replicas.size()));
+                if (!replica.available || replica.lagMs > allowedLagMs) {
+                    continue;
+                }
+                try {
+                    Connection connection = replica.dataSource.getConnection();
+                    replica.reads.increment();
+                    return connection;
+                } catch (SQLException e) {
+                    replica.available = false;
+                    log.warn("Read replica {} is unavailable, skipping it until the next health check. Error: {}",
+                            replica.name, e.getMessage());
+                }
+            }
+        }
+        primaryReads.increment();
+        return primary.getConnection();
+    }
+
+    @Override
+    public Connection getConnection(String username, String password) throws SQLException {
+        throw new SQLFeatureNotSupportedException("Replica connections use the configured credentials.");
+    }
+
+    private void checkHealth() {
+        for (Replica replica : replicas) {
+            try (Connection connection = replica.dataSource.getConnection();
+                 Statement statement = connection.createStatement()) {
+                statement.setQueryTimeout(HEALTH_CHECK_TIMEOUT_SECONDS);
+                try (ResultSet resultSet = statement.executeQuery(LAG_SQL)) {
+                    resultSet.next();
+                    long lagMs = resultSet.getLong(1);
+                    if (resultSet.wasNull()) {
+                        throw new SQLException("Its WAL receiver is not streaming from the primary.");
+                    }
+                    replica.lagMs = lagMs;
+                }
+                if (!replica.available) {
+                    log.info("Read replica {} is available (lag {} ms).", replica.name, replica.lagMs);
+                }
+                replica.available = true;
+            } catch (Exception e) {
+                if (replica.available) {
+                    log.warn("Read replica {} failed its health check. Error: {}", replica.name, e.getMessage());
+                }
+                replica.available = false;
+                replica.lagMs = Long.MAX_VALUE;
+            }
+        }
+    }
+
+    @Override
+    public void close() {
+        healthChecker.shutdownNow();
+        replicas.forEach(replica -> replica.dataSource.close());
+    }
+}
@@ -1,6 +1,7 @@
 package com.microproject.linktoolkit.config;
 
 import lombok.RequiredArgsConstructor;
+import org.springframework.beans.factory.annotation.Value;
 import org.springframework.context.annotation.Bean;
 import org.springframework.context.annotation.Configuration;
 import org.springframework.security.authentication.AuthenticationProvider;
@@ -20,6 +21,10 @@ public class SecurityConfig {
     private final ApiKeyAuthenticationFilter apiKeyAuthFilter;
     private final AuthenticationProvider authenticationProvider; // Inject the provider bean
 
+    // Actuator is served on its own port, which is not published; only requests to it may scrape metrics
+    @Value("${management.server.port:-1}")
+    private int managementPort;
+
     @Bean
     public SecurityFilterChain securityFilterChain(HttpSecurity http) throws Exception {
         http
@@ -29,12 +34,17 @@ public class SecurityConfig {
                                 "/",
                                 "/{alias}",
                                 "/api/health",
+                                "/actuator/health/**",
                                 "/api/auth/**",
                                 "/api/links",
                                 "/api/qrcode",
+                                "/api/qrcode/*",
+                                "/api/qrcode/*/status",
                                 "/v3/api-docs/**",
                                 "/swagger-ui/**"
                         ).permitAll()
+                        .requestMatchers(request -> managementPort > 0 && request.getLocalPort() == managementPort
+                                && "/actuator/prometheus".equals(request.getRequestURI())).permitAll()
                         .anyRequest().authenticated()
                 )
                 .sessionManagement(session -> session.sessionCreationPolicy(SessionCreationPolicy.STATELESS))
@@ -0,0 +1,89 @@
+package com.microproject.linktoolkit.config;
+
+import com.zaxxer.hikari.HikariDataSource;
+import io.micrometer.core.instrument.Gauge;
+import io.micrometer.core.instrument.MeterRegistry;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.beans.factory.ObjectProvider;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.beans.factory.config.BeanPostProcessor;
+import org.springframework.boot.autoconfigure.condition.ConditionalOnThreading;
+import org.springframework.boot.autoconfigure.thread.Threading;
+import org.springframework.context.annotation.Bean;
+import org.springframework.context.annotation.Configuration;
+import org.springframework.core.Ordered;
+
+/**
+ * Extra wiring for the opt-in virtual thread mode (spring.threads.virtual.enabled=true).
+ * <p>
+ * Spring Boot itself moves Tomcat request handling, the @Async executor and the @Scheduled scheduler onto
+ * virtual threads in that mode. This configuration adds what Boot doesn't: a connection-pool-aware limit on
+ * concurrent database access, and detection of virtual threads pinned to their carrier.
+ * </p>
+ */
+@Configuration
+@ConditionalOnThreading(Threading.VIRTUAL)
+@Slf4j
+public class VirtualThreadConfig {
+
+    private static final int DEFAULT_HIKARI_POOL_SIZE = 10;
+
+    /**
+     * Wraps the DataSource so that at most as many threads as the pool has connections can be inside it.
+     * Static so that it doesn't force early initialization of this configuration class.
+     */
+    @Bean
+    public static ConnectionPoolLimiter connectionPoolLimiter(
+            @Value("${virtual-threads.db.max-concurrency:0}") int maxConcurrency,
+            @Value("${virtual-threads.db.acquire-timeout.ms:5000}") long acquireTimeoutMs,
+            ObjectProvider<MeterRegistry> meterRegistry
+    ) {
+        return new ConnectionPoolLimiter(maxConcurrency, acquireTimeoutMs, meterRegistry);
+    }
+
+    @Bean
+    public VirtualThreadPinningMonitor virtualThreadPinningMonitor(
+            MeterRegistry meterRegistry,
+            @Value("${virtual-threads.pinning.threshold.ms:20}") long thresholdMs
+    ) {
+        return new VirtualThreadPinningMonitor(meterRegistry, thresholdMs);
+    }
+
+    /**
+     * Ordered so that it runs before unordered post-processors that wrap the DataSource further, such as the
+     * replica routing in {@link ReadReplicaConfig}, and still finds the Hikari pool itself.
+     */
+    record ConnectionPoolLimiter(
+            int maxConcurrency,
+            long acquireTimeoutMs,
+            ObjectProvider<MeterRegistry> meterRegistry
+    ) implements BeanPostProcessor, Ordered {
+
+        @Override
+        public Object postProcessAfterInitialization(Object bean, String beanName) {
+            if (!(bean instanceof HikariDataSource hikari)) {
+                return bean;
+            }
+            // 0 means "as many as the pool has connections". Hikari reports -1 until its config is validated,
+            // which happens when the pool starts, so fall back to Hikari's own default in that case.
+            int poolSize = hikari.getMaximumPoolSize() > 0 ? hikari.getMaximumPoolSize() : DEFAULT_HIKARI_POOL_SIZE;
+            int limit = maxConcurrency > 0 ? maxConcurrency : poolSize;
+            ConcurrencyLimitedDataSource limited = new ConcurrencyLimitedDataSource(hikari, limit, acquireTimeoutMs);
+
+            meterRegistry.ifAvailable(registry -> {
+                Gauge.builder("db.connection.permits.available", limited, ConcurrencyLimitedDataSource::availablePermits)
+                        .register(registry);
+                Gauge.builder("db.connection.permits.waiting", limited, ConcurrencyLimitedDataSource::queuedThreads)
+                        .description("Virtual threads parked waiting for a database connection")
+                        .register(registry);
+            });
+            log.info("Virtual thread mode: limiting concurrent database access to {} connections.", limit);
+            return limited;
+        }
+
+        @Override
+        public int getOrder() {
+            return Ordered.LOWEST_PRECEDENCE;
+        }
+    }
+}
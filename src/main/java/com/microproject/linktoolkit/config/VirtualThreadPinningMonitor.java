@@ -0,0 +1,75 @@
+package com.microproject.linktoolkit.config;
+
+import io.micrometer.core.instrument.Counter;
+import io.micrometer.core.instrument.MeterRegistry;
+import jdk.jfr.consumer.RecordedEvent;
+import jdk.jfr.consumer.RecordedFrame;
+import jdk.jfr.consumer.RecordingStream;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.beans.factory.DisposableBean;
+import org.springframework.beans.factory.InitializingBean;
+
+import java.time.Duration;
+import java.util.List;
+
+/**
+ * Reports virtual threads that stay pinned to their carrier thread, e.g. while blocking inside a
+ * synchronized block of a library. Pinned virtual threads hold a carrier (of which there are only as many
+ * as CPU cores), so a few of them can stall every other request.
+ * <p>
+ * Listens to the JDK Flight Recorder event jdk.VirtualThreadPinned in-process, logs the frame that pinned,
+ * and counts occurrences under jvm.threads.virtual.pinned. For ad-hoc debugging, -Djdk.tracePinnedThreads=short
+ * prints the same information to stdout.
+ * </p>
+ */
+@Slf4j
+public class VirtualThreadPinningMonitor implements InitializingBean, DisposableBean {
+
+    private static final String PINNED_EVENT = "jdk.VirtualThreadPinned";
+
+    private final Counter pinnedCounter;
+    private final long thresholdMs;
+    private RecordingStream recordingStream;
+
+    public VirtualThreadPinningMonitor(MeterRegistry meterRegistry, long thresholdMs) {
+        this.pinnedCounter = Counter.builder("jvm.threads.virtual.pinned")
+                .description("Virtual threads pinned to their carrier for longer than the threshold")
+                .register(meterRegistry);
+        this.thresholdMs = thresholdMs;
+    }
+
+    @Override
+    public void afterPropertiesSet() {
+        recordingStream = new RecordingStream();
+        recordingStream.enable(PINNED_EVENT).withThreshold(Duration.ofMillis(thresholdMs)).withStackTrace();
+        recordingStream.onEvent(PINNED_EVENT, this::onPinned);
+        recordingStream.startAsync();
+        log.info("Watching for virtual threads pinned longer than {}ms.", thresholdMs);
+    }
+
+    private void onPinned(RecordedEvent event) {
+        pinnedCounter.increment();
+        if (log.isWarnEnabled()) {
+            log.warn("Virtual thread pinned for {}ms at {}", event.getDuration().toMillis(), topFrame(event));
+        }
+    }
+
+    private static String topFrame(RecordedEvent event) {
+        if (event.getStackTrace() == null) {
+            return "<no stack trace>";
+        }
+        List<RecordedFrame> frames = event.getStackTrace().getFrames();
+        return frames.stream()
+                .filter(RecordedFrame::isJavaFrame)
+                .map(frame -> frame.getMethod().getType().getName() + "." + frame.getMethod().getName() + ":" + frame.getLineNumber())
+                .findFirst()
+                .orElse("<unknown>");
+    }
+
+    @Override
+    public void destroy() {
+        if (recordingStream != null) {
+            recordingStream.close();
+        }
+    }
+}
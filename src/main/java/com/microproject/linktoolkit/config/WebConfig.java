@@ -3,6 +3,7 @@ package com.microproject.linktoolkit.config;
 import org.springframework.beans.factory.annotation.Value;
 import org.springframework.context.annotation.Bean;
 import org.springframework.context.annotation.Configuration;
+import org.springframework.http.HttpHeaders;
 import org.springframework.web.servlet.config.annotation.CorsRegistry;
 import org.springframework.web.servlet.config.annotation.WebMvcConfigurer;
 
@@ -25,6 +26,7 @@ public class WebConfig {
                         .allowedOrigins(frontendUrl, docsUrl) // Allow requests from our frontend AND the docs site
                         .allowedMethods("GET", "POST", "PUT", "DELETE", "OPTIONS") // Allowed HTTP methods
                         .allowedHeaders("*") // Allow all headers
+                        .exposedHeaders(HttpHeaders.ETAG) // Let dashboards revalidate analytics with If-None-Match
                         .allowCredentials(true); // Allow cookies and authentication headers
             }
         };
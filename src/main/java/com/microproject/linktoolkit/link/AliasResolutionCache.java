@@ -0,0 +1,149 @@
+package com.microproject.linktoolkit.link;
+
+import com.github.benmanes.caffeine.cache.AsyncCache;
+import com.github.benmanes.caffeine.cache.Caffeine;
+import com.github.benmanes.caffeine.cache.Expiry;
+import com.microproject.linktoolkit.config.ReplicaRouting;
+import io.micrometer.core.instrument.MeterRegistry;
+import io.micrometer.core.instrument.binder.cache.CaffeineCacheMetrics;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.stereotype.Component;
+
+import java.time.Duration;
+import java.time.Instant;
+import java.util.Collection;
+import java.util.Optional;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CompletionException;
+
+/**
+ * In-process cache of alias -> (longUrl, linkId, expiresAt) sitting in front of the redirect lookup.
+ * <p>
+ * Backed by Caffeine, whose W-TinyLFU eviction keeps the frequently resolved (viral) aliases resident
+ * while one-off lookups are admitted only if they are likely to be requested again.
+ * Unknown aliases are cached as negative entries for a short time, and a link's own expiresAt
+ * acts as the natural TTL of its entry.
+ * </p>
+ * <p>
+ * Entries are futures, so the thread that misses queries the database outside of Caffeine's locks: a synchronous
+ * loader would run inside a synchronized block, which pins a virtual thread to its carrier for the whole query.
+ * </p>
+ * Entries of links that change are dropped through the {@link LinkChangeBus}, on every instance.
+ */
+@Component
+public class AliasResolutionCache implements LinkChangeListener {
+
+    // Marker stored for aliases that do not exist, so repeated 404s don't hit the database.
+    private static final ResolvedLink NOT_FOUND = new ResolvedLink(null, null, Instant.EPOCH);
+
+    private final LinkRepository linkRepository;
+    private final boolean readReplicas;
+    private final AsyncCache<String, ResolvedLink> cache;
+
+    public AliasResolutionCache(
+            LinkRepository linkRepository,
+            MeterRegistry meterRegistry,
+            @Value("${alias.cache.max-size:100000}") long maxSize,
+            @Value("${alias.cache.ttl.ms:600000}") long ttlMs,
+            @Value("${alias.cache.negative-ttl.ms:30000}") long negativeTtlMs,
+            @Value("#{!'${datasource.replicas.urls:}'.isBlank()}") boolean readReplicas
+    ) {
+        this.linkRepository = linkRepository;
+        this.readReplicas = readReplicas;
+        this.cache = Caffeine.newBuilder()
+                .maximumSize(maxSize)
+                .expireAfter(new LinkExpiry(Duration.ofMillis(ttlMs), Duration.ofMillis(negativeTtlMs)))
+                .recordStats()
+                .buildAsync();
+
+        // Publishes cache.gets{result=hit|miss}, cache.evictions, cache.size etc. tagged with cache=alias-resolution
+        CaffeineCacheMetrics.monitor(meterRegistry, cache.synchronous(), "alias-resolution");
+    }
+
+    /**
+     * Resolves an alias, consulting the database only on a cache miss.
+     * Concurrent misses for the same alias are coalesced into a single query.
+     *
+     * @param alias The short alias to resolve.
+     * @return The resolved link, or empty if no link has this alias.
+     */
+    public Optional<ResolvedLink> resolve(String alias) {
+        CompletableFuture<ResolvedLink> loading = new CompletableFuture<>();
+        CompletableFuture<ResolvedLink> entry = cache.get(alias, (key, executor) -> loading);
+        if (entry == loading) {
+            // This thread missed: load on it, with no lock held, while concurrent misses wait for the future
+            try {
+                loading.complete(load(alias));
+            } catch (Throwable t) {
+                // Errors too, or the threads waiting on the future would wait forever. The next request tries again.
+                loading.completeExceptionally(t);
+                cache.asMap().remove(alias, loading);
+                throw t;
+            }
+        }
+        ResolvedLink resolved;
+        try {
+            resolved = entry.join();
+        } catch (CompletionException e) {
+            throw e.getCause() instanceof RuntimeException cause ? cause : e;
+        }
+        return resolved == NOT_FOUND ? Optional.empty() : Optional.of(resolved);
+    }
+
+    /**
+     * Drops the entries of links that were created, updated or deleted, here or on another instance.
+     * Called after the change has committed, so a concurrent redirect can't re-cache the state from before it.
+     */
+    @Override
+    public void linksChanged(Collection<String> aliases) {
+        cache.synchronous().invalidateAll(aliases);
+    }
+
+    /**
+     * Drops every entry, e.g. after changes made by other instances may have been missed.
+     */
+    @Override
+    public void allLinksChanged() {
+        cache.synchronous().invalidateAll();
+    }
+
+    private ResolvedLink load(String alias) {
+        Optional<ResolvedLink> resolved = linkRepository.findResolvedByShortAlias(alias);
+        // The lookup may have run on a read replica that doesn't have a link created a moment ago yet.
+        // Check the primary before caching the alias as unknown; a hit comes from the replica as usual.
+        if (resolved.isEmpty() && readReplicas) {
+            resolved = ReplicaRouting.onPrimary(() -> linkRepository.findResolvedByShortAlias(alias));
+        }
+        return resolved.orElse(NOT_FOUND);
+    }
+
+    /**
+     * Expires live links no later than their own expiresAt, and caps every entry at a maximum TTL
+     * so that changes made by other instances are picked up even if the {@link LinkChangeBus} misses them.
+     */
+    private record LinkExpiry(Duration ttl, Duration negativeTtl) implements Expiry<String, ResolvedLink> {
+
+        @Override
+        public long expireAfterCreate(String alias, ResolvedLink link, long currentTime) {
+            if (link == NOT_FOUND) {
+                return negativeTtl.toNanos();
+            }
+            Duration remaining = Duration.between(Instant.now(), link.expiresAt());
+            if (remaining.isNegative() || remaining.isZero()) {
+                // Already expired but not yet cleaned up: the caller will treat it as not found.
+                return negativeTtl.toNanos();
+            }
+            return Math.min(remaining.toNanos(), ttl.toNanos());
+        }
+
+        @Override
+        public long expireAfterUpdate(String alias, ResolvedLink link, long currentTime, long currentDuration) {
+            return expireAfterCreate(alias, link, currentTime);
+        }
+
+        @Override
+        public long expireAfterRead(String alias, ResolvedLink link, long currentTime, long currentDuration) {
+            return currentDuration;
+        }
+    }
+}
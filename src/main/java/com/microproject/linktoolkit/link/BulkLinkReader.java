@@ -0,0 +1,208 @@
+package com.microproject.linktoolkit.link;
+
+import com.fasterxml.jackson.core.JsonProcessingException;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import com.microproject.linktoolkit.link.dto.CreateLinkRequest;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.InputStreamReader;
+import java.io.Reader;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.List;
+
+/**
+ * Reads link requests one line at a time from an NDJSON or CSV upload.
+ * <p>
+ * Only one line is held in memory at once and lines are capped at {@value #MAX_LINE_LENGTH} characters,
+ * so an upload of any size is read in constant memory. A line that cannot be parsed becomes a row carrying
+ * the error instead of failing the whole upload.
+ * </p>
+ * NDJSON lines are objects with the fields of {@link CreateLinkRequest}. CSV lines have the columns
+ * {@code longUrl,alias,expiry}, where alias and expiry may be left empty and a header line is optional.
+ */
+class BulkLinkReader {
+
+    enum Format { NDJSON, CSV }
+
+    static final int MAX_LINE_LENGTH = 8192;
+
+    private final Reader reader;
+    private final Format format;
+    private final ObjectMapper objectMapper;
+
+    private final char[] buffer = new char[8192];
+    private int position;
+    private int limit;
+    private boolean endOfInput;
+
+    private final StringBuilder line = new StringBuilder();
+    private long lineNumber;
+
+    BulkLinkReader(InputStream in, Format format, ObjectMapper objectMapper) {
+        this.reader = new InputStreamReader(in, StandardCharsets.UTF_8);
+        this.format = format;
+        this.objectMapper = objectMapper;
+    }
+
+    /**
+     * One line of the upload.
+     * @param line The 1-based line number in the upload.
+     * @param request The parsed request, or null if the line could not be parsed.
+     * @param error Why the line could not be parsed, or null.
+     */
+    record Row(long line, CreateLinkRequest request, String error) {
+    }
+
+    /**
+     * @return The next non-blank line, or null at the end of the upload.
+     */
+    Row next() throws IOException {
+        while (true) {
+            boolean truncated = readLine();
+            if (truncated) {
+                return new Row(lineNumber, null, "Line is longer than " + MAX_LINE_LENGTH + " characters.");
+            }
+            if (line.isEmpty() && endOfInput && position >= limit) {
+                return null;
+            }
+            if (line.toString().isBlank()) {
+                continue;
+            }
+            Row row = format == Format.NDJSON ? parseJson() : parseCsv();
+            if (row != null) {
+                return row;
+            }
+        }
+    }
+
+    private Row parseJson() {
+        try {
+            CreateLinkRequest request = objectMapper.readValue(line.toString(), CreateLinkRequest.class);
+            return new Row(lineNumber, request, null);
+        } catch (JsonProcessingException e) {
+            return new Row(lineNumber, null, "Line is not a valid JSON object.");
+        }
+    }
+
+    private Row parseCsv() {
+        List<String> fields = splitCsv(line);
+        if (fields == null) {
+            return new Row(lineNumber, null, "Line has an unterminated quoted field.");
+        }
+        if (lineNumber == 1 && "longUrl".equalsIgnoreCase(fields.get(0).trim())) {
+            // Header line
+            return null;
+        }
+        if (fields.size() > 3) {
+            return new Row(lineNumber, null, "Expected at most 3 columns: longUrl,alias,expiry.");
+        }
+        return new Row(lineNumber, new CreateLinkRequest(
+                field(fields, 0),
+                field(fields, 1),
+                field(fields, 2)
+        ), null);
+    }
+
+    private static String field(List<String> fields, int index) {
+        if (index >= fields.size()) {
+            return null;
+        }
+        String value = fields.get(index).trim();
+        return value.isEmpty() ? null : value;
+    }
+
+    /**
+     * Splits one CSV line into fields. Fields may be quoted, with "" standing for a quote inside a quoted field.
+     * Quoted fields cannot span lines.
+     *
+     * @return The fields, or null if a quoted field is not terminated.
+     */
+    static List<String> splitCsv(CharSequence text) {
+        List<String> fields = new ArrayList<>(3);
+        StringBuilder field = new StringBuilder();
+        boolean quoted = false;
+        for (int i = 0; i < text.length(); i++) {
+            char c = text.charAt(i);
+            if (quoted) {
+                if (c == '"') {
+                    if (i + 1 < text.length() && text.charAt(i + 1) == '"') {
+                        field.append('"');
+                        i++;
+                    } else {
+                        quoted = false;
+                    }
+                } else {
+                    field.append(c);
+                }
+            } else if (c == '"') {
+                quoted = true;
+            } else if (c == ',') {
+                fields.add(field.toString());
+                field.setLength(0);
+            } else {
+                field.append(c);
+            }
+        }
+        if (quoted) {
+            return null;
+        }
+        fields.add(field.toString());
+        return fields;
+    }
+
+    /**
+     * Reads the next line into {@link #line}, without the line terminator.
+     * @return true if the line was too long; the rest of it is skipped and {@link #line} is left empty.
+     */
+    private boolean readLine() throws IOException {
+        line.setLength(0);
+        lineNumber++;
+        boolean truncated = false;
+        while (true) {
+            if (position >= limit && !fill()) {
+                break;
+            }
+            int start = position;
+            while (position < limit && buffer[position] != '\n') {
+                position++;
+            }
+            if (!truncated) {
+                if (line.length() + (position - start) > MAX_LINE_LENGTH) {
+                    truncated = true;
+                    line.setLength(0);
+                } else {
+                    line.append(buffer, start, position - start);
+                }
+            }
+            if (position < limit) {
+                // Skip the '\n'
+                position++;
+                break;
+            }
+        }
+        if (!line.isEmpty() && line.charAt(line.length() - 1) == '\r') {
+            line.setLength(line.length() - 1);
+        }
+        if (lineNumber == 1 && !line.isEmpty() && line.charAt(0) == '\uFEFF') {
+            // Byte order mark, as written by spreadsheet exports
+            line.deleteCharAt(0);
+        }
+        return truncated;
+    }
+
+    private boolean fill() throws IOException {
+        if (endOfInput) {
+            return false;
+        }
+        int read = reader.read(buffer, 0, buffer.length);
+        if (read < 0) {
+            endOfInput = true;
+            return false;
+        }
+        position = 0;
+        limit = read;
+        return true;
+    }
+}
@@ -0,0 +1,294 @@
+package com.microproject.linktoolkit.link;
+
+import com.fasterxml.jackson.core.JsonEncoding;
+import com.fasterxml.jackson.core.JsonGenerator;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import com.microproject.linktoolkit.link.dto.BulkLinkResult;
+import com.microproject.linktoolkit.link.dto.CreateLinkRequest;
+import com.microproject.linktoolkit.user.User;
+import com.microproject.linktoolkit.user.UserRepository;
+import com.microproject.linktoolkit.util.AliasGenerator;
+import io.micrometer.core.instrument.Counter;
+import io.micrometer.core.instrument.MeterRegistry;
+import jakarta.validation.ConstraintViolation;
+import jakarta.validation.Validator;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.jdbc.core.JdbcTemplate;
+import org.springframework.stereotype.Service;
+import org.springframework.transaction.support.TransactionTemplate;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.sql.Timestamp;
+import java.time.Instant;
+import java.time.LocalDate;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.Iterator;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.UUID;
+import java.util.stream.Collectors;
+
+/**
+ * Creates links from a streamed NDJSON or CSV upload.
+ * <p>
+ * The upload is read and answered in batches of {@code links.bulk.batch-size} lines: each batch is validated,
+ * gets its generated aliases and expiries in one go, is inserted with a single multi-row statement in its own
+ * transaction, and its per-line results are written and flushed before the next batch is read.
+ * Memory use is bounded by one batch, whatever the size of the upload.
+ * </p>
+ */
+@Service
+@Slf4j
+public class BulkLinkService {
+
+    // NOTE: ON CONFLICT / RETURNING are PostgreSQL syntax, like the other native SQL in this project.
+    private static final String INSERT_LINKS_SQL_PREFIX =
+            "INSERT INTO links (id, short_alias, long_url, user_id, expires_at, created_at) VALUES ";
+    private static final String INSERT_LINKS_SQL_ROW = "(?, ?, ?, ?, ?, ?)";
+    private static final String INSERT_LINKS_SQL_SUFFIX = " ON CONFLICT (short_alias) DO NOTHING RETURNING short_alias";
+
+    // PostgreSQL accepts at most 32767 bind parameters per statement, and each row binds 6.
+    static final int MAX_BATCH_SIZE = 5000;
+
+    private final LinkService linkService;
+    private final UserRepository userRepository;
+    private final AliasGenerator aliasGenerator;
+    private final LinkChangeBus linkChangeBus;
+    private final JdbcTemplate jdbcTemplate;
+    private final TransactionTemplate transactionTemplate;
+    private final Validator validator;
+    private final ObjectMapper objectMapper;
+    private final int batchSize;
+    private final Counter createdCounter;
+    private final Counter failedCounter;
+
+    @Value("${app.base-url}")
+    private String baseUrl;
+
+    public BulkLinkService(
+            LinkService linkService,
+            UserRepository userRepository,
+            AliasGenerator aliasGenerator,
+            LinkChangeBus linkChangeBus,
+            JdbcTemplate jdbcTemplate,
+            TransactionTemplate transactionTemplate,
+            Validator validator,
+            ObjectMapper objectMapper,
+            MeterRegistry meterRegistry,
+            @Value("${links.bulk.batch-size:500}") int batchSize
+    ) {
+        if (batchSize < 1 || batchSize > MAX_BATCH_SIZE) {
+            throw new IllegalArgumentException("links.bulk.batch-size must be between 1 and " + MAX_BATCH_SIZE + ".");
+        }
+        this.linkService = linkService;
+        this.userRepository = userRepository;
+        this.aliasGenerator = aliasGenerator;
+        this.linkChangeBus = linkChangeBus;
+        this.jdbcTemplate = jdbcTemplate;
+        this.transactionTemplate = transactionTemplate;
+        this.validator = validator;
+        this.objectMapper = objectMapper;
+        this.batchSize = batchSize;
+        this.createdCounter = meterRegistry.counter("links.bulk.rows", "result", "created");
+        this.failedCounter = meterRegistry.counter("links.bulk.rows", "result", "failed");
+    }
+
+    /**
+     * Creates one link per line of the upload and writes one {@link BulkLinkResult} per line as NDJSON.
+     * Lines that fail validation are reported and skipped; they never abort the upload. If a batch cannot be
+     * written at all, a final result for its first line reports that the upload stopped there; every line
+     * before it has been committed.
+     *
+     * @param in The upload.
+     * @param format Whether the upload is NDJSON or CSV.
+     * @param userEmail The authenticated owner of the new links.
+     * @param out Where the results are streamed to.
+     */
+    public void createLinks(InputStream in, BulkLinkReader.Format format, String userEmail, OutputStream out) throws IOException {
+        User user = userRepository.findByEmail(userEmail)
+                .orElseThrow(() -> new IllegalStateException("Authenticated user not found in database."));
+
+        BulkLinkReader reader = new BulkLinkReader(in, format, objectMapper);
+        JsonGenerator generator = objectMapper.getFactory().createGenerator(out, JsonEncoding.UTF8);
+        // One result per line, as NDJSON
+        generator.setRootValueSeparator(null);
+
+        List<BulkLinkReader.Row> batch = new ArrayList<>(batchSize);
+        long lines = 0;
+        BulkLinkReader.Row row;
+        do {
+            row = reader.next();
+            if (row != null) {
+                batch.add(row);
+            }
+            if (batch.size() == batchSize || (row == null && !batch.isEmpty())) {
+                List<BulkLinkResult> results;
+                try {
+                    results = processBatch(batch, user.getId());
+                } catch (RuntimeException e) {
+                    log.error("Bulk link creation for {} stopped at line {}.", userEmail, batch.get(0).line(), e);
+                    writeResult(generator, BulkLinkResult.failed(batch.get(0).line(),
+                            "Could not create this batch of links. Nothing from this line onwards was created."));
+                    generator.flush();
+                    return;
+                }
+                for (BulkLinkResult result : results) {
+                    writeResult(generator, result);
+                    (result.error() == null ? createdCounter : failedCounter).increment();
+                }
+                lines += results.size();
+                // Let the client see each batch as soon as it is committed
+                generator.flush();
+                batch.clear();
+            }
+        } while (row != null);
+
+        log.info("Bulk link creation for {} processed {} lines.", userEmail, lines);
+    }
+
+    private List<BulkLinkResult> processBatch(List<BulkLinkReader.Row> batch, UUID userId) {
+        BulkLinkResult[] results = new BulkLinkResult[batch.size()];
+        List<PendingLink> customAliased = new ArrayList<>();
+        List<PendingLink> generated = new ArrayList<>();
+
+        // All lines of a batch share one clock reading, so each distinct expiry is computed once
+        LocalDate today = LocalDate.now();
+        Map<String, Instant> expiries = new HashMap<>();
+        Set<String> aliasesInBatch = new HashSet<>();
+
+        for (int i = 0; i < batch.size(); i++) {
+            BulkLinkReader.Row row = batch.get(i);
+            String error = row.error() != null ? row.error() : validate(row.request());
+            if (error != null) {
+                results[i] = BulkLinkResult.failed(row.line(), error);
+                continue;
+            }
+            CreateLinkRequest request = row.request();
+            String alias = request.alias() == null || request.alias().isBlank() ? null : request.alias();
+            try {
+                if (alias != null) {
+                    linkService.checkCustomAlias(alias);
+                    if (!aliasesInBatch.add(alias)) {
+                        throw new IllegalArgumentException("Alias '" + alias + "' is used by an earlier line of this upload.");
+                    }
+                }
+                String expiry = request.expiry() == null ? "" : request.expiry();
+                Instant expiresAt = expiries.get(expiry);
+                if (expiresAt == null) {
+                    expiresAt = linkService.determineExpiry(expiry, today);
+                    expiries.put(expiry, expiresAt);
+                }
+                PendingLink link = new PendingLink(i, row.line(), alias, request.longUrl(), expiresAt);
+                (alias != null ? customAliased : generated).add(link);
+            } catch (RuntimeException e) {
+                results[i] = BulkLinkResult.failed(row.line(), e.getMessage());
+            }
+        }
+
+        transactionTemplate.executeWithoutResult(status -> {
+            Timestamp createdAt = Timestamp.from(Instant.now());
+
+            // Custom aliases that are already taken are skipped by the insert and reported
+            Set<String> inserted = insert(customAliased, userId, createdAt);
+            for (PendingLink link : customAliased) {
+                if (inserted.contains(link.alias)) {
+                    results[link.index] = created(link);
+                } else {
+                    results[link.index] = BulkLinkResult.failed(link.line, "Alias '" + link.alias + "' is already taken.");
+                }
+            }
+
+            // Generated aliases are unique by construction; only a legacy alias could clash, and then we just draw again
+            List<PendingLink> pending = generated;
+            while (!pending.isEmpty()) {
+                Iterator<String> aliases = aliasGenerator.generate(pending.size()).iterator();
+                pending.forEach(link -> link.alias = aliases.next());
+                inserted = insert(pending, userId, createdAt);
+                List<PendingLink> clashed = new ArrayList<>();
+                for (PendingLink link : pending) {
+                    if (inserted.contains(link.alias)) {
+                        results[link.index] = created(link);
+                    } else {
+                        clashed.add(link);
+                    }
+                }
+                pending = clashed;
+            }
+
+        });
+
+        return List.of(results);
+    }
+
+    /**
+     * Inserts the links with one multi-row statement, skipping those whose alias is already taken.
+     * @return The aliases that were inserted.
+     */
+    private Set<String> insert(List<PendingLink> links, UUID userId, Timestamp createdAt) {
+        if (links.isEmpty()) {
+            return Set.of();
+        }
+        String sql = INSERT_LINKS_SQL_PREFIX
+                + String.join(", ", Collections.nCopies(links.size(), INSERT_LINKS_SQL_ROW))
+                + INSERT_LINKS_SQL_SUFFIX;
+        Object[] args = new Object[links.size() * 6];
+        int i = 0;
+        for (PendingLink link : links) {
+            args[i++] = UUID.randomUUID();
+            args[i++] = link.alias;
+            args[i++] = link.longUrl;
+            args[i++] = userId;
+            args[i++] = Timestamp.from(link.expiresAt);
+            args[i++] = createdAt;
+        }
+        return new HashSet<>(jdbcTemplate.queryForList(sql, String.class, args));
+    }
+
+    private String validate(CreateLinkRequest request) {
+        Set<ConstraintViolation<CreateLinkRequest>> violations = validator.validate(request);
+        if (violations.isEmpty()) {
+            return null;
+        }
+        return violations.stream()
+                .map(ConstraintViolation::getMessage)
+                .sorted()
+                .collect(Collectors.joining(" "));
+    }
+
+    private BulkLinkResult created(PendingLink link) {
+        // The alias may be cached as "not found" from an earlier lookup; published once the batch commits
+        linkChangeBus.publish(link.alias);
+        return BulkLinkResult.created(link.line, baseUrl + "/" + link.alias, link.longUrl, link.expiresAt);
+    }
+
+    private void writeResult(JsonGenerator generator, BulkLinkResult result) throws IOException {
+        generator.writeObject(result);
+        generator.writeRaw('\n');
+    }
+
+    /**
+     * A validated line waiting to be inserted. The alias of a generated link is set just before its insert.
+     */
+    private static final class PendingLink {
+        private final int index;
+        private final long line;
+        private String alias;
+        private final String longUrl;
+        private final Instant expiresAt;
+
+        private PendingLink(int index, long line, String alias, String longUrl, Instant expiresAt) {
+            this.index = index;
+            this.line = line;
+            this.alias = alias;
+            this.longUrl = longUrl;
+            this.expiresAt = expiresAt;
+        }
+    }
+}
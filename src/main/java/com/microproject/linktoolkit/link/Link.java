@@ -24,7 +24,13 @@ import java.util.UUID;
         // We explicitly define indexes here for performance, matching our schema design.
         @Index(name = "idx_links_short_alias", columnList = "short_alias", unique = true),
         @Index(name = "idx_links_user_id", columnList = "user_id"),
-        @Index(name = "idx_links_anonymous_session_id", columnList = "anonymous_session_id")
+        // Serves the keyset-paginated link listing (user_id = ? ORDER BY created_at DESC, id DESC).
+        @Index(name = "idx_links_user_id_created_at", columnList = "user_id, created_at, id"),
+        @Index(name = "idx_links_anonymous_session_id", columnList = "anonymous_session_id"),
+        // Lets the expired-link cleanup find its next batch without scanning the table.
+        @Index(name = "idx_links_expires_at", columnList = "expires_at"),
+        // Lets the QR code queue find PENDING links, oldest first, without scanning the table.
+        @Index(name = "idx_links_qr_code_status_created_at", columnList = "qr_code_status, created_at")
 })
 public class Link {
 
@@ -51,6 +57,11 @@ public class Link {
     @Column(name = "qr_code_path", length = 512)
     private String qrCodePath;
 
+    // Set while the QR code is generated asynchronously; qrCodePath is only filled in once it is READY.
+    @Enumerated(EnumType.STRING)
+    @Column(name = "qr_code_status", length = 16)
+    private QrCodeStatus qrCodeStatus;
+
     @Column(name = "expires_at", nullable = false)
     private Instant expiresAt;
 
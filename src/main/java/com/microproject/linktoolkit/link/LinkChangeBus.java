@@ -0,0 +1,357 @@
+package com.microproject.linktoolkit.link;
+
+import io.micrometer.core.instrument.Counter;
+import io.micrometer.core.instrument.Gauge;
+import io.micrometer.core.instrument.MeterRegistry;
+import lombok.extern.slf4j.Slf4j;
+import org.postgresql.PGConnection;
+import org.postgresql.PGNotification;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.context.SmartLifecycle;
+import org.springframework.jdbc.core.JdbcTemplate;
+import org.springframework.jdbc.core.RowCallbackHandler;
+import org.springframework.stereotype.Component;
+import org.springframework.transaction.support.TransactionSynchronization;
+import org.springframework.transaction.support.TransactionSynchronizationManager;
+
+import java.nio.charset.StandardCharsets;
+import java.sql.Connection;
+import java.sql.DriverManager;
+import java.sql.SQLException;
+import java.sql.Statement;
+import java.util.Collection;
+import java.util.LinkedHashSet;
+import java.util.List;
+import java.util.Properties;
+import java.util.Set;
+import java.util.UUID;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Tells every instance which links changed, so that in-memory state about them ({@link LinkChangeListener}s such as
+ * the {@link AliasResolutionCache}) doesn't go stale on the other instances behind the load balancer.
+ * <p>
+ * Changes are published with PostgreSQL's NOTIFY on the {@code link_changes} channel, so no extra infrastructure is
+ * needed. A change published inside a transaction is sent when the transaction commits, and not at all if it rolls
+ * back; all aliases of one transaction travel in as few notifications as fit the 8000 byte payload limit.
+ * Every instance LISTENs on a dedicated connection, gathers what arrives within {@code link-changes.coalesce.ms}
+ * into one batch and hands it to the listeners. The local listeners are called right after the commit instead.
+ * </p>
+ * <p>
+ * Notifications sent while an instance isn't listening are lost, so after reconnecting it drops all of its state
+ * ({@link LinkChangeListener#allLinksChanged()}). On databases other than PostgreSQL, and with
+ * {@code link-changes.enabled=false}, only the local listeners are told.
+ * </p>
+ */
+@Component
+@Slf4j
+public class LinkChangeBus implements SmartLifecycle {
+
+    private static final String CHANNEL = "link_changes";
+    private static final String NOTIFY_SQL = "SELECT pg_notify('" + CHANNEL + "', ?)";
+    // PostgreSQL rejects payloads of 8000 bytes or more; aliases are ASCII, at most 50 characters
+    private static final int MAX_PAYLOAD_BYTES = 7900;
+    // How long the listener waits for notifications before checking whether it should stop
+    private static final int POLL_TIMEOUT_MS = 1000;
+    // A quiet connection is checked this often, since a dead one is otherwise only noticed on the next notification
+    private static final long KEEPALIVE_INTERVAL_NANOS = TimeUnit.SECONDS.toNanos(10);
+    private static final String SOCKET_TIMEOUT_SECONDS = "30";
+
+    // Start before the web server accepts requests and stop after it has stopped, like the click pipeline.
+    private static final int PHASE = SmartLifecycle.DEFAULT_PHASE - 4096;
+
+    private final JdbcTemplate jdbcTemplate;
+    private final List<LinkChangeListener> listeners;
+    private final String url;
+    private final String username;
+    private final String password;
+    private final boolean enabled;
+    private final long coalesceNanos;
+    private final long reconnectBackoffMs;
+    private final long maxReconnectBackoffMs;
+    // Prefixes every payload, so an instance can skip its own notifications
+    private final String instanceId = UUID.randomUUID().toString();
+    private final String ownPrefix = instanceId + ":";
+
+    private final Counter publishedCounter;
+    private final Counter receivedCounter;
+    private final Counter fullRefreshCounter;
+
+    private volatile boolean running;
+    private volatile boolean listening;
+    private Thread listener;
+
+    public LinkChangeBus(
+            JdbcTemplate jdbcTemplate,
+            List<LinkChangeListener> listeners,
+            MeterRegistry meterRegistry,
+            @Value("${spring.datasource.url:}") String url,
+            @Value("${spring.datasource.username:}") String username,
+            @Value("${spring.datasource.password:}") String password,
+            @Value("${link-changes.enabled:true}") boolean enabled,
+            @Value("${link-changes.coalesce.ms:50}") long coalesceMs,
+            @Value("${link-changes.reconnect.backoff.ms:1000}") long reconnectBackoffMs,
+            @Value("${link-changes.reconnect.max-backoff.ms:30000}") long maxReconnectBackoffMs
+    ) {
+        this.jdbcTemplate = jdbcTemplate;
+        this.listeners = listeners;
+        this.url = url;
+        this.username = username;
+        this.password = password;
+        this.enabled = enabled && url.startsWith("jdbc:postgresql:");
+        this.coalesceNanos = TimeUnit.MILLISECONDS.toNanos(coalesceMs);
+        this.reconnectBackoffMs = Math.max(1, reconnectBackoffMs);
+        this.maxReconnectBackoffMs = Math.max(this.reconnectBackoffMs, maxReconnectBackoffMs);
+
+        this.publishedCounter = meterRegistry.counter("link.changes.published");
+        this.receivedCounter = meterRegistry.counter("link.changes.received");
+        this.fullRefreshCounter = meterRegistry.counter("link.changes.full-refreshes");
+        Gauge.builder("link.changes.listening", this, bus -> bus.listening ? 1 : 0)
+                .description("1 while this instance receives the link changes of other instances")
+                .register(meterRegistry);
+    }
+
+    /**
+     * Publishes that a link was created, updated or deleted; see {@link #publish(Collection)}.
+     *
+     * @param alias The alias of the link.
+     */
+    public void publish(String alias) {
+        publish(List.of(alias));
+    }
+
+    /**
+     * Publishes that links were created, updated or deleted. Inside a transaction the change is published once it
+     * commits, so that no instance reloads the state from before the commit; otherwise it is published immediately.
+     *
+     * @param aliases The aliases of the links.
+     */
+    public void publish(Collection<String> aliases) {
+        if (aliases.isEmpty()) {
+            return;
+        }
+        if (!TransactionSynchronizationManager.isSynchronizationActive()) {
+            try {
+                notifyOtherInstances(aliases);
+            } catch (RuntimeException e) {
+                // The change itself is committed; the other instances catch up when their entries expire
+                log.warn("Could not publish changes to {} link(s). Error: {}", aliases.size(), e.getMessage());
+            }
+            notifyListeners(aliases);
+            return;
+        }
+        // One pending set per transaction, however many links it changes
+        for (TransactionSynchronization synchronization : TransactionSynchronizationManager.getSynchronizations()) {
+            if (synchronization instanceof PendingChanges pending) {
+                pending.aliases.addAll(aliases);
+                return;
+            }
+        }
+        PendingChanges pending = new PendingChanges();
+        pending.aliases.addAll(aliases);
+        TransactionSynchronizationManager.registerSynchronization(pending);
+    }
+
+    /**
+     * The changes of the current transaction. NOTIFY is itself transactional, so the notifications are sent on the
+     * transaction's connection just before it commits, and delivered by PostgreSQL once it has.
+     */
+    private final class PendingChanges implements TransactionSynchronization {
+        final Set<String> aliases = new LinkedHashSet<>();
+
+        @Override
+        public void beforeCommit(boolean readOnly) {
+            notifyOtherInstances(aliases);
+        }
+
+        @Override
+        public void afterCommit() {
+            notifyListeners(aliases);
+        }
+    }
+
+    private void notifyOtherInstances(Collection<String> aliases) {
+        if (!enabled) {
+            return;
+        }
+        StringBuilder payload = new StringBuilder(instanceId);
+        int prefixLength = payload.length();
+        for (String alias : aliases) {
+            if (payload.length() + 1 + alias.getBytes(StandardCharsets.UTF_8).length > MAX_PAYLOAD_BYTES) {
+                sendNotification(payload.toString());
+                payload.setLength(prefixLength);
+            }
+            payload.append(payload.length() == prefixLength ? ':' : ',').append(alias);
+        }
+        sendNotification(payload.toString());
+        publishedCounter.increment(aliases.size());
+    }
+
+    private void sendNotification(String payload) {
+        jdbcTemplate.query(NOTIFY_SQL, (RowCallbackHandler) rs -> {
+        }, payload);
+    }
+
+    private void notifyListeners(Collection<String> aliases) {
+        for (LinkChangeListener changeListener : listeners) {
+            try {
+                changeListener.linksChanged(aliases);
+            } catch (RuntimeException e) {
+                log.error("Link change listener {} failed.", changeListener.getClass().getSimpleName(), e);
+            }
+        }
+    }
+
+    private void refreshListeners() {
+        fullRefreshCounter.increment();
+        for (LinkChangeListener changeListener : listeners) {
+            try {
+                changeListener.allLinksChanged();
+            } catch (RuntimeException e) {
+                log.error("Link change listener {} failed.", changeListener.getClass().getSimpleName(), e);
+            }
+        }
+    }
+
+    /**
+     * Keeps a connection LISTENing until the bus stops, reconnecting with exponential backoff whenever it is lost.
+     */
+    private void listenLoop() {
+        long backoffMs = reconnectBackoffMs;
+        // Nothing is cached before the first connection, so only later connections need a full refresh
+        boolean missedChanges = false;
+        while (running) {
+            try (Connection connection = connect()) {
+                try (Statement statement = connection.createStatement()) {
+                    statement.execute("LISTEN " + CHANNEL);
+                }
+                listening = true;
+                backoffMs = reconnectBackoffMs;
+                if (missedChanges) {
+                    log.info("Listening for link changes again; dropping all cached link state.");
+                    refreshListeners();
+                } else {
+                    log.info("Listening for link changes of other instances.");
+                }
+                receive(connection);
+            } catch (SQLException e) {
+                if (!running) {
+                    break;
+                }
+                log.warn("Not listening for link changes, retrying in {} ms. Error: {}", backoffMs, e.getMessage());
+            } finally {
+                listening = false;
+                missedChanges = true;
+            }
+            if (!running) {
+                break;
+            }
+            try {
+                Thread.sleep(backoffMs);
+            } catch (InterruptedException e) {
+                break;
+            }
+            backoffMs = Math.min(maxReconnectBackoffMs, backoffMs * 2);
+        }
+    }
+
+    private Connection connect() throws SQLException {
+        Properties properties = new Properties();
+        properties.setProperty("user", username);
+        properties.setProperty("password", password);
+        properties.setProperty("ApplicationName", "linktoolkit-link-changes");
+        // A keepalive query must not hang on a half-open connection
+        properties.setProperty("socketTimeout", SOCKET_TIMEOUT_SECONDS);
+        return DriverManager.getConnection(url, properties);
+    }
+
+    /**
+     * Hands the notifications of other instances to the listeners, those that arrive within the coalesce window
+     * of each other as one batch, until the bus stops or the connection fails.
+     */
+    private void receive(Connection connection) throws SQLException {
+        PGConnection pgConnection = connection.unwrap(PGConnection.class);
+        long lastActivity = System.nanoTime();
+        while (running) {
+            PGNotification[] notifications = pgConnection.getNotifications(POLL_TIMEOUT_MS);
+            if (notifications == null || notifications.length == 0) {
+                if (System.nanoTime() - lastActivity > KEEPALIVE_INTERVAL_NANOS) {
+                    try (Statement statement = connection.createStatement()) {
+                        statement.execute("SELECT 1");
+                    }
+                    lastActivity = System.nanoTime();
+                }
+                continue;
+            }
+            lastActivity = System.nanoTime();
+
+            Set<String> batch = new LinkedHashSet<>();
+            collect(notifications, batch);
+            long deadline = lastActivity + coalesceNanos;
+            long remaining;
+            while ((remaining = deadline - System.nanoTime()) > 0) {
+                // Returns as soon as anything arrives, so the window is filled with as many notifications as there are
+                int timeoutMs = (int) Math.max(1, TimeUnit.NANOSECONDS.toMillis(remaining));
+                collect(pgConnection.getNotifications(timeoutMs), batch);
+            }
+            if (!batch.isEmpty()) {
+                receivedCounter.increment(batch.size());
+                notifyListeners(batch);
+            }
+        }
+    }
+
+    private void collect(PGNotification[] notifications, Set<String> batch) {
+        if (notifications == null) {
+            return;
+        }
+        for (PGNotification notification : notifications) {
+            String payload = notification.getParameter();
+            int separator = payload.indexOf(':');
+            if (separator < 0 || payload.startsWith(ownPrefix)) {
+                // Malformed, or our own; the local listeners were told at commit
+                continue;
+            }
+            for (String alias : payload.substring(separator + 1).split(",")) {
+                if (!alias.isEmpty()) {
+                    batch.add(alias);
+                }
+            }
+        }
+    }
+
+    @Override
+    public void start() {
+        running = true;
+        if (!enabled) {
+            log.info("Link changes are not shared with other instances (needs PostgreSQL and link-changes.enabled).");
+            return;
+        }
+        // Platform thread: it spends its life blocked in a socket read on a connection it holds for good
+        listener = Thread.ofPlatform().daemon(true).name("link-changes").start(this::listenLoop);
+    }
+
+    @Override
+    public void stop() {
+        running = false;
+        if (listener == null) {
+            return;
+        }
+        // Not interrupted: the listener notices the flag within one poll and closes its connection itself
+        try {
+            listener.join(POLL_TIMEOUT_MS * 2L);
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        }
+    }
+
+    @Override
+    public boolean isRunning() {
+        return running;
+    }
+
+    @Override
+    public int getPhase() {
+        return PHASE;
+    }
+}
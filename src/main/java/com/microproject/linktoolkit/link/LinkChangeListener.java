@@ -0,0 +1,21 @@
+package com.microproject.linktoolkit.link;
+
+import java.util.Collection;
+
+/**
+ * In-memory state about links that has to be dropped when links change, on this instance or on any other.
+ * Implementations are called by the {@link LinkChangeBus}, from whichever thread delivers the change, and must
+ * return quickly.
+ */
+public interface LinkChangeListener {
+
+    /**
+     * @param aliases The aliases of links that were created, updated or deleted; without duplicates.
+     */
+    void linksChanged(Collection<String> aliases);
+
+    /**
+     * Changes may have been missed, e.g. while the connection to the database was lost: drop everything.
+     */
+    void allLinksChanged();
+}
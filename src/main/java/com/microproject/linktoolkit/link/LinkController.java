@@ -2,16 +2,21 @@ package com.microproject.linktoolkit.link;
 
 import com.microproject.linktoolkit.link.dto.CreateLinkRequest;
 import com.microproject.linktoolkit.link.dto.CreateLinkResponse;
+import com.microproject.linktoolkit.link.dto.LinkPageResponse;
 import com.microproject.linktoolkit.link.dto.LinkResponse;
 import jakarta.servlet.http.Cookie;
+import jakarta.servlet.http.HttpServletRequest;
 import jakarta.servlet.http.HttpServletResponse;
 import jakarta.validation.Valid;
 import lombok.RequiredArgsConstructor;
 import org.springframework.http.HttpStatus;
+import org.springframework.http.MediaType;
 import org.springframework.http.ResponseEntity;
 import org.springframework.security.core.Authentication;
 import org.springframework.web.bind.annotation.*;
 
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
 import java.util.List;
 import java.util.Optional;
 import java.util.UUID;
@@ -23,7 +28,10 @@ import java.util.concurrent.TimeUnit;
 public class LinkController {
 
     private final LinkService linkService;
+    private final BulkLinkService bulkLinkService;
     private static final String SESSION_COOKIE_NAME = "lnktk_session";
+    private static final String NDJSON_VALUE = MediaType.APPLICATION_NDJSON_VALUE;
+    private static final String CSV_VALUE = "text/csv";
 
     @PostMapping
     public ResponseEntity<CreateLinkResponse> createShortLink(
@@ -54,6 +62,31 @@ public class LinkController {
         return new ResponseEntity<>(response, HttpStatus.CREATED);
     }
 
+    /**
+     * Creates links from an NDJSON or CSV upload (see {@link BulkLinkReader} for the line format).
+     * The upload is processed in batches while it streams in, and one NDJSON result per line is streamed back
+     * as each batch commits, so neither side has to hold the whole upload in memory.
+     */
+    @PostMapping(value = "/bulk", consumes = {NDJSON_VALUE, CSV_VALUE}, produces = NDJSON_VALUE)
+    public void createShortLinksInBulk(
+            Authentication authentication,
+            HttpServletRequest httpRequest,
+            HttpServletResponse httpResponse) throws IOException {
+        if (authentication == null || !authentication.isAuthenticated()) {
+            httpResponse.setStatus(HttpStatus.UNAUTHORIZED.value());
+            return;
+        }
+
+        BulkLinkReader.Format format = MediaType.APPLICATION_NDJSON.isCompatibleWith(MediaType.parseMediaType(httpRequest.getContentType()))
+                ? BulkLinkReader.Format.NDJSON
+                : BulkLinkReader.Format.CSV;
+
+        httpResponse.setStatus(HttpStatus.OK.value());
+        httpResponse.setContentType(NDJSON_VALUE);
+        httpResponse.setCharacterEncoding(StandardCharsets.UTF_8.name());
+        bulkLinkService.createLinks(httpRequest.getInputStream(), format, authentication.getName(), httpResponse.getOutputStream());
+    }
+
     @GetMapping
     public ResponseEntity<List<LinkResponse>> getUserLinks(Authentication authentication) {
         // This endpoint requires authentication, which will be enforced by Spring Security.
@@ -68,6 +101,24 @@ public class LinkController {
         }
     }
 
+    /**
+     * Paginated listing mode, selected by the 'limit' parameter.
+     * Pass the returned nextCursor as 'cursor' to fetch the following page.
+     */
+    @GetMapping(params = "limit")
+    public ResponseEntity<LinkPageResponse> getUserLinksPage(
+            @RequestParam("limit") int limit,
+            @RequestParam(name = "cursor", required = false) String cursor,
+            Authentication authentication
+    ) {
+        if (authentication == null || !authentication.isAuthenticated()) {
+            return ResponseEntity.status(HttpStatus.UNAUTHORIZED).build();
+        }
+
+        LinkPageResponse page = linkService.getLinkPageForUser(authentication.getName(), limit, cursor);
+        return ResponseEntity.ok(page);
+    }
+
     @GetMapping("/l")
     public ResponseEntity<LinkResponse> getLinkDetails(
             @RequestParam("alias") String alias,
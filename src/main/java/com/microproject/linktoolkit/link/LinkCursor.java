@@ -0,0 +1,34 @@
+package com.microproject.linktoolkit.link;
+
+import java.nio.charset.StandardCharsets;
+import java.time.Instant;
+import java.util.Base64;
+import java.util.UUID;
+
+/**
+ * Keyset position in a user's link list, which is ordered by (createdAt DESC, id DESC).
+ * Encoded as an opaque URL-safe token so clients just echo it back to get the next page.
+ * @param createdAt The creation timestamp of the last link on the previous page.
+ * @param id The ID of the last link on the previous page, breaking ties between equal timestamps.
+ */
+public record LinkCursor(Instant createdAt, UUID id) {
+
+    public static LinkCursor after(Link link) {
+        return new LinkCursor(link.getCreatedAt(), link.getId());
+    }
+
+    public String encode() {
+        String raw = createdAt + "|" + id;
+        return Base64.getUrlEncoder().withoutPadding().encodeToString(raw.getBytes(StandardCharsets.UTF_8));
+    }
+
+    public static LinkCursor decode(String token) {
+        try {
+            String raw = new String(Base64.getUrlDecoder().decode(token), StandardCharsets.UTF_8);
+            String[] parts = raw.split("\\|", 2);
+            return new LinkCursor(Instant.parse(parts[0]), UUID.fromString(parts[1]));
+        } catch (Exception e) {
+            throw new IllegalArgumentException("Invalid cursor.");
+        }
+    }
+}
@@ -1,9 +1,12 @@
 package com.microproject.linktoolkit.link;
 
+import org.springframework.data.domain.Pageable;
 import org.springframework.data.jpa.repository.JpaRepository;
 import org.springframework.data.jpa.repository.Modifying;
 import org.springframework.data.jpa.repository.Query;
+import org.springframework.data.repository.query.Param;
 import org.springframework.stereotype.Repository;
+import org.springframework.transaction.annotation.Transactional;
 
 import java.time.Instant;
 import java.util.List;
@@ -22,13 +25,16 @@ public interface LinkRepository extends JpaRepository<Link, UUID> {
     Optional<Link> findByShortAlias(String shortAlias);
 
     /**
-     * Checks if a link with the given short alias already exists in the database.
-     * This is more efficient than findByShortAlias when we only need to know about existence.
+     * Resolves a short alias to only the columns the redirect needs.
+     * Unlike findByShortAlias, this does not create a managed entity in the persistence context.
+     * Read-only, so that it is served by a read replica when one is configured.
      *
-     * @param shortAlias The short alias to check.
-     * @return true if a link with this alias exists, false otherwise.
+     * @param shortAlias The short alias to resolve.
+     * @return An Optional containing the resolved link if found.
      */
-    boolean existsByShortAlias(String shortAlias);
+    @Transactional(readOnly = true)
+    @Query("SELECT new com.microproject.linktoolkit.link.ResolvedLink(l.id, l.longUrl, l.expiresAt) FROM Link l WHERE l.shortAlias = :shortAlias")
+    Optional<ResolvedLink> findResolvedByShortAlias(@Param("shortAlias") String shortAlias);
 
     /**
      * Finds all links associated with a given user ID, ordered by creation date descending.
@@ -38,6 +44,37 @@ public interface LinkRepository extends JpaRepository<Link, UUID> {
      */
     List<Link> findByUserIdOrderByCreatedAtDesc(UUID userId);
 
+    /**
+     * Fetches the first page of a user's links, newest first.
+     * Backed by idx_links_user_id_created_at, so only the rows of the page are read.
+     *
+     * @param userId   The UUID of the user.
+     * @param pageable A Pageable object limiting the page size; its offset is always 0.
+     * @return The newest links of the user.
+     */
+    @Query("SELECT l FROM Link l WHERE l.user.id = :userId ORDER BY l.createdAt DESC, l.id DESC")
+    List<Link> findFirstPageByUserId(@Param("userId") UUID userId, Pageable pageable);
+
+    /**
+     * Fetches the page of a user's links that follows the given keyset position.
+     * Unlike OFFSET paging, the cost does not grow with the page number.
+     *
+     * @param userId    The UUID of the user.
+     * @param createdAt The creation timestamp of the last link on the previous page.
+     * @param id        The ID of the last link on the previous page.
+     * @param pageable  A Pageable object limiting the page size; its offset is always 0.
+     * @return The next links of the user, newest first.
+     */
+    @Query("SELECT l FROM Link l WHERE l.user.id = :userId " +
+            "AND (l.createdAt < :createdAt OR (l.createdAt = :createdAt AND l.id < :id)) " +
+            "ORDER BY l.createdAt DESC, l.id DESC")
+    List<Link> findPageByUserIdAfter(
+            @Param("userId") UUID userId,
+            @Param("createdAt") Instant createdAt,
+            @Param("id") UUID id,
+            Pageable pageable
+    );
+
     /**
      * Finds all links associated with an anonymous session ID.
      * This is used to claim links when a user registers.
@@ -68,15 +105,31 @@ public interface LinkRepository extends JpaRepository<Link, UUID> {
      */
     List<Link> findByExpiresAtBefore(Instant now);
 
+    /**
+     * Finds the aliases of links whose QR code is in the given state, oldest first, e.g. to resume PENDING ones
+     * after a restart. Backed by idx_links_qr_code_status_created_at.
+     *
+     * @param status The QR code status.
+     * @param createdBefore Only links created before this instant are returned.
+     * @param pageable How many aliases to return.
+     * @return The matching aliases.
+     */
+    @Query("SELECT l.shortAlias FROM Link l WHERE l.qrCodeStatus = :status AND l.createdAt < :createdBefore " +
+            "ORDER BY l.createdAt, l.id")
+    List<String> findAliasesByQrCodeStatus(QrCodeStatus status, Instant createdBefore, Pageable pageable);
 
     /**
-     * Deletes all links that have expired before the given timestamp in a single, efficient query.
-     * The @Modifying annotation is required for queries that alter data (UPDATE, DELETE, INSERT).
+     * Records the outcome of a QR code job with a single UPDATE, without loading the link.
+     * Only a PENDING QR code is updated, so a late duplicate of a job cannot overwrite the outcome of the first one.
      *
-     * @param now The current time.
-     * @return The number of rows deleted.
+     * @param shortAlias The alias of the link.
+     * @param status The new QR code status.
+     * @param qrCodePath The public URL of the image, or null if there is none.
+     * @return The number of rows updated; 0 if the link was deleted or its QR code is no longer PENDING.
      */
+    @Transactional
     @Modifying
-    @Query("DELETE FROM Link l WHERE l.expiresAt < :now")
-    int deleteByExpiresAtBefore(Instant now);
+    @Query("UPDATE Link l SET l.qrCodeStatus = :status, l.qrCodePath = :qrCodePath " +
+            "WHERE l.shortAlias = :shortAlias AND l.qrCodeStatus = com.microproject.linktoolkit.link.QrCodeStatus.PENDING")
+    int updateQrCode(String shortAlias, QrCodeStatus status, String qrCodePath);
 }
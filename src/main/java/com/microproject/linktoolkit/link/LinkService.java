@@ -1,25 +1,32 @@
 package com.microproject.linktoolkit.link;
 
-import com.microproject.linktoolkit.analytics.ClickRepository;
+import com.microproject.linktoolkit.analytics.LinkDailyStatRepository;
+import com.microproject.linktoolkit.config.ReplicaRouting;
 import com.microproject.linktoolkit.exception.AliasAlreadyExistsException;
 import com.microproject.linktoolkit.exception.ReservedAliasException;
 import com.microproject.linktoolkit.exception.ResourceNotFoundException;
 import com.microproject.linktoolkit.link.dto.CreateLinkRequest;
 import com.microproject.linktoolkit.link.dto.CreateLinkResponse;
+import com.microproject.linktoolkit.link.dto.LinkPageResponse;
 import com.microproject.linktoolkit.link.dto.LinkResponse;
 import com.microproject.linktoolkit.user.User;
 import com.microproject.linktoolkit.user.UserRepository;
 import com.microproject.linktoolkit.util.AliasGenerator;
 import lombok.RequiredArgsConstructor;
 import org.springframework.beans.factory.annotation.Value;
+import org.springframework.data.domain.PageRequest;
+import org.springframework.jdbc.core.JdbcTemplate;
 import org.springframework.stereotype.Service;
 import org.springframework.transaction.annotation.Transactional;
 
+import java.sql.Timestamp;
+import java.sql.Types;
 import java.time.Instant;
 import java.time.LocalDate;
 import java.time.Period;
 import java.time.ZoneId;
 import java.util.List;
+import java.util.Map;
 import java.util.Optional;
 import java.util.Set;
 import java.util.UUID;
@@ -32,26 +39,52 @@ public class LinkService {
     private final LinkRepository linkRepository;
     private final UserRepository userRepository;
     private final AliasGenerator aliasGenerator;
-    private final ClickRepository clickRepository;
+    private final LinkDailyStatRepository linkDailyStatRepository;
+    private final LinkChangeBus linkChangeBus;
+    private final JdbcTemplate jdbcTemplate;
 
     // A simple set of reserved words to prevent route conflicts
     private static final Set<String> RESERVED_ALIASES = Set.of(
             "api", "auth", "user", "links", "analytics", "qrcode", "bulk", "login", "register", "logout", "admin", "health"
     );
 
+    // NOTE: ON CONFLICT is PostgreSQL syntax, like the other native SQL in this project.
+    private static final String INSERT_LINK_SQL =
+            "INSERT INTO links (id, short_alias, long_url, user_id, anonymous_session_id, qr_code_status, expires_at, created_at) " +
+            "VALUES (?, ?, ?, ?, ?, ?, ?, ?) ON CONFLICT (short_alias) DO NOTHING";
+
+    // Upper bound for the page size of the paginated link listing
+    private static final int MAX_PAGE_SIZE = 100;
+
     // Injecting the base URL from application.properties
     @Value("${app.base-url}")
     private String baseUrl;
 
     @Transactional // Ensures the entire method runs in a single database transaction
     public CreateLinkResponse createLink(CreateLinkRequest request, Optional<String> userEmailOpt, Optional<UUID> anonymousSessionIdOpt) {
-        String alias = determineAlias(request.alias());
+        return createLink(request, userEmailOpt, anonymousSessionIdOpt, false);
+    }
+
+    /**
+     * Creates a link, optionally marking its QR code as PENDING in the same insert.
+     *
+     * @param withQrCode Whether a QR code will be generated for the link once it is committed.
+     */
+    @Transactional
+    public CreateLinkResponse createLink(CreateLinkRequest request, Optional<String> userEmailOpt, Optional<UUID> anonymousSessionIdOpt,
+                                         boolean withQrCode) {
+        String customAlias = request.alias() == null || request.alias().isBlank() ? null : request.alias();
+        if (customAlias != null) {
+            checkCustomAlias(customAlias);
+        }
         Instant expiresAt = determineExpiry(request.expiry());
 
         Link newLink = Link.builder()
+                .id(UUID.randomUUID())
                 .longUrl(request.longUrl())
-                .shortAlias(alias)
                 .expiresAt(expiresAt)
+                .qrCodeStatus(withQrCode ? QrCodeStatus.PENDING : null)
+                .createdAt(Instant.now())
                 .build();
 
         // Associate with user or session
@@ -63,43 +96,82 @@ public class LinkService {
             newLink.setAnonymousSessionId(anonymousSessionIdOpt.get());
         }
 
-        Link savedLink = linkRepository.save(newLink);
+        if (customAlias != null) {
+            newLink.setShortAlias(customAlias);
+            if (!insert(newLink)) {
+                throw new AliasAlreadyExistsException("Alias '" + customAlias + "' is already taken.");
+            }
+        } else {
+            // Generated aliases are unique by construction; only a legacy or custom alias could clash, and then we just draw again
+            do {
+                newLink.setShortAlias(aliasGenerator.generate());
+            } while (!insert(newLink));
+        }
+
+        // The alias may be cached as "not found" from an earlier lookup, here or on another instance
+        linkChangeBus.publish(newLink.getShortAlias());
 
         return new CreateLinkResponse(
-                baseUrl + "/" + savedLink.getShortAlias(),
-                savedLink.getLongUrl(),
-                savedLink.getExpiresAt()
+                baseUrl + "/" + newLink.getShortAlias(),
+                newLink.getLongUrl(),
+                newLink.getExpiresAt()
         );
     }
 
-    private String determineAlias(String customAlias) {
-        if (customAlias != null && !customAlias.isBlank()) {
-            // User provided a custom alias
-            if (RESERVED_ALIASES.contains(customAlias.toLowerCase())) {
-                throw new ReservedAliasException("Alias '" + customAlias + "' is a reserved word.");
-            }
-            if (linkRepository.existsByShortAlias(customAlias)) {
-                throw new AliasAlreadyExistsException("Alias '" + customAlias + "' is already taken.");
-            }
-            return customAlias;
-        } else {
-            // Generate a unique random alias
-            String generatedAlias;
-            do {
-                generatedAlias = aliasGenerator.generate();
-            } while (linkRepository.existsByShortAlias(generatedAlias)); // Ensure uniqueness
-            return generatedAlias;
+    /**
+     * Inserts the link unless its alias is already taken. Unlike an existence check followed by a save,
+     * this cannot race with another request for the same alias.
+     *
+     * @return false if the alias is taken and nothing was inserted.
+     */
+    private boolean insert(Link link) {
+        UUID userId = link.getUser() == null ? null : link.getUser().getId();
+        return jdbcTemplate.update(INSERT_LINK_SQL, ps -> {
+            ps.setObject(1, link.getId());
+            ps.setString(2, link.getShortAlias());
+            ps.setString(3, link.getLongUrl());
+            ps.setObject(4, userId, Types.OTHER);
+            ps.setObject(5, link.getAnonymousSessionId(), Types.OTHER);
+            ps.setString(6, link.getQrCodeStatus() == null ? null : link.getQrCodeStatus().name());
+            ps.setTimestamp(7, Timestamp.from(link.getExpiresAt()));
+            ps.setTimestamp(8, Timestamp.from(link.getCreatedAt()));
+        }) > 0;
+    }
+
+    /**
+     * Refuses custom aliases that clash with a route or with the generated alias namespace.
+     * Does not check whether the alias is already taken.
+     *
+     * @param customAlias The alias requested by the user.
+     * @throws ReservedAliasException if the alias must not be used.
+     */
+    void checkCustomAlias(String customAlias) {
+        if (RESERVED_ALIASES.contains(customAlias.toLowerCase())) {
+            throw new ReservedAliasException("Alias '" + customAlias + "' is a reserved word.");
+        }
+        if (aliasGenerator.isReserved(customAlias)) {
+            throw new ReservedAliasException("Alias '" + customAlias + "' is reserved for generated links. " +
+                    "Custom aliases of 7 letters and digits must not mix digits, upper-case and lower-case letters.");
         }
     }
 
     private Instant determineExpiry(String expiryString) {
+        return determineExpiry(expiryString, LocalDate.now());
+    }
+
+    /**
+     * @param expiryString An optional ISO-8601 period, defaulting to one month.
+     * @param now The day the period starts from, so a whole batch of links can share one clock reading.
+     * @return The start of the day the link expires.
+     * @throws IllegalArgumentException if the period is malformed or longer than 5 years.
+     */
+    Instant determineExpiry(String expiryString, LocalDate now) {
         final Period defaultExpiry = Period.ofMonths(1);
         final Period maxExpiry = Period.ofYears(5);
 
         try{
             Period requestedPeriod = (expiryString == null || expiryString.isBlank()) ? defaultExpiry : Period.parse(expiryString);
 
-            LocalDate now = LocalDate.now();
             LocalDate expiryDate = now.plus(requestedPeriod);
             LocalDate maxAllowedDate = now.plus(maxExpiry);
 
@@ -112,32 +184,66 @@ public class LinkService {
         }
     }
 
+    @Transactional(readOnly = true) // Served by a read replica when one is configured
     public List<LinkResponse> getLinksForUser(String userEmail) {
         User user = userRepository.findByEmail(userEmail)
                 .orElseThrow(() -> new IllegalStateException("User not found for email: " + userEmail));
 
         List<Link> links = linkRepository.findByUserIdOrderByCreatedAtDesc(user.getId());
 
+        // One grouped query over the click rollups for all of the user's links, instead of one count per link.
+        Map<UUID, Long> clickTotals = toMap(linkDailyStatRepository.sumClicksByUserId(user.getId()));
+
         // Map the Link entities to our LinkResponse DTO
         return links.stream()
-                .map(link -> {
-                    // For each link, fetch its total click count.
-                    // Note: This is a simple implementation. For very high performance, this could
-                    // be optimized into a single query to avoid the N+1 problem.
-                    long totalClicks = clickRepository.countByLinkId(link.getId());
-
-                    return new LinkResponse(
-                            link.getShortAlias(),
-                            baseUrl + "/" + link.getShortAlias(),
-                            link.getLongUrl(),
-                            totalClicks,
-                            link.getCreatedAt(),
-                            link.getExpiresAt()
-                    );
-                })
+                .map(link -> toLinkResponse(link, clickTotals.getOrDefault(link.getId(), 0L)))
+                .collect(Collectors.toList());
+    }
+
+    /**
+     * Returns one page of a user's links, newest first, using a keyset cursor on (createdAt, id).
+     *
+     * @param userEmail The email of the authenticated user.
+     * @param limit The maximum number of links to return, capped at MAX_PAGE_SIZE.
+     * @param cursor The nextCursor of the previous page, or null for the first page.
+     * @return The page and the cursor of the following page.
+     */
+    @Transactional(readOnly = true)
+    public LinkPageResponse getLinkPageForUser(String userEmail, int limit, String cursor) {
+        User user = userRepository.findByEmail(userEmail)
+                .orElseThrow(() -> new IllegalStateException("User not found for email: " + userEmail));
+
+        int pageSize = Math.max(1, Math.min(limit, MAX_PAGE_SIZE));
+        // Fetch one extra row to find out whether there is a next page without a separate count query.
+        PageRequest pageRequest = PageRequest.of(0, pageSize + 1);
+
+        List<Link> links;
+        if (cursor == null || cursor.isBlank()) {
+            links = linkRepository.findFirstPageByUserId(user.getId(), pageRequest);
+        } else {
+            LinkCursor after = LinkCursor.decode(cursor);
+            links = linkRepository.findPageByUserIdAfter(user.getId(), after.createdAt(), after.id(), pageRequest);
+        }
+
+        boolean hasNext = links.size() > pageSize;
+        if (hasNext) {
+            links = links.subList(0, pageSize);
+        }
+
+        // Click totals for the whole page come from a single grouped query.
+        List<UUID> linkIds = links.stream().map(Link::getId).toList();
+        Map<UUID, Long> clickTotals = linkIds.isEmpty() ? Map.of() : toMap(linkDailyStatRepository.sumClicksByLinkIds(linkIds));
+
+        List<LinkResponse> page = links.stream()
+                .map(link -> toLinkResponse(link, clickTotals.getOrDefault(link.getId(), 0L)))
                 .collect(Collectors.toList());
+        String nextCursor = hasNext ? LinkCursor.after(links.get(links.size() - 1)).encode() : null;
+
+        return new LinkPageResponse(page, nextCursor);
     }
 
+    // Usually requested right after createLink, before a replica may have the new link: read it from the primary
+    @Transactional(readOnly = true, label = ReplicaRouting.PRIMARY)
     public LinkResponse getLinkDetails(String shortAlias) {
         Optional<Link> optionalLink = linkRepository.findByShortAlias(shortAlias);
 
@@ -147,8 +253,12 @@ public class LinkService {
 
         Link link = optionalLink.get();
 
-        long totalClicks = clickRepository.countByLinkId(link.getId());
+        long totalClicks = linkDailyStatRepository.sumClicksByLinkId(link.getId());
+
+        return toLinkResponse(link, totalClicks);
+    }
 
+    private LinkResponse toLinkResponse(Link link, long totalClicks) {
         return new LinkResponse(
                 link.getShortAlias(),
                 baseUrl + "/" + link.getShortAlias(),
@@ -158,4 +268,11 @@ public class LinkService {
                 link.getExpiresAt()
         );
     }
+
+    private static Map<UUID, Long> toMap(List<LinkDailyStatRepository.LinkClickTotal> totals) {
+        return totals.stream().collect(Collectors.toMap(
+                LinkDailyStatRepository.LinkClickTotal::getLinkId,
+                LinkDailyStatRepository.LinkClickTotal::getClicks
+        ));
+    }
 }
\ No newline at end of file
@@ -0,0 +1,13 @@
+package com.microproject.linktoolkit.link;
+
+/**
+ * Where the QR code of a link stands. Links created without a QR code have no status.
+ */
+public enum QrCodeStatus {
+    /** Requested; the image is being rendered and uploaded in the background. */
+    PENDING,
+    /** Uploaded; the link's qrCodePath points to it. */
+    READY,
+    /** Gave up after the configured number of attempts, or the generation queue was full. */
+    FAILED
+}
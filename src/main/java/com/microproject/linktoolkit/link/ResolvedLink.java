@@ -0,0 +1,21 @@
+package com.microproject.linktoolkit.link;
+
+import java.time.Instant;
+import java.util.UUID;
+
+/**
+ * The minimal view of a link needed to serve a redirect.
+ * Loaded through a JPQL constructor expression so the redirect path never materializes a managed Link entity.
+ * @param id The link's ID, used to attribute clicks.
+ * @param longUrl The destination URL.
+ * @param expiresAt The timestamp after which the link must no longer redirect.
+ */
+public record ResolvedLink(
+        UUID id,
+        String longUrl,
+        Instant expiresAt
+) {
+    public boolean isExpired(Instant now) {
+        return expiresAt.isBefore(now);
+    }
+}
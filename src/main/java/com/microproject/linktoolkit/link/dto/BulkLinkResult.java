@@ -0,0 +1,32 @@
+package com.microproject.linktoolkit.link.dto;
+
+import com.fasterxml.jackson.annotation.JsonInclude;
+
+import java.time.Instant;
+
+/**
+ * DTO for the outcome of one line of a bulk link upload, written as one NDJSON line of the response.
+ * Either the link fields or the error are set.
+ * @param line The 1-based line number in the upload.
+ * @param shortUrl The full, clickable short URL, if the link was created.
+ * @param longUrl The original long URL, if the link was created.
+ * @param expiresAt The exact timestamp when the link will expire, if the link was created.
+ * @param error Why no link was created for this line.
+ */
+@JsonInclude(JsonInclude.Include.NON_NULL)
+public record BulkLinkResult(
+        long line,
+        String shortUrl,
+        String longUrl,
+        Instant expiresAt,
+        String error
+) {
+
+    public static BulkLinkResult created(long line, String shortUrl, String longUrl, Instant expiresAt) {
+        return new BulkLinkResult(line, shortUrl, longUrl, expiresAt, null);
+    }
+
+    public static BulkLinkResult failed(long line, String error) {
+        return new BulkLinkResult(line, null, null, null, error);
+    }
+}
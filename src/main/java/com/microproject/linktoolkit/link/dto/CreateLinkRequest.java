@@ -8,7 +8,8 @@ import org.hibernate.validator.constraints.URL;
 /**
  * DTO for creating a new short link.
  * @param longUrl The original URL to be shortened. Must be a valid URL.
- * @param alias An optional custom alias for the short link.
+ * @param alias An optional custom alias for the short link. Aliases of exactly 7 letters and digits that mix digits,
+ *              upper-case and lower-case letters (e.g. "aB3dE9x") are reserved for generated links and refused.
  * @param expiry An optional ISO-8601 period string (e.g., "P1M" for 1 month).
  */
 public record CreateLinkRequest(
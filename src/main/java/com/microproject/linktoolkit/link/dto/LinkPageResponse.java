@@ -0,0 +1,14 @@
+package com.microproject.linktoolkit.link.dto;
+
+import java.util.List;
+
+/**
+ * DTO for one page of a user's links.
+ * @param links The links on this page, newest first.
+ * @param nextCursor The token to pass as 'cursor' to fetch the next page, or null if this is the last page.
+ */
+public record LinkPageResponse(
+        List<LinkResponse> links,
+        String nextCursor
+) {
+}
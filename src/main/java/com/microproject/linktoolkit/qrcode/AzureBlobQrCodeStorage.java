@@ -0,0 +1,45 @@
+package com.microproject.linktoolkit.qrcode;
+
+import com.azure.core.util.BinaryData;
+import com.azure.core.util.Context;
+import com.azure.storage.blob.BlobClient;
+import com.azure.storage.blob.BlobServiceClient;
+import com.azure.storage.blob.models.BlobHttpHeaders;
+import com.azure.storage.blob.options.BlobParallelUploadOptions;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.boot.autoconfigure.condition.ConditionalOnProperty;
+import org.springframework.stereotype.Component;
+
+/**
+ * Stores QR codes as blobs in the configured Azure Storage container.
+ */
+@Component
+@ConditionalOnProperty(name = "qrcode.storage", havingValue = "azure", matchIfMissing = true)
+public class AzureBlobQrCodeStorage implements QrCodeStorage {
+
+    private final BlobServiceClient blobServiceClient; // Injected by Spring Cloud Azure
+    private final String containerName;
+
+    public AzureBlobQrCodeStorage(
+            BlobServiceClient blobServiceClient,
+            @Value("${azure.storage.blob.container-name}") String containerName
+    ) {
+        this.blobServiceClient = blobServiceClient;
+        this.containerName = containerName;
+    }
+
+    @Override
+    public String store(String name, byte[] image, String contentType) {
+        // Get a client for the specific blob (file) within the container.
+        BlobClient blobClient = blobServiceClient
+                .getBlobContainerClient(containerName)
+                .getBlobClient(name);
+
+        // Upload the data with its content type in one request; without request conditions an existing blob is overwritten.
+        blobClient.uploadWithResponse(new BlobParallelUploadOptions(BinaryData.fromBytes(image))
+                .setHeaders(new BlobHttpHeaders().setContentType(contentType)), null, Context.NONE);
+
+        // Return the public URL of the uploaded blob.
+        return blobClient.getBlobUrl();
+    }
+}
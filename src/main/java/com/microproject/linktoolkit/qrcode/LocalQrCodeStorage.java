@@ -0,0 +1,49 @@
+package com.microproject.linktoolkit.qrcode;
+
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.boot.autoconfigure.condition.ConditionalOnProperty;
+import org.springframework.stereotype.Component;
+
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardCopyOption;
+
+/**
+ * Stores QR codes as files in a local directory, for tests, benchmarks and running without Azure.
+ * <p>
+ * Images are written to a temporary file and moved into place, so a reader never sees a partial image.
+ * The returned URL is {@code qrcode.storage.local.base-url} followed by the name, or a file: URL if no base URL is set.
+ * </p>
+ */
+@Component
+@ConditionalOnProperty(name = "qrcode.storage", havingValue = "local")
+public class LocalQrCodeStorage implements QrCodeStorage {
+
+    private final Path directory;
+    private final String baseUrl;
+
+    public LocalQrCodeStorage(
+            @Value("${qrcode.storage.local.directory:${java.io.tmpdir}/linktoolkit-qrcodes}") Path directory,
+            @Value("${qrcode.storage.local.base-url:}") String baseUrl
+    ) throws IOException {
+        this.directory = Files.createDirectories(directory.toAbsolutePath().normalize());
+        this.baseUrl = baseUrl.endsWith("/") ? baseUrl.substring(0, baseUrl.length() - 1) : baseUrl;
+    }
+
+    @Override
+    public String store(String name, byte[] image, String contentType) throws IOException {
+        Path target = directory.resolve(name).normalize();
+        if (!directory.equals(target.getParent())) {
+            throw new IllegalArgumentException("Invalid QR code file name: " + name);
+        }
+        Path temp = Files.createTempFile(directory, ".upload-", ".tmp");
+        try {
+            Files.write(temp, image);
+            Files.move(temp, target, StandardCopyOption.REPLACE_EXISTING, StandardCopyOption.ATOMIC_MOVE);
+        } finally {
+            Files.deleteIfExists(temp);
+        }
+        return baseUrl.isEmpty() ? target.toUri().toString() : baseUrl + "/" + name;
+    }
+}
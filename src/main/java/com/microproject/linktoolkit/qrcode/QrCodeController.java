@@ -6,10 +6,13 @@ import jakarta.servlet.http.Cookie;
 import jakarta.servlet.http.HttpServletResponse;
 import jakarta.validation.Valid;
 import lombok.RequiredArgsConstructor;
+import org.springframework.http.CacheControl;
 import org.springframework.http.HttpStatus;
+import org.springframework.http.MediaType;
 import org.springframework.http.ResponseEntity;
 import org.springframework.security.core.Authentication;
 import org.springframework.web.bind.annotation.*;
+import org.springframework.web.context.request.WebRequest;
 
 import java.util.Optional;
 import java.util.UUID;
@@ -21,8 +24,12 @@ import java.util.concurrent.TimeUnit;
 public class QrCodeController {
 
     private final QrCodeService qrCodeService;
+    private final QrCodeImageCache qrCodeImageCache;
     private static final String SESSION_COOKIE_NAME = "lnktk_session";
 
+    // A QR code for an alias never changes, so clients and CDNs may keep it; the ETag makes revalidation cheap.
+    private static final CacheControl QR_CODE_CACHE_CONTROL = CacheControl.maxAge(1, TimeUnit.DAYS).cachePublic();
+
     @PostMapping
     public ResponseEntity<QrCodeResponse> createQrCode(
             @Valid @RequestBody CreateLinkRequest request,
@@ -42,11 +49,49 @@ public class QrCodeController {
             setSessionCookie(httpResponse, newSessionId);
         }
 
-        QrCodeResponse response = qrCodeService.generateAndUploadQrCode(request, userEmailOpt, sessionIdOpt);
+        // The link exists once this returns; the QR code is PENDING until the background job has uploaded it.
+        QrCodeResponse response = qrCodeService.createLinkWithQrCode(request, userEmailOpt, sessionIdOpt);
 
         return new ResponseEntity<>(response, HttpStatus.CREATED);
     }
 
+    /**
+     * Renders the QR code of any existing link on demand, e.g. /api/qrcode/aB3dE9x?size=512&format=svg&ecc=M.
+     * Answers 304 Not Modified when the client already has the same image (If-None-Match).
+     */
+    @GetMapping("/{alias}")
+    public ResponseEntity<byte[]> getQrCode(
+            @PathVariable String alias,
+            @RequestParam(defaultValue = "png") String format,
+            @RequestParam(defaultValue = "300") int size,
+            @RequestParam(defaultValue = "4") int margin,
+            @RequestParam(name = "ecc", defaultValue = "L") String errorCorrection,
+            WebRequest webRequest) {
+
+        QrCodeOptions options = new QrCodeOptions(QrCodeFormat.parse(format), size, margin,
+                QrCodeOptions.parseErrorCorrection(errorCorrection));
+        QrCodeImageCache.RenderedQrCode qrCode = qrCodeImageCache.get(alias, options);
+
+        // Sets the 304 status and the ETag header itself
+        if (webRequest.checkNotModified(qrCode.etag())) {
+            return null;
+        }
+        return ResponseEntity.ok()
+                .contentType(MediaType.parseMediaType(qrCode.contentType()))
+                .eTag(qrCode.etag())
+                .cacheControl(QR_CODE_CACHE_CONTROL)
+                .body(qrCode.image());
+    }
+
+    /**
+     * Reports whether the QR code of a link is ready, and where it is once it is.
+     * Clients poll this after creating a link with a QR code.
+     */
+    @GetMapping("/{alias}/status")
+    public ResponseEntity<QrCodeResponse> getQrCodeStatus(@PathVariable String alias) {
+        return ResponseEntity.ok(qrCodeService.getQrCode(alias));
+    }
+
     private void setSessionCookie(HttpServletResponse response, UUID sessionId) {
         Cookie sessionCookie = new Cookie(SESSION_COOKIE_NAME, sessionId.toString());
         sessionCookie.setHttpOnly(true);
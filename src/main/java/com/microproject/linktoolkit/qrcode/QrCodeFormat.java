@@ -0,0 +1,33 @@
+package com.microproject.linktoolkit.qrcode;
+
+import java.util.Locale;
+
+/**
+ * Image formats a QR code can be rendered in.
+ */
+public enum QrCodeFormat {
+    PNG("image/png"),
+    SVG("image/svg+xml");
+
+    private final String contentType;
+
+    QrCodeFormat(String contentType) {
+        this.contentType = contentType;
+    }
+
+    public String contentType() {
+        return contentType;
+    }
+
+    /**
+     * @param value "png" or "svg", in any case.
+     * @throws IllegalArgumentException for any other value.
+     */
+    public static QrCodeFormat parse(String value) {
+        try {
+            return valueOf(value.toUpperCase(Locale.ROOT));
+        } catch (IllegalArgumentException e) {
+            throw new IllegalArgumentException("Unsupported QR code format '" + value + "'. Use png or svg.");
+        }
+    }
+}
@@ -0,0 +1,268 @@
+package com.microproject.linktoolkit.qrcode;
+
+import com.microproject.linktoolkit.link.LinkChangeBus;
+import com.microproject.linktoolkit.link.LinkRepository;
+import com.microproject.linktoolkit.link.QrCodeStatus;
+import io.micrometer.core.instrument.Counter;
+import io.micrometer.core.instrument.Gauge;
+import io.micrometer.core.instrument.MeterRegistry;
+import io.micrometer.core.instrument.Timer;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.context.SmartLifecycle;
+import org.springframework.data.domain.PageRequest;
+import org.springframework.scheduling.annotation.Scheduled;
+import org.springframework.stereotype.Component;
+
+import java.time.Duration;
+import java.time.Instant;
+import java.util.List;
+import java.util.Set;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.Executors;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.ThreadLocalRandom;
+import java.util.concurrent.ThreadPoolExecutor;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Renders and stores QR codes in the background, after the link they belong to has been committed.
+ * <p>
+ * Jobs run on a fixed pool of {@code qrcode.workers} threads fed by a queue of at most {@code qrcode.queue-capacity}
+ * jobs, so a burst of requests can neither hold database connections nor pile up unbounded work. A failed job is
+ * retried up to {@code qrcode.max-attempts} times with exponential backoff, then the link is marked FAILED.
+ * A full queue marks the link FAILED straight away. Jobs still PENDING when the application stops are picked up
+ * again by a periodic scan, on the next start or by another instance.
+ * </p>
+ */
+@Component
+@Slf4j
+public class QrCodeGenerationQueue implements SmartLifecycle {
+
+    private static final String CONTENT_TYPE = "image/png";
+
+    // Start before the web server accepts requests and stop after it has stopped, like the click pipeline.
+    private static final int PHASE = SmartLifecycle.DEFAULT_PHASE - 4096;
+
+    private final QrCodeRenderer qrCodeRenderer;
+    private final QrCodeStorage qrCodeStorage;
+    private final LinkRepository linkRepository;
+    private final LinkChangeBus linkChangeBus;
+    private final ThreadPoolExecutor workers;
+    private final ScheduledExecutorService retryScheduler;
+    private final int queueCapacity;
+    private final int maxAttempts;
+    private final long retryBackoffMs;
+    private final long shutdownTimeoutMs;
+    private final long resumeGraceMs;
+    // Aliases with a job queued, running or waiting for a retry on this instance
+    private final Set<String> inFlight = ConcurrentHashMap.newKeySet();
+
+    private final Timer renderTimer;
+    private final Timer uploadTimer;
+    private final Timer lagTimer;
+    private final Counter completedCounter;
+    private final Counter failedCounter;
+    private final Counter rejectedCounter;
+    private final Counter retriedCounter;
+
+    @Value("${app.base-url}")
+    private String baseUrl;
+
+    private volatile boolean running;
+
+    public QrCodeGenerationQueue(
+            QrCodeRenderer qrCodeRenderer,
+            QrCodeStorage qrCodeStorage,
+            LinkRepository linkRepository,
+            LinkChangeBus linkChangeBus,
+            MeterRegistry meterRegistry,
+            @Value("${qrcode.workers:2}") int workerCount,
+            @Value("${qrcode.queue-capacity:1000}") int queueCapacity,
+            @Value("${qrcode.max-attempts:3}") int maxAttempts,
+            @Value("${qrcode.retry.backoff.ms:1000}") long retryBackoffMs,
+            @Value("${qrcode.shutdown-timeout.ms:10000}") long shutdownTimeoutMs,
+            @Value("${qrcode.resume.grace.ms:300000}") long resumeGraceMs,
+            @Value("${spring.threads.virtual.enabled:false}") boolean virtualThreads
+    ) {
+        this.qrCodeRenderer = qrCodeRenderer;
+        this.qrCodeStorage = qrCodeStorage;
+        this.linkRepository = linkRepository;
+        this.linkChangeBus = linkChangeBus;
+        this.queueCapacity = queueCapacity;
+        this.maxAttempts = Math.max(1, maxAttempts);
+        this.retryBackoffMs = retryBackoffMs;
+        this.shutdownTimeoutMs = shutdownTimeoutMs;
+        this.resumeGraceMs = resumeGraceMs;
+
+        Thread.Builder workerThreads = virtualThreads ? Thread.ofVirtual() : Thread.ofPlatform().daemon(true);
+        this.workers = new ThreadPoolExecutor(workerCount, workerCount, 0, TimeUnit.MILLISECONDS,
+                new ArrayBlockingQueue<>(queueCapacity), workerThreads.name("qrcode-worker-", 0).factory());
+        this.retryScheduler = Executors.newSingleThreadScheduledExecutor(
+                Thread.ofPlatform().daemon(true).name("qrcode-retry").factory());
+
+        Gauge.builder("qrcode.queue.depth", workers, executor -> executor.getQueue().size())
+                .description("QR code jobs waiting for a worker")
+                .register(meterRegistry);
+        this.renderTimer = meterRegistry.timer("qrcode.render");
+        this.uploadTimer = meterRegistry.timer("qrcode.upload");
+        this.lagTimer = Timer.builder("qrcode.lag")
+                .description("Time from the request to the QR code being ready")
+                .register(meterRegistry);
+        this.completedCounter = meterRegistry.counter("qrcode.completed");
+        this.failedCounter = meterRegistry.counter("qrcode.failed", "reason", "error");
+        this.rejectedCounter = meterRegistry.counter("qrcode.failed", "reason", "rejected");
+        this.retriedCounter = meterRegistry.counter("qrcode.retried");
+    }
+
+    /**
+     * One attempt at generating the QR code of a link.
+     * @param alias The link's alias.
+     * @param requestedAt When the QR code was requested.
+     * @param attempt 1 for the first attempt.
+     */
+    private record Job(String alias, Instant requestedAt, int attempt) {
+
+        Job next() {
+            return new Job(alias, requestedAt, attempt + 1);
+        }
+    }
+
+    /**
+     * Queues the QR code of a committed link whose status is PENDING. Never blocks.
+     *
+     * @param alias The link's alias.
+     */
+    public void submit(String alias) {
+        if (inFlight.add(alias)) {
+            enqueue(new Job(alias, Instant.now(), 1));
+        }
+    }
+
+    private void enqueue(Job job) {
+        try {
+            workers.execute(() -> process(job));
+        } catch (RejectedExecutionException e) {
+            rejectedCounter.increment();
+            log.warn("QR code queue is full; giving up on the QR code for alias {}.", job.alias());
+            markFailed(job.alias());
+            inFlight.remove(job.alias());
+        }
+    }
+
+    private void process(Job job) {
+        try {
+            String shortUrl = baseUrl + "/" + job.alias();
+            byte[] image = renderTimer.recordCallable(() -> qrCodeRenderer.renderPng(shortUrl));
+            String publicUrl = uploadTimer.recordCallable(() -> qrCodeStorage.store(job.alias() + ".png", image, CONTENT_TYPE));
+            updateQrCode(job.alias(), QrCodeStatus.READY, publicUrl);
+            completedCounter.increment();
+            lagTimer.record(Duration.between(job.requestedAt(), Instant.now()));
+            inFlight.remove(job.alias());
+        } catch (Exception e) {
+            retryOrFail(job, e);
+        }
+    }
+
+    private void retryOrFail(Job job, Exception e) {
+        if (job.attempt() >= maxAttempts) {
+            failedCounter.increment();
+            log.error("Failed to generate or upload QR code for alias {} after {} attempts.", job.alias(), job.attempt(), e);
+            markFailed(job.alias());
+            inFlight.remove(job.alias());
+            return;
+        }
+        if (!running) {
+            // Left PENDING; resumed on the next start
+            inFlight.remove(job.alias());
+            return;
+        }
+        // 1x, 2x, 4x ... the backoff, plus up to 50% jitter so that retries after an outage don't arrive together
+        long delay = retryBackoffMs << (job.attempt() - 1);
+        delay += ThreadLocalRandom.current().nextLong(delay / 2 + 1);
+        retriedCounter.increment();
+        log.warn("QR code for alias {} failed (attempt {} of {}), retrying in {} ms. Error: {}",
+                job.alias(), job.attempt(), maxAttempts, delay, e.getMessage());
+        try {
+            retryScheduler.schedule(() -> enqueue(job.next()), delay, TimeUnit.MILLISECONDS);
+        } catch (RejectedExecutionException shuttingDown) {
+            // Left PENDING; resumed on the next start
+            inFlight.remove(job.alias());
+        }
+    }
+
+    private void markFailed(String alias) {
+        try {
+            updateQrCode(alias, QrCodeStatus.FAILED, null);
+        } catch (Exception e) {
+            log.error("Could not mark the QR code for alias {} as failed. Error: {}", alias, e.getMessage());
+        }
+    }
+
+    private void updateQrCode(String alias, QrCodeStatus status, String qrCodePath) {
+        if (linkRepository.updateQrCode(alias, status, qrCodePath) > 0) {
+            // Committed by now, so the change goes out straight away
+            linkChangeBus.publish(alias);
+        }
+    }
+
+    /**
+     * Re-queues links left PENDING by an earlier run, e.g. one that was killed with jobs in its queue, oldest first.
+     * Only fills the free space in the queue, so a larger backlog is worked off over several runs instead of failing.
+     * Links younger than {@code qrcode.resume.grace.ms} are left alone: their job is most likely still queued,
+     * here or on another instance.
+     */
+    @Scheduled(fixedDelayString = "${qrcode.resume.interval.ms:60000}")
+    public void resumePending() {
+        int free = workers.getQueue().remainingCapacity();
+        if (!running || free == 0) {
+            return;
+        }
+        try {
+            // Jobs of this instance may be among the oldest; fetch enough rows to fill the free space without them
+            List<String> pending = linkRepository.findAliasesByQrCodeStatus(QrCodeStatus.PENDING,
+                    Instant.now().minusMillis(resumeGraceMs), PageRequest.of(0, free + inFlight.size()));
+            List<String> resumed = pending.stream().filter(alias -> !inFlight.contains(alias)).limit(free).toList();
+            if (!resumed.isEmpty()) {
+                log.info("Resuming {} pending QR code jobs.", resumed.size());
+                resumed.forEach(this::submit);
+            }
+        } catch (Exception e) {
+            log.error("Could not resume pending QR code jobs. Error: {}", e.getMessage());
+        }
+    }
+
+    @Override
+    public void start() {
+        running = true;
+        log.info("QR code generation started (workers={}, queueCapacity={}, maxAttempts={}).",
+                workers.getCorePoolSize(), queueCapacity, maxAttempts);
+    }
+
+    @Override
+    public void stop() {
+        running = false;
+        retryScheduler.shutdownNow();
+        // Let queued jobs finish within the timeout; whatever is left stays PENDING in the database
+        workers.shutdown();
+        try {
+            if (!workers.awaitTermination(shutdownTimeoutMs, TimeUnit.MILLISECONDS)) {
+                log.warn("QR code generation stopped with {} jobs still queued.", workers.shutdownNow().size());
+            }
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        }
+    }
+
+    @Override
+    public boolean isRunning() {
+        return running;
+    }
+
+    @Override
+    public int getPhase() {
+        return PHASE;
+    }
+}
@@ -0,0 +1,100 @@
+package com.microproject.linktoolkit.qrcode;
+
+import com.github.benmanes.caffeine.cache.Cache;
+import com.github.benmanes.caffeine.cache.Caffeine;
+import com.microproject.linktoolkit.exception.ResourceNotFoundException;
+import com.microproject.linktoolkit.link.AliasResolutionCache;
+import io.micrometer.core.instrument.MeterRegistry;
+import io.micrometer.core.instrument.Timer;
+import io.micrometer.core.instrument.binder.cache.CaffeineCacheMetrics;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.stereotype.Component;
+
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
+import java.time.Instant;
+import java.util.HexFormat;
+
+/**
+ * Renders QR codes on demand and keeps the encoded images in a cache bounded by their total size
+ * ({@code qrcode.image-cache.max-bytes}), so popular codes are encoded once rather than per request.
+ * <p>
+ * A QR code only depends on the alias and the rendering options, so cached images never go stale;
+ * whether the link still exists is checked on every request, against the alias cache.
+ * </p>
+ */
+@Component
+public class QrCodeImageCache {
+
+    private final QrCodeRenderer qrCodeRenderer;
+    private final AliasResolutionCache aliasResolutionCache;
+    private final Timer renderTimer;
+    private final Cache<Key, RenderedQrCode> cache;
+
+    @Value("${app.base-url}")
+    private String baseUrl;
+
+    public QrCodeImageCache(
+            QrCodeRenderer qrCodeRenderer,
+            AliasResolutionCache aliasResolutionCache,
+            MeterRegistry meterRegistry,
+            @Value("${qrcode.image-cache.max-bytes:33554432}") long maxBytes
+    ) {
+        this.qrCodeRenderer = qrCodeRenderer;
+        this.aliasResolutionCache = aliasResolutionCache;
+        this.renderTimer = meterRegistry.timer("qrcode.render");
+        this.cache = Caffeine.newBuilder()
+                .maximumWeight(maxBytes)
+                .weigher((Key key, RenderedQrCode rendered) -> rendered.image().length)
+                .recordStats()
+                .build();
+
+        // Publishes cache.gets{result=hit|miss} etc. tagged with cache=qrcode-images
+        CaffeineCacheMetrics.monitor(meterRegistry, cache, "qrcode-images");
+    }
+
+    /**
+     * An encoded QR code.
+     * @param image The image bytes.
+     * @param contentType The MIME type of the image.
+     * @param etag A strong ETag derived from the bytes, quoted.
+     */
+    public record RenderedQrCode(byte[] image, String contentType, String etag) {
+    }
+
+    private record Key(String alias, QrCodeOptions options) {
+    }
+
+    /**
+     * @param alias The alias of an existing, unexpired link.
+     * @param options How to render the QR code.
+     * @return The QR code for the link's short URL, from the cache or freshly rendered.
+     * @throws ResourceNotFoundException if there is no such link or it has expired.
+     */
+    public RenderedQrCode get(String alias, QrCodeOptions options) {
+        aliasResolutionCache.resolve(alias)
+                .filter(link -> !link.isExpired(Instant.now()))
+                .orElseThrow(() -> new ResourceNotFoundException("Short link not found: " + alias));
+        return cache.get(new Key(alias, options), this::render);
+    }
+
+    private RenderedQrCode render(Key key) {
+        byte[] image;
+        try {
+            image = renderTimer.recordCallable(() -> qrCodeRenderer.render(baseUrl + "/" + key.alias(), key.options()));
+        } catch (Exception e) {
+            throw new IllegalStateException("Could not render the QR code for alias " + key.alias() + ".", e);
+        }
+        return new RenderedQrCode(image, key.options().format().contentType(), etag(image));
+    }
+
+    private static String etag(byte[] image) {
+        try {
+            byte[] digest = MessageDigest.getInstance("SHA-256").digest(image);
+            // 128 bits are plenty to tell two images apart
+            return "\"" + HexFormat.of().formatHex(digest, 0, 16) + "\"";
+        } catch (NoSuchAlgorithmException e) {
+            throw new IllegalStateException("SHA-256 is not available.", e);
+        }
+    }
+}
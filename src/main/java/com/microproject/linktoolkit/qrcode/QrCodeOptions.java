@@ -0,0 +1,43 @@
+package com.microproject.linktoolkit.qrcode;
+
+import com.google.zxing.qrcode.decoder.ErrorCorrectionLevel;
+
+import java.util.Locale;
+
+/**
+ * How to render a QR code. Validated on construction, since the values come straight from query parameters.
+ * @param format PNG or SVG.
+ * @param size Width and height of the image in pixels.
+ * @param margin Width of the quiet zone around the code, in modules.
+ * @param errorCorrection How much of the code can be damaged and still scan: L (7%), M (15%), Q (25%) or H (30%).
+ */
+public record QrCodeOptions(QrCodeFormat format, int size, int margin, ErrorCorrectionLevel errorCorrection) {
+
+    public static final int MIN_SIZE = 64;
+    public static final int MAX_SIZE = 2048;
+    public static final int MAX_MARGIN = 16;
+
+    // What QR codes have always been generated with: 300x300 PNG, zxing's default quiet zone and error correction
+    public static final QrCodeOptions DEFAULT = new QrCodeOptions(QrCodeFormat.PNG, 300, 4, ErrorCorrectionLevel.L);
+
+    public QrCodeOptions {
+        if (size < MIN_SIZE || size > MAX_SIZE) {
+            throw new IllegalArgumentException("QR code size must be between " + MIN_SIZE + " and " + MAX_SIZE + " pixels.");
+        }
+        if (margin < 0 || margin > MAX_MARGIN) {
+            throw new IllegalArgumentException("QR code margin must be between 0 and " + MAX_MARGIN + " modules.");
+        }
+    }
+
+    /**
+     * @param errorCorrection "L", "M", "Q" or "H", in any case.
+     * @throws IllegalArgumentException for any other value.
+     */
+    public static ErrorCorrectionLevel parseErrorCorrection(String errorCorrection) {
+        try {
+            return ErrorCorrectionLevel.valueOf(errorCorrection.toUpperCase(Locale.ROOT));
+        } catch (IllegalArgumentException e) {
+            throw new IllegalArgumentException("Unsupported error correction level '" + errorCorrection + "'. Use L, M, Q or H.");
+        }
+    }
+}
@@ -0,0 +1,119 @@
+package com.microproject.linktoolkit.qrcode;
+
+import com.google.zxing.BarcodeFormat;
+import com.google.zxing.EncodeHintType;
+import com.google.zxing.WriterException;
+import com.google.zxing.common.BitArray;
+import com.google.zxing.common.BitMatrix;
+import com.google.zxing.qrcode.QRCodeWriter;
+import org.springframework.stereotype.Component;
+
+import javax.imageio.ImageIO;
+import java.awt.image.BufferedImage;
+import java.awt.image.DataBufferByte;
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.util.Map;
+
+/**
+ * Renders QR codes as PNG or SVG. Stateless and CPU-bound; it never touches the database or storage.
+ */
+@Component
+public class QrCodeRenderer {
+
+    static {
+        // ImageIO otherwise buffers every image it writes to a stream through a temporary file.
+        ImageIO.setUseCache(false);
+    }
+
+    /**
+     * @param text The content of the QR code, typically a short URL.
+     * @return A 300x300 PNG, as generated for links created through POST /api/qrcode.
+     */
+    public byte[] renderPng(String text) throws WriterException, IOException {
+        return render(text, QrCodeOptions.DEFAULT);
+    }
+
+    /**
+     * @param text The content of the QR code.
+     * @param options The format, size, margin and error correction level.
+     * @return The encoded image.
+     */
+    public byte[] render(String text, QrCodeOptions options) throws WriterException, IOException {
+        Map<EncodeHintType, Object> hints = Map.of(
+                EncodeHintType.ERROR_CORRECTION, options.errorCorrection(),
+                EncodeHintType.MARGIN, options.margin()
+        );
+        QRCodeWriter qrCodeWriter = new QRCodeWriter();
+
+        if (options.format() == QrCodeFormat.SVG) {
+            // One pixel per module; the SVG scales itself to the requested size
+            BitMatrix modules = qrCodeWriter.encode(text, BarcodeFormat.QR_CODE, 0, 0, hints);
+            return toSvg(modules, options.size());
+        }
+
+        BitMatrix bitMatrix = qrCodeWriter.encode(text, BarcodeFormat.QR_CODE, options.size(), options.size(), hints);
+        // Write the image to a byte array in memory.
+        try (ByteArrayOutputStream baos = new ByteArrayOutputStream()) {
+            ImageIO.write(toImage(bitMatrix), "PNG", baos);
+            return baos.toByteArray();
+        }
+    }
+
+    /**
+     * Copies the matrix into a 1-bit image by filling its raster directly. MatrixToImageWriter sets one pixel at a
+     * time through the color model, which takes several times longer than encoding the QR code itself.
+     */
+    private static BufferedImage toImage(BitMatrix bitMatrix) {
+        int width = bitMatrix.getWidth();
+        int height = bitMatrix.getHeight();
+        BufferedImage image = new BufferedImage(width, height, BufferedImage.TYPE_BYTE_BINARY);
+        // One bit per pixel, most significant first, each row padded to whole bytes; 0 is black and 1 is white
+        byte[] pixels = ((DataBufferByte) image.getRaster().getDataBuffer()).getData();
+        int stride = (width + 7) / 8;
+        BitArray row = new BitArray(width);
+        for (int y = 0; y < height; y++) {
+            row = bitMatrix.getRow(y, row);
+            int offset = y * stride;
+            for (int x = 0; x < width; x++) {
+                if (!row.get(x)) {
+                    pixels[offset + (x >> 3)] |= (byte) (0x80 >>> (x & 7));
+                }
+            }
+        }
+        return image;
+    }
+
+    /**
+     * Draws every horizontal run of dark modules as one rectangle of a single path, which keeps the SVG small.
+     */
+    private static byte[] toSvg(BitMatrix modules, int size) {
+        int width = modules.getWidth();
+        int height = modules.getHeight();
+        StringBuilder svg = new StringBuilder(width * height / 2 + 256);
+        svg.append("<svg xmlns=\"http://www.w3.org/2000/svg\" width=\"").append(size)
+                .append("\" height=\"").append(size)
+                .append("\" viewBox=\"0 0 ").append(width).append(' ').append(height)
+                .append("\" shape-rendering=\"crispEdges\">")
+                .append("<rect width=\"").append(width).append("\" height=\"").append(height).append("\" fill=\"#fff\"/>")
+                .append("<path fill=\"#000\" d=\"");
+        for (int y = 0; y < height; y++) {
+            int x = 0;
+            while (x < width) {
+                if (!modules.get(x, y)) {
+                    x++;
+                    continue;
+                }
+                int start = x;
+                while (x < width && modules.get(x, y)) {
+                    x++;
+                }
+                svg.append('M').append(start).append(' ').append(y)
+                        .append('h').append(x - start).append("v1h-").append(x - start).append('z');
+            }
+        }
+        svg.append("\"/></svg>");
+        return svg.toString().getBytes(StandardCharsets.UTF_8);
+    }
+}
@@ -0,0 +1,20 @@
+package com.microproject.linktoolkit.qrcode;
+
+import java.io.IOException;
+
+/**
+ * Where rendered QR code images are kept. Selected with {@code qrcode.storage}: "azure" (the default) uploads
+ * to Azure Blob Storage, "local" writes to a directory and stands in for it in tests and benchmarks.
+ */
+public interface QrCodeStorage {
+
+    /**
+     * Stores an image, overwriting any earlier one with the same name.
+     *
+     * @param name The file name, e.g. "aB3dE9x.png".
+     * @param image The image bytes.
+     * @param contentType The MIME type of the image.
+     * @return The public URL of the stored image.
+     */
+    String store(String name, byte[] image, String contentType) throws IOException;
+}
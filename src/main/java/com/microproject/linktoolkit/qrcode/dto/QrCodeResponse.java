@@ -1,12 +1,16 @@
 package com.microproject.linktoolkit.qrcode.dto;
 
+import com.microproject.linktoolkit.link.QrCodeStatus;
+
 /**
- * DTO for the response after generating a QR code.
+ * DTO for the response after requesting a QR code, and for polling its status.
  * @param shortUrl The shortened URL that the QR code points to.
- * @param qrCodeUrl The public URL of the generated QR code image in cloud storage.
+ * @param qrCodeUrl The public URL of the generated QR code image in cloud storage; null until the status is READY.
+ * @param status Whether the QR code is still being generated, ready, or failed.
  */
 public record QrCodeResponse(
         String shortUrl,
-        String qrCodeUrl
+        String qrCodeUrl,
+        QrCodeStatus status
 ) {
-}
\ No newline at end of file
+}
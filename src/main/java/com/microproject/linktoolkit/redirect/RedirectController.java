@@ -3,45 +3,83 @@
 package com.microproject.linktoolkit.redirect;
 
 import com.microproject.linktoolkit.analytics.AnalyticsService;
-import com.microproject.linktoolkit.link.Link;
-import com.microproject.linktoolkit.link.LinkRepository;
+import com.microproject.linktoolkit.link.AliasResolutionCache;
+import com.microproject.linktoolkit.link.ResolvedLink;
+import io.micrometer.core.instrument.MeterRegistry;
+import io.micrometer.core.instrument.TimeGauge;
+import io.micrometer.core.instrument.Timer;
 import jakarta.servlet.http.HttpServletRequest;
 import jakarta.servlet.http.HttpServletResponse;
-import lombok.RequiredArgsConstructor;
+import lombok.extern.slf4j.Slf4j;
 import org.springframework.stereotype.Controller;
 import org.springframework.web.bind.annotation.GetMapping;
 import org.springframework.web.bind.annotation.PathVariable;
 
 import java.io.IOException;
+import java.lang.management.ManagementFactory;
 import java.time.Instant;
 import java.util.Optional;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
 
 @Controller
-@RequiredArgsConstructor
+@Slf4j
 public class RedirectController {
 
-    private final LinkRepository linkRepository;
+    private final AliasResolutionCache aliasResolutionCache;
     private final AnalyticsService analyticsService;
 
+    // Redirect latency, one timer per outcome (links.redirect{outcome=hit|not_found|expired})
+    private final Timer hitTimer;
+    private final Timer notFoundTimer;
+    private final Timer expiredTimer;
+    // JVM uptime when the first redirect was answered, 0 until then
+    private final AtomicLong firstRedirectUptimeMs = new AtomicLong();
+
+    public RedirectController(AliasResolutionCache aliasResolutionCache, AnalyticsService analyticsService, MeterRegistry meterRegistry) {
+        this.aliasResolutionCache = aliasResolutionCache;
+        this.analyticsService = analyticsService;
+        this.hitTimer = redirectTimer(meterRegistry, "hit");
+        this.notFoundTimer = redirectTimer(meterRegistry, "not_found");
+        this.expiredTimer = redirectTimer(meterRegistry, "expired");
+        // Next to Spring Boot's application.started.time and application.ready.time, but counted from the JVM start
+        TimeGauge.builder("application.first-redirect.time", firstRedirectUptimeMs, TimeUnit.MILLISECONDS,
+                        uptime -> uptime.get() > 0 ? uptime.get() : Double.NaN)
+                .description("Time from the JVM start until the first redirect was answered")
+                .register(meterRegistry);
+    }
+
+    private static Timer redirectTimer(MeterRegistry meterRegistry, String outcome) {
+        return Timer.builder("links.redirect")
+                .description("Time to resolve an alias and answer the redirect")
+                .tag("outcome", outcome)
+                .register(meterRegistry);
+    }
+
     @GetMapping("/{alias}")
     public void handleRedirect(
             @PathVariable String alias,
             HttpServletRequest request,
             HttpServletResponse response) throws IOException {
 
-        Optional<Link> linkOptional = linkRepository.findByShortAlias(alias);
+        long started = System.nanoTime();
+
+        // Served from the in-process cache; only misses reach the database
+        Optional<ResolvedLink> linkOptional = aliasResolutionCache.resolve(alias);
 
         if (linkOptional.isEmpty()) {
             response.sendError(HttpServletResponse.SC_NOT_FOUND);
+            notFoundTimer.record(System.nanoTime() - started, TimeUnit.NANOSECONDS);
             return;
         }
 
-        Link link = linkOptional.get();
+        ResolvedLink link = linkOptional.get();
 
         // Check if the link is expired
-        if (link.getExpiresAt().isBefore(Instant.now())) {
+        if (link.isExpired(Instant.now())) {
             // Treat expired links as not found
             response.sendError(HttpServletResponse.SC_NOT_FOUND);
+            expiredTimer.record(System.nanoTime() - started, TimeUnit.NANOSECONDS);
             return;
         }
 
@@ -50,7 +88,7 @@ public class RedirectController {
         String userAgent = request.getHeader("User-Agent");
         String referer = request.getHeader("Referer");
 
-        analyticsService.logClick(link.getId(), ipAddress, userAgent, referer);
+        analyticsService.logClick(link.id(), ipAddress, userAgent, referer);
 
         // --- Set Cache-Control Headers to prevent caching ---
         response.setHeader("Cache-Control", "no-cache, no-store, must-revalidate");
@@ -59,14 +97,26 @@ public class RedirectController {
 
         // Perform the redirect
         response.setStatus(HttpServletResponse.SC_FOUND); // 302 Found
-        response.setHeader("Location", link.getLongUrl());
+        response.setHeader("Location", link.longUrl());
+        hitTimer.record(System.nanoTime() - started, TimeUnit.NANOSECONDS);
+        if (firstRedirectUptimeMs.get() == 0) {
+            recordFirstRedirect();
+        }
+    }
+
+    private void recordFirstRedirect() {
+        long uptimeMs = ManagementFactory.getRuntimeMXBean().getUptime();
+        if (firstRedirectUptimeMs.compareAndSet(0, uptimeMs)) {
+            log.info("First redirect answered {} ms after the JVM started.", uptimeMs);
+        }
     }
 
     /**
      * Helper method to extract the real client IP address, accounting for proxies.
      * This logic now correctly lives in the web layer (the controller).
+     * Package-private for the redirect benchmark.
      */
-    private String extractIpAddress(HttpServletRequest request) {
+    String extractIpAddress(HttpServletRequest request) {
         String ip = request.getHeader("X-Forwarded-for");
         if (ip == null || ip.isEmpty() || "unknown".equalsIgnoreCase(ip)) {
             ip = request.getHeader("Proxy-Client-IP");
@@ -80,4 +130,4 @@ public class RedirectController {
         // "X-Forwarded-For" can be a comma-separated list. The first one is the client.
         return ip.split(",")[0].trim();
     }
-}
\ No newline at end of file
+}
@@ -1,41 +1,314 @@
 package com.microproject.linktoolkit.scheduled;
 
-import com.microproject.linktoolkit.link.LinkRepository;
-import lombok.RequiredArgsConstructor;
+import com.microproject.linktoolkit.link.LinkChangeBus;
+import io.micrometer.core.instrument.Counter;
+import io.micrometer.core.instrument.Gauge;
+import io.micrometer.core.instrument.MeterRegistry;
+import io.micrometer.core.instrument.Timer;
 import lombok.extern.slf4j.Slf4j;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.jdbc.core.ConnectionCallback;
+import org.springframework.jdbc.core.namedparam.MapSqlParameterSource;
+import org.springframework.jdbc.core.namedparam.NamedParameterJdbcTemplate;
 import org.springframework.scheduling.annotation.Scheduled;
 import org.springframework.stereotype.Service;
-import org.springframework.transaction.annotation.Transactional;
+import org.springframework.transaction.support.TransactionTemplate;
 
+import java.sql.Connection;
+import java.sql.PreparedStatement;
+import java.sql.ResultSet;
+import java.sql.SQLException;
+import java.sql.Timestamp;
+import java.time.Duration;
 import java.time.Instant;
+import java.util.List;
+import java.util.UUID;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.function.Supplier;
 
+/**
+ * Deletes expired links, together with their clicks and click rollups, a little at a time throughout the day.
+ * <p>
+ * Every {@code links.cleanup.interval.ms} a run picks the oldest expired links in batches, using the index on
+ * expires_at. The clicks of a batch are deleted by primary key in chunks, each in its own short transaction, and
+ * the links themselves go last, so no statement holds locks for long or writes a burst of WAL.
+ * After every transaction the job sleeps in proportion to how long it took, and the batch sizes shrink whenever a
+ * transaction is slower than {@code links.cleanup.target-latency.ms}, so a busy database slows the cleanup down
+ * instead of the other way round. A run stops once the backlog is gone or its time budget is spent.
+ * </p>
+ * <p>
+ * Only one instance runs at a time: a run holds a transaction-level advisory lock on a connection of its own, and
+ * instances that can't take it skip their turn instead of deleting the same batches. Ending that transaction
+ * releases the lock, however the run ends.
+ * </p>
+ * Progress is published as links.cleanup.deleted{table}, links.cleanup.transaction{step}, links.cleanup.batch-size{table}
+ * and links.cleanup.backlog.seconds (how long ago the oldest link still waiting for deletion expired).
+ */
 @Service
-@RequiredArgsConstructor
 @Slf4j
 public class LinkCleanupService {
 
-    private final LinkRepository linkRepository;
+    // NOTE: pg_try_advisory_xact_lock is PostgreSQL syntax, like the other native SQL in this project.
+    private static final String TRY_LOCK_SQL = "SELECT pg_try_advisory_xact_lock(?)";
+    // Any fixed key shared by all instances; "LnkClnp" in ASCII
+    private static final long CLEANUP_LOCK_KEY = 0x4c6e6b436c6e70L;
+    private static final String SELECT_EXPIRED_SQL =
+            "SELECT id, short_alias, created_at FROM links WHERE expires_at < :now ORDER BY expires_at LIMIT :limit";
+    // A bounded chunk of the batch's clicks, by primary key; clicked_at >= :since skips partitions older than the links
+    private static final String DELETE_CLICKS_CHUNK_SQL =
+            "DELETE FROM clicks WHERE (id, clicked_at) IN (SELECT id, clicked_at FROM clicks " +
+            "WHERE link_id IN (:ids) AND clicked_at >= :since LIMIT :limit)";
+    private static final String DELETE_CLICKS_SQL =
+            "DELETE FROM clicks WHERE link_id IN (:ids) AND clicked_at >= :since";
+    private static final String DELETE_DAILY_STATS_SQL = "DELETE FROM link_daily_stats WHERE link_id IN (:ids)";
+    private static final String DELETE_DIMENSION_STATS_SQL = "DELETE FROM link_daily_dimension_stats WHERE link_id IN (:ids)";
+    private static final String DELETE_TOP_VALUES_SQL = "DELETE FROM link_top_values WHERE link_id IN (:ids)";
+    private static final String DELETE_WATERMARKS_SQL = "DELETE FROM link_click_watermarks WHERE link_id IN (:ids)";
+    // Re-checks the expiry, in case a link was extended while its batch was being worked on
+    private static final String DELETE_LINKS_SQL = "DELETE FROM links WHERE id IN (:ids) AND expires_at < :now";
+    private static final Duration CLOCK_SKEW_MARGIN = Duration.ofDays(1);
+    private static final String OLDEST_EXPIRED_SQL = "SELECT MIN(expires_at) FROM links WHERE expires_at < :now";
+
+    private final NamedParameterJdbcTemplate namedParameterJdbcTemplate;
+    private final TransactionTemplate transactionTemplate;
+    private final LinkChangeBus linkChangeBus;
+    private final AdaptiveBatchSize linkBatchSize;
+    private final AdaptiveBatchSize clickBatchSize;
+    private final double pauseRatio;
+    private final Duration maxRunDuration;
+
+    private final Counter deletedLinks;
+    private final Counter deletedClicks;
+    private final Timer clicksTransactionTimer;
+    private final Timer linksTransactionTimer;
+    private final AtomicLong backlogSeconds = new AtomicLong();
+
+    public LinkCleanupService(
+            NamedParameterJdbcTemplate namedParameterJdbcTemplate,
+            TransactionTemplate transactionTemplate,
+            LinkChangeBus linkChangeBus,
+            MeterRegistry meterRegistry,
+            @Value("${links.cleanup.batch-size:500}") int linkBatchSize,
+            @Value("${links.cleanup.click-batch-size:5000}") int clickBatchSize,
+            @Value("${links.cleanup.target-latency.ms:200}") long targetLatencyMs,
+            @Value("${links.cleanup.pause-ratio:1.0}") double pauseRatio,
+            @Value("${links.cleanup.max-run.ms:30000}") long maxRunMs
+    ) {
+        if (linkBatchSize < 1 || clickBatchSize < 1) {
+            throw new IllegalArgumentException("links.cleanup batch sizes must be positive.");
+        }
+        this.namedParameterJdbcTemplate = namedParameterJdbcTemplate;
+        this.transactionTemplate = transactionTemplate;
+        this.linkChangeBus = linkChangeBus;
+        Duration targetLatency = Duration.ofMillis(targetLatencyMs);
+        this.linkBatchSize = new AdaptiveBatchSize(linkBatchSize, targetLatency);
+        this.clickBatchSize = new AdaptiveBatchSize(clickBatchSize, targetLatency);
+        this.pauseRatio = Math.max(0, pauseRatio);
+        this.maxRunDuration = Duration.ofMillis(maxRunMs);
+
+        this.deletedLinks = meterRegistry.counter("links.cleanup.deleted", "table", "links");
+        this.deletedClicks = meterRegistry.counter("links.cleanup.deleted", "table", "clicks");
+        this.clicksTransactionTimer = meterRegistry.timer("links.cleanup.transaction", "step", "clicks");
+        this.linksTransactionTimer = meterRegistry.timer("links.cleanup.transaction", "step", "links");
+        Gauge.builder("links.cleanup.batch-size", this.linkBatchSize, AdaptiveBatchSize::current)
+                .tag("table", "links")
+                .register(meterRegistry);
+        Gauge.builder("links.cleanup.batch-size", this.clickBatchSize, AdaptiveBatchSize::current)
+                .tag("table", "clicks")
+                .register(meterRegistry);
+        Gauge.builder("links.cleanup.backlog.seconds", backlogSeconds, AtomicLong::get)
+                .register(meterRegistry);
+    }
 
     /**
-     * A scheduled job that runs automatically to clean up expired links.
-     * The cron expression "0 0 1 * * ?" means "run at 1:00 AM every day".
-     * This is a good, low-traffic time to perform maintenance tasks.
+     * Works down the backlog of expired links until it is empty or the run's time budget is spent.
+     * Runs are short and frequent, so the cleanup keeps pace with expiries instead of catching up once a night.
+     * A run is skipped while another instance holds the cleanup lock.
      */
-    @Scheduled(cron = "0 0 1 * * ?")
-    @Transactional
+    @Scheduled(fixedDelayString = "${links.cleanup.interval.ms:60000}")
     public void deleteExpiredLinks() {
-        log.info("Starting scheduled job: Deleting expired links...");
         Instant now = Instant.now();
+        try {
+            Boolean ran = namedParameterJdbcTemplate.getJdbcTemplate().execute(
+                    (ConnectionCallback<Boolean>) lockConnection -> whileLocked(lockConnection, () -> deleteBatches(now)));
+            if (!Boolean.TRUE.equals(ran)) {
+                log.debug("Another instance is cleaning up expired links; skipping this run.");
+            }
+        } catch (Exception e) {
+            log.error("Error occurred during expired link cleanup job.", e);
+        } finally {
+            updateBacklog(now);
+        }
+    }
 
+    /**
+     * Runs the work while holding the cleanup lock in a transaction on the given connection.
+     * The transaction never writes; rolling it back at the end is what releases the lock.
+     *
+     * @return false, without running the work, if another instance holds the lock.
+     */
+    private static boolean whileLocked(Connection lockConnection, Runnable work) throws SQLException {
+        boolean autoCommit = lockConnection.getAutoCommit();
+        lockConnection.setAutoCommit(false);
         try {
-            int deletedCount = linkRepository.deleteByExpiresAtBefore(now);
-            if (deletedCount > 0) {
-                log.info("Successfully deleted {} expired links.", deletedCount);
-            } else {
-                log.info("No expired links found to delete.");
+            try (PreparedStatement tryLock = lockConnection.prepareStatement(TRY_LOCK_SQL)) {
+                tryLock.setLong(1, CLEANUP_LOCK_KEY);
+                try (ResultSet rs = tryLock.executeQuery()) {
+                    if (!rs.next() || !rs.getBoolean(1)) {
+                        return false;
+                    }
+                }
+            }
+            work.run();
+            return true;
+        } finally {
+            lockConnection.rollback();
+            lockConnection.setAutoCommit(autoCommit);
+        }
+    }
+
+    private void deleteBatches(Instant now) {
+        long deadline = System.nanoTime() + maxRunDuration.toNanos();
+        long linksDeleted = 0;
+        long clicksDeleted = 0;
+
+        try {
+            while (hasTimeLeft(deadline)) {
+                int batchLimit = linkBatchSize.current();
+                List<ExpiredLink> batch = namedParameterJdbcTemplate.query(SELECT_EXPIRED_SQL,
+                        new MapSqlParameterSource("now", Timestamp.from(now)).addValue("limit", batchLimit),
+                        (rs, rowNum) -> new ExpiredLink(rs.getObject("id", UUID.class), rs.getString("short_alias"),
+                                rs.getTimestamp("created_at")));
+                if (batch.isEmpty()) {
+                    break;
+                }
+
+                // Clicks can't predate their link, so partitions older than the oldest link are never scanned.
+                // The day of margin covers clock skew between instances.
+                Instant since = batch.stream()
+                        .map(link -> link.createdAt() != null ? link.createdAt().toInstant().minus(CLOCK_SKEW_MARGIN) : Instant.EPOCH)
+                        .min(Instant::compareTo)
+                        .orElse(Instant.EPOCH);
+                MapSqlParameterSource params = new MapSqlParameterSource("ids", batch.stream().map(ExpiredLink::id).toList())
+                        .addValue("now", Timestamp.from(now))
+                        .addValue("since", Timestamp.from(since));
+
+                // A popular link can have millions of clicks, so they are deleted in bounded chunks first
+                int limit;
+                int deleted;
+                do {
+                    limit = clickBatchSize.current();
+                    params.addValue("limit", limit);
+                    deleted = throttled(clicksTransactionTimer, clickBatchSize,
+                            () -> namedParameterJdbcTemplate.update(DELETE_CLICKS_CHUNK_SQL, params));
+                    clicksDeleted += deleted;
+                    deletedClicks.increment(deleted);
+                } while (deleted == limit && hasTimeLeft(deadline));
+                if (deleted == limit) {
+                    // Out of time with clicks left; the next run picks the same links up again
+                    break;
+                }
+
+                // The stragglers that arrived meanwhile, the rollups and the links go in one last short transaction.
+                // Its commit publishes the whole batch; a link that was extended meanwhile is just reloaded.
+                int[] counts = throttled(linksTransactionTimer, linkBatchSize, () -> {
+                    int[] deletedRows = {
+                            namedParameterJdbcTemplate.update(DELETE_CLICKS_SQL, params),
+                            namedParameterJdbcTemplate.update(DELETE_DAILY_STATS_SQL, params),
+                            namedParameterJdbcTemplate.update(DELETE_DIMENSION_STATS_SQL, params),
+                            namedParameterJdbcTemplate.update(DELETE_TOP_VALUES_SQL, params),
+                            namedParameterJdbcTemplate.update(DELETE_WATERMARKS_SQL, params),
+                            namedParameterJdbcTemplate.update(DELETE_LINKS_SQL, params)
+                    };
+                    linkChangeBus.publish(batch.stream().map(ExpiredLink::alias).toList());
+                    return deletedRows;
+                });
+                clicksDeleted += counts[0];
+                deletedClicks.increment(counts[0]);
+                linksDeleted += counts[5];
+                deletedLinks.increment(counts[5]);
+
+                if (batch.size() < batchLimit) {
+                    break;
+                }
             }
         } catch (Exception e) {
             log.error("Error occurred during expired link cleanup job.", e);
+        } finally {
+            if (linksDeleted > 0) {
+                log.info("Deleted {} expired links and {} of their clicks.", linksDeleted, clicksDeleted);
+            }
+        }
+    }
+
+    private void updateBacklog(Instant now) {
+        try {
+            Timestamp oldest = namedParameterJdbcTemplate.queryForObject(OLDEST_EXPIRED_SQL,
+                    new MapSqlParameterSource("now", Timestamp.from(now)), Timestamp.class);
+            backlogSeconds.set(oldest == null ? 0 : Duration.between(oldest.toInstant(), now).toSeconds());
+        } catch (Exception e) {
+            log.warn("Could not measure the expired link backlog.", e);
+        }
+    }
+
+    /**
+     * Runs one transaction and lets its duration drive both the batch size and a pause of pause-ratio times as long,
+     * so the job's share of database time stays bounded and shrinks in absolute terms as soon as the database slows down.
+     */
+    private <T> T throttled(Timer timer, AdaptiveBatchSize batchSize, Supplier<T> work) {
+        long started = System.nanoTime();
+        T result = transactionTemplate.execute(status -> work.get());
+        long elapsed = System.nanoTime() - started;
+        timer.record(elapsed, TimeUnit.NANOSECONDS);
+        batchSize.adjust(elapsed);
+
+        long pauseNanos = (long) (elapsed * pauseRatio);
+        if (pauseNanos > 0) {
+            try {
+                TimeUnit.NANOSECONDS.sleep(pauseNanos);
+            } catch (InterruptedException e) {
+                // Shutting down: hasTimeLeft() ends the run
+                Thread.currentThread().interrupt();
+            }
+        }
+        return result;
+    }
+
+    private static boolean hasTimeLeft(long deadline) {
+        return System.nanoTime() < deadline && !Thread.currentThread().isInterrupted();
+    }
+
+    private record ExpiredLink(UUID id, String alias, Timestamp createdAt) {
+    }
+
+    /**
+     * A batch size that halves whenever a transaction takes longer than the target and grows back by a quarter
+     * while transactions stay well under it, never exceeding the configured size.
+     */
+    private static final class AdaptiveBatchSize {
+        private static final int MIN_SIZE = 10;
+
+        private final int maxSize;
+        private final long targetNanos;
+        private volatile int current;
+
+        private AdaptiveBatchSize(int maxSize, Duration targetLatency) {
+            this.maxSize = maxSize;
+            this.targetNanos = targetLatency.toNanos();
+            this.current = maxSize;
+        }
+
+        int current() {
+            return current;
+        }
+
+        void adjust(long elapsedNanos) {
+            if (elapsedNanos > targetNanos) {
+                current = Math.max(Math.min(MIN_SIZE, maxSize), current / 2);
+            } else if (elapsedNanos < targetNanos / 2) {
+                current = Math.min(maxSize, current + Math.max(1, current / 4));
+            }
         }
     }
-}
\ No newline at end of file
+}
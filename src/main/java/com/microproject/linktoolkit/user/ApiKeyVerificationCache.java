@@ -0,0 +1,166 @@
+package com.microproject.linktoolkit.user;
+
+import com.github.benmanes.caffeine.cache.Cache;
+import com.github.benmanes.caffeine.cache.Caffeine;
+import io.micrometer.core.instrument.MeterRegistry;
+import io.micrometer.core.instrument.Timer;
+import io.micrometer.core.instrument.binder.cache.CaffeineCacheMetrics;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.security.core.userdetails.UsernameNotFoundException;
+import org.springframework.security.crypto.password.PasswordEncoder;
+import org.springframework.stereotype.Component;
+import org.springframework.transaction.support.TransactionSynchronization;
+import org.springframework.transaction.support.TransactionSynchronizationManager;
+
+import javax.crypto.Mac;
+import javax.crypto.spec.SecretKeySpec;
+import java.nio.charset.StandardCharsets;
+import java.security.GeneralSecurityException;
+import java.security.MessageDigest;
+import java.security.SecureRandom;
+import java.time.Duration;
+import java.util.Optional;
+
+/**
+ * Verifies API keys, running BCrypt only the first time a key is seen.
+ * <p>
+ * After a successful BCrypt check, an HMAC-SHA256 of the secret part is cached under the key's public ID.
+ * Later requests with the same key are verified by recomputing that HMAC, which takes microseconds instead of
+ * the tens of milliseconds BCrypt is designed to take. The HMAC key is random per process and never leaves memory,
+ * so the cached digests are useless to anyone who dumps them without it.
+ * </p>
+ * A key rotated on this instance is evicted immediately. A cached hit is only accepted while the owner, as seen by
+ * the {@link UserPrincipalCache}, still holds that key, so one rotated on another instance stops being accepted here
+ * once the owner's cached principal expires.
+ */
+@Component
+public class ApiKeyVerificationCache {
+
+    private static final String HMAC_ALGORITHM = "HmacSHA256";
+
+    private final UserRepository userRepository;
+    private final PasswordEncoder passwordEncoder;
+    private final UserPrincipalCache userPrincipalCache;
+    private final MeterRegistry meterRegistry;
+    private final Cache<String, VerifiedApiKey> cache;
+    private final SecretKeySpec hmacKey;
+    private final Mac macPrototype;
+
+    public ApiKeyVerificationCache(
+            UserRepository userRepository,
+            PasswordEncoder passwordEncoder,
+            UserPrincipalCache userPrincipalCache,
+            MeterRegistry meterRegistry,
+            @Value("${auth.apikey-cache.max-size:10000}") long maxSize,
+            @Value("${auth.apikey-cache.ttl.ms:600000}") long ttlMs
+    ) {
+        this.userRepository = userRepository;
+        this.passwordEncoder = passwordEncoder;
+        this.userPrincipalCache = userPrincipalCache;
+        this.meterRegistry = meterRegistry;
+        this.cache = Caffeine.newBuilder()
+                .maximumSize(maxSize)
+                .expireAfterWrite(Duration.ofMillis(ttlMs))
+                .recordStats()
+                .build();
+        byte[] keyBytes = new byte[32];
+        new SecureRandom().nextBytes(keyBytes);
+        this.hmacKey = new SecretKeySpec(keyBytes, HMAC_ALGORITHM);
+        this.macPrototype = newMac();
+
+        // Publishes cache.gets{result=hit|miss} etc. tagged with cache=api-keys
+        CaffeineCacheMetrics.monitor(meterRegistry, cache, "api-keys");
+    }
+
+    /**
+     * A key that passed BCrypt once.
+     * @param secretDigest HMAC of the secret part of the key.
+     * @param email The owner of the key.
+     */
+    private record VerifiedApiKey(byte[] secretDigest, String email) {
+    }
+
+    /**
+     * Checks an API key, timing each check as auth.apikey.verify{path=cached|bcrypt, result=valid|invalid}.
+     *
+     * @param publicId The part of the key before the dot.
+     * @param secretKey The part of the key after the dot.
+     * @return The key's owner if the key is valid.
+     */
+    public Optional<User> authenticate(String publicId, String secretKey) {
+        Timer.Sample sample = Timer.start(meterRegistry);
+        byte[] digest = digest(secretKey);
+
+        VerifiedApiKey cached = cache.getIfPresent(publicId);
+        if (cached != null && MessageDigest.isEqual(cached.secretDigest(), digest)) {
+            Optional<User> owner = currentOwner(cached.email(), publicId);
+            if (owner.isPresent()) {
+                sample.stop(verifyTimer("cached", "valid"));
+                return owner;
+            }
+            // Rotated, or the user was deleted, on another instance
+            cache.invalidate(publicId);
+        }
+
+        // Unknown key, a secret that doesn't match the cached one, or a stale entry: fall back to the stored BCrypt hash
+        Optional<User> user = userRepository.findByApiKeyPublicId(publicId)
+                .filter(candidate -> passwordEncoder.matches(secretKey, candidate.getApiKeyHash()));
+        sample.stop(verifyTimer("bcrypt", user.isPresent() ? "valid" : "invalid"));
+        user.ifPresent(owner -> cache.put(publicId, new VerifiedApiKey(digest, owner.getEmail())));
+        return user;
+    }
+
+    /**
+     * Forgets a key once the current transaction commits (or immediately if there is none).
+     *
+     * @param publicId The public ID of the key being replaced or revoked.
+     */
+    public void evict(String publicId) {
+        if (publicId == null) {
+            return;
+        }
+        if (TransactionSynchronizationManager.isSynchronizationActive()) {
+            TransactionSynchronizationManager.registerSynchronization(new TransactionSynchronization() {
+                @Override
+                public void afterCommit() {
+                    cache.invalidate(publicId);
+                }
+            });
+        } else {
+            cache.invalidate(publicId);
+        }
+    }
+
+    private Optional<User> currentOwner(String email, String publicId) {
+        try {
+            return Optional.of(userPrincipalCache.get(email))
+                    .filter(owner -> publicId.equals(owner.getApiKeyPublicId()));
+        } catch (UsernameNotFoundException e) {
+            return Optional.empty();
+        }
+    }
+
+    private byte[] digest(String secretKey) {
+        try {
+            // Mac instances are not thread-safe; cloning the initialised prototype skips the provider lookup and key setup.
+            Mac mac = (Mac) macPrototype.clone();
+            return mac.doFinal(secretKey.getBytes(StandardCharsets.UTF_8));
+        } catch (CloneNotSupportedException e) {
+            return newMac().doFinal(secretKey.getBytes(StandardCharsets.UTF_8));
+        }
+    }
+
+    private Mac newMac() {
+        try {
+            Mac mac = Mac.getInstance(HMAC_ALGORITHM);
+            mac.init(hmacKey);
+            return mac;
+        } catch (GeneralSecurityException e) {
+            throw new IllegalStateException(HMAC_ALGORITHM + " is not available.", e);
+        }
+    }
+
+    private Timer verifyTimer(String path, String result) {
+        return meterRegistry.timer("auth.apikey.verify", "path", path, "result", result);
+    }
+}
@@ -0,0 +1,74 @@
+package com.microproject.linktoolkit.user;
+
+import com.github.benmanes.caffeine.cache.Cache;
+import com.github.benmanes.caffeine.cache.Caffeine;
+import io.micrometer.core.instrument.MeterRegistry;
+import io.micrometer.core.instrument.binder.cache.CaffeineCacheMetrics;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.security.core.userdetails.UsernameNotFoundException;
+import org.springframework.stereotype.Component;
+import org.springframework.transaction.support.TransactionSynchronization;
+import org.springframework.transaction.support.TransactionSynchronizationManager;
+
+import java.time.Duration;
+
+/**
+ * Short-lived cache of email -> User used to authenticate requests without a user query per request.
+ * <p>
+ * Cached users are detached entities shared between requests, so they must be treated as read-only;
+ * code that changes a user loads it from the repository and calls {@link #evict(String)}.
+ * The TTL bounds how long changes made by other instances can go unnoticed.
+ * </p>
+ */
+@Component
+public class UserPrincipalCache {
+
+    private final UserRepository userRepository;
+    private final Cache<String, User> cache;
+
+    public UserPrincipalCache(
+            UserRepository userRepository,
+            MeterRegistry meterRegistry,
+            @Value("${auth.principal-cache.max-size:10000}") long maxSize,
+            @Value("${auth.principal-cache.ttl.ms:30000}") long ttlMs
+    ) {
+        this.userRepository = userRepository;
+        this.cache = Caffeine.newBuilder()
+                .maximumSize(maxSize)
+                .expireAfterWrite(Duration.ofMillis(ttlMs))
+                .recordStats()
+                .build();
+
+        // Publishes cache.gets{result=hit|miss} etc. tagged with cache=user-principals
+        CaffeineCacheMetrics.monitor(meterRegistry, cache, "user-principals");
+    }
+
+    /**
+     * @param email The email of an authenticated subject.
+     * @return The user, from the cache or from the database on a miss.
+     * @throws UsernameNotFoundException if no user has this email. Unknown emails are not cached.
+     */
+    public User get(String email) {
+        return cache.get(email, key -> userRepository.findByEmail(key)
+                .orElseThrow(() -> new UsernameNotFoundException("User not found with email: " + key)));
+    }
+
+    /**
+     * Drops the cached user once the current transaction commits (or immediately if there is none),
+     * so the next request reloads it.
+     *
+     * @param email The email of the user that changed.
+     */
+    public void evict(String email) {
+        if (TransactionSynchronizationManager.isSynchronizationActive()) {
+            TransactionSynchronizationManager.registerSynchronization(new TransactionSynchronization() {
+                @Override
+                public void afterCommit() {
+                    cache.invalidate(email);
+                }
+            });
+        } else {
+            cache.invalidate(email);
+        }
+    }
+}
@@ -14,6 +14,8 @@ public class UserService {
 
     private final UserRepository userRepository;
     private final PasswordEncoder passwordEncoder;
+    private final UserPrincipalCache userPrincipalCache;
+    private final ApiKeyVerificationCache apiKeyVerificationCache;
 
     // A prefix for our API keys to make them identifiable
     private static final String API_KEY_PREFIX = "lk_";
@@ -44,10 +46,14 @@ public class UserService {
         String publicId = publicKeyPrefix + UUID.randomUUID().toString().replace("-", "");
         String secretKey = secretKeyPrefix + UUID.randomUUID().toString().replace("-", "");
 
+        // The old key must stop working right away, not when its cache entry expires
+        apiKeyVerificationCache.evict(user.getApiKeyPublicId());
+
         // 2. Store the public part in plaintext and the hash of the secret part
         user.setApiKeyPublicId(publicId);
         user.setApiKeyHash(passwordEncoder.encode(secretKey));
         userRepository.save(user);
+        userPrincipalCache.evict(email);
 
         // 3. Combine them for the user to see ONCE.
         String fullApiKey = publicId + "." + secretKey;
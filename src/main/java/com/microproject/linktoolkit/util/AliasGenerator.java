@@ -1,22 +1,124 @@
 package com.microproject.linktoolkit.util;
 
-import com.aventrix.jnanoid.jnanoid.NanoIdUtils;
+import io.micrometer.core.instrument.Counter;
+import io.micrometer.core.instrument.MeterRegistry;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.jdbc.core.JdbcTemplate;
 import org.springframework.stereotype.Component;
 
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.locks.ReentrantLock;
+
+/**
+ * Hands out generated aliases that are unique by construction.
+ * <p>
+ * Each instance leases blocks of {@value #BLOCK_SIZE} numbers from a database sequence and maps every number
+ * through {@link AliasPermutation}. Since no two instances ever get the same number and the permutation
+ * is a bijection, a generated alias never needs an existence check. Numbers of a block that are still unused
+ * when the instance stops are simply skipped.
+ * </p>
+ */
 @Component
+@Slf4j
 public class AliasGenerator {
-    private static final int DEFAULT_ALIAS_LENGTH = 7;
+
+    static final int BLOCK_SIZE = 1000;
+
+    // NOTE: nextval() is PostgreSQL syntax, like the other native SQL in this project.
+    private static final String CREATE_SEQUENCE_SQL = "CREATE SEQUENCE IF NOT EXISTS alias_block_seq";
+    private static final String LEASE_BLOCK_SQL = "SELECT nextval('alias_block_seq')";
+
+    private final JdbcTemplate jdbcTemplate;
+    private final AliasPermutation permutation;
+    private final Counter generatedCounter;
+    private final Counter blocksLeasedCounter;
+
+    // A lock rather than synchronized, so a lease doesn't pin a virtual thread while it waits for the database.
+    private final ReentrantLock lock = new ReentrantLock();
+    private long nextId;
+    private long blockEnd;
+    private boolean sequenceCreated;
+
+    public AliasGenerator(
+            JdbcTemplate jdbcTemplate,
+            MeterRegistry meterRegistry,
+            @Value("${alias.permutation.secret}") String secret
+    ) {
+        this.jdbcTemplate = jdbcTemplate;
+        this.permutation = new AliasPermutation(secret);
+        this.generatedCounter = meterRegistry.counter("links.alias.generated");
+        this.blocksLeasedCounter = meterRegistry.counter("links.alias.blocks.leased");
+    }
 
     /**
-     * Generates a short, URL-friendly, random alias.
-     * @return A random string of 7 characters.
+     * Generates a short, URL-friendly alias that no other link has or will get.
+     * @return A string of 7 letters and digits.
      */
     public String generate() {
-        // Generates a random ID with URL-friendly characters (A-Z, a-z, 0-9, _, -)
-        return NanoIdUtils.randomNanoId(
-                NanoIdUtils.DEFAULT_NUMBER_GENERATOR,
-                NanoIdUtils.DEFAULT_ALPHABET,
-                DEFAULT_ALIAS_LENGTH
-        );
+        lock.lock();
+        try {
+            return nextAlias();
+        } finally {
+            lock.unlock();
+        }
+    }
+
+    /**
+     * Generates aliases for a whole batch of links under a single acquisition of the lock.
+     * @param count The number of aliases to generate.
+     * @return count distinct aliases, in the same form as {@link #generate()}.
+     */
+    public List<String> generate(int count) {
+        List<String> aliases = new ArrayList<>(count);
+        lock.lock();
+        try {
+            for (int i = 0; i < count; i++) {
+                aliases.add(nextAlias());
+            }
+        } finally {
+            lock.unlock();
+        }
+        return aliases;
+    }
+
+    /**
+     * @param alias A custom alias requested by a user.
+     * @return true if the alias belongs to the generated namespace and must therefore be refused.
+     */
+    public boolean isReserved(String alias) {
+        return AliasPermutation.isGeneratedForm(alias);
+    }
+
+    // Must be called with the lock held
+    private String nextAlias() {
+        while (true) {
+            if (nextId >= blockEnd) {
+                leaseBlock();
+            }
+            // About a third of the numbers give aliases without all three character classes; skip those.
+            String alias = permutation.toAlias(nextId++);
+            if (AliasPermutation.isGeneratedForm(alias)) {
+                generatedCounter.increment();
+                return alias;
+            }
+        }
+    }
+
+    private void leaseBlock() {
+        // On the first lease rather than at startup, so that the context starts without a database (AppCDS training)
+        if (!sequenceCreated) {
+            jdbcTemplate.execute(CREATE_SEQUENCE_SQL);
+            sequenceCreated = true;
+        }
+        Long block = jdbcTemplate.queryForObject(LEASE_BLOCK_SQL, Long.class);
+        if (block == null || (block + 1) * BLOCK_SIZE > AliasPermutation.CAPACITY) {
+            throw new IllegalStateException("The generated alias space is exhausted.");
+        }
+        nextId = block * BLOCK_SIZE;
+        blockEnd = nextId + BLOCK_SIZE;
+        blocksLeasedCounter.increment();
+        log.debug("Leased alias block {}.", block);
     }
-}
\ No newline at end of file
+}
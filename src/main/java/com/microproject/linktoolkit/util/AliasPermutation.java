@@ -0,0 +1,177 @@
+package com.microproject.linktoolkit.util;
+
+import java.nio.ByteBuffer;
+import java.nio.charset.StandardCharsets;
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
+
+/**
+ * A keyed, reversible permutation of the 7-character base-62 alias space.
+ * <p>
+ * Sequential IDs are scrambled with a Feistel network over 42 bits and cycle-walked back into [0, 62^7),
+ * so that consecutive IDs give unrelated aliases while distinct IDs can never give the same alias.
+ * Without the key, neither the ID behind an alias nor the next alias can be derived.
+ * </p>
+ */
+public final class AliasPermutation {
+
+    public static final int ALIAS_LENGTH = 7;
+    private static final String ALPHABET = "0123456789ABCDEFGHIJKLMNOPQRSTUVWXYZabcdefghijklmnopqrstuvwxyz";
+
+    /** Number of distinct aliases, 62^7. */
+    public static final long CAPACITY = pow(ALPHABET.length(), ALIAS_LENGTH);
+
+    // 62^7 < 2^42, so a balanced Feistel network over two 21-bit halves covers the whole space.
+    private static final int HALF_BITS = 21;
+    private static final long HALF_MASK = (1L << HALF_BITS) - 1;
+    private static final int ROUNDS = 8;
+
+    private final long[] roundKeys = new long[ROUNDS];
+
+    public AliasPermutation(String secret) {
+        ByteBuffer digest = ByteBuffer.wrap(sha512("alias-permutation:" + secret));
+        for (int i = 0; i < ROUNDS; i++) {
+            roundKeys[i] = digest.getLong();
+        }
+    }
+
+    /**
+     * @param id A number in [0, CAPACITY).
+     * @return The alias for this number; distinct numbers always give distinct aliases.
+     */
+    public String toAlias(long id) {
+        return encode(permute(id));
+    }
+
+    /**
+     * @param alias A 7-character base-62 alias.
+     * @return The number that {@link #toAlias(long)} maps to this alias.
+     */
+    public long toId(String alias) {
+        return invert(decode(alias));
+    }
+
+    long permute(long value) {
+        checkRange(value);
+        // Cycle-walking: values that land outside the alias space are encrypted again until they are inside it.
+        do {
+            value = encrypt(value);
+        } while (value >= CAPACITY);
+        return value;
+    }
+
+    long invert(long value) {
+        checkRange(value);
+        do {
+            value = decrypt(value);
+        } while (value >= CAPACITY);
+        return value;
+    }
+
+    private long encrypt(long value) {
+        long left = value >>> HALF_BITS;
+        long right = value & HALF_MASK;
+        for (int i = 0; i < ROUNDS; i++) {
+            long next = left ^ round(i, right);
+            left = right;
+            right = next;
+        }
+        return (left << HALF_BITS) | right;
+    }
+
+    private long decrypt(long value) {
+        long left = value >>> HALF_BITS;
+        long right = value & HALF_MASK;
+        for (int i = ROUNDS - 1; i >= 0; i--) {
+            long previous = right ^ round(i, left);
+            right = left;
+            left = previous;
+        }
+        return (left << HALF_BITS) | right;
+    }
+
+    private long round(int i, long half) {
+        // MurmurHash3's 64-bit finalizer over the half block mixed with the round key
+        long h = half ^ roundKeys[i];
+        h ^= h >>> 33;
+        h *= 0xff51afd7ed558ccdL;
+        h ^= h >>> 33;
+        h *= 0xc4ceb9fe1a85ec53L;
+        h ^= h >>> 33;
+        return h & HALF_MASK;
+    }
+
+    /**
+     * Generated aliases always mix digits, upper-case and lower-case letters. Custom aliases of that shape
+     * are refused, which keeps the two namespaces apart so a generated alias can never already be taken.
+     *
+     * @param alias Any alias.
+     * @return true if the alias is 7 base-62 characters containing at least one digit, one upper-case
+     * and one lower-case letter.
+     */
+    public static boolean isGeneratedForm(String alias) {
+        if (alias == null || alias.length() != ALIAS_LENGTH) {
+            return false;
+        }
+        boolean digit = false, upper = false, lower = false;
+        for (int i = 0; i < ALIAS_LENGTH; i++) {
+            char c = alias.charAt(i);
+            if (c >= '0' && c <= '9') {
+                digit = true;
+            } else if (c >= 'A' && c <= 'Z') {
+                upper = true;
+            } else if (c >= 'a' && c <= 'z') {
+                lower = true;
+            } else {
+                return false;
+            }
+        }
+        return digit && upper && lower;
+    }
+
+    static String encode(long value) {
+        char[] chars = new char[ALIAS_LENGTH];
+        for (int i = ALIAS_LENGTH - 1; i >= 0; i--) {
+            chars[i] = ALPHABET.charAt((int) (value % ALPHABET.length()));
+            value /= ALPHABET.length();
+        }
+        return new String(chars);
+    }
+
+    static long decode(String alias) {
+        if (alias.length() != ALIAS_LENGTH) {
+            throw new IllegalArgumentException("Alias must be " + ALIAS_LENGTH + " characters long.");
+        }
+        long value = 0;
+        for (int i = 0; i < ALIAS_LENGTH; i++) {
+            int digit = ALPHABET.indexOf(alias.charAt(i));
+            if (digit < 0) {
+                throw new IllegalArgumentException("Alias must only contain letters and digits.");
+            }
+            value = value * ALPHABET.length() + digit;
+        }
+        return value;
+    }
+
+    private static void checkRange(long value) {
+        if (value < 0 || value >= CAPACITY) {
+            throw new IllegalArgumentException("Value " + value + " is outside the alias space.");
+        }
+    }
+
+    private static long pow(int base, int exponent) {
+        long result = 1;
+        for (int i = 0; i < exponent; i++) {
+            result *= base;
+        }
+        return result;
+    }
+
+    private static byte[] sha512(String text) {
+        try {
+            return MessageDigest.getInstance("SHA-512").digest(text.getBytes(StandardCharsets.UTF_8));
+        } catch (NoSuchAlgorithmException e) {
+            throw new IllegalStateException("SHA-512 is not available.", e);
+        }
+    }
+}
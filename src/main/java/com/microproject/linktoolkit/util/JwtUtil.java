@@ -1,14 +1,23 @@
 package com.microproject.linktoolkit.util;
 
+import com.github.benmanes.caffeine.cache.Cache;
+import com.github.benmanes.caffeine.cache.Caffeine;
+import com.github.benmanes.caffeine.cache.Expiry;
 import io.jsonwebtoken.Claims;
+import io.jsonwebtoken.JwtParser;
 import io.jsonwebtoken.Jwts;
+import io.jsonwebtoken.MalformedJwtException;
 import io.jsonwebtoken.io.Decoders;
 import io.jsonwebtoken.security.Keys;
+import io.micrometer.core.instrument.MeterRegistry;
+import io.micrometer.core.instrument.binder.cache.CaffeineCacheMetrics;
 import org.springframework.beans.factory.annotation.Value;
 import org.springframework.security.core.userdetails.UserDetails;
 import org.springframework.stereotype.Component;
 
 import javax.crypto.SecretKey;
+import java.time.Duration;
+import java.time.Instant;
 import java.util.Date;
 import java.util.HashMap;
 import java.util.Map;
@@ -17,17 +26,73 @@ import java.util.function.Function;
 @Component
 public class JwtUtil {
 
-    @Value("${jwt.secret}")
-    private String secret;
+    private final long jwtExpiration;
+    private final long refreshExpiration;
+
+    // The key and the parser are immutable and thread-safe, so they are built once instead of per token.
+    private final SecretKey signInKey;
+    private final JwtParser parser;
+
+    // Tokens whose signature has been checked, kept until their own expiry so a token is verified once, not per request.
+    private final Cache<String, VerifiedToken> verifiedTokens;
+
+    public JwtUtil(
+            @Value("${jwt.secret}") String secret,
+            @Value("${jwt.expiration.ms}") long jwtExpiration,
+            @Value("${jwt.refresh.expiration.ms}") long refreshExpiration,
+            @Value("${jwt.verified-cache.max-size:10000}") long verifiedCacheMaxSize,
+            MeterRegistry meterRegistry
+    ) {
+        this.jwtExpiration = jwtExpiration;
+        this.refreshExpiration = refreshExpiration;
+        this.signInKey = Keys.hmacShaKeyFor(Decoders.BASE64.decode(secret));
+        this.parser = Jwts.parser().verifyWith(signInKey).build();
+        this.verifiedTokens = Caffeine.newBuilder()
+                .maximumSize(verifiedCacheMaxSize)
+                .expireAfter(new TokenExpiry())
+                .recordStats()
+                .build();
+
+        // Publishes cache.gets{result=hit|miss} etc. tagged with cache=jwt-verified-tokens
+        CaffeineCacheMetrics.monitor(meterRegistry, verifiedTokens, "jwt-verified-tokens");
+    }
+
+    /**
+     * The parts of a token that authentication needs, once its signature and expiry have been checked.
+     * @param subject The user's email.
+     * @param expiresAt The token's exp claim.
+     */
+    public record VerifiedToken(String subject, Instant expiresAt) {
 
-    @Value("${jwt.expiration.ms}")
-    private long jwtExpiration;
+        public boolean isExpired() {
+            return !expiresAt.isAfter(Instant.now());
+        }
+    }
 
-    @Value("${jwt.refresh.expiration.ms}")
-    private long refreshExpiration;
+    /**
+     * Verifies a token, parsing it only if it has not been verified before.
+     *
+     * @param token The compact JWT.
+     * @return The verified subject and expiry.
+     * @throws io.jsonwebtoken.JwtException if the token is malformed, has a bad signature, has expired or has no expiry.
+     */
+    public VerifiedToken verify(String token) {
+        VerifiedToken cached = verifiedTokens.getIfPresent(token);
+        if (cached != null && !cached.isExpired()) {
+            return cached;
+        }
+        // Failures are not cached, so garbage tokens cannot push valid ones out.
+        Claims claims = extractAllClaims(token);
+        if (claims.getExpiration() == null) {
+            throw new MalformedJwtException("Token has no expiry.");
+        }
+        VerifiedToken verified = new VerifiedToken(claims.getSubject(), claims.getExpiration().toInstant());
+        verifiedTokens.put(token, verified);
+        return verified;
+    }
 
     public String extractUsername(String token) {
-        return extractClaim(token, Claims::getSubject);
+        return verify(token).subject();
     }
 
     public <T> T extractClaim(String token, Function<Claims, T> claimsResolver) {
@@ -52,33 +117,38 @@ public class JwtUtil {
                 .subject(userDetails.getUsername())
                 .issuedAt(new Date(System.currentTimeMillis()))
                 .expiration(new Date(System.currentTimeMillis() + expiration))
-                .signWith(getSignInKey())
+                .signWith(signInKey)
                 .compact();
     }
 
     public boolean isTokenValid(String token, UserDetails userDetails) {
-        final String username = extractUsername(token);
-        return (username.equals(userDetails.getUsername())) && !isTokenExpired(token);
-    }
-
-    private boolean isTokenExpired(String token) {
-        return extractExpiration(token).before(new Date());
-    }
-
-    private Date extractExpiration(String token) {
-        return extractClaim(token, Claims::getExpiration);
+        // A single (usually cached) verification covers both the subject and the expiry
+        final VerifiedToken verified = verify(token);
+        return verified.subject().equals(userDetails.getUsername()) && !verified.isExpired();
     }
 
     private Claims extractAllClaims(String token) {
-        return Jwts.parser()
-                .verifyWith(getSignInKey())
-                .build()
-                .parseSignedClaims(token)
-                .getPayload();
+        return parser.parseSignedClaims(token).getPayload();
     }
 
-    private SecretKey getSignInKey() {
-        byte[] keyBytes = Decoders.BASE64.decode(secret);
-        return Keys.hmacShaKeyFor(keyBytes);
+    /**
+     * Keeps a verified token exactly until its exp claim.
+     */
+    private static final class TokenExpiry implements Expiry<String, VerifiedToken> {
+
+        @Override
+        public long expireAfterCreate(String token, VerifiedToken verified, long currentTime) {
+            return Math.max(0, Duration.between(Instant.now(), verified.expiresAt()).toNanos());
+        }
+
+        @Override
+        public long expireAfterUpdate(String token, VerifiedToken verified, long currentTime, long currentDuration) {
+            return expireAfterCreate(token, verified, currentTime);
+        }
+
+        @Override
+        public long expireAfterRead(String token, VerifiedToken verified, long currentTime, long currentDuration) {
+            return currentDuration;
+        }
     }
-}
\ No newline at end of file
+}
@@ -1,7 +1,7 @@
 package com.microproject.linktoolkit;
 
 import com.azure.storage.blob.BlobServiceClient;
-import com.maxmind.geoip2.DatabaseReader;
+import com.microproject.linktoolkit.analytics.IpCountryIndex;
 import org.junit.jupiter.api.Test;
 import org.springframework.boot.test.context.SpringBootTest;
 import org.springframework.boot.test.mock.mockito.MockBean;
@@ -14,7 +14,7 @@ class LinkToolkitApplicationTests {
     private BlobServiceClient blobServiceClient;
 
     @MockBean
-    private DatabaseReader geoIpDatabaseReader;
+    private IpCountryIndex ipCountryIndex;
 
     @MockBean
     private Parser userAgentParser;
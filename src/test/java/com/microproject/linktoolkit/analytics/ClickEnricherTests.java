@@ -0,0 +1,74 @@
+package com.microproject.linktoolkit.analytics;
+
+import io.micrometer.core.instrument.simple.SimpleMeterRegistry;
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.Test;
+import org.springframework.beans.factory.ObjectProvider;
+import ua_parser.Parser;
+
+import java.time.Duration;
+import java.util.UUID;
+import java.util.concurrent.CountDownLatch;
+
+import static org.assertj.core.api.Assertions.assertThat;
+import static org.mockito.Mockito.mock;
+import static org.mockito.Mockito.when;
+
+class ClickEnricherTests {
+
+    private final CountDownLatch loadReleased = new CountDownLatch(1);
+
+    @AfterEach
+    void releaseLoad() {
+        loadReleased.countDown();
+    }
+
+    @Test
+    void recordsClicksUnenrichedOnceTheWaitForAHungLoadRunsOut() {
+        ClickEnricher enricher = enricher(200);
+        enricher.start();
+
+        long started = System.nanoTime();
+        ClickEvent first = enricher.enrich(click());
+        ClickEvent second = enricher.enrich(click());
+
+        assertThat(Duration.ofNanos(System.nanoTime() - started)).isLessThan(Duration.ofSeconds(5));
+        assertThat(first.countryCode()).isNull();
+        assertThat(second.countryCode()).isNull();
+        assertThat(enricher.health().getStatus().getCode()).isEqualTo("OUT_OF_SERVICE");
+    }
+
+    @Test
+    void enrichesClicksOnceALateLoadFinishes() throws InterruptedException {
+        ClickEnricher enricher = enricher(0);
+        enricher.start();
+        assertThat(enricher.enrich(click()).countryCode()).isNull();
+
+        loadReleased.countDown();
+
+        long deadline = System.nanoTime() + Duration.ofSeconds(5).toNanos();
+        while (!enricher.health().getStatus().getCode().equals("UP") && System.nanoTime() < deadline) {
+            Thread.sleep(10);
+        }
+        assertThat(enricher.enrich(click()).countryCode()).isEqualTo("DE");
+    }
+
+    @SuppressWarnings("unchecked")
+    private ClickEnricher enricher(long maxWaitMs) {
+        IpCountryIndex index = mock(IpCountryIndex.class);
+        when(index.countryOf("203.0.113.7")).thenReturn("DE");
+        ObjectProvider<IpCountryIndex> indexProvider = mock(ObjectProvider.class);
+        when(indexProvider.getObject()).thenAnswer(invocation -> {
+            // A GeoIP read that hangs until the test lets it go
+            loadReleased.await();
+            return index;
+        });
+        ObjectProvider<Parser> parserProvider = mock(ObjectProvider.class);
+        when(parserProvider.getObject()).thenReturn(mock(Parser.class));
+        return new ClickEnricher(indexProvider, parserProvider, new SimpleMeterRegistry(), true, maxWaitMs);
+    }
+
+    private static ClickEvent click() {
+        return ClickEvent.of(UUID.randomUUID(), "203.0.113.7", null, null);
+    }
+}
@@ -0,0 +1,174 @@
+package com.microproject.linktoolkit.analytics;
+
+import io.micrometer.core.instrument.simple.SimpleMeterRegistry;
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+
+import java.io.IOException;
+import java.io.RandomAccessFile;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.time.Instant;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.UUID;
+import java.util.stream.IntStream;
+import java.util.stream.Stream;
+
+import static org.assertj.core.api.Assertions.assertThat;
+import static org.assertj.core.api.Assertions.assertThatThrownBy;
+
+class ClickWriteAheadLogTests {
+
+    private static final int SEGMENT_BYTES = 4096;
+    private static final UUID LINK_ID = UUID.randomUUID();
+
+    @TempDir
+    Path directory;
+
+    private final SimpleMeterRegistry meterRegistry = new SimpleMeterRegistry();
+    private final List<ClickWriteAheadLog> opened = new ArrayList<>();
+
+    @AfterEach
+    void closeLogs() throws IOException {
+        for (ClickWriteAheadLog log : opened) {
+            log.close();
+        }
+    }
+
+    private ClickWriteAheadLog open(long maxBytes) {
+        ClickWriteAheadLog log = new ClickWriteAheadLog(meterRegistry, directory, SEGMENT_BYTES, maxBytes);
+        opened.add(log);
+        return log;
+    }
+
+    private ClickWriteAheadLog reopen(ClickWriteAheadLog log) throws IOException {
+        log.close();
+        opened.remove(log);
+        return open(1 << 20);
+    }
+
+    private static ClickEvent click(int i) {
+        return new ClickEvent(LINK_ID, Instant.ofEpochSecond(1_750_000_000L + i, i), "10.0.0." + (i % 256),
+                i % 3 == 0 ? null : "Mozilla/5.0 (Ünïcode) #" + i, i % 2 == 0 ? null : "https://example.com/" + i, null, null);
+    }
+
+    private static List<ClickEvent> readAll(ClickWriteAheadLog.Reader reader) {
+        List<ClickEvent> clicks = new ArrayList<>();
+        reader.read(clicks, Integer.MAX_VALUE);
+        return clicks;
+    }
+
+    private long segmentFiles() throws IOException {
+        try (Stream<Path> files = Files.list(directory)) {
+            return files.filter(file -> file.toString().endsWith(".wal")).count();
+        }
+    }
+
+    @Test
+    void readsBackWhatWasAppendedAcrossSegments() throws IOException {
+        ClickWriteAheadLog log = open(1 << 20);
+        List<ClickEvent> clicks = IntStream.range(0, 200).mapToObj(ClickWriteAheadLogTests::click).toList();
+        clicks.forEach(log::append);
+
+        ClickWriteAheadLog.Reader reader = log.reader(-1);
+        assertThat(readAll(reader)).isEqualTo(clicks);
+        assertThat(reader.hasUnread()).isFalse();
+        assertThat(segmentFiles()).isGreaterThan(1);
+
+        log.truncate(reader.position());
+        assertThat(segmentFiles()).isEqualTo(1);
+    }
+
+    @Test
+    void resumesFromTheCommittedPositionAfterARestart() throws IOException {
+        ClickWriteAheadLog log = open(1 << 20);
+        UUID id = log.id();
+        IntStream.range(0, 50).mapToObj(ClickWriteAheadLogTests::click).forEach(log::append);
+        ClickWriteAheadLog.Reader reader = log.reader(-1);
+        List<ClickEvent> firstBatch = new ArrayList<>();
+        reader.read(firstBatch, 20);
+        long committed = reader.position();
+
+        log = reopen(log);
+        log.append(click(50));
+
+        assertThat(log.id()).isEqualTo(id);
+        assertThat(readAll(log.reader(committed)))
+                .isEqualTo(IntStream.range(20, 51).mapToObj(ClickWriteAheadLogTests::click).toList());
+    }
+
+    @Test
+    void recoveryDropsARecordTornByACrash() throws IOException {
+        ClickWriteAheadLog log = open(1 << 20);
+        log.append(click(0));
+        long end = log.writePosition();
+        log.close();
+        opened.remove(log);
+
+        // A record whose header made it to disk but whose contents did not
+        try (RandomAccessFile file = new RandomAccessFile(directory.resolve("clicks-0000000001.wal").toFile(), "rw")) {
+            file.seek(ClickWriteAheadLog.offsetOf(end));
+            file.writeInt(100);
+            file.writeInt(0xCAFEBABE);
+            file.writeLong(42);
+        }
+
+        log = open(1 << 20);
+        assertThat(log.writePosition()).isEqualTo(end);
+        log.append(click(1));
+        assertThat(readAll(log.reader(-1))).containsExactly(click(0), click(1));
+    }
+
+    @Test
+    void skipsTheRestOfASegmentWithACorruptRecord() throws IOException {
+        ClickWriteAheadLog log = open(1 << 20);
+        IntStream.range(0, 200).mapToObj(ClickWriteAheadLogTests::click).forEach(log::append);
+        log.close();
+        opened.remove(log);
+
+        try (RandomAccessFile file = new RandomAccessFile(directory.resolve("clicks-0000000001.wal").toFile(), "rw")) {
+            file.seek(30);
+            file.writeByte(file.readByte() ^ 0xFF);
+        }
+
+        List<ClickEvent> read = readAll(open(1 << 20).reader(-1));
+        assertThat(read).isNotEmpty().doesNotContain(click(0)).contains(click(199));
+        assertThat(meterRegistry.counter("clicks.wal.corrupt").count()).isEqualTo(1);
+    }
+
+    @Test
+    void keepsDeadLetteredClicksOutOfTheLog() throws IOException {
+        ClickWriteAheadLog log = open(1 << 20);
+        IntStream.range(0, 3).mapToObj(ClickWriteAheadLogTests::click).forEach(log::append);
+        log.deadLetter(List.of(click(0), click(1)));
+        log.deadLetter(List.of(click(2)));
+
+        Path deadLetters = directory.resolve("dead-letter.wal");
+        assertThat(Files.size(deadLetters)).isEqualTo(ClickWriteAheadLog.offsetOf(log.writePosition()));
+        assertThat(meterRegistry.counter("clicks.wal.dead-lettered").count()).isEqualTo(3);
+
+        log = reopen(log);
+        assertThat(readAll(log.reader(-1))).containsExactly(click(0), click(1), click(2));
+    }
+
+    @Test
+    void rejectsClicksOnceFull() {
+        ClickWriteAheadLog log = open(2 * SEGMENT_BYTES);
+        int accepted = 0;
+        while (log.append(click(accepted))) {
+            accepted++;
+        }
+
+        assertThat(readAll(log.reader(-1))).hasSize(accepted);
+        assertThat(meterRegistry.counter("clicks.ingest.dropped", "reason", "wal-full").count()).isEqualTo(1);
+    }
+
+    @Test
+    void refusesADirectoryInUse() {
+        open(1 << 20);
+
+        assertThatThrownBy(() -> open(1 << 20)).isInstanceOf(IllegalStateException.class);
+    }
+}
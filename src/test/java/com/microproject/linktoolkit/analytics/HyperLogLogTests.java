@@ -0,0 +1,71 @@
+package com.microproject.linktoolkit.analytics;
+
+import org.junit.jupiter.api.Test;
+
+import static org.assertj.core.api.Assertions.assertThat;
+import static org.assertj.core.api.Assertions.assertThatThrownBy;
+import static org.assertj.core.api.Assertions.within;
+
+class HyperLogLogTests {
+
+    private static HyperLogLog visitors(int first, int count) {
+        HyperLogLog sketch = new HyperLogLog();
+        for (int i = first; i < first + count; i++) {
+            sketch.add(HyperLogLog.visitorHash("10.0." + (i >> 8) + "." + (i & 0xff), "Mozilla/5.0 #" + i));
+        }
+        return sketch;
+    }
+
+    @Test
+    void smallCountsAreNearlyExact() {
+        assertThat(new HyperLogLog().estimate()).isZero();
+        assertThat(visitors(0, 1).estimate()).isEqualTo(1);
+        assertThat(visitors(0, 100).estimate()).isCloseTo(100, within(2L));
+    }
+
+    @Test
+    void repeatVisitorsAreCountedOnce() {
+        HyperLogLog sketch = visitors(0, 500);
+        sketch.merge(visitors(0, 500));
+        sketch.add(HyperLogLog.visitorHash("10.0.0.0", "Mozilla/5.0 #0"));
+
+        assertThat(sketch.estimate()).isCloseTo(500, within(15L));
+    }
+
+    @Test
+    void largeCountsStayWithinTheExpectedError() {
+        // Standard error is about 1.6%; 5% is more than three of them
+        assertThat(visitors(0, 100_000).estimate()).isCloseTo(100_000, within(5_000L));
+    }
+
+    @Test
+    void mergeEstimatesTheUnion() {
+        HyperLogLog merged = visitors(0, 30_000);
+        merged.merge(visitors(20_000, 30_000));
+
+        assertThat(merged.toBytes()).isEqualTo(visitors(0, 50_000).toBytes());
+        assertThat(merged.estimate()).isCloseTo(50_000, within(2_500L));
+    }
+
+    @Test
+    void sparseAndDenseSketchesRoundTrip() {
+        HyperLogLog sparse = visitors(0, 50);
+        HyperLogLog dense = visitors(0, 50_000);
+
+        assertThat(sparse.toBytes()).hasSize(2 + 50 * 3);
+        assertThat(dense.toBytes()).hasSize(2 + 4096);
+        assertThat(HyperLogLog.fromBytes(sparse.toBytes()).toBytes()).isEqualTo(sparse.toBytes());
+        assertThat(HyperLogLog.fromBytes(dense.toBytes()).estimate()).isEqualTo(dense.estimate());
+        assertThat(HyperLogLog.fromBytes(null).isEmpty()).isTrue();
+    }
+
+    @Test
+    void rejectsCorruptSketches() {
+        assertThatThrownBy(() -> HyperLogLog.fromBytes(new byte[]{1}))
+                .isInstanceOf(IllegalArgumentException.class);
+        assertThatThrownBy(() -> HyperLogLog.fromBytes(new byte[]{2, 12, 0}))
+                .isInstanceOf(IllegalArgumentException.class);
+        assertThatThrownBy(() -> HyperLogLog.fromBytes(new byte[]{1, 14}))
+                .isInstanceOf(IllegalArgumentException.class);
+    }
+}
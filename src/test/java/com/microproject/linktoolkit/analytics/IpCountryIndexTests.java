@@ -0,0 +1,82 @@
+package com.microproject.linktoolkit.analytics;
+
+import org.junit.jupiter.api.BeforeAll;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.params.ParameterizedTest;
+import org.junit.jupiter.params.provider.ValueSource;
+
+import java.net.InetAddress;
+import java.net.UnknownHostException;
+
+import static org.assertj.core.api.Assertions.assertThat;
+
+class IpCountryIndexTests {
+
+    private static IpCountryIndex index;
+
+    @BeforeAll
+    static void buildIndex() throws UnknownHostException {
+        index = new IpCountryIndex.Builder()
+                .addNetwork(address("1.0.0.0"), 24, "AU")
+                .addNetwork(address("1.0.1.0"), 24, "AU") // adjacent, merged with the previous range
+                .addNetwork(address("8.8.8.0"), 24, "US")
+                .addNetwork(address("203.0.113.128"), 25, "JP")
+                .addNetwork(address("255.255.255.0"), 24, "ZZ")
+                .addNetwork(address("2001:db8::"), 32, "DE")
+                .addNetwork(address("2001:db9::"), 32, "DE")
+                .addNetwork(address("2a00:1450:4000::"), 37, "IE")
+                .addNetwork(address("ffff:ffff:ffff:ffff::"), 64, "ZZ")
+                .build();
+    }
+
+    @Test
+    void mergesAdjacentRangesOfTheSameCountry() {
+        assertThat(index.ipv4RangeCount()).isEqualTo(4);
+        assertThat(index.ipv6RangeCount()).isEqualTo(3);
+    }
+
+    @Test
+    void resolvesIpv4() {
+        assertThat(index.countryOf("1.0.0.0")).isEqualTo("AU");
+        assertThat(index.countryOf("1.0.1.255")).isEqualTo("AU");
+        assertThat(index.countryOf("1.0.2.0")).isNull();
+        assertThat(index.countryOf("8.8.8.8")).isEqualTo("US");
+        assertThat(index.countryOf("203.0.113.127")).isNull();
+        assertThat(index.countryOf("203.0.113.128")).isEqualTo("JP");
+        assertThat(index.countryOf("255.255.255.255")).isEqualTo("ZZ");
+        assertThat(index.countryOf("0.0.0.0")).isNull();
+    }
+
+    @Test
+    void resolvesIpv6() {
+        assertThat(index.countryOf("2001:db8::1")).isEqualTo("DE");
+        assertThat(index.countryOf("2001:0DB9:ffff:ffff:ffff:ffff:ffff:ffff")).isEqualTo("DE");
+        assertThat(index.countryOf("2001:dba::")).isNull();
+        assertThat(index.countryOf("2a00:1450:4001:800::200e")).isEqualTo("IE");
+        assertThat(index.countryOf("2a00:1450:4800::")).isNull();
+        assertThat(index.countryOf("ffff:ffff:ffff:ffff:ffff:ffff:ffff:ffff")).isEqualTo("ZZ");
+        assertThat(index.countryOf("fe80::1%eth0")).isNull();
+        assertThat(index.countryOf("::")).isNull();
+    }
+
+    @Test
+    void resolvesIpv4MappedIpv6AsIpv4() {
+        assertThat(index.countryOf("::ffff:8.8.8.8")).isEqualTo("US");
+        assertThat(index.countryOf("::ffff:0808:0808")).isEqualTo("US");
+        assertThat(index.countryOf("0:0:0:0:0:ffff:1.0.1.1")).isEqualTo("AU");
+    }
+
+    @ParameterizedTest
+    @ValueSource(strings = {
+            "", "1.2.3", "1.2.3.4.5", "256.1.1.1", "1.2.3.", ".1.2.3", "1..2.3", "1.2.3.4a", "1234.1.1.1",
+            "unknown", ":", ":::", "1:::2", "1::2::3", "12345::", "1:2:3:4:5:6:7:8:9", "1:2:3:4:5:6:7",
+            "1:2:3:4:5:6:7:8::", "::1:", ":1::", "g::1", "::ffff:1.2.3", "::1.2.3.4:5"
+    })
+    void rejectsMalformedLiterals(String ip) {
+        assertThat(index.countryOf(ip)).isNull();
+    }
+
+    private static byte[] address(String literal) throws UnknownHostException {
+        return InetAddress.getByName(literal).getAddress();
+    }
+}
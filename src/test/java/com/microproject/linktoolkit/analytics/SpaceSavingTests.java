@@ -0,0 +1,82 @@
+package com.microproject.linktoolkit.analytics;
+
+import org.junit.jupiter.api.Test;
+
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Random;
+
+import static org.assertj.core.api.Assertions.assertThat;
+import static org.assertj.core.api.Assertions.assertThatThrownBy;
+
+class SpaceSavingTests {
+
+    @Test
+    void countsAreExactWhileEveryValueHasACounter() {
+        SpaceSaving summary = new SpaceSaving(4);
+        summary.offer("google.com", 5);
+        summary.offer("t.co", 2);
+        summary.offer("google.com", 1);
+
+        assertThat(summary.top(5)).containsExactly(
+                new SpaceSaving.Counter("google.com", 6, 0),
+                new SpaceSaving.Counter("t.co", 2, 0));
+        assertThat(summary.minCount()).isZero();
+    }
+
+    @Test
+    void boundsHoldOnASkewedStream() {
+        // Zipf-like referrers: value i is roughly 1/i as frequent as the first
+        Random random = new Random(42);
+        Map<String, Long> exact = new HashMap<>();
+        SpaceSaving summary = new SpaceSaving(32);
+        for (int i = 0; i < 100_000; i++) {
+            String value = "referer-" + (int) Math.floor(Math.pow(1000, random.nextDouble()));
+            exact.merge(value, 1L, Long::sum);
+            summary.offer(value, 1);
+        }
+
+        for (SpaceSaving.Counter counter : summary.top(32)) {
+            long trueCount = exact.get(counter.value());
+            assertThat(counter.count()).isGreaterThanOrEqualTo(trueCount);
+            assertThat(counter.count() - counter.error()).isLessThanOrEqualTo(trueCount);
+        }
+        List<String> trueTop = exact.entrySet().stream()
+                .sorted(Map.Entry.<String, Long>comparingByValue().reversed())
+                .limit(5)
+                .map(Map.Entry::getKey)
+                .toList();
+        assertThat(summary.top(5)).extracting(SpaceSaving.Counter::value).containsExactlyElementsOf(trueTop);
+    }
+
+    @Test
+    void newValuesInheritTheEvictedCountAsError() {
+        SpaceSaving summary = new SpaceSaving(2);
+        summary.offer("a", 10);
+        summary.offer("b", 3);
+        summary.offer("c", 2);
+
+        assertThat(summary.top(2)).containsExactly(
+                new SpaceSaving.Counter("a", 10, 0),
+                new SpaceSaving.Counter("c", 5, 3));
+        assertThat(summary.minCount()).isEqualTo(5);
+    }
+
+    @Test
+    void roundTripsAndShrinksToASmallerCapacity() {
+        SpaceSaving summary = new SpaceSaving(8);
+        for (int i = 1; i <= 8; i++) {
+            summary.offer("value-" + i, i * 10L);
+        }
+        summary.offer("value-9", 5);
+
+        assertThat(SpaceSaving.fromBytes(summary.toBytes(), 8).top(8)).isEqualTo(summary.top(8));
+        assertThat(SpaceSaving.fromBytes(summary.toBytes(), 3).top(8)).isEqualTo(summary.top(3));
+        assertThat(SpaceSaving.fromBytes(null, 8).top(8)).isEmpty();
+        assertThatThrownBy(() -> SpaceSaving.fromBytes(new byte[]{9}, 8))
+                .isInstanceOf(IllegalArgumentException.class);
+        assertThatThrownBy(() -> SpaceSaving.fromBytes(new byte[]{1, 0, 1}, 8))
+                .isInstanceOf(IllegalArgumentException.class);
+    }
+}
@@ -0,0 +1,92 @@
+package com.microproject.linktoolkit.link;
+
+import io.micrometer.core.instrument.simple.SimpleMeterRegistry;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.Timeout;
+
+import java.time.Instant;
+import java.time.temporal.ChronoUnit;
+import java.util.Optional;
+import java.util.UUID;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.TimeUnit;
+
+import static org.assertj.core.api.Assertions.assertThat;
+import static org.assertj.core.api.Assertions.assertThatThrownBy;
+import static org.mockito.Mockito.mock;
+import static org.mockito.Mockito.times;
+import static org.mockito.Mockito.verify;
+import static org.mockito.Mockito.when;
+
+// A future that is never completed blocks join() for good, so a hung test fails from a separate thread instead
+@Timeout(value = 10, threadMode = Timeout.ThreadMode.SEPARATE_THREAD)
+class AliasResolutionCacheTests {
+
+    private static final ResolvedLink LINK =
+            new ResolvedLink(UUID.randomUUID(), "https://example.com", Instant.now().plus(1, ChronoUnit.DAYS));
+
+    private final LinkRepository linkRepository = mock(LinkRepository.class);
+    private final AliasResolutionCache cache =
+            new AliasResolutionCache(linkRepository, new SimpleMeterRegistry(), 1000, 600_000, 30_000, false);
+
+    @Test
+    void cachesResolvedLinks() {
+        when(linkRepository.findResolvedByShortAlias("promo24")).thenReturn(Optional.of(LINK));
+
+        assertThat(cache.resolve("promo24")).contains(LINK);
+        assertThat(cache.resolve("promo24")).contains(LINK);
+        verify(linkRepository, times(1)).findResolvedByShortAlias("promo24");
+    }
+
+    @Test
+    void cachesUnknownAliases() {
+        when(linkRepository.findResolvedByShortAlias("missing")).thenReturn(Optional.empty());
+
+        assertThat(cache.resolve("missing")).isEmpty();
+        assertThat(cache.resolve("missing")).isEmpty();
+        verify(linkRepository, times(1)).findResolvedByShortAlias("missing");
+    }
+
+    @Test
+    void retriesAfterTheLoaderThrowsAnError() {
+        when(linkRepository.findResolvedByShortAlias("promo24"))
+                .thenThrow(new StackOverflowError())
+                .thenReturn(Optional.of(LINK));
+
+        assertThatThrownBy(() -> cache.resolve("promo24")).isInstanceOf(StackOverflowError.class);
+        assertThat(cache.resolve("promo24")).contains(LINK);
+    }
+
+    @Test
+    void releasesConcurrentMissesWhenTheLoaderThrowsAnError() throws Exception {
+        CountDownLatch loading = new CountDownLatch(1);
+        CountDownLatch fail = new CountDownLatch(1);
+        when(linkRepository.findResolvedByShortAlias("promo24")).thenAnswer(invocation -> {
+            loading.countDown();
+            fail.await();
+            throw new OutOfMemoryError();
+        });
+
+        ExecutorService executor = Executors.newVirtualThreadPerTaskExecutor();
+        CompletableFuture<Throwable> loader = CompletableFuture.supplyAsync(() -> failureOf("promo24"), executor);
+        assertThat(loading.await(5, TimeUnit.SECONDS)).isTrue();
+        // Joins the pending load instead of querying again
+        CompletableFuture<Throwable> waiter = CompletableFuture.supplyAsync(() -> failureOf("promo24"), executor);
+        fail.countDown();
+
+        assertThat(loader.get(5, TimeUnit.SECONDS)).isInstanceOf(OutOfMemoryError.class);
+        assertThat(waiter.get(5, TimeUnit.SECONDS)).isNotNull();
+    }
+
+    private Throwable failureOf(String alias) {
+        try {
+            cache.resolve(alias);
+            return null;
+        } catch (Throwable t) {
+            return t;
+        }
+    }
+}
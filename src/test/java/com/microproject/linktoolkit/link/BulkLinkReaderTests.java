@@ -0,0 +1,71 @@
+package com.microproject.linktoolkit.link;
+
+import com.fasterxml.jackson.databind.ObjectMapper;
+import org.junit.jupiter.api.Test;
+
+import java.io.ByteArrayInputStream;
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.List;
+
+import static org.assertj.core.api.Assertions.assertThat;
+
+class BulkLinkReaderTests {
+
+    @Test
+    void readsCsvWithHeaderQuotesAndBlankLines() throws IOException {
+        List<BulkLinkReader.Row> rows = readAll(BulkLinkReader.Format.CSV,
+                "\uFEFFlongUrl,alias,expiry\r\n" +
+                "https://a.com/1,,\r\n" +
+                "\n" +
+                "\"https://a.com/2?q=1,2\",\"my\"\"link\",P1D\n" +
+                "\"https://a.com/3\n" +
+                "https://a.com/4");
+
+        assertThat(rows).extracting(BulkLinkReader.Row::line).containsExactly(2L, 4L, 5L, 6L);
+        assertThat(rows.get(0).request().longUrl()).isEqualTo("https://a.com/1");
+        assertThat(rows.get(0).request().alias()).isNull();
+        assertThat(rows.get(0).request().expiry()).isNull();
+        assertThat(rows.get(1).request().longUrl()).isEqualTo("https://a.com/2?q=1,2");
+        assertThat(rows.get(1).request().alias()).isEqualTo("my\"link");
+        assertThat(rows.get(1).request().expiry()).isEqualTo("P1D");
+        assertThat(rows.get(2).error()).isNotNull();
+        assertThat(rows.get(3).request().longUrl()).isEqualTo("https://a.com/4");
+    }
+
+    @Test
+    void readsNdjsonAndReportsBadLines() throws IOException {
+        List<BulkLinkReader.Row> rows = readAll(BulkLinkReader.Format.NDJSON,
+                "{\"longUrl\":\"https://b.com/1\",\"alias\":\"promo\"}\n" +
+                "{not json\n" +
+                "{\"longUrl\":\"https://b.com/2\",\"expiry\":\"P1M\"}\n");
+
+        assertThat(rows).hasSize(3);
+        assertThat(rows.get(0).request().alias()).isEqualTo("promo");
+        assertThat(rows.get(1).request()).isNull();
+        assertThat(rows.get(1).error()).isNotNull();
+        assertThat(rows.get(2).request().expiry()).isEqualTo("P1M");
+    }
+
+    @Test
+    void skipsOverlongLinesWithoutBufferingThem() throws IOException {
+        List<BulkLinkReader.Row> rows = readAll(BulkLinkReader.Format.CSV,
+                "https://a.com/" + "x".repeat(100_000) + "\n" +
+                "https://a.com/ok\n");
+
+        assertThat(rows).hasSize(2);
+        assertThat(rows.get(0).error()).contains(String.valueOf(BulkLinkReader.MAX_LINE_LENGTH));
+        assertThat(rows.get(1).request().longUrl()).isEqualTo("https://a.com/ok");
+    }
+
+    private static List<BulkLinkReader.Row> readAll(BulkLinkReader.Format format, String upload) throws IOException {
+        BulkLinkReader reader = new BulkLinkReader(
+                new ByteArrayInputStream(upload.getBytes(StandardCharsets.UTF_8)), format, new ObjectMapper());
+        List<BulkLinkReader.Row> rows = new ArrayList<>();
+        for (BulkLinkReader.Row row = reader.next(); row != null; row = reader.next()) {
+            rows.add(row);
+        }
+        return rows;
+    }
+}
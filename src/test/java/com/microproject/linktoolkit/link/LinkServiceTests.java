@@ -0,0 +1,39 @@
+package com.microproject.linktoolkit.link;
+
+import com.microproject.linktoolkit.exception.ReservedAliasException;
+import com.microproject.linktoolkit.util.AliasGenerator;
+import io.micrometer.core.instrument.simple.SimpleMeterRegistry;
+import org.junit.jupiter.params.ParameterizedTest;
+import org.junit.jupiter.params.provider.ValueSource;
+
+import static org.assertj.core.api.Assertions.assertThatCode;
+import static org.assertj.core.api.Assertions.assertThatThrownBy;
+
+class LinkServiceTests {
+
+    // Only the alias checks are exercised, and they touch neither the repositories nor the database
+    private final LinkService linkService = new LinkService(null, null,
+            new AliasGenerator(null, new SimpleMeterRegistry(), "test-secret"), null, null, null);
+
+    @ParameterizedTest
+    @ValueSource(strings = {"aB3dE9x", "0000aZ1", "Zz9Zz9Z"})
+    void refusesCustomAliasesInTheGeneratedForm(String alias) {
+        assertThatThrownBy(() -> linkService.checkCustomAlias(alias))
+                .isInstanceOf(ReservedAliasException.class)
+                .hasMessageContaining("reserved for generated links");
+    }
+
+    @ParameterizedTest
+    @ValueSource(strings = {"api", "Admin", "LOGIN"})
+    void refusesReservedWords(String alias) {
+        assertThatThrownBy(() -> linkService.checkCustomAlias(alias))
+                .isInstanceOf(ReservedAliasException.class)
+                .hasMessageContaining("reserved word");
+    }
+
+    @ParameterizedTest
+    @ValueSource(strings = {"mylinks", "promo24", "PROMO24", "Promo-24", "1234567", "aB3dE9", "aB3dE9xy", "aB3_E9x", "summer-sale-2026"})
+    void acceptsOtherCustomAliases(String alias) {
+        assertThatCode(() -> linkService.checkCustomAlias(alias)).doesNotThrowAnyException();
+    }
+}
@@ -0,0 +1,81 @@
+package com.microproject.linktoolkit.qrcode;
+
+import com.google.zxing.BarcodeFormat;
+import com.google.zxing.BinaryBitmap;
+import com.google.zxing.client.j2se.BufferedImageLuminanceSource;
+import com.google.zxing.client.j2se.MatrixToImageWriter;
+import com.google.zxing.common.HybridBinarizer;
+import com.google.zxing.qrcode.QRCodeReader;
+import com.google.zxing.qrcode.QRCodeWriter;
+import com.google.zxing.qrcode.decoder.ErrorCorrectionLevel;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.params.ParameterizedTest;
+import org.junit.jupiter.params.provider.EnumSource;
+
+import javax.imageio.ImageIO;
+import java.awt.image.BufferedImage;
+import java.io.ByteArrayInputStream;
+import java.nio.charset.StandardCharsets;
+
+import static org.assertj.core.api.Assertions.assertThat;
+import static org.assertj.core.api.Assertions.assertThatThrownBy;
+
+class QrCodeRendererTests {
+
+    private static final String SHORT_URL = "https://lnk.example.com/aB3dE9x";
+
+    private final QrCodeRenderer renderer = new QrCodeRenderer();
+
+    @ParameterizedTest
+    @EnumSource(ErrorCorrectionLevel.class)
+    void pngDecodesBackToTheShortUrl(ErrorCorrectionLevel errorCorrection) throws Exception {
+        byte[] png = renderer.render(SHORT_URL, new QrCodeOptions(QrCodeFormat.PNG, 512, 2, errorCorrection));
+
+        BufferedImage image = ImageIO.read(new ByteArrayInputStream(png));
+        assertThat(image.getWidth()).isEqualTo(512);
+        assertThat(image.getHeight()).isEqualTo(512);
+        String decoded = new QRCodeReader()
+                .decode(new BinaryBitmap(new HybridBinarizer(new BufferedImageLuminanceSource(image))))
+                .getText();
+        assertThat(decoded).isEqualTo(SHORT_URL);
+    }
+
+    @Test
+    void defaultPngMatchesZxingsOwnImage() throws Exception {
+        BufferedImage image = ImageIO.read(new ByteArrayInputStream(renderer.renderPng(SHORT_URL)));
+        BufferedImage expected = MatrixToImageWriter.toBufferedImage(
+                new QRCodeWriter().encode(SHORT_URL, BarcodeFormat.QR_CODE, 300, 300));
+
+        assertThat(image.getWidth()).isEqualTo(300);
+        assertThat(image.getHeight()).isEqualTo(300);
+        for (int y = 0; y < 300; y++) {
+            for (int x = 0; x < 300; x++) {
+                assertThat(image.getRGB(x, y)).as("pixel (%d, %d)", x, y).isEqualTo(expected.getRGB(x, y));
+            }
+        }
+    }
+
+    @Test
+    void svgIsScaledModuleGridWithQuietZone() throws Exception {
+        // 25 modules for this URL at level L (version 2), plus a margin of 4 on each side
+        String svg = new String(renderer.render(SHORT_URL, new QrCodeOptions(QrCodeFormat.SVG, 640, 4, ErrorCorrectionLevel.L)),
+                StandardCharsets.UTF_8);
+
+        assertThat(svg).startsWith("<svg xmlns=\"http://www.w3.org/2000/svg\" width=\"640\" height=\"640\" viewBox=\"0 0 33 33\"");
+        assertThat(svg).endsWith("\"/></svg>");
+        // The top-left finder pattern starts with a run of 7 dark modules inside the quiet zone
+        assertThat(svg).contains("M4 4h7v1h-7z");
+    }
+
+    @Test
+    void rejectsOutOfRangeOptions() {
+        assertThatThrownBy(() -> new QrCodeOptions(QrCodeFormat.PNG, 10_000, 4, ErrorCorrectionLevel.L))
+                .isInstanceOf(IllegalArgumentException.class);
+        assertThatThrownBy(() -> new QrCodeOptions(QrCodeFormat.PNG, 300, -1, ErrorCorrectionLevel.L))
+                .isInstanceOf(IllegalArgumentException.class);
+        assertThatThrownBy(() -> QrCodeFormat.parse("gif"))
+                .isInstanceOf(IllegalArgumentException.class);
+        assertThatThrownBy(() -> QrCodeOptions.parseErrorCorrection("X"))
+                .isInstanceOf(IllegalArgumentException.class);
+    }
+}
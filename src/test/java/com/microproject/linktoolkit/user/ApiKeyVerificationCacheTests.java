@@ -0,0 +1,111 @@
+package com.microproject.linktoolkit.user;
+
+import io.micrometer.core.instrument.simple.SimpleMeterRegistry;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.springframework.security.core.userdetails.UsernameNotFoundException;
+import org.springframework.security.crypto.bcrypt.BCryptPasswordEncoder;
+import org.springframework.security.crypto.password.PasswordEncoder;
+
+import java.util.Optional;
+
+import static org.assertj.core.api.Assertions.assertThat;
+import static org.mockito.ArgumentMatchers.anyString;
+import static org.mockito.Mockito.mock;
+import static org.mockito.Mockito.spy;
+import static org.mockito.Mockito.times;
+import static org.mockito.Mockito.verify;
+import static org.mockito.Mockito.when;
+
+class ApiKeyVerificationCacheTests {
+
+    private static final String EMAIL = "owner@example.com";
+    private static final String PUBLIC_ID = "pk_old";
+    private static final String SECRET = "old-secret";
+
+    private final PasswordEncoder passwordEncoder = spy(new BCryptPasswordEncoder(4));
+    private UserRepository userRepository;
+    private UserPrincipalCache userPrincipalCache;
+    private ApiKeyVerificationCache apiKeyCache;
+
+    @BeforeEach
+    void createCache() {
+        userRepository = mock(UserRepository.class);
+        userPrincipalCache = mock(UserPrincipalCache.class);
+        apiKeyCache = new ApiKeyVerificationCache(
+                userRepository, passwordEncoder, userPrincipalCache, new SimpleMeterRegistry(), 100, 600_000);
+
+        User owner = owner(PUBLIC_ID, SECRET);
+        when(userRepository.findByApiKeyPublicId(PUBLIC_ID)).thenReturn(Optional.of(owner));
+        when(userPrincipalCache.get(EMAIL)).thenReturn(owner);
+    }
+
+    @Test
+    void runsBcryptOnlyForTheFirstRequest() {
+        assertThat(apiKeyCache.authenticate(PUBLIC_ID, SECRET)).map(User::getEmail).contains(EMAIL);
+        assertThat(apiKeyCache.authenticate(PUBLIC_ID, SECRET)).map(User::getEmail).contains(EMAIL);
+        assertThat(apiKeyCache.authenticate(PUBLIC_ID, SECRET)).map(User::getEmail).contains(EMAIL);
+
+        verify(passwordEncoder, times(1)).matches(anyString(), anyString());
+    }
+
+    @Test
+    void fallsBackToBcryptForAWrongSecret() {
+        apiKeyCache.authenticate(PUBLIC_ID, SECRET);
+
+        assertThat(apiKeyCache.authenticate(PUBLIC_ID, "wrong-secret")).isEmpty();
+        verify(passwordEncoder, times(2)).matches(anyString(), anyString());
+
+        // The rejected attempt leaves the cached key alone
+        assertThat(apiKeyCache.authenticate(PUBLIC_ID, SECRET)).isPresent();
+        verify(passwordEncoder, times(2)).matches(anyString(), anyString());
+    }
+
+    @Test
+    void rejectsAKeyEvictedOnRotation() {
+        apiKeyCache.authenticate(PUBLIC_ID, SECRET);
+
+        rotate();
+        apiKeyCache.evict(PUBLIC_ID);
+
+        assertThat(apiKeyCache.authenticate(PUBLIC_ID, SECRET)).isEmpty();
+        assertThat(apiKeyCache.authenticate("pk_new", "new-secret")).map(User::getEmail).contains(EMAIL);
+    }
+
+    @Test
+    void rejectsACachedKeyRotatedOnAnotherInstance() {
+        apiKeyCache.authenticate(PUBLIC_ID, SECRET);
+
+        // No eviction here: the owner's principal, reloaded after its own TTL, is the only sign of the rotation
+        rotate();
+
+        assertThat(apiKeyCache.authenticate(PUBLIC_ID, SECRET)).isEmpty();
+        assertThat(apiKeyCache.authenticate(PUBLIC_ID, SECRET)).isEmpty();
+    }
+
+    @Test
+    void rejectsACachedKeyOfADeletedUser() {
+        apiKeyCache.authenticate(PUBLIC_ID, SECRET);
+
+        when(userRepository.findByApiKeyPublicId(PUBLIC_ID)).thenReturn(Optional.empty());
+        when(userPrincipalCache.get(EMAIL)).thenThrow(new UsernameNotFoundException(EMAIL));
+
+        assertThat(apiKeyCache.authenticate(PUBLIC_ID, SECRET)).isEmpty();
+    }
+
+    private void rotate() {
+        User rotated = owner("pk_new", "new-secret");
+        when(userRepository.findByApiKeyPublicId(PUBLIC_ID)).thenReturn(Optional.empty());
+        when(userRepository.findByApiKeyPublicId("pk_new")).thenReturn(Optional.of(rotated));
+        when(userPrincipalCache.get(EMAIL)).thenReturn(rotated);
+    }
+
+    private User owner(String publicId, String secret) {
+        return User.builder()
+                .email(EMAIL)
+                .passwordHash("unused")
+                .apiKeyPublicId(publicId)
+                .apiKeyHash(new BCryptPasswordEncoder(4).encode(secret))
+                .build();
+    }
+}
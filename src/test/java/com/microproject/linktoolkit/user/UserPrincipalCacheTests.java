@@ -0,0 +1,85 @@
+package com.microproject.linktoolkit.user;
+
+import io.micrometer.core.instrument.simple.SimpleMeterRegistry;
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.springframework.security.core.userdetails.UsernameNotFoundException;
+import org.springframework.transaction.support.TransactionSynchronization;
+import org.springframework.transaction.support.TransactionSynchronizationManager;
+
+import java.util.Optional;
+
+import static org.assertj.core.api.Assertions.assertThat;
+import static org.assertj.core.api.Assertions.assertThatThrownBy;
+import static org.mockito.Mockito.mock;
+import static org.mockito.Mockito.times;
+import static org.mockito.Mockito.verify;
+import static org.mockito.Mockito.when;
+
+class UserPrincipalCacheTests {
+
+    private static final String EMAIL = "owner@example.com";
+
+    private UserRepository userRepository;
+    private UserPrincipalCache principalCache;
+
+    @BeforeEach
+    void createCache() {
+        userRepository = mock(UserRepository.class);
+        principalCache = new UserPrincipalCache(userRepository, new SimpleMeterRegistry(), 100, 30_000);
+        when(userRepository.findByEmail(EMAIL)).thenReturn(Optional.of(user("pk_old")));
+    }
+
+    @AfterEach
+    void clearSynchronization() {
+        if (TransactionSynchronizationManager.isSynchronizationActive()) {
+            TransactionSynchronizationManager.clearSynchronization();
+        }
+    }
+
+    @Test
+    void loadsEachUserOnce() {
+        principalCache.get(EMAIL);
+        principalCache.get(EMAIL);
+
+        verify(userRepository, times(1)).findByEmail(EMAIL);
+    }
+
+    @Test
+    void reloadsAnEvictedUser() {
+        principalCache.get(EMAIL);
+        when(userRepository.findByEmail(EMAIL)).thenReturn(Optional.of(user("pk_new")));
+
+        principalCache.evict(EMAIL);
+
+        assertThat(principalCache.get(EMAIL).getApiKeyPublicId()).isEqualTo("pk_new");
+    }
+
+    @Test
+    void evictsOnlyOnceTheTransactionCommits() {
+        principalCache.get(EMAIL);
+        when(userRepository.findByEmail(EMAIL)).thenReturn(Optional.of(user("pk_new")));
+
+        TransactionSynchronizationManager.initSynchronization();
+        principalCache.evict(EMAIL);
+        assertThat(principalCache.get(EMAIL).getApiKeyPublicId()).isEqualTo("pk_old");
+
+        TransactionSynchronizationManager.getSynchronizations().forEach(TransactionSynchronization::afterCommit);
+        assertThat(principalCache.get(EMAIL).getApiKeyPublicId()).isEqualTo("pk_new");
+    }
+
+    @Test
+    void doesNotCacheUnknownEmails() {
+        when(userRepository.findByEmail("new@example.com"))
+                .thenReturn(Optional.empty())
+                .thenReturn(Optional.of(User.builder().email("new@example.com").passwordHash("unused").build()));
+
+        assertThatThrownBy(() -> principalCache.get("new@example.com")).isInstanceOf(UsernameNotFoundException.class);
+        assertThat(principalCache.get("new@example.com").getEmail()).isEqualTo("new@example.com");
+    }
+
+    private User user(String apiKeyPublicId) {
+        return User.builder().email(EMAIL).passwordHash("unused").apiKeyPublicId(apiKeyPublicId).build();
+    }
+}
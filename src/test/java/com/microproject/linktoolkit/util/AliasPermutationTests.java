@@ -0,0 +1,63 @@
+package com.microproject.linktoolkit.util;
+
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.params.ParameterizedTest;
+import org.junit.jupiter.params.provider.ValueSource;
+
+import java.util.HashSet;
+import java.util.Set;
+
+import static org.assertj.core.api.Assertions.assertThat;
+import static org.assertj.core.api.Assertions.assertThatThrownBy;
+
+class AliasPermutationTests {
+
+    private final AliasPermutation permutation = new AliasPermutation("test-secret");
+
+    @Test
+    void consecutiveIdsGiveDistinctReversibleAliases() {
+        Set<String> aliases = new HashSet<>();
+        for (long id = 0; id < 200_000; id++) {
+            String alias = permutation.toAlias(id);
+            assertThat(alias).hasSize(AliasPermutation.ALIAS_LENGTH).matches("[0-9A-Za-z]+");
+            assertThat(permutation.toId(alias)).isEqualTo(id);
+            aliases.add(alias);
+        }
+        assertThat(aliases).hasSize(200_000);
+    }
+
+    @Test
+    void coversTheEdgesOfTheAliasSpace() {
+        for (long id : new long[]{0, 1, AliasPermutation.CAPACITY - 2, AliasPermutation.CAPACITY - 1}) {
+            assertThat(permutation.toId(permutation.toAlias(id))).isEqualTo(id);
+        }
+        assertThat(AliasPermutation.encode(0)).isEqualTo("0000000");
+        assertThat(AliasPermutation.encode(AliasPermutation.CAPACITY - 1)).isEqualTo("zzzzzzz");
+        assertThatThrownBy(() -> permutation.toAlias(AliasPermutation.CAPACITY))
+                .isInstanceOf(IllegalArgumentException.class);
+    }
+
+    @Test
+    void dependsOnTheSecret() {
+        AliasPermutation other = new AliasPermutation("another-secret");
+        int same = 0;
+        for (long id = 0; id < 1000; id++) {
+            if (permutation.toAlias(id).equals(other.toAlias(id))) {
+                same++;
+            }
+        }
+        assertThat(same).isZero();
+    }
+
+    @ParameterizedTest
+    @ValueSource(strings = {"aB3dE9x", "0000aZ1", "Zz9Zz9Z"})
+    void recognisesTheGeneratedForm(String alias) {
+        assertThat(AliasPermutation.isGeneratedForm(alias)).isTrue();
+    }
+
+    @ParameterizedTest
+    @ValueSource(strings = {"mylinks", "promo24", "PROMO24", "1234567", "aB3dE9", "aB3dE9xy", "aB3-E9x", "aB3_E9x"})
+    void leavesOtherAliasesToUsers(String alias) {
+        assertThat(AliasPermutation.isGeneratedForm(alias)).isFalse();
+    }
+}
@@ -0,0 +1,71 @@
+package com.microproject.linktoolkit.util;
+
+import com.microproject.linktoolkit.user.User;
+import io.jsonwebtoken.ExpiredJwtException;
+import io.jsonwebtoken.security.SignatureException;
+import io.micrometer.core.instrument.simple.SimpleMeterRegistry;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+
+import java.util.Map;
+
+import static org.assertj.core.api.Assertions.assertThat;
+import static org.assertj.core.api.Assertions.assertThatThrownBy;
+
+class JwtUtilTests {
+
+    private static final String SECRET = "dGVzdC1zZWNyZXQtdGhhdC1pcy1sb25nLWVub3VnaC1mb3ItdGVzdGluZw==";
+    private static final String OTHER_SECRET = "YW5vdGhlci1zZWNyZXQtdGhhdC1pcy1sb25nLWVub3VnaC1mb3ItdGVzdGluZw==";
+
+    private final User user = User.builder().email("owner@example.com").passwordHash("unused").build();
+
+    private SimpleMeterRegistry meterRegistry;
+    private JwtUtil jwtUtil;
+
+    @BeforeEach
+    void createJwtUtil() {
+        meterRegistry = new SimpleMeterRegistry();
+        jwtUtil = new JwtUtil(SECRET, 60_000, 120_000, 100, meterRegistry);
+    }
+
+    @Test
+    void verifiesEachTokenOnce() {
+        String token = jwtUtil.generateToken(user);
+
+        assertThat(jwtUtil.verify(token).subject()).isEqualTo("owner@example.com");
+        assertThat(jwtUtil.verify(token).subject()).isEqualTo("owner@example.com");
+        assertThat(jwtUtil.isTokenValid(token, user)).isTrue();
+
+        assertThat(cacheGets("hit")).isEqualTo(2);
+        assertThat(cacheGets("miss")).isEqualTo(1);
+    }
+
+    @Test
+    void rejectsACachedTokenOnceItExpires() throws InterruptedException {
+        // exp is truncated to whole seconds, so a token valid for 2 s is valid for more than 1 s and at most 2 s
+        String token = jwtUtil.generateToken(Map.of(), user, 2_000);
+        assertThat(jwtUtil.verify(token).isExpired()).isFalse();
+
+        Thread.sleep(2_100);
+
+        assertThatThrownBy(() -> jwtUtil.verify(token)).isInstanceOf(ExpiredJwtException.class);
+    }
+
+    @Test
+    void rejectsATokenSignedWithAnotherSecret() {
+        String forged = new JwtUtil(OTHER_SECRET, 60_000, 120_000, 100, new SimpleMeterRegistry()).generateToken(user);
+
+        assertThatThrownBy(() -> jwtUtil.verify(forged)).isInstanceOf(SignatureException.class);
+        // Failures are not cached
+        assertThatThrownBy(() -> jwtUtil.verify(forged)).isInstanceOf(SignatureException.class);
+        assertThat(cacheGets("hit")).isZero();
+    }
+
+    private double cacheGets(String result) {
+        return meterRegistry.get("cache.gets")
+                .tag("cache", "jwt-verified-tokens")
+                .tag("result", result)
+                .functionCounter()
+                .count();
+    }
+}